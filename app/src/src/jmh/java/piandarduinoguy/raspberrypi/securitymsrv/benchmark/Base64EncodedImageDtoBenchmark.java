@@ -0,0 +1,56 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Base64EncodedImageDto;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing the JSON body of the base64 encoded image endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64EncodedImageDtoBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD})
+    private String frameSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Base64EncodedImageDto base64EncodedImageDto;
+
+    private byte[] base64EncodedImageJson;
+
+    @Setup
+    public void createBase64EncodedImageDto() throws IOException {
+        this.base64EncodedImageDto = new Base64EncodedImageDto();
+        this.base64EncodedImageDto.setBase64EncodedImage(Base64.getEncoder().encodeToString(BenchmarkFrames.frame(frameSize)));
+        this.base64EncodedImageJson = this.objectMapper.writeValueAsBytes(this.base64EncodedImageDto);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return this.objectMapper.writeValueAsBytes(this.base64EncodedImageDto);
+    }
+
+    @Benchmark
+    public Base64EncodedImageDto deserialize() throws IOException {
+        return this.objectMapper.readValue(this.base64EncodedImageJson, Base64EncodedImageDto.class);
+    }
+}
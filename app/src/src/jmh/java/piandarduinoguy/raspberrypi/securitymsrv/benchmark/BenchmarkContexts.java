@@ -0,0 +1,49 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the beans a benchmark needs in a context of their own, configured like the tests are but with the resources
+ * and the evidence in a temporary directory, much like the narrow @SpringBootTest contexts of the unit tests.
+ */
+final class BenchmarkContexts {
+    private BenchmarkContexts() {
+        throw new IllegalStateException("BenchmarkContexts class is a utility class not meant to be instantiated.");
+    }
+
+    static File createResourcesDirectory() throws IOException {
+        return Files.createTempDirectory("security-benchmark").toFile();
+    }
+
+    /**
+     * The properties are given as command line arguments so that they take precedence over the test properties.
+     */
+    static ConfigurableApplicationContext start(File resourcesDirectory, String[] properties, Class<?>... sources) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(String.format("--resources.base.location=%s/", resourcesDirectory.getAbsolutePath()));
+        arguments.add(String.format("--evidence.location=%s/evidence", resourcesDirectory.getAbsolutePath()));
+        for (String property : properties) {
+            arguments.add("--" + property);
+        }
+        return new SpringApplicationBuilder(sources)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .properties("spring.config.location=classpath:application-test.properties")
+                .run(arguments.toArray(new String[0]));
+    }
+
+    static void stop(ConfigurableApplicationContext applicationContext, File resourcesDirectory) throws IOException {
+        applicationContext.close();
+        FileUtils.deleteDirectory(resourcesDirectory);
+    }
+}
@@ -0,0 +1,75 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Frames of the sizes the security camera sends, filled from a fixed seed so that every run benchmarks the same bytes.
+ * The sizes are those of typical JPEG captures at 640x480, 1280x720 and 1920x1080.
+ */
+final class BenchmarkFrames {
+    static final String VGA = "VGA";
+    static final String HD = "HD";
+    static final String FULL_HD = "FULL_HD";
+
+    private static final long SEED = 20220427L;
+
+    private BenchmarkFrames() {
+        throw new IllegalStateException("BenchmarkFrames class is a utility class not meant to be instantiated.");
+    }
+
+    static byte[] frame(String frameSize) {
+        byte[] frameBytes = new byte[frameLength(frameSize)];
+        new Random(SEED).nextBytes(frameBytes);
+        return frameBytes;
+    }
+
+    /**
+     * A JPEG encoded frame of the resolution, a gradient overlaid with noise from the seed so that frames of different
+     * seeds look the same but for the noise, like the frames of a camera watching a scene where nothing happens.
+     */
+    static byte[] jpegFrame(String frameSize, long noiseSeed) throws IOException {
+        int width = frameWidth(frameSize);
+        int height = VGA.equals(frameSize) ? width * 3 / 4 : width * 9 / 16;
+        Random noise = new Random(noiseSeed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = Math.min(255, Math.max(0, (x + y) * 255 / (width + height) + noise.nextInt(9) - 4));
+                image.setRGB(x, y, level << 16 | level << 8 | level);
+            }
+        }
+        ByteArrayOutputStream jpegOutputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", jpegOutputStream);
+        return jpegOutputStream.toByteArray();
+    }
+
+    private static int frameWidth(String frameSize) {
+        switch (frameSize) {
+            case VGA:
+                return 640;
+            case HD:
+                return 1280;
+            case FULL_HD:
+                return 1920;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown frame size %s.", frameSize));
+        }
+    }
+
+    private static int frameLength(String frameSize) {
+        switch (frameSize) {
+            case VGA:
+                return 48 * 1024;
+            case HD:
+                return 160 * 1024;
+            case FULL_HD:
+                return 400 * 1024;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown frame size %s.", frameSize));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.service.FramePrefilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the frame prefilter costs a frame before any detection: a frame the camera re-sent unchanged, which is only
+ * checksummed, and a frame that differs from the reference frame by noise only, which is decoded and compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramePrefilterBenchmark {
+    private static final String CAMERA_ID = "benchmark";
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.FULL_HD})
+    private String frameSize;
+
+    private FramePrefilter framePrefilter;
+
+    private byte[] referenceFrame;
+
+    private byte[] noisyFrame;
+
+    @Setup
+    public void recordReferenceFrame() throws IOException {
+        this.framePrefilter = new FramePrefilter(true, 6, 24, 0.01, 32, TimeUnit.DAYS.toMillis(1), new SimpleMeterRegistry());
+        this.referenceFrame = BenchmarkFrames.jpegFrame(frameSize, 1);
+        this.noisyFrame = BenchmarkFrames.jpegFrame(frameSize, 2);
+        this.framePrefilter.recordDetection(CAMERA_ID, this.framePrefilter.fingerprint(CAMERA_ID, this.referenceFrame), new DetectionResult());
+    }
+
+    @Benchmark
+    public FramePrefilter.FrameFingerprint fingerprintDuplicateFrame() {
+        return this.framePrefilter.fingerprint(CAMERA_ID, this.referenceFrame);
+    }
+
+    @Benchmark
+    public FramePrefilter.FrameFingerprint fingerprintNoisyFrame() {
+        return this.framePrefilter.fingerprint(CAMERA_ID, this.noisyFrame);
+    }
+}
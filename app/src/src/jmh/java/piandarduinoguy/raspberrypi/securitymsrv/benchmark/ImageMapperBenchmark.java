@@ -0,0 +1,53 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import piandarduinoguy.raspberrypi.securitymsrv.data.mapper.ImageMapper;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a frame from a base64 string, as the JSON endpoint received it, and from the request body as it is read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageMapperBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD})
+    private String frameSize;
+
+    private String base64EncodedFrame;
+
+    private byte[] base64EncodedFrameBytes;
+
+    @Setup
+    public void encodeFrame() {
+        this.base64EncodedFrame = Base64.getEncoder().encodeToString(BenchmarkFrames.frame(frameSize));
+        this.base64EncodedFrameBytes = this.base64EncodedFrame.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public byte[] base64ToByteArray() {
+        return ImageMapper.base64ToByteArray(this.base64EncodedFrame);
+    }
+
+    @Benchmark
+    public byte[] base64InputStreamToByteArray() {
+        return ImageMapper.base64InputStreamToByteArray(new ByteArrayInputStream(this.base64EncodedFrameBytes), this.base64EncodedFrameBytes.length);
+    }
+}
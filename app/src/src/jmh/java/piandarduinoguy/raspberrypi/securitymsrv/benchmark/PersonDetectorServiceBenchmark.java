@@ -0,0 +1,92 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import piandarduinoguy.raspberrypi.securitymsrv.config.PersonDetectorConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.DetectionRegions;
+import piandarduinoguy.raspberrypi.securitymsrv.service.FramePrefilter;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A detection through the PersonDetectorService with the yolo.py worker replaced by the fake worker of the tests, which
+ * answers straight away, so that what is measured is the Java side of a detection: writing the frame, the round trip to
+ * the worker process, reading and parsing its response and publishing the annotated image. The share of the response
+ * parsing is printed from its timer when the benchmark ends.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonDetectorServiceBenchmark {
+    @Param({"person", "no_person"})
+    private String detection;
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.FULL_HD})
+    private String frameSize;
+
+    private File resourcesDirectory;
+
+    private ConfigurableApplicationContext applicationContext;
+
+    private PersonDetectorService personDetectorService;
+
+    private byte[] frame;
+
+    @Setup
+    public void startPersonDetectorService() throws IOException {
+        this.resourcesDirectory = BenchmarkContexts.createResourcesDirectory();
+        this.applicationContext = BenchmarkContexts.start(this.resourcesDirectory,
+                new String[]{"yolo.person-detector.base.location=src/test/resources/fake-yolo/", "yolo.person-detector.pool.warm-up=true"},
+                PersonDetectorService.class,
+                FramePrefilter.class,
+                DetectionRegions.class,
+                PersonDetectorConfig.class,
+                PersonDetectorWorkerPool.class,
+                AnnotatedImageService.class,
+                EvidenceStore.class,
+                SimpleMeterRegistry.class);
+        this.personDetectorService = this.applicationContext.getBean(PersonDetectorService.class);
+        this.frame = BenchmarkFrames.frame(frameSize);
+        // the fake worker reports no person for a frame that contains no_person
+        byte[] marker = ("person".equals(detection) ? "a_person" : "no_person").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(marker, 0, this.frame, 0, marker.length);
+    }
+
+    @TearDown
+    public void stopPersonDetectorService() throws IOException {
+        Timer responseParseTimer = this.applicationContext.getBean(MeterRegistry.class).timer("security.detector.response.parse");
+        System.out.printf("Parsed %d worker responses in %.1f us on average.%n", responseParseTimer.count(), responseParseTimer.mean(TimeUnit.MICROSECONDS));
+        BenchmarkContexts.stop(this.applicationContext, this.resourcesDirectory);
+    }
+
+    @Benchmark
+    public DetectionResult detect() {
+        return this.personDetectorService.detect(SecurityCheck.DEFAULT_CAMERA_ID, this.frame);
+    }
+}
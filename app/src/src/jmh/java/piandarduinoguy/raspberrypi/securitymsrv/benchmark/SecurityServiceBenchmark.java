@@ -0,0 +1,105 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import piandarduinoguy.raspberrypi.securitymsrv.config.PersonDetectorConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.DetectionRegions;
+import piandarduinoguy.raspberrypi.securitymsrv.service.FramePrefilter;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityConfigStore;
+import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and saving the security config through the SecurityService, with security_config.json written as soon as it
+ * changes and written behind with the default delay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityServiceBenchmark {
+    private static final SecurityConfig ARMED_SECURITY_CONFIG = new SecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED);
+    private static final SecurityConfig DISARMED_SECURITY_CONFIG = new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED);
+
+    @Param({"0", "200"})
+    private long writeBehindDelayMillis;
+
+    private File resourcesDirectory;
+
+    private ConfigurableApplicationContext applicationContext;
+
+    private SecurityService securityService;
+
+    private boolean armed;
+
+    @Setup
+    public void startSecurityService() throws IOException {
+        this.resourcesDirectory = BenchmarkContexts.createResourcesDirectory();
+        this.applicationContext = BenchmarkContexts.start(this.resourcesDirectory,
+                new String[]{"security-config.write-behind.delay-ms=" + writeBehindDelayMillis},
+                SecurityService.class,
+                SecurityConfigStore.class,
+                PersonDetectorService.class,
+                FramePrefilter.class,
+                DetectionRegions.class,
+                PersonDetectorConfig.class,
+                PersonDetectorWorkerPool.class,
+                AnnotatedImageService.class,
+                EvidenceStore.class,
+                JacksonAutoConfiguration.class,
+                SimpleMeterRegistry.class);
+        this.securityService = this.applicationContext.getBean(SecurityService.class);
+        this.securityService.saveSecurityConfig(DISARMED_SECURITY_CONFIG);
+    }
+
+    @TearDown
+    public void stopSecurityService() throws IOException {
+        BenchmarkContexts.stop(this.applicationContext, this.resourcesDirectory);
+    }
+
+    @Benchmark
+    public SecurityConfig getSecurityConfig() {
+        return this.securityService.getSecurityConfig();
+    }
+
+    @Benchmark
+    public SecurityConfig saveSecurityConfig() {
+        return this.securityService.saveSecurityConfig(nextSecurityConfig());
+    }
+
+    @Benchmark
+    public SecurityConfig saveAndGetSecurityConfig() {
+        this.securityService.saveSecurityConfig(nextSecurityConfig());
+        return this.securityService.getSecurityConfig();
+    }
+
+    private SecurityConfig nextSecurityConfig() {
+        this.armed = !this.armed;
+        return this.armed ? ARMED_SECURITY_CONFIG : DISARMED_SECURITY_CONFIG;
+    }
+}
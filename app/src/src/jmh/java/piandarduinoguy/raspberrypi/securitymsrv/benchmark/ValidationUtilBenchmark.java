@@ -0,0 +1,57 @@
+package piandarduinoguy.raspberrypi.securitymsrv.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks made on every security check and security config change, on the inputs that pass them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationUtilBenchmark {
+    private final SecurityConfig disarmedSecurityConfig = new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED);
+
+    private final SecurityConfig breachedSecurityConfig = new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED);
+
+    private final DetectionResult detectionResult = new DetectionResult("benchmark", 1.0, Collections.singletonList(new BoundingBox(10, 20, 30, 60, 0.9f)));
+
+    @Benchmark
+    public void validateSecurityCanBeArmed() {
+        ValidationUtil.validateSecurityCanBeArmed(this.disarmedSecurityConfig);
+    }
+
+    @Benchmark
+    public void validateSecurityCanBeSilenced() {
+        ValidationUtil.validateSecurityCanBeSilenced(this.breachedSecurityConfig);
+    }
+
+    @Benchmark
+    public void validateAlarmCanBeDisarmed() {
+        ValidationUtil.validateAlarmCanBeDisarmed(this.breachedSecurityConfig);
+    }
+
+    @Benchmark
+    public void validateDetectionResult() {
+        ValidationUtil.validateDetectionResult(this.detectionResult);
+    }
+}
@@ -0,0 +1,66 @@
+package piandarduinoguy.raspberrypi.securitymsrv.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.service.OpenCvPersonDetector;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetector;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PythonPersonDetector;
+
+@Configuration
+public class PersonDetectorConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersonDetectorConfig.class);
+
+    @Value("${yolo.person-detector.backend}")
+    private String backend;
+
+    @Value("${yolo.person-detector.base.location}")
+    private String yoloPersonDetectorBaseLocation;
+
+    @Value("${yolo.person-detector.threshold.confidence}")
+    private float confidenceThreshold;
+
+    @Value("${yolo.person-detector.threshold.non_maxima_suppression}")
+    private float nonMaximaSuppressionThreshold;
+
+    @Value("${yolo.person-detector.threshold.candidate}")
+    private float candidateThreshold;
+
+    @Value("${yolo.person-detector.input-size.scan}")
+    private int scanInputSize;
+
+    @Value("${yolo.person-detector.input-size.confirm}")
+    private int confirmInputSize;
+
+    @Value("${yolo.person-detector.cascade.screen-model}")
+    private String screenModel;
+
+    @Value("${yolo.person-detector.pool.size}")
+    private int poolSize;
+
+    /**
+     * The in-process OpenCV backend is used when selected and it loads, otherwise the yolo.py worker pool is used.
+     */
+    @Bean
+    PersonDetector personDetector(PersonDetectorWorkerPool personDetectorWorkerPool) {
+        if ("opencv".equalsIgnoreCase(backend)) {
+            try {
+                return OpenCvPersonDetector.load(String.format("%s/yolo-coco", yoloPersonDetectorBaseLocation),
+                        confidenceThreshold,
+                        nonMaximaSuppressionThreshold,
+                        scanInputSize,
+                        confirmInputSize,
+                        candidateThreshold,
+                        screenModel,
+                        poolSize);
+            } catch (PersonDetectorException personDetectorException) {
+                LOGGER.warn("The in-process OpenCV person detector could not be loaded, falling back to the yolo.py person detector.", personDetectorException);
+            }
+        }
+        return new PythonPersonDetector(personDetectorWorkerPool);
+    }
+}
@@ -15,7 +15,7 @@ import org.springframework.context.annotation.Configuration;
 public class PublisherConfig {
     @Bean
     Queue queue() {
-        return new Queue("updated.security-config", false);
+        return new Queue("updated.security-config", true);
     }
 
     @Bean
@@ -1,15 +1,35 @@
 package piandarduinoguy.raspberrypi.securitymsrv.controller;
 
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Base64EncodedImageDto;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.HourlyDetections;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntry;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PersonDetectorStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PublisherStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
+
 @CrossOrigin
 public interface SecurityController {
 
@@ -19,7 +39,40 @@ public interface SecurityController {
     }
 
     @PostMapping(value = "security-check")
-    default ResponseEntity<Void> performSecurityCheck(@RequestBody String base64EncodedImage) {
+    default ResponseEntity<SecurityCheck> performSecurityCheck(HttpServletRequest base64EncodedImageRequest,
+                                                               @RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId) throws IOException {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @PostMapping(value = "security-check/image", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    default ResponseEntity<SecurityCheck> performSecurityCheckOnImage(HttpServletRequest imageRequest,
+                                                                      @RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId) throws IOException {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @PostMapping(value = "security-check/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    default ResponseEntity<SecurityCheck> performSecurityCheckOnMultipartImage(@RequestPart("image") MultipartFile image,
+                                                                               @RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId) throws IOException {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("security-check/{id}")
+    default ResponseEntity<SecurityCheck> getSecurityCheck(@PathVariable("id") String id) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @DeleteMapping("security-check/{id}")
+    default ResponseEntity<SecurityCheck> cancelSecurityCheck(@PathVariable("id") String id) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("person-detector/statistics")
+    default ResponseEntity<PersonDetectorStatistics> getPersonDetectorStatistics() {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("security-config/publisher/statistics")
+    default ResponseEntity<PublisherStatistics> getPublisherStatistics() {
         return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
     }
 
@@ -29,7 +82,55 @@ public interface SecurityController {
     }
 
     @GetMapping("annotated-image")
-    default ResponseEntity<Base64EncodedImageDto> getAnnotatedImage() {
+    default ResponseEntity<Base64EncodedImageDto> getAnnotatedImage(@RequestParam(value = "camera-id", required = false) String cameraId) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping(value = "annotated-image/raw", produces = MediaType.IMAGE_JPEG_VALUE)
+    default ResponseEntity<Resource> getRawAnnotatedImage(WebRequest webRequest,
+                                                          @RequestParam(value = "camera-id", required = false) String cameraId) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("evidence")
+    default ResponseEntity<List<EvidenceFrame>> getEvidenceFrames(@RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId,
+                                                                  @RequestParam(value = "from", defaultValue = "0") long from,
+                                                                  @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("evidence/{timestamp}")
+    default ResponseEntity<byte[]> getEvidenceFrame(@PathVariable("timestamp") long timestamp,
+                                                    @RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("evidence/stream")
+    default ResponseEntity<StreamingResponseBody> streamEvidenceFrames(@RequestParam(value = "camera-id", defaultValue = SecurityCheck.DEFAULT_CAMERA_ID) String cameraId,
+                                                                       @RequestParam(value = "from", defaultValue = "0") long from,
+                                                                       @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("journal")
+    default ResponseEntity<List<JournalEntry>> getJournalEntries(@RequestParam(value = "from", defaultValue = "0") long from,
+                                                                 @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to,
+                                                                 @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("journal/breaches")
+    default ResponseEntity<List<JournalEntry>> getJournaledBreaches(@RequestParam(value = "hours", defaultValue = "24") int hours) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping("journal/detections-per-hour")
+    default ResponseEntity<List<HourlyDetections>> getHourlyDetections(@RequestParam(value = "hours", defaultValue = "24") int hours) {
+        return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @GetMapping(value = "security-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    default ResponseEntity<SseEmitter> streamSecurityEvents() {
         return new ResponseEntity<>(HttpStatus.NOT_IMPLEMENTED);
     }
 
@@ -1,21 +1,82 @@
 package piandarduinoguy.raspberrypi.securitymsrv.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.AnnotatedImage;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Base64EncodedImageDto;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.HourlyDetections;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntry;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PersonDetectorStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PublisherStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
-import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
-import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
 import piandarduinoguy.raspberrypi.securitymsrv.data.mapper.ImageMapper;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+import piandarduinoguy.raspberrypi.securitymsrv.journal.SecurityJournal;
+import piandarduinoguy.raspberrypi.securitymsrv.publisher.SecurityConfigPublisher;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityCheckService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityEventStreamService;
 import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityService;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class SecurityControllerImpl implements SecurityController {
+    private static final String EVIDENCE_FRAME_BOUNDARY = "evidence-frame";
+
     @Autowired
     private SecurityService securityService;
 
+    @Autowired
+    private SecurityCheckService securityCheckService;
+
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
+    @Autowired
+    private PersonDetectorService personDetectorService;
+
+    @Autowired
+    private PersonDetectorWorkerPool personDetectorWorkerPool;
+
+    @Autowired
+    private SecurityConfigPublisher securityConfigPublisher;
+
+    @Autowired
+    private EvidenceStore evidenceStore;
+
+    @Autowired
+    private SecurityJournal securityJournal;
+
+    @Autowired
+    private SecurityEventStreamService securityEventStreamService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     public ResponseEntity<SecurityConfig> updateSecurityConfig(SecurityConfig securityConfig) {
         SecurityConfig updatedSecurityConfig = securityService.saveSecurityConfig(securityConfig);
 
@@ -28,27 +89,143 @@ public class SecurityControllerImpl implements SecurityController {
     }
 
     @Override
-    public ResponseEntity<Void> performSecurityCheck(String base64EncodedImage) {
-        byte[] imageByteArray = ImageMapper.base64ToByteArray(base64EncodedImage);
-        if (securityService.detectPerson(imageByteArray) && isSecuritySystemArmed()) {
-            SecurityConfig securityConfig = securityService.getSecurityConfig();
-            securityConfig.setSecurityStatus(SecurityStatus.BREACHED);
-            securityService.saveSecurityConfig(securityConfig);
+    public ResponseEntity<SecurityCheck> performSecurityCheck(HttpServletRequest base64EncodedImageRequest, String cameraId) throws IOException {
+        Timer.Sample decodeSample = Timer.start(meterRegistry);
+        byte[] imageByteArray = ImageMapper.base64InputStreamToByteArray(base64EncodedImageRequest.getInputStream(), base64EncodedImageRequest.getContentLengthLong());
+        decodeSample.stop(meterRegistry.timer("security.frame.decode", "format", "base64"));
+        return submitSecurityCheck(cameraId, imageByteArray);
+    }
+
+    @Override
+    public ResponseEntity<SecurityCheck> performSecurityCheckOnImage(HttpServletRequest imageRequest, String cameraId) throws IOException {
+        Timer.Sample decodeSample = Timer.start(meterRegistry);
+        byte[] imageByteArray = ImageMapper.inputStreamToByteArray(imageRequest.getInputStream(), imageRequest.getContentLengthLong());
+        decodeSample.stop(meterRegistry.timer("security.frame.decode", "format", "raw"));
+        return submitSecurityCheck(cameraId, imageByteArray);
+    }
+
+    @Override
+    public ResponseEntity<SecurityCheck> performSecurityCheckOnMultipartImage(MultipartFile image, String cameraId) throws IOException {
+        try (InputStream imageInputStream = image.getInputStream()) {
+            Timer.Sample decodeSample = Timer.start(meterRegistry);
+            byte[] imageByteArray = ImageMapper.inputStreamToByteArray(imageInputStream, image.getSize());
+            decodeSample.stop(meterRegistry.timer("security.frame.decode", "format", "multipart"));
+            return submitSecurityCheck(cameraId, imageByteArray);
         }
-        return new ResponseEntity<>(HttpStatus.ACCEPTED);
     }
 
-    private boolean isSecuritySystemArmed() {
-        return securityService.getSecurityConfig().getSecurityState().equals(SecurityState.ARMED);
+    @Override
+    public ResponseEntity<SecurityCheck> getSecurityCheck(String id) {
+        return new ResponseEntity<>(securityCheckService.getSecurityCheck(id), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<SecurityCheck> cancelSecurityCheck(String id) {
+        return new ResponseEntity<>(securityCheckService.cancelSecurityCheck(id), HttpStatus.OK);
     }
 
     @Override
-    public ResponseEntity<Base64EncodedImageDto> getAnnotatedImage() {
+    public ResponseEntity<PersonDetectorStatistics> getPersonDetectorStatistics() {
+        PersonDetectorStatistics personDetectorStatistics = new PersonDetectorStatistics(
+                personDetectorService.getInFlightDetectionCount(),
+                personDetectorService.getShedDetectionCount(),
+                personDetectorWorkerPool.getTimedOutDetectionCount(),
+                personDetectorWorkerPool.getCancelledDetectionCount(),
+                personDetectorWorkerPool.getKilledWorkerCount(),
+                personDetectorService.getEscalatedDetectionCount(),
+                personDetectorService.getScreenedOutDetectionCount());
+        return new ResponseEntity<>(personDetectorStatistics, HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<PublisherStatistics> getPublisherStatistics() {
+        return new ResponseEntity<>(securityConfigPublisher.getStatistics(), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<Base64EncodedImageDto> getAnnotatedImage(String cameraId) {
         Base64EncodedImageDto base64EncodedImageDto = new Base64EncodedImageDto();
-        base64EncodedImageDto.setBase64EncodedImage(securityService.getBase64AnnotatedImage());
+        base64EncodedImageDto.setBase64EncodedImage(securityService.getBase64AnnotatedImage(cameraId));
         return new ResponseEntity<>(base64EncodedImageDto, HttpStatus.OK);
     }
 
+    @Override
+    public ResponseEntity<Resource> getRawAnnotatedImage(WebRequest webRequest, String cameraId) {
+        AnnotatedImage annotatedImage = annotatedImageService.getAnnotatedImage(cameraId);
+        String annotatedImageETag = annotatedImage.getEtag();
+        long annotatedImageLastModified = annotatedImage.getTimestamp();
+        if (webRequest.checkNotModified(annotatedImageETag, annotatedImageLastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(annotatedImageETag)
+                    .lastModified(annotatedImageLastModified)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(annotatedImageETag)
+                .lastModified(annotatedImageLastModified)
+                .contentType(MediaType.IMAGE_JPEG)
+                .body(new ByteArrayResource(annotatedImage.getImage()));
+    }
+
+    @Override
+    public ResponseEntity<List<EvidenceFrame>> getEvidenceFrames(String cameraId, long from, long to) {
+        return new ResponseEntity<>(evidenceStore.getFrames(cameraId, from, to), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<byte[]> getEvidenceFrame(long timestamp, String cameraId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .body(evidenceStore.getFrameImage(cameraId, timestamp));
+    }
+
+    /**
+     * Streams the retained frames of the camera from and to the given timestamps as the parts of a multipart
+     * x-mixed-replace response, oldest first, which a browser shows as a motion JPEG. A frame that is overwritten before
+     * its turn comes is left out.
+     */
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamEvidenceFrames(String cameraId, long from, long to) {
+        List<EvidenceFrame> evidenceFrames = evidenceStore.getFrames(cameraId, from, to);
+        StreamingResponseBody evidenceFramesBody = outputStream -> {
+            for (EvidenceFrame evidenceFrame : evidenceFrames) {
+                byte[] frameImage = evidenceStore.readFrameImage(cameraId, evidenceFrame.getTimestamp());
+                if (frameImage != null) {
+                    writeEvidenceFramePart(outputStream, evidenceFrame, frameImage);
+                }
+            }
+            outputStream.write(String.format("--%s--\r\n", EVIDENCE_FRAME_BOUNDARY).getBytes(StandardCharsets.US_ASCII));
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("multipart/x-mixed-replace;boundary=" + EVIDENCE_FRAME_BOUNDARY))
+                .body(evidenceFramesBody);
+    }
+
+    @Override
+    public ResponseEntity<List<JournalEntry>> getJournalEntries(long from, long to, int limit) {
+        ValidationUtil.validateJournalLimit(limit);
+        return new ResponseEntity<>(securityJournal.getEntries(from, to, limit), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<List<JournalEntry>> getJournaledBreaches(int hours) {
+        ValidationUtil.validateJournalHours(hours);
+        long now = System.currentTimeMillis();
+        return new ResponseEntity<>(securityJournal.getBreaches(now - journaledMillis(hours), now), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<List<HourlyDetections>> getHourlyDetections(int hours) {
+        ValidationUtil.validateJournalHours(hours);
+        long now = System.currentTimeMillis();
+        return new ResponseEntity<>(securityJournal.getHourlyDetections(now - journaledMillis(hours), now), HttpStatus.OK);
+    }
+
+    @Override
+    public ResponseEntity<SseEmitter> streamSecurityEvents() {
+        return new ResponseEntity<>(securityEventStreamService.subscribe(), HttpStatus.OK);
+    }
+
     @Override
     public ResponseEntity<SecurityConfig> silenceAlarm() {
         return new ResponseEntity<>(this.securityService.silenceAlarm(), HttpStatus.OK);
@@ -63,4 +240,27 @@ public class SecurityControllerImpl implements SecurityController {
     public ResponseEntity<SecurityConfig> disarmAlarm() {
         return new ResponseEntity<>(this.securityService.disarmAlarm(),HttpStatus.OK);
     }
+
+    /**
+     * The hours asked for, capped at the retention of the journal as nothing older is journaled.
+     */
+    private long journaledMillis(int hours) {
+        return TimeUnit.HOURS.toMillis(Math.min(hours, securityJournal.getRetentionHours()));
+    }
+
+    private static void writeEvidenceFramePart(OutputStream outputStream, EvidenceFrame evidenceFrame, byte[] frameImage) throws IOException {
+        String partHeaders = String.format("--%s\r\nContent-Type: %s\r\nContent-Length: %d\r\nX-Evidence-Timestamp: %d\r\n\r\n",
+                EVIDENCE_FRAME_BOUNDARY, MediaType.IMAGE_JPEG_VALUE, frameImage.length, evidenceFrame.getTimestamp());
+        outputStream.write(partHeaders.getBytes(StandardCharsets.US_ASCII));
+        outputStream.write(frameImage);
+        outputStream.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        outputStream.flush();
+    }
+
+    private ResponseEntity<SecurityCheck> submitSecurityCheck(String cameraId, byte[] imageByteArray) {
+        SecurityCheck securityCheck = securityCheckService.submitSecurityCheck(cameraId, imageByteArray);
+        return ResponseEntity.accepted()
+                .location(URI.create("security-check/" + securityCheck.getId()))
+                .body(securityCheck);
+    }
 }
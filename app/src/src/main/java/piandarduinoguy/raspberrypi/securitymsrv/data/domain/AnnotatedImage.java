@@ -0,0 +1,21 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A published annotated image of a camera together with the version it is served as, so that its entity tag and last
+ * modified time always describe these very bytes. The sequence orders the annotated images of all cameras as they were
+ * published and the timestamp is in milliseconds since the epoch.
+ */
+@Getter
+@AllArgsConstructor
+@ToString(exclude = "image")
+public final class AnnotatedImage {
+    private final String cameraId;
+    private final long sequence;
+    private final String etag;
+    private final long timestamp;
+    private final byte[] image;
+}
@@ -0,0 +1,23 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A detected person in image pixel coordinates, x and y being the top left corner.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BoundingBox {
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private float confidence;
+}
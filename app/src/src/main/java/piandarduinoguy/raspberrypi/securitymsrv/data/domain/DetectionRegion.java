@@ -0,0 +1,27 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A region of interest of a camera, such as a doorway or a driveway, that is cropped out of the frame and detected on its
+ * own. The position and size are fractions of the frame width and height so that a region does not depend on the
+ * resolution of the camera. A region without thresholds of its own uses the configured ones.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class DetectionRegion {
+    private String name;
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private Float confidence;
+    private Float nonMaximaSuppression;
+}
@@ -0,0 +1,45 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The persons a person detector found in a frame, after confidence filtering and non maxima suppression, and the stages
+ * of the detection cascade the frame went through. The annotated image of a frame with persons is handed back along with
+ * the result by the person detector, it is never part of the JSON form of the result.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class DetectionResult {
+    private String modelId;
+    private double inferenceTimeMillis;
+    private List<BoundingBox> boundingBoxes = new ArrayList<>();
+    private List<DetectionStage> stages = new ArrayList<>();
+    @JsonIgnore
+    @ToString.Exclude
+    private byte[] annotatedImage;
+
+    public DetectionResult(String modelId, double inferenceTimeMillis, List<BoundingBox> boundingBoxes) {
+        this(modelId, inferenceTimeMillis, boundingBoxes, new ArrayList<>());
+    }
+
+    public DetectionResult(String modelId, double inferenceTimeMillis, List<BoundingBox> boundingBoxes, List<DetectionStage> stages) {
+        this.modelId = modelId;
+        this.inferenceTimeMillis = inferenceTimeMillis;
+        this.boundingBoxes = boundingBoxes;
+        this.stages = stages;
+    }
+
+    @JsonIgnore
+    public boolean isPersonDetected() {
+        return !this.boundingBoxes.isEmpty();
+    }
+}
@@ -0,0 +1,25 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A stage of the detection cascade a frame went through, screen or confirm, with the model that ran it and the
+ * inference time it took for the frame.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class DetectionStage {
+    public static final String SCREEN = "screen";
+    public static final String CONFIRM = "confirm";
+
+    private String stage;
+    private String modelId;
+    private double inferenceTimeMillis;
+}
@@ -0,0 +1,24 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * An annotated frame retained in the evidence store. The timestamp is in milliseconds since the epoch and identifies the
+ * frame among those of its camera, the sequence numbers the frames of a camera in the order they were retained and the
+ * length is that of the JPEG image.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class EvidenceFrame {
+    private String cameraId;
+    private long sequence;
+    private long timestamp;
+    private int length;
+}
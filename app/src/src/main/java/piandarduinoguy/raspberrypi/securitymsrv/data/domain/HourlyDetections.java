@@ -0,0 +1,22 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The detections and breaches journaled in the hour starting at the hour start, in milliseconds since the epoch.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class HourlyDetections {
+    private long hourStart;
+    private long detections;
+    private long personDetections;
+    private long breaches;
+}
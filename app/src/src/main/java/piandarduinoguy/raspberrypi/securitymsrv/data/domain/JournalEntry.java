@@ -0,0 +1,30 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * An entry of the security journal. A security config entry records the security config a change resulted in, its
+ * version and whether it breached security, a detection entry the camera, the number of persons detected and the highest
+ * confidence among them. The timestamp is in milliseconds since the epoch.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class JournalEntry {
+    private long sequence;
+    private long timestamp;
+    private JournalEntryType type;
+    private SecurityStatus securityStatus;
+    private SecurityState securityState;
+    private long version;
+    private boolean breach;
+    private String cameraId;
+    private int personCount;
+    private float maxConfidence;
+}
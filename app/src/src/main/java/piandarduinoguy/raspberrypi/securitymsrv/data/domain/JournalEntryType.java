@@ -0,0 +1,6 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+public enum JournalEntryType {
+    SECURITY_CONFIG,
+    DETECTION
+}
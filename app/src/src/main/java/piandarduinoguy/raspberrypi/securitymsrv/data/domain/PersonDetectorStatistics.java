@@ -0,0 +1,22 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class PersonDetectorStatistics {
+    private int inFlightDetections;
+    private long shedDetections;
+    private long timedOutDetections;
+    private long cancelledDetections;
+    private long killedWorkers;
+    private long escalatedDetections;
+    private long screenedOutDetections;
+}
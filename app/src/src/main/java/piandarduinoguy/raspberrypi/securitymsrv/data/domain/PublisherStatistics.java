@@ -0,0 +1,34 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The confirm lag is measured from sending a security config to its confirm, the publish latency from handing it to
+ * the publisher to its confirm. The outbox backlog is the number of security configs waiting in the outbox to be
+ * relayed, and the outbox drops are the unrelayed security configs dropped from a full outbox. A suppressed security
+ * config was unchanged or stale and never reached the outbox.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class PublisherStatistics {
+    private long published;
+    private long confirmed;
+    private long nacked;
+    private long retried;
+    private long coalesced;
+    private int unconfirmed;
+    private double averageConfirmLagMillis;
+    private long maxConfirmLagMillis;
+    private double averagePublishLatencyMillis;
+    private long maxPublishLatencyMillis;
+    private int outboxBacklog;
+    private long outboxDrops;
+    private long suppressed;
+}
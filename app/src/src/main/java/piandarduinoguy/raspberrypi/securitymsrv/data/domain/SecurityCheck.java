@@ -0,0 +1,23 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class SecurityCheck {
+    public static final String DEFAULT_CAMERA_ID = "default";
+
+    private String id;
+    private String cameraId;
+    private SecurityCheckStatus securityCheckStatus;
+    private Boolean personDetected;
+    private DetectionResult detectionResult;
+    private String detail;
+}
@@ -0,0 +1,10 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+public enum SecurityCheckStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    DROPPED,
+    CANCELLED
+}
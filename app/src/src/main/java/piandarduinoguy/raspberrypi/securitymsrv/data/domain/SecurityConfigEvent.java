@@ -0,0 +1,23 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A security config change as the subscribers receive it. The sequence is assigned by the outbox, it increases with
+ * every published change and survives restarts, so a subscriber can drop any event with a sequence lower than the last
+ * one it applied.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class SecurityConfigEvent {
+    private long sequence;
+    private SecurityStatus securityStatus;
+    private SecurityState securityState;
+}
@@ -0,0 +1,21 @@
+package piandarduinoguy.raspberrypi.securitymsrv.data.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * An immutable snapshot of the security config. The version is incremented by every change that is applied to it.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public final class VersionedSecurityConfig {
+    private final SecurityStatus securityStatus;
+    private final SecurityState securityState;
+    private final long version;
+
+    public SecurityConfig toSecurityConfig() {
+        return new SecurityConfig(this.securityStatus, this.securityState);
+    }
+}
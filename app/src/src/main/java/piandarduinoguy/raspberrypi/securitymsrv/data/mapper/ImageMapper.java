@@ -1,8 +1,15 @@
 package piandarduinoguy.raspberrypi.securitymsrv.data.mapper;
 
+import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Base64;
 
 public class ImageMapper {
+    private static final int UNKNOWN_LENGTH_BUFFER_SIZE = 64 * 1024;
 
     private ImageMapper() {
         throw new IllegalStateException("MultipartImageFileMapper class is a utility(mapper) class not meant to be instantiated.");
@@ -11,4 +18,41 @@ public class ImageMapper {
     public static byte[] base64ToByteArray(String base64EncodedImage) {
         return Base64.getDecoder().decode(base64EncodedImage);
     }
+
+    /**
+     * Decodes the base64 encoded image while it is read from the input stream so that the encoded form is never held in
+     * memory. The content length, when known (otherwise -1), is used to size the decoded image buffer up front.
+     */
+    public static byte[] base64InputStreamToByteArray(InputStream base64EncodedImageInputStream, long contentLength) {
+        long expectedImageLength = contentLength < 0 ? -1 : contentLength / 4 * 3;
+        return inputStreamToByteArray(Base64.getDecoder().wrap(base64EncodedImageInputStream), expectedImageLength);
+    }
+
+    /**
+     * Reads the image into a single buffer sized from the expected length, when known (otherwise -1), growing it only if
+     * the input stream turns out to be longer.
+     */
+    public static byte[] inputStreamToByteArray(InputStream imageInputStream, long expectedLength) {
+        byte[] imageBytes = new byte[expectedLength > 0 && expectedLength < Integer.MAX_VALUE ? (int) expectedLength : UNKNOWN_LENGTH_BUFFER_SIZE];
+        int imageLength = 0;
+        try {
+            int bytesRead;
+            while ((bytesRead = imageInputStream.read(imageBytes, imageLength, imageBytes.length - imageLength)) != -1) {
+                imageLength += bytesRead;
+                if (imageLength == imageBytes.length) {
+                    int nextByte = imageInputStream.read();
+                    if (nextByte == -1) {
+                        return imageBytes;
+                    }
+                    imageBytes = Arrays.copyOf(imageBytes, imageBytes.length * 2);
+                    imageBytes[imageLength++] = (byte) nextByte;
+                }
+            }
+        } catch (IOException ioException) {
+            throw new ImageFileException(String.format(
+                    "The image could not be read from the request body due to an IOException with message \"%s\".",
+                    ioException.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+        return imageLength == imageBytes.length ? imageBytes : Arrays.copyOf(imageBytes, imageLength);
+    }
 }
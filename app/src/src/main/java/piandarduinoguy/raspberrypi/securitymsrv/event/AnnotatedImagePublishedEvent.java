@@ -0,0 +1,18 @@
+package piandarduinoguy.raspberrypi.securitymsrv.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published in process whenever a new annotated image replaces the latest one of a camera, with the entity tag and last
+ * modified time that the annotated image is now served with.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public final class AnnotatedImagePublishedEvent {
+    private final String cameraId;
+    private final String etag;
+    private final long lastModified;
+}
@@ -0,0 +1,18 @@
+package piandarduinoguy.raspberrypi.securitymsrv.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+
+/**
+ * Published in process whenever the person detector has run on a frame of a camera, but not when the detection result of
+ * an earlier frame was reused for it. It is delivered synchronously on the thread that ran the detection.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public final class DetectionCompletedEvent {
+    private final String cameraId;
+    private final DetectionResult detectionResult;
+}
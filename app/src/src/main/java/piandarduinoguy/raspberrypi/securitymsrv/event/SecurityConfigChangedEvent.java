@@ -0,0 +1,17 @@
+package piandarduinoguy.raspberrypi.securitymsrv.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+/**
+ * Published in process whenever the security config is saved or transitioned. It is delivered synchronously, so a
+ * listener that must not hold up the request thread hands it off.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public final class SecurityConfigChangedEvent {
+    private final VersionedSecurityConfig versionedSecurityConfig;
+}
@@ -0,0 +1,279 @@
+package piandarduinoguy.raspberrypi.securitymsrv.evidence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The evidence of a single camera: a ring of segment files of a fixed size that are created and zero filled once, and
+ * an index of the retained frames by timestamp. Frames are appended one after the other to the current segment; a
+ * frame that does not fit moves the ring on to the next segment, whose frames are dropped from the index before it is
+ * overwritten from its start. Beyond the maximum number of frames the oldest frames are dropped from the index as well.
+ * <p>
+ * A record is a header, a marker, the sequence, the timestamp, the image length, a CRC32 of the image and a CRC32 of
+ * the header before it, followed by the image. Only the headers are read to rebuild the index on start up, a segment
+ * ending at the first header that fails its CRC or whose sequence does not follow that of the header before it, which
+ * is where the records of an earlier round of the ring begin. The image CRC is checked whenever a frame is read, so a
+ * frame that was torn by a crash or overwritten while it was read is never served.
+ */
+class CameraEvidence implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CameraEvidence.class);
+
+    static final int RECORD_MARKER = 0x45564652;
+    static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int ZERO_FILL_CHUNK_SIZE = 64 * 1024;
+
+    private final String cameraId;
+    private final int segmentSizeBytes;
+    private final int maxFrames;
+    private final FileChannel[] segments;
+    private final NavigableMap<Long, RetainedFrame> retainedFrames = new TreeMap<>();
+
+    private int currentSegment;
+    private long appendOffset;
+    private long lastSequence;
+    private long lastTimestamp;
+
+    private CameraEvidence(String cameraId, int segmentSizeBytes, int maxFrames, FileChannel[] segments) {
+        this.cameraId = cameraId;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxFrames = maxFrames;
+        this.segments = segments;
+    }
+
+    /**
+     * Opens the segments in the camera directory, creating and zero filling the ones that are missing or whose size no
+     * longer matches the segment size, and rebuilds the index from the frames they hold.
+     */
+    static CameraEvidence open(String cameraId, File cameraDirectory, int segmentCount, int segmentSizeBytes, int maxFrames) throws IOException {
+        Files.createDirectories(cameraDirectory.toPath());
+        FileChannel[] segments = new FileChannel[segmentCount];
+        CameraEvidence cameraEvidence = new CameraEvidence(cameraId, segmentSizeBytes, maxFrames, segments);
+        try {
+            for (int segment = 0; segment < segmentCount; segment++) {
+                segments[segment] = openSegment(new File(cameraDirectory, String.format("segment-%d.evidence", segment)), segmentSizeBytes);
+            }
+            cameraEvidence.recover();
+        } catch (IOException ioException) {
+            cameraEvidence.close();
+            throw ioException;
+        }
+        return cameraEvidence;
+    }
+
+    /**
+     * Appends the image as the newest frame, returning null if a single frame does not fit in a segment.
+     */
+    synchronized EvidenceFrame append(byte[] image) throws IOException {
+        long recordSize = HEADER_SIZE + (long) image.length;
+        if (recordSize > this.segmentSizeBytes) {
+            return null;
+        }
+        if (this.appendOffset + recordSize > this.segmentSizeBytes) {
+            this.currentSegment = (this.currentSegment + 1) % this.segments.length;
+            this.appendOffset = 0;
+            dropFramesOfSegment(this.currentSegment);
+        }
+        // a frame retained within the same millisecond as the one before it is stamped a millisecond later
+        long timestamp = Math.max(System.currentTimeMillis(), this.lastTimestamp + 1);
+        EvidenceFrame evidenceFrame = new EvidenceFrame(this.cameraId, this.lastSequence + 1, timestamp, image.length);
+        ByteBuffer header = header(evidenceFrame, checksum(image));
+        writeFully(this.segments[this.currentSegment], new ByteBuffer[]{header, ByteBuffer.wrap(image)}, this.appendOffset);
+        this.retainedFrames.put(timestamp, new RetainedFrame(evidenceFrame, this.currentSegment, this.appendOffset));
+        this.appendOffset += recordSize;
+        this.lastSequence = evidenceFrame.getSequence();
+        this.lastTimestamp = timestamp;
+        while (this.retainedFrames.size() > this.maxFrames) {
+            this.retainedFrames.pollFirstEntry();
+        }
+        return evidenceFrame;
+    }
+
+    /**
+     * The retained frames with a timestamp from and to the given timestamps, both inclusive, oldest first.
+     */
+    synchronized List<EvidenceFrame> getFrames(long from, long to) {
+        List<EvidenceFrame> evidenceFrames = new ArrayList<>();
+        if (from > to) {
+            return evidenceFrames;
+        }
+        for (RetainedFrame retainedFrame : this.retainedFrames.subMap(from, true, to, true).values()) {
+            evidenceFrames.add(retainedFrame.evidenceFrame);
+        }
+        return evidenceFrames;
+    }
+
+    /**
+     * The image of the frame, or null if it is no longer retained or was overwritten while it was read.
+     */
+    byte[] readImage(long timestamp) throws IOException {
+        RetainedFrame retainedFrame;
+        synchronized (this) {
+            retainedFrame = this.retainedFrames.get(timestamp);
+        }
+        if (retainedFrame == null) {
+            return null;
+        }
+        // read outside the lock so that a slow reader never holds up an append, the checks catch an overwritten frame
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + retainedFrame.evidenceFrame.getLength());
+        readFully(this.segments[retainedFrame.segment], record, retainedFrame.offset);
+        EvidenceFrame evidenceFrame = retainedFrame.evidenceFrame;
+        byte[] image = new byte[evidenceFrame.getLength()];
+        System.arraycopy(record.array(), HEADER_SIZE, image, 0, image.length);
+        if (!isValidHeader(record, 0) || record.getLong(4) != evidenceFrame.getSequence() || record.getInt(20) != image.length
+                || record.getInt(24) != checksum(image)) {
+            return null;
+        }
+        return image;
+    }
+
+    synchronized int getFrameCount() {
+        return this.retainedFrames.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel segment : this.segments) {
+            if (segment != null) {
+                segment.close();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<RetainedFrame> recoveredFrames = new ArrayList<>();
+        long currentSegmentLastSequence = 0;
+        for (int segment = 0; segment < this.segments.length; segment++) {
+            long offset = 0;
+            long segmentLastSequence = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (offset + HEADER_SIZE <= this.segmentSizeBytes) {
+                header.clear();
+                readFully(this.segments[segment], header, offset);
+                int length = header.getInt(20);
+                long sequence = header.getLong(4);
+                if (!isValidHeader(header, 0) || length < 0 || offset + HEADER_SIZE + length > this.segmentSizeBytes || sequence <= segmentLastSequence) {
+                    break;
+                }
+                recoveredFrames.add(new RetainedFrame(new EvidenceFrame(this.cameraId, sequence, header.getLong(12), length), segment, offset));
+                segmentLastSequence = sequence;
+                offset += HEADER_SIZE + length;
+            }
+            if (segmentLastSequence > currentSegmentLastSequence) {
+                currentSegmentLastSequence = segmentLastSequence;
+                this.currentSegment = segment;
+                this.appendOffset = offset;
+            }
+        }
+        recoveredFrames.sort(Comparator.comparingLong(recoveredFrame -> recoveredFrame.evidenceFrame.getSequence()));
+        for (RetainedFrame recoveredFrame : recoveredFrames) {
+            this.retainedFrames.put(recoveredFrame.evidenceFrame.getTimestamp(), recoveredFrame);
+            this.lastTimestamp = Math.max(this.lastTimestamp, recoveredFrame.evidenceFrame.getTimestamp());
+        }
+        while (this.retainedFrames.size() > this.maxFrames) {
+            this.retainedFrames.pollFirstEntry();
+        }
+        this.lastSequence = currentSegmentLastSequence;
+        if (!recoveredFrames.isEmpty()) {
+            LOGGER.info("Recovered {} evidence frame(s) of camera {}.", this.retainedFrames.size(), this.cameraId);
+        }
+    }
+
+    private void dropFramesOfSegment(int segment) {
+        // the frames of the segment the ring moves on to are the oldest, so they are at the head of the index
+        while (!this.retainedFrames.isEmpty() && this.retainedFrames.firstEntry().getValue().segment == segment) {
+            this.retainedFrames.pollFirstEntry();
+        }
+    }
+
+    private static FileChannel openSegment(File segmentFile, int segmentSizeBytes) throws IOException {
+        FileChannel segment = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (segment.size() != segmentSizeBytes) {
+            if (segment.size() != 0) {
+                LOGGER.warn("The evidence segment {} is not {} bytes, it is zero filled and its frames are dropped.", segmentFile.getPath(), segmentSizeBytes);
+            }
+            segment.truncate(0);
+            ByteBuffer zeros = ByteBuffer.allocate(ZERO_FILL_CHUNK_SIZE);
+            for (long offset = 0; offset < segmentSizeBytes; offset += ZERO_FILL_CHUNK_SIZE) {
+                zeros.clear();
+                zeros.limit((int) Math.min(ZERO_FILL_CHUNK_SIZE, segmentSizeBytes - offset));
+                writeFully(segment, new ByteBuffer[]{zeros}, offset);
+            }
+            segment.force(true);
+        }
+        return segment;
+    }
+
+    private static ByteBuffer header(EvidenceFrame evidenceFrame, int imageChecksum) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, RECORD_MARKER);
+        header.putLong(4, evidenceFrame.getSequence());
+        header.putLong(12, evidenceFrame.getTimestamp());
+        header.putInt(20, evidenceFrame.getLength());
+        header.putInt(24, imageChecksum);
+        header.putInt(28, headerChecksum(header, 0));
+        return header;
+    }
+
+    private static boolean isValidHeader(ByteBuffer record, int position) {
+        return record.getInt(position) == RECORD_MARKER && record.getInt(position + 28) == headerChecksum(record, position);
+    }
+
+    private static int headerChecksum(ByteBuffer record, int position) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(record.array(), record.arrayOffset() + position, HEADER_SIZE - 4);
+        return (int) crc32.getValue();
+    }
+
+    private static int checksum(byte[] image) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(image, 0, image.length);
+        return (int) crc32.getValue();
+    }
+
+    private static void writeFully(FileChannel segment, ByteBuffer[] buffers, long offset) throws IOException {
+        long position = offset;
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += segment.write(buffer, position);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel segment, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = segment.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private static final class RetainedFrame {
+        private final EvidenceFrame evidenceFrame;
+        private final int segment;
+        private final long offset;
+
+        private RetainedFrame(EvidenceFrame evidenceFrame, int segment, long offset) {
+            this.evidenceFrame = evidenceFrame;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
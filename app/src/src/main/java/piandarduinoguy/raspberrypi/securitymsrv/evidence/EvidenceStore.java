@@ -0,0 +1,270 @@
+package piandarduinoguy.raspberrypi.securitymsrv.evidence;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.EvidenceFrameNotFoundException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.InvalidCameraIdException;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retains the annotated frames of the breaches of every camera as evidence. Every camera gets a fixed number of segment
+ * files of a fixed size under a directory of its own, which are created once and written as a ring, so the disk space
+ * taken by the evidence is bounded and retaining a frame is an append to a file that is already open rather than the
+ * creation of a file. At most the maximum number of frames per camera are retained, the oldest frames giving way to the
+ * newest. The frames of a camera are indexed by their timestamp in memory, so listing them never touches the disk.
+ * <p>
+ * Frames of detections are retained on an evidence writer thread of their own, so that neither the creation of the
+ * segments of a camera nor a failing disk holds up or fails the detection that breaches security. The frames waiting
+ * for the writer are bounded, a frame that finds the writer too far behind, or already shut down, being dropped, logged
+ * and counted.
+ */
+@Service
+public class EvidenceStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvidenceStore.class);
+
+    private final String evidenceLocation;
+    private final int segmentCount;
+    private final int segmentSizeBytes;
+    private final int maxFramesPerCamera;
+
+    private final Map<String, CameraEvidence> cameraEvidences = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private final ThreadPoolExecutor evidenceWriter;
+
+    public EvidenceStore(@Value("${evidence.location}") String evidenceLocation,
+                         @Value("${evidence.segment-count}") int segmentCount,
+                         @Value("${evidence.segment-size-bytes}") int segmentSizeBytes,
+                         @Value("${evidence.max-frames-per-camera}") int maxFramesPerCamera,
+                         @Value("${evidence.writer.queue-capacity}") int writerQueueCapacity,
+                         MeterRegistry meterRegistry) {
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException(String.format("The evidence segment count %d is less than 2.", segmentCount));
+        }
+        if (segmentSizeBytes <= CameraEvidence.HEADER_SIZE) {
+            throw new IllegalArgumentException(String.format("The evidence segment size of %d bytes does not fit a single frame.", segmentSizeBytes));
+        }
+        if (maxFramesPerCamera < 1) {
+            throw new IllegalArgumentException(String.format("The maximum of %d evidence frames per camera is less than 1.", maxFramesPerCamera));
+        }
+        if (writerQueueCapacity < 1) {
+            throw new IllegalArgumentException(String.format("The evidence writer queue capacity %d is less than 1.", writerQueueCapacity));
+        }
+        this.evidenceLocation = evidenceLocation;
+        this.segmentCount = segmentCount;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.maxFramesPerCamera = maxFramesPerCamera;
+        this.evidenceWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(writerQueueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "evidence-writer");
+            thread.setDaemon(true);
+            return thread;
+        }, this::dropEvidenceTask);
+        FunctionCounter.builder("security.evidence.frames.dropped", this.droppedFrames, AtomicLong::get).register(meterRegistry);
+    }
+
+    /**
+     * Picks up the evidence left by a previous run. This is the only time the evidence directory is listed.
+     */
+    @PostConstruct
+    public void recoverEvidence() {
+        File[] cameraDirectories = new File(this.evidenceLocation).listFiles(File::isDirectory);
+        if (cameraDirectories == null) {
+            return;
+        }
+        for (File cameraDirectory : cameraDirectories) {
+            try {
+                ValidationUtil.validateCameraId(cameraDirectory.getName());
+                cameraEvidence(cameraDirectory.getName());
+            } catch (InvalidCameraIdException invalidCameraIdException) {
+                // not a directory of ours
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        this.evidenceWriter.shutdown();
+        try {
+            if (!this.evidenceWriter.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Not all evidence frames were retained before the evidence segments were closed.");
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        for (CameraEvidence cameraEvidence : this.cameraEvidences.values()) {
+            try {
+                cameraEvidence.close();
+            } catch (IOException ioException) {
+                LOGGER.warn("The evidence segments could not be closed.", ioException);
+            }
+        }
+        this.cameraEvidences.clear();
+    }
+
+    /**
+     * Opens the evidence segments of the cameras on the evidence writer thread, creating the ones that do not exist yet,
+     * so that the first frame a camera retains does not have to wait for them.
+     */
+    public void preallocate(Collection<String> cameraIds) {
+        for (String cameraId : cameraIds) {
+            this.evidenceWriter.execute(() -> {
+                try {
+                    cameraEvidence(cameraId);
+                } catch (ImageFileException imageFileException) {
+                    LOGGER.warn("The evidence segments of camera {} could not be preallocated.", cameraId, imageFileException);
+                }
+            });
+        }
+    }
+
+    /**
+     * Retains the annotated image as the newest frame of the camera on the evidence writer thread. A frame that can not
+     * be retained is logged, as the evidence is kept on a best effort basis.
+     */
+    public void retain(String cameraId, byte[] annotatedImage) {
+        this.evidenceWriter.execute(new RetainFrame(cameraId, annotatedImage));
+    }
+
+    /**
+     * Retains the annotated image as the newest frame of the camera, returning the retained frame or null if the image is
+     * larger than a segment and can not be retained.
+     */
+    public EvidenceFrame append(String cameraId, byte[] annotatedImage) {
+        ValidationUtil.validateCameraId(cameraId);
+        CameraEvidence cameraEvidence = cameraEvidence(cameraId);
+        try {
+            EvidenceFrame evidenceFrame = cameraEvidence.append(annotatedImage);
+            if (evidenceFrame == null) {
+                LOGGER.warn("The annotated image of camera {} of {} bytes is not retained as evidence as it does not fit in an evidence segment of {} bytes.",
+                        cameraId, annotatedImage.length, this.segmentSizeBytes);
+            }
+            return evidenceFrame;
+        } catch (IOException ioException) {
+            throw new ImageFileException(String.format(
+                    "The annotated image of camera %s could not be retained as evidence. An IOException was thrown with message \"%s\".",
+                    cameraId,
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * The retained frames of the camera with a timestamp from and to the given timestamps, both inclusive, oldest first.
+     */
+    public List<EvidenceFrame> getFrames(String cameraId, long from, long to) {
+        ValidationUtil.validateCameraId(cameraId);
+        CameraEvidence cameraEvidence = this.cameraEvidences.get(cameraId);
+        return cameraEvidence == null ? Collections.emptyList() : cameraEvidence.getFrames(from, to);
+    }
+
+    /**
+     * The JPEG image of the retained frame of the camera with the timestamp.
+     */
+    public byte[] getFrameImage(String cameraId, long timestamp) {
+        byte[] frameImage = readFrameImage(cameraId, timestamp);
+        if (frameImage == null) {
+            throw new EvidenceFrameNotFoundException(String.format(
+                    "No evidence frame of camera %s with timestamp %d is retained.", cameraId, timestamp));
+        }
+        return frameImage;
+    }
+
+    /**
+     * The JPEG image of the retained frame of the camera with the timestamp, or null if the frame is no longer retained,
+     * which a frame listed a moment ago may no longer be.
+     */
+    public byte[] readFrameImage(String cameraId, long timestamp) {
+        ValidationUtil.validateCameraId(cameraId);
+        CameraEvidence cameraEvidence = this.cameraEvidences.get(cameraId);
+        if (cameraEvidence == null) {
+            return null;
+        }
+        try {
+            return cameraEvidence.readImage(timestamp);
+        } catch (IOException ioException) {
+            throw new ImageFileException(String.format(
+                    "The evidence frame of camera %s with timestamp %d could not be read. An IOException was thrown with message \"%s\".",
+                    cameraId,
+                    timestamp,
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    public long getDroppedFrameCount() {
+        return this.droppedFrames.get();
+    }
+
+    public int getFrameCount(String cameraId) {
+        CameraEvidence cameraEvidence = this.cameraEvidences.get(cameraId);
+        return cameraEvidence == null ? 0 : cameraEvidence.getFrameCount();
+    }
+
+    /**
+     * Rejected evidence tasks are dropped rather than thrown to the detection that handed them over.
+     */
+    private void dropEvidenceTask(Runnable evidenceTask, ThreadPoolExecutor evidenceWriter) {
+        if (evidenceTask instanceof RetainFrame) {
+            this.droppedFrames.incrementAndGet();
+            LOGGER.warn("Dropped an annotated image of camera {} instead of retaining it as evidence as the evidence writer is {}.",
+                    ((RetainFrame) evidenceTask).cameraId, evidenceWriter.isShutdown() ? "shut down" : "too far behind");
+        } else {
+            LOGGER.warn("Skipped preallocating evidence segments as the evidence writer is {}.",
+                    evidenceWriter.isShutdown() ? "shut down" : "too far behind");
+        }
+    }
+
+    private CameraEvidence cameraEvidence(String cameraId) {
+        return this.cameraEvidences.computeIfAbsent(cameraId, evidenceCameraId -> {
+            File cameraDirectory = new File(this.evidenceLocation, evidenceCameraId);
+            try {
+                return CameraEvidence.open(evidenceCameraId, cameraDirectory, this.segmentCount, this.segmentSizeBytes, this.maxFramesPerCamera);
+            } catch (IOException ioException) {
+                throw new ImageFileException(String.format(
+                        "The evidence segments of camera %s could not be opened in %s. An IOException was thrown with message \"%s\".",
+                        evidenceCameraId,
+                        cameraDirectory.getPath(),
+                        ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        });
+    }
+
+    private final class RetainFrame implements Runnable {
+        private final String cameraId;
+        private final byte[] annotatedImage;
+
+        private RetainFrame(String cameraId, byte[] annotatedImage) {
+            this.cameraId = cameraId;
+            this.annotatedImage = annotatedImage;
+        }
+
+        @Override
+        public void run() {
+            try {
+                append(this.cameraId, this.annotatedImage);
+            } catch (RuntimeException runtimeException) {
+                LOGGER.error("The annotated image of camera {} could not be retained as evidence.", this.cameraId, runtimeException);
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+public class EvidenceFrameNotFoundException extends RuntimeException {
+    public EvidenceFrameNotFoundException(String message) {
+        super(message);
+    }
+}
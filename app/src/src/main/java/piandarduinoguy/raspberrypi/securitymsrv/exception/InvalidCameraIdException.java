@@ -0,0 +1,7 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+public class InvalidCameraIdException extends RuntimeException {
+    public InvalidCameraIdException(String message) {
+        super(message);
+    }
+}
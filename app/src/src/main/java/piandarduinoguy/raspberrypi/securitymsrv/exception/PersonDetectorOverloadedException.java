@@ -0,0 +1,7 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+public class PersonDetectorOverloadedException extends RuntimeException {
+    public PersonDetectorOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A detection that failed on the frame it was asked about rather than on the person detector, such as a frame the yolo
+ * person detector worker or the in-process detector could not decode, which leaves the detector fit for the next
+ * detection.
+ */
+@Getter
+public class PersonDetectorRequestException extends PersonDetectorException {
+    private final HttpStatus httpStatus;
+
+    public PersonDetectorRequestException(String message, HttpStatus httpStatus) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+}
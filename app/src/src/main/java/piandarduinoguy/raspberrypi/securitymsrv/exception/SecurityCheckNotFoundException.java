@@ -0,0 +1,7 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+public class SecurityCheckNotFoundException extends RuntimeException {
+    public SecurityCheckNotFoundException(String message) {
+        super(message);
+    }
+}
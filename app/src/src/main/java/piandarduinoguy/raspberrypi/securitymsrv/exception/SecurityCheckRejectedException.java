@@ -0,0 +1,18 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class SecurityCheckRejectedException extends RuntimeException {
+    private HttpStatus httpStatus;
+
+    public SecurityCheckRejectedException(String message) {
+        this(message, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    public SecurityCheckRejectedException(String message, HttpStatus httpStatus) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+}
@@ -1,5 +1,6 @@
 package piandarduinoguy.raspberrypi.securitymsrv.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -41,6 +42,16 @@ public class SecurityExceptionHandler {
         return new ResponseEntity<>(zalandoProblem, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(SecurityJournalException.class)
+    public ResponseEntity<Problem> handleSecurityJournalException(SecurityJournalException securityJournalException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(securityJournalException.getMessage());
+        zalandoProblem.setTitle(securityJournalException.getHttpStatus().getReasonPhrase());
+        zalandoProblem.setStatus(securityJournalException.getHttpStatus().value());
+
+        return new ResponseEntity<>(zalandoProblem, securityJournalException.getHttpStatus());
+    }
+
     @ExceptionHandler(PersonDetectorException.class)
     public ResponseEntity<Problem> handlePersonDetectorException(PersonDetectorException personDetectorException) {
         Problem zalandoProblem = new Problem();
@@ -51,6 +62,16 @@ public class SecurityExceptionHandler {
         return new ResponseEntity<>(zalandoProblem, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(PersonDetectorRequestException.class)
+    public ResponseEntity<Problem> handlePersonDetectorRequestException(PersonDetectorRequestException personDetectorRequestException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(personDetectorRequestException.getMessage());
+        zalandoProblem.setTitle(personDetectorRequestException.getHttpStatus().getReasonPhrase());
+        zalandoProblem.setStatus(personDetectorRequestException.getHttpStatus().value());
+
+        return new ResponseEntity<>(zalandoProblem, personDetectorRequestException.getHttpStatus());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Problem> handleException(Exception exception){
         Problem zalandoProblem=  new Problem();
@@ -70,4 +91,54 @@ public class SecurityExceptionHandler {
 
         return new ResponseEntity<>(zalandoProblem, HttpStatus.BAD_REQUEST);
     }
+
+    @ExceptionHandler(InvalidCameraIdException.class)
+    public ResponseEntity<Problem> handleInvalidCameraIdException(InvalidCameraIdException invalidCameraIdException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(invalidCameraIdException.getMessage());
+        zalandoProblem.setTitle(HttpStatus.BAD_REQUEST.getReasonPhrase());
+        zalandoProblem.setStatus(HttpStatus.BAD_REQUEST.value());
+
+        return new ResponseEntity<>(zalandoProblem, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(SecurityCheckNotFoundException.class)
+    public ResponseEntity<Problem> handleSecurityCheckNotFoundException(SecurityCheckNotFoundException securityCheckNotFoundException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(securityCheckNotFoundException.getMessage());
+        zalandoProblem.setTitle(HttpStatus.NOT_FOUND.getReasonPhrase());
+        zalandoProblem.setStatus(HttpStatus.NOT_FOUND.value());
+
+        return new ResponseEntity<>(zalandoProblem, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(EvidenceFrameNotFoundException.class)
+    public ResponseEntity<Problem> handleEvidenceFrameNotFoundException(EvidenceFrameNotFoundException evidenceFrameNotFoundException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(evidenceFrameNotFoundException.getMessage());
+        zalandoProblem.setTitle(HttpStatus.NOT_FOUND.getReasonPhrase());
+        zalandoProblem.setStatus(HttpStatus.NOT_FOUND.value());
+
+        return new ResponseEntity<>(zalandoProblem, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(SecurityCheckRejectedException.class)
+    public ResponseEntity<Problem> handleSecurityCheckRejectedException(SecurityCheckRejectedException securityCheckRejectedException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(securityCheckRejectedException.getMessage());
+        zalandoProblem.setTitle(securityCheckRejectedException.getHttpStatus().getReasonPhrase());
+        zalandoProblem.setStatus(securityCheckRejectedException.getHttpStatus().value());
+
+        return new ResponseEntity<>(zalandoProblem, securityCheckRejectedException.getHttpStatus());
+    }
+
+    @ExceptionHandler(PersonDetectorOverloadedException.class)
+    public ResponseEntity<Problem> handlePersonDetectorOverloadedException(PersonDetectorOverloadedException personDetectorOverloadedException) {
+        Problem zalandoProblem = new Problem();
+        zalandoProblem.setDetail(personDetectorOverloadedException.getMessage());
+        zalandoProblem.setTitle(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+        zalandoProblem.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(zalandoProblem);
+    }
 }
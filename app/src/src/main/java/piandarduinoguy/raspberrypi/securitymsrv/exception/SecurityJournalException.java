@@ -0,0 +1,14 @@
+package piandarduinoguy.raspberrypi.securitymsrv.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+@Getter
+public class SecurityJournalException extends RuntimeException {
+    private HttpStatus httpStatus;
+
+    public SecurityJournalException(String message, HttpStatus httpStatus) {
+        super(message);
+        this.httpStatus = httpStatus;
+    }
+}
@@ -0,0 +1,684 @@
+package piandarduinoguy.raspberrypi.securitymsrv.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.HourlyDetections;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntry;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntryType;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.event.DetectionCompletedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.event.SecurityConfigChangedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityJournalException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of every security config change and every detection, next to security_config.json, so that
+ * the history of arms, disarms, breaches, silences and detections is kept rather than overwritten. Entries are appended
+ * in the order of their timestamps, which never go back, and are not forced to disk one by one as the journal is a
+ * history rather than a source of truth.
+ * <p>
+ * A record is a marker, the sequence, the timestamp, the entry type, the security status and state ordinals, the breach
+ * flag, the version, the person count, the highest confidence, the camera id and a CRC32 of all of it. A record that was
+ * only partly written when the process stopped fails its CRC and ends the journal on recovery, which is the only time
+ * the whole journal is read.
+ * <p>
+ * A sparse index of the offset of every index-interval-th record by its timestamp lets a query start reading close to
+ * the first entry it asks for, and the counts of the detections and breaches of every hour are kept in memory along with
+ * the offset of the first record of the hour, so that the detections per hour are answered without reading the journal
+ * and the breaches are read from the hours that have any. The journal is compacted periodically to the entries within
+ * the retention that fit in the maximum size.
+ * <p>
+ * Records are never rewritten in place, so a query only takes the monitor to look up where to read and reads the
+ * journal outside of it, never holding up an append, and a compaction likewise rewrites all but the entries appended
+ * while it ran outside of it. A compaction replaces the journal underneath a query, which then reads the compacted
+ * journal again.
+ */
+@Service
+public class SecurityJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityJournal.class);
+
+    private static final int FILE_MAGIC = 0x534A524E;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_MARKER = 0x5EC7E7E1;
+    private static final int FIXED_RECORD_SIZE = 4 + 8 + 8 + 1 + 1 + 1 + 1 + 8 + 4 + 4 + 1 + 4;
+    private static final int MAX_CAMERA_ID_LENGTH = 64;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte NO_ORDINAL = -1;
+    private static final byte BREACH_FLAG = 1;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final String journalFileName;
+    private final int indexInterval;
+    private final long retentionHours;
+    private final long retentionMillis;
+    private final long maxSizeBytes;
+    private final int maxQueryEntries;
+
+    private final Object compactionLock = new Object();
+
+    private FileChannel journal;
+    private JournalIndex journalIndex;
+    private long appendOffset;
+    private long lastSequence;
+    private long lastTimestamp;
+    private SecurityStatus lastSecurityStatus;
+
+    public SecurityJournal(@Value("${security-journal.file}") String journalFileName,
+                           @Value("${security-journal.index-interval}") int indexInterval,
+                           @Value("${security-journal.retention-hours}") long retentionHours,
+                           @Value("${security-journal.max-size-bytes}") long maxSizeBytes,
+                           @Value("${security-journal.max-query-entries}") int maxQueryEntries) {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException(String.format("The security journal index interval %d is less than 1.", indexInterval));
+        }
+        if (maxQueryEntries < 1) {
+            throw new IllegalArgumentException(String.format("The security journal maximum of %d entries per query is less than 1.", maxQueryEntries));
+        }
+        this.journalFileName = journalFileName;
+        this.indexInterval = indexInterval;
+        this.retentionHours = retentionHours;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.maxSizeBytes = maxSizeBytes;
+        this.maxQueryEntries = maxQueryEntries;
+    }
+
+    /**
+     * Opens the journal, creating it and its directory if they do not exist, and recovers its index.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        File journalFile = new File(this.journalFileName);
+        try {
+            Files.createDirectories(journalFile.getAbsoluteFile().getParentFile().toPath());
+            this.journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(this.journal, header, 0);
+            if (header.position() < HEADER_SIZE || header.getInt(0) != FILE_MAGIC) {
+                this.journal.truncate(0);
+                writeFully(this.journal, header(), 0);
+                this.journal.force(true);
+            }
+            recover();
+        } catch (IOException ioException) {
+            throw new SecurityJournalException(String.format(
+                    "Could not open the security journal %s due to an IOException with message \"%s\".",
+                    this.journalFileName,
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            this.journal.close();
+        } catch (IOException ioException) {
+            LOGGER.warn("The security journal could not be closed.", ioException);
+        }
+    }
+
+    /**
+     * The journal is a history, so failing to journal a change must not fail the change itself.
+     */
+    @EventListener
+    public void onSecurityConfigChanged(SecurityConfigChangedEvent securityConfigChangedEvent) {
+        try {
+            appendSecurityConfig(securityConfigChangedEvent.getVersionedSecurityConfig());
+        } catch (SecurityJournalException securityJournalException) {
+            LOGGER.warn(securityJournalException.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onDetectionCompleted(DetectionCompletedEvent detectionCompletedEvent) {
+        try {
+            appendDetection(detectionCompletedEvent.getCameraId(), detectionCompletedEvent.getDetectionResult());
+        } catch (SecurityJournalException securityJournalException) {
+            LOGGER.warn(securityJournalException.getMessage());
+        }
+    }
+
+    /**
+     * Journals the security config a change resulted in, as a breach if it is breached while the security config
+     * journaled before it was not.
+     */
+    public synchronized JournalEntry appendSecurityConfig(VersionedSecurityConfig versionedSecurityConfig) {
+        boolean breach = versionedSecurityConfig.getSecurityStatus() == SecurityStatus.BREACHED && this.lastSecurityStatus != SecurityStatus.BREACHED;
+        JournalEntry journalEntry = append(new JournalEntry(0, 0, JournalEntryType.SECURITY_CONFIG,
+                versionedSecurityConfig.getSecurityStatus(), versionedSecurityConfig.getSecurityState(), versionedSecurityConfig.getVersion(),
+                breach, null, 0, 0));
+        this.lastSecurityStatus = versionedSecurityConfig.getSecurityStatus();
+        return journalEntry;
+    }
+
+    public synchronized JournalEntry appendDetection(String cameraId, DetectionResult detectionResult) {
+        List<BoundingBox> boundingBoxes = detectionResult.getBoundingBoxes() == null ? Collections.emptyList() : detectionResult.getBoundingBoxes();
+        float maxConfidence = 0;
+        for (BoundingBox boundingBox : boundingBoxes) {
+            maxConfidence = Math.max(maxConfidence, boundingBox.getConfidence());
+        }
+        return append(new JournalEntry(0, 0, JournalEntryType.DETECTION, null, null, 0, false, cameraId, boundingBoxes.size(), maxConfidence));
+    }
+
+    /**
+     * At most the limit of entries with a timestamp from and to the given timestamps, both inclusive, oldest first. The
+     * limit is capped at the maximum entries per query.
+     */
+    public List<JournalEntry> getEntries(long from, long to, int limit) {
+        List<JournalEntry> journalEntries = new ArrayList<>();
+        int entryLimit = Math.min(limit, this.maxQueryEntries);
+        if (from > to || entryLimit < 1) {
+            return journalEntries;
+        }
+        while (true) {
+            FileChannel queriedJournal;
+            long startOffset;
+            long endOffset;
+            synchronized (this) {
+                queriedJournal = this.journal;
+                startOffset = this.journalIndex.offsetOfFirstEntryFrom(from);
+                endOffset = this.appendOffset;
+            }
+            journalEntries.clear();
+            try {
+                scan(queriedJournal, startOffset, endOffset, journalEntry -> {
+                    if (journalEntry.getTimestamp() > to) {
+                        return false;
+                    }
+                    if (journalEntry.getTimestamp() >= from) {
+                        journalEntries.add(journalEntry);
+                    }
+                    return journalEntries.size() < entryLimit;
+                });
+                return journalEntries;
+            } catch (IOException ioException) {
+                requireCompacted(queriedJournal, ioException);
+            }
+        }
+    }
+
+    /**
+     * The breaches with a timestamp from and to the given timestamps, both inclusive, oldest first. Only the hours with
+     * breaches are read.
+     */
+    public List<JournalEntry> getBreaches(long from, long to) {
+        List<JournalEntry> breaches = new ArrayList<>();
+        while (true) {
+            FileChannel queriedJournal;
+            long endOffset;
+            NavigableMap<Long, Long> breachHourOffsets = new TreeMap<>();
+            synchronized (this) {
+                queriedJournal = this.journal;
+                endOffset = this.appendOffset;
+                for (Map.Entry<Long, JournalHour> journalHour : this.journalIndex.hoursOf(from, to).entrySet()) {
+                    if (journalHour.getValue().breaches > 0) {
+                        breachHourOffsets.put(journalHour.getKey(), journalHour.getValue().firstOffset);
+                    }
+                }
+            }
+            breaches.clear();
+            try {
+                for (Map.Entry<Long, Long> breachHourOffset : breachHourOffsets.entrySet()) {
+                    long hourEnd = breachHourOffset.getKey() + HOUR_MILLIS;
+                    scan(queriedJournal, breachHourOffset.getValue(), endOffset, journalEntry -> {
+                        if (journalEntry.getTimestamp() >= hourEnd || journalEntry.getTimestamp() > to) {
+                            return false;
+                        }
+                        if (journalEntry.isBreach() && journalEntry.getTimestamp() >= from) {
+                            breaches.add(journalEntry);
+                        }
+                        return true;
+                    });
+                }
+                return breaches;
+            } catch (IOException ioException) {
+                requireCompacted(queriedJournal, ioException);
+            }
+        }
+    }
+
+    /**
+     * The detections and breaches of every hour with journal entries from the hour of the from timestamp up to the to
+     * timestamp, oldest first, answered from memory.
+     */
+    public synchronized List<HourlyDetections> getHourlyDetections(long from, long to) {
+        List<HourlyDetections> hourlyDetections = new ArrayList<>();
+        for (Map.Entry<Long, JournalHour> journalHour : this.journalIndex.hoursOf(from, to).entrySet()) {
+            JournalHour hour = journalHour.getValue();
+            hourlyDetections.add(new HourlyDetections(journalHour.getKey(), hour.detections, hour.personDetections, hour.breaches));
+        }
+        return hourlyDetections;
+    }
+
+    public synchronized long getSizeBytes() {
+        return this.appendOffset;
+    }
+
+    public long getRetentionHours() {
+        return this.retentionHours;
+    }
+
+    /**
+     * Rewrites the journal with only the entries within the retention, dropping the oldest of them too for as long as
+     * the journal would not fit in its maximum size, to a temporary file that then replaces the journal in a single
+     * rename. The index is rebuilt from the entries as they are rewritten.
+     * <p>
+     * The journal as it was when the compaction started is rewritten and forced to disk without the monitor, so appends
+     * and queries carry on meanwhile. Only the entries appended since are copied under the monitor, right before the
+     * compacted journal replaces the journal.
+     */
+    @Scheduled(fixedDelayString = "${security-journal.compaction-interval-ms}")
+    public void compact() {
+        synchronized (this.compactionLock) {
+            long retainedFrom = System.currentTimeMillis() - this.retentionMillis;
+            FileChannel compactedFromJournal;
+            long startOffset;
+            long snapshotOffset;
+            synchronized (this) {
+                startOffset = this.journalIndex.offsetOfFirstEntryFrom(retainedFrom);
+                Long sizeLimitedOffset = this.journalIndex.offsetOfFirstIndexedEntryFrom(this.appendOffset - this.maxSizeBytes + HEADER_SIZE);
+                if (sizeLimitedOffset == null) {
+                    sizeLimitedOffset = this.appendOffset;
+                }
+                startOffset = Math.max(startOffset, sizeLimitedOffset);
+                if (startOffset <= HEADER_SIZE && this.journalIndex.isEmptyOrFrom(retainedFrom)) {
+                    return;
+                }
+                compactedFromJournal = this.journal;
+                snapshotOffset = this.appendOffset;
+            }
+            Path journalPath = new File(this.journalFileName).toPath();
+            Path compactedJournalPath = new File(this.journalFileName + ".tmp").toPath();
+            try {
+                Files.deleteIfExists(compactedJournalPath);
+                FileChannel compactedJournal = FileChannel.open(compactedJournalPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                JournalIndex compactedJournalIndex = new JournalIndex(this.indexInterval);
+                try {
+                    writeFully(compactedJournal, header(), 0);
+                    long compactedOffset = copyRetained(compactedFromJournal, startOffset, snapshotOffset, retainedFrom,
+                            compactedJournal, compactedJournalIndex, HEADER_SIZE);
+                    compactedJournal.force(true);
+                    synchronized (this) {
+                        compactedOffset = copyRetained(this.journal, snapshotOffset, this.appendOffset, retainedFrom,
+                                compactedJournal, compactedJournalIndex, compactedOffset);
+                        compactedJournal.force(true);
+                        Files.move(compactedJournalPath, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                        LOGGER.info("Compacted the security journal from {} to {} bytes.", this.appendOffset, compactedOffset);
+                        this.journal.close();
+                        this.journal = compactedJournal;
+                        this.journalIndex = compactedJournalIndex;
+                        this.appendOffset = compactedOffset;
+                    }
+                } catch (IOException | RuntimeException exception) {
+                    compactedJournal.close();
+                    throw exception;
+                }
+            } catch (IOException ioException) {
+                throw new SecurityJournalException(String.format(
+                        "Could not compact the security journal %s due to an IOException with message \"%s\".",
+                        this.journalFileName,
+                        ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    private JournalEntry append(JournalEntry journalEntry) {
+        journalEntry.setSequence(this.lastSequence + 1);
+        journalEntry.setTimestamp(Math.max(System.currentTimeMillis(), this.lastTimestamp));
+        ByteBuffer record = record(journalEntry);
+        int recordSize = record.remaining();
+        try {
+            writeFully(this.journal, record, this.appendOffset);
+        } catch (IOException ioException) {
+            throw new SecurityJournalException(String.format(
+                    "Could not append to the security journal %s due to an IOException with message \"%s\".",
+                    this.journalFileName,
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        this.journalIndex.add(journalEntry, this.appendOffset);
+        this.appendOffset += recordSize;
+        this.lastSequence = journalEntry.getSequence();
+        this.lastTimestamp = journalEntry.getTimestamp();
+        return journalEntry;
+    }
+
+    private void recover() throws IOException {
+        this.journalIndex = new JournalIndex(this.indexInterval);
+        this.lastSequence = 0;
+        this.lastTimestamp = 0;
+        this.lastSecurityStatus = null;
+        long journalSize = this.journal.size();
+        long[] recordOffset = {HEADER_SIZE};
+        // after a compaction the first record follows a dropped record, every other record its predecessor
+        this.appendOffset = scan(this.journal, HEADER_SIZE, journalSize, journalEntry -> {
+            if (this.lastSequence != 0 && (journalEntry.getSequence() != this.lastSequence + 1 || journalEntry.getTimestamp() < this.lastTimestamp)) {
+                return false;
+            }
+            this.journalIndex.add(journalEntry, recordOffset[0]);
+            recordOffset[0] += FIXED_RECORD_SIZE + cameraIdBytes(journalEntry).length;
+            this.lastSequence = journalEntry.getSequence();
+            this.lastTimestamp = journalEntry.getTimestamp();
+            if (journalEntry.getType() == JournalEntryType.SECURITY_CONFIG) {
+                this.lastSecurityStatus = journalEntry.getSecurityStatus();
+            }
+            return true;
+        });
+        if (this.appendOffset < journalSize) {
+            LOGGER.warn("Dropped the last {} bytes of the security journal {} that are not a complete record.", journalSize - this.appendOffset, this.journalFileName);
+            this.journal.truncate(this.appendOffset);
+        }
+        if (this.lastSequence != 0) {
+            LOGGER.info("Recovered the security journal up to entry {}.", this.lastSequence);
+        }
+    }
+
+    /**
+     * A query whose journal was closed by a compaction reads the compacted journal again, any other failure to read is
+     * thrown.
+     */
+    private synchronized void requireCompacted(FileChannel queriedJournal, IOException ioException) {
+        if (!(ioException instanceof ClosedChannelException) || queriedJournal == this.journal) {
+            throw new SecurityJournalException(String.format(
+                    "Could not read the security journal %s due to an IOException with message \"%s\".",
+                    this.journalFileName,
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Copies the records from the offset up to the end offset that are not older than the retained from timestamp to the
+     * compacted journal from the compacted offset on, adding them to its index, and returns the offset after the last
+     * record copied.
+     */
+    private static long copyRetained(FileChannel journal, long offset, long endOffset, long retainedFrom,
+                                     FileChannel compactedJournal, JournalIndex compactedJournalIndex, long compactedOffset) throws IOException {
+        ByteBuffer pendingRecords = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long[] compactedOffsets = {compactedOffset, compactedOffset};
+        scan(journal, offset, endOffset, journalEntry -> {
+            if (journalEntry.getTimestamp() < retainedFrom) {
+                return true;
+            }
+            ByteBuffer record = record(journalEntry);
+            if (pendingRecords.remaining() < record.remaining()) {
+                pendingRecords.flip();
+                writeUnchecked(compactedJournal, pendingRecords, compactedOffsets[0]);
+                compactedOffsets[0] = compactedOffsets[1];
+                pendingRecords.clear();
+            }
+            compactedJournalIndex.add(journalEntry, compactedOffsets[1]);
+            compactedOffsets[1] += record.remaining();
+            pendingRecords.put(record);
+            return true;
+        });
+        pendingRecords.flip();
+        writeFully(compactedJournal, pendingRecords, compactedOffsets[0]);
+        return compactedOffsets[1];
+    }
+
+    /**
+     * Reads the records from the offset up to the end offset for as long as the visitor asks for more, returning the
+     * offset of the first record that was not visited: the end offset, the record the visitor declined or the first
+     * record that is not valid.
+     */
+    private static long scan(FileChannel journal, long offset, long endOffset, Predicate<JournalEntry> visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = offset;
+        while (position < endOffset) {
+            buffer.clear();
+            buffer.limit((int) Math.min(READ_BUFFER_SIZE, endOffset - position));
+            readFully(journal, buffer, position);
+            int available = buffer.position();
+            int recordOffset = 0;
+            while (available - recordOffset >= FIXED_RECORD_SIZE) {
+                int recordSize = recordSize(buffer, recordOffset);
+                if (recordSize < 0) {
+                    return position + recordOffset;
+                }
+                if (available - recordOffset < recordSize) {
+                    break;
+                }
+                JournalEntry journalEntry = readRecord(buffer, recordOffset, recordSize);
+                if (journalEntry == null || !visitor.test(journalEntry)) {
+                    return position + recordOffset;
+                }
+                recordOffset += recordSize;
+            }
+            if (recordOffset == 0) {
+                // a record that ends beyond the end offset was only partly written
+                return position;
+            }
+            position += recordOffset;
+        }
+        return position;
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, FILE_MAGIC);
+        header.putInt(4, FORMAT_VERSION);
+        return header;
+    }
+
+    private static ByteBuffer record(JournalEntry journalEntry) {
+        byte[] cameraIdBytes = cameraIdBytes(journalEntry);
+        int recordSize = FIXED_RECORD_SIZE + cameraIdBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(0, RECORD_MARKER);
+        record.putLong(4, journalEntry.getSequence());
+        record.putLong(12, journalEntry.getTimestamp());
+        record.put(20, (byte) journalEntry.getType().ordinal());
+        record.put(21, journalEntry.getSecurityStatus() == null ? NO_ORDINAL : (byte) journalEntry.getSecurityStatus().ordinal());
+        record.put(22, journalEntry.getSecurityState() == null ? NO_ORDINAL : (byte) journalEntry.getSecurityState().ordinal());
+        record.put(23, journalEntry.isBreach() ? BREACH_FLAG : 0);
+        record.putLong(24, journalEntry.getVersion());
+        record.putInt(32, journalEntry.getPersonCount());
+        record.putFloat(36, journalEntry.getMaxConfidence());
+        record.put(40, (byte) cameraIdBytes.length);
+        System.arraycopy(cameraIdBytes, 0, record.array(), 41, cameraIdBytes.length);
+        record.putInt(recordSize - 4, checksum(record, 0, recordSize));
+        return record;
+    }
+
+    /**
+     * The size of the record at the position, or -1 if there is no record at the position.
+     */
+    private static int recordSize(ByteBuffer buffer, int position) {
+        int cameraIdLength = buffer.get(position + 40) & 0xFF;
+        if (buffer.getInt(position) != RECORD_MARKER || cameraIdLength > MAX_CAMERA_ID_LENGTH) {
+            return -1;
+        }
+        return FIXED_RECORD_SIZE + cameraIdLength;
+    }
+
+    private static JournalEntry readRecord(ByteBuffer buffer, int position, int recordSize) {
+        if (buffer.getInt(position + recordSize - 4) != checksum(buffer, position, recordSize)) {
+            return null;
+        }
+        int typeOrdinal = buffer.get(position + 20);
+        int securityStatusOrdinal = buffer.get(position + 21);
+        int securityStateOrdinal = buffer.get(position + 22);
+        if (typeOrdinal < 0 || typeOrdinal >= JournalEntryType.values().length
+                || securityStatusOrdinal >= SecurityStatus.values().length || securityStateOrdinal >= SecurityState.values().length) {
+            return null;
+        }
+        int cameraIdLength = recordSize - FIXED_RECORD_SIZE;
+        return new JournalEntry(
+                buffer.getLong(position + 4),
+                buffer.getLong(position + 12),
+                JournalEntryType.values()[typeOrdinal],
+                securityStatusOrdinal < 0 ? null : SecurityStatus.values()[securityStatusOrdinal],
+                securityStateOrdinal < 0 ? null : SecurityState.values()[securityStateOrdinal],
+                buffer.getLong(position + 24),
+                buffer.get(position + 23) == BREACH_FLAG,
+                cameraIdLength == 0 ? null : new String(buffer.array(), position + 41, cameraIdLength, StandardCharsets.US_ASCII),
+                buffer.getInt(position + 32),
+                buffer.getFloat(position + 36));
+    }
+
+    private static byte[] cameraIdBytes(JournalEntry journalEntry) {
+        // camera ids are validated to be at most 64 letters, digits, underscores and hyphens
+        return journalEntry.getCameraId() == null ? new byte[0] : journalEntry.getCameraId().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int recordSize) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), buffer.arrayOffset() + position, recordSize - 4);
+        return (int) crc32.getValue();
+    }
+
+    private static long hourStart(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, HOUR_MILLIS);
+    }
+
+    private static void writeUnchecked(FileChannel channel, ByteBuffer buffer, long offset) {
+        try {
+            writeFully(channel, buffer, offset);
+        } catch (IOException ioException) {
+            throw new SecurityJournalException(String.format(
+                    "Could not write the compacted security journal due to an IOException with message \"%s\".",
+                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * The sparse index of the journal and the counts of every hour. The timestamps and the offsets of the indexed records
+     * both only ever go up, so either can be searched for in the order the records were indexed, many records sharing a
+     * timestamp.
+     */
+    private static final class JournalIndex {
+        private final int indexInterval;
+        private final NavigableMap<Long, JournalHour> journalHours = new TreeMap<>();
+        private long[] indexedTimestamps = new long[64];
+        private long[] indexedOffsets = new long[64];
+        private int indexedCount;
+        private long records;
+
+        private JournalIndex(int indexInterval) {
+            this.indexInterval = indexInterval;
+        }
+
+        private void add(JournalEntry journalEntry, long offset) {
+            if (this.records++ % this.indexInterval == 0) {
+                if (this.indexedCount == this.indexedOffsets.length) {
+                    this.indexedTimestamps = Arrays.copyOf(this.indexedTimestamps, this.indexedCount * 2);
+                    this.indexedOffsets = Arrays.copyOf(this.indexedOffsets, this.indexedCount * 2);
+                }
+                this.indexedTimestamps[this.indexedCount] = journalEntry.getTimestamp();
+                this.indexedOffsets[this.indexedCount] = offset;
+                this.indexedCount++;
+            }
+            this.journalHours.computeIfAbsent(hourStart(journalEntry.getTimestamp()), hour -> new JournalHour(offset)).count(journalEntry);
+        }
+
+        /**
+         * The offset of the last indexed record before the given timestamp, which is at or before the first record with a
+         * timestamp from the given timestamp.
+         */
+        private long offsetOfFirstEntryFrom(long timestamp) {
+            int low = 0;
+            int high = this.indexedCount - 1;
+            long offset = HEADER_SIZE;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (this.indexedTimestamps[middle] < timestamp) {
+                    offset = this.indexedOffsets[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * The offset of the first indexed record at or after the given offset, or null if there is none.
+         */
+        private Long offsetOfFirstIndexedEntryFrom(long offset) {
+            int index = Arrays.binarySearch(this.indexedOffsets, 0, this.indexedCount, offset);
+            int firstIndex = index >= 0 ? index : -index - 1;
+            return firstIndex < this.indexedCount ? this.indexedOffsets[firstIndex] : null;
+        }
+
+        private boolean isEmptyOrFrom(long timestamp) {
+            return this.indexedCount == 0 || this.indexedTimestamps[0] >= timestamp;
+        }
+
+        private NavigableMap<Long, JournalHour> hoursOf(long from, long to) {
+            if (from > to || to < 0) {
+                return Collections.emptyNavigableMap();
+            }
+            return this.journalHours.subMap(hourStart(Math.max(0, from)), true, to, true);
+        }
+    }
+
+    private static final class JournalHour {
+        private final long firstOffset;
+        private long detections;
+        private long personDetections;
+        private long breaches;
+
+        private JournalHour(long firstOffset) {
+            this.firstOffset = firstOffset;
+        }
+
+        private void count(JournalEntry journalEntry) {
+            if (journalEntry.getType() == JournalEntryType.DETECTION) {
+                this.detections++;
+                if (journalEntry.getPersonCount() > 0) {
+                    this.personDetections++;
+                }
+            } else if (journalEntry.isBreach()) {
+                this.breaches++;
+            }
+        }
+    }
+}
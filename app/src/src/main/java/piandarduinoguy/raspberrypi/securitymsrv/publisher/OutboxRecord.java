@@ -0,0 +1,31 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+/**
+ * A security config change in the outbox. The sequence orders the records of the outbox, the time it was appended is
+ * only known to the process that appended it and is used to measure the publish latency.
+ */
+class OutboxRecord {
+    private final long sequence;
+    private final VersionedSecurityConfig versionedSecurityConfig;
+    private final long appendedAt;
+
+    OutboxRecord(long sequence, VersionedSecurityConfig versionedSecurityConfig, long appendedAt) {
+        this.sequence = sequence;
+        this.versionedSecurityConfig = versionedSecurityConfig;
+        this.appendedAt = appendedAt;
+    }
+
+    long getSequence() {
+        return this.sequence;
+    }
+
+    VersionedSecurityConfig getVersionedSecurityConfig() {
+        return this.versionedSecurityConfig;
+    }
+
+    long getAppendedAt() {
+        return this.appendedAt;
+    }
+}
@@ -0,0 +1,86 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfigEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the security config changes relayed from the outbox into messages and decodes them again as
+ * {@link SecurityConfigEvent}s. Every message carries the outbox sequence of the change and the version of the event
+ * format in its headers, so that a subscriber can drop an event older than one it has already applied. The binary body
+ * is 11 bytes: the event format version, the security status ordinal, the security state ordinal and the sequence as a
+ * big-endian long.
+ */
+@Component
+public class SecurityConfigEventCodec {
+    public static final String SEQUENCE_HEADER = "x-security-config-sequence";
+    public static final String EVENT_FORMAT_VERSION_HEADER = "x-security-config-event-format-version";
+    public static final String BINARY_CONTENT_TYPE = "application/vnd.security-config-event";
+    public static final int EVENT_FORMAT_VERSION = 1;
+
+    private static final int BINARY_EVENT_SIZE = 1 + 1 + 1 + 8;
+    private static final ObjectMapper EVENT_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final MessageConverter messageConverter;
+    private final SecurityConfigEventEncoding encoding;
+
+    @Autowired
+    public SecurityConfigEventCodec(MessageConverter messageConverter,
+                                    @Value("${security-config.publisher.encoding}") SecurityConfigEventEncoding encoding) {
+        this.messageConverter = messageConverter;
+        this.encoding = encoding;
+    }
+
+    Message encode(OutboxRecord outboxRecord) {
+        VersionedSecurityConfig versionedSecurityConfig = outboxRecord.getVersionedSecurityConfig();
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setHeader(SEQUENCE_HEADER, outboxRecord.getSequence());
+        messageProperties.setHeader(EVENT_FORMAT_VERSION_HEADER, EVENT_FORMAT_VERSION);
+        if (this.encoding == SecurityConfigEventEncoding.JSON) {
+            return this.messageConverter.toMessage(versionedSecurityConfig.toSecurityConfig(), messageProperties);
+        }
+        messageProperties.setContentType(BINARY_CONTENT_TYPE);
+        ByteBuffer event = ByteBuffer.allocate(BINARY_EVENT_SIZE)
+                .put((byte) EVENT_FORMAT_VERSION)
+                .put((byte) versionedSecurityConfig.getSecurityStatus().ordinal())
+                .put((byte) versionedSecurityConfig.getSecurityState().ordinal())
+                .putLong(outboxRecord.getSequence());
+        return new Message(event.array(), messageProperties);
+    }
+
+    /**
+     * Decodes a message in either encoding, telling them apart by their content type.
+     */
+    public SecurityConfigEvent decode(Message message) {
+        MessageProperties messageProperties = message.getMessageProperties();
+        if (BINARY_CONTENT_TYPE.equals(messageProperties.getContentType())) {
+            ByteBuffer event = ByteBuffer.wrap(message.getBody());
+            if (message.getBody().length != BINARY_EVENT_SIZE || event.get() != EVENT_FORMAT_VERSION) {
+                throw new IllegalArgumentException("The message is not a security config event of a known format version.");
+            }
+            SecurityStatus securityStatus = SecurityStatus.values()[event.get()];
+            SecurityState securityState = SecurityState.values()[event.get()];
+            return new SecurityConfigEvent(event.getLong(), securityStatus, securityState);
+        }
+        try {
+            SecurityConfig securityConfig = EVENT_MAPPER.readValue(message.getBody(), SecurityConfig.class);
+            Number sequence = messageProperties.getHeader(SEQUENCE_HEADER);
+            return new SecurityConfigEvent(sequence.longValue(), securityConfig.getSecurityStatus(), securityConfig.getSecurityState());
+        } catch (IOException ioException) {
+            throw new IllegalArgumentException("The message is not a security config event.", ioException);
+        }
+    }
+}
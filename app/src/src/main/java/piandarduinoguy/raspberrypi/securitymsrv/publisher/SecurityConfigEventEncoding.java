@@ -0,0 +1,15 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+/**
+ * How a security config event is encoded in the body of its message.
+ */
+public enum SecurityConfigEventEncoding {
+    /**
+     * The security config as JSON, as converted by the message converter of the RabbitTemplate.
+     */
+    JSON,
+    /**
+     * A fixed-width encoding of the event format version, the security status and state ordinals and the version.
+     */
+    BINARY
+}
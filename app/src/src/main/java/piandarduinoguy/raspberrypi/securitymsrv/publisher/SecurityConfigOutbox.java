@@ -0,0 +1,251 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigFileException;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of security config changes kept in a memory-mapped file next to security_config.json, so that a
+ * change is durable as soon as it is appended and is published once the broker can be reached, in the order the
+ * changes were made. The header of the log holds the sequence up to which the records have been relayed to the
+ * broker. When the log is full it is compacted to the records that have not been relayed yet; should those alone not
+ * fit, the oldest of them are dropped.
+ * <p>
+ * A record is a fixed size: a marker, the sequence, the version, the status and state ordinals and a CRC32 of all of
+ * it. A record that was only partly written when the process stopped fails its CRC and ends the log on recovery.
+ */
+@Service
+public class SecurityConfigOutbox {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityConfigOutbox.class);
+
+    private static final int FILE_MAGIC = 0x53434F42;
+    private static final int FORMAT_VERSION = 1;
+    private static final int RELAYED_SEQUENCE_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_MARKER = 0x5EC0C0F1;
+    private static final int RECORD_SIZE = 4 + 8 + 8 + 1 + 1 + 4;
+
+    private final String outboxFileName;
+    private final int capacityBytes;
+
+    private final Deque<OutboxRecord> unrelayedRecords = new ArrayDeque<>();
+
+    private MappedByteBuffer log;
+    private int appendPosition;
+    private long lastSequence;
+    private long relayedSequence;
+    private long droppedCount;
+
+    public SecurityConfigOutbox(@Value("${security-config.outbox.file}") String outboxFileName,
+                                @Value("${security-config.outbox.capacity-bytes}") int capacityBytes) {
+        this.outboxFileName = outboxFileName;
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Maps the log, creating it and its directory if they do not exist, and recovers the records that have not been relayed yet.
+     */
+    @PostConstruct
+    public synchronized void open() {
+        File outboxFile = new File(this.outboxFileName);
+        try {
+            boolean created = !outboxFile.exists();
+            Files.createDirectories(outboxFile.getAbsoluteFile().getParentFile().toPath());
+            this.log = map(outboxFile.toPath());
+            if (created || this.log.getInt(0) != FILE_MAGIC) {
+                writeHeader(this.log, 0);
+                this.log.force();
+            }
+        } catch (IOException ioException) {
+            throw new SecurityConfigFileException(String.format(
+                    "Could not open the security config outbox %s due to an IOException with message \"%s\".",
+                    this.outboxFileName,
+                    ioException.getMessage()));
+        }
+        recover();
+    }
+
+    /**
+     * Appends the change and forces it to disk before returning.
+     */
+    public synchronized OutboxRecord append(VersionedSecurityConfig versionedSecurityConfig) {
+        if (this.appendPosition + RECORD_SIZE > this.capacityBytes) {
+            compact();
+        }
+        OutboxRecord outboxRecord = new OutboxRecord(this.lastSequence + 1, versionedSecurityConfig, System.nanoTime());
+        writeRecord(this.log, this.appendPosition, outboxRecord);
+        this.log.force();
+        this.appendPosition += RECORD_SIZE;
+        this.lastSequence = outboxRecord.getSequence();
+        this.unrelayedRecords.addLast(outboxRecord);
+        return outboxRecord;
+    }
+
+    /**
+     * The records after the given sequence that have not been relayed yet, oldest first.
+     */
+    public synchronized List<OutboxRecord> getUnrelayedRecordsAfter(long sequence) {
+        List<OutboxRecord> outboxRecords = new ArrayList<>();
+        for (OutboxRecord outboxRecord : this.unrelayedRecords) {
+            if (outboxRecord.getSequence() > sequence) {
+                outboxRecords.add(outboxRecord);
+            }
+        }
+        return outboxRecords;
+    }
+
+    /**
+     * Records that every record up to and including the sequence has been relayed to the broker.
+     */
+    public synchronized void markRelayed(long sequence) {
+        if (sequence <= this.relayedSequence) {
+            return;
+        }
+        this.relayedSequence = sequence;
+        while (!this.unrelayedRecords.isEmpty() && this.unrelayedRecords.peekFirst().getSequence() <= sequence) {
+            this.unrelayedRecords.pollFirst();
+        }
+        this.log.putLong(RELAYED_SEQUENCE_OFFSET, sequence);
+        this.log.force();
+    }
+
+    public synchronized long getRelayedSequence() {
+        return this.relayedSequence;
+    }
+
+    public synchronized int getBacklog() {
+        return this.unrelayedRecords.size();
+    }
+
+    public synchronized long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    private void recover() {
+        this.relayedSequence = this.log.getLong(RELAYED_SEQUENCE_OFFSET);
+        this.lastSequence = this.relayedSequence;
+        this.unrelayedRecords.clear();
+        int position = HEADER_SIZE;
+        long recoveredAt = System.nanoTime();
+        boolean firstRecord = true;
+        while (position + RECORD_SIZE <= this.capacityBytes) {
+            OutboxRecord outboxRecord = readRecord(this.log, position, recoveredAt);
+            // after a compaction the first record follows the relayed sequence, every other record its predecessor
+            if (outboxRecord == null || (!firstRecord && outboxRecord.getSequence() != this.lastSequence + 1)) {
+                break;
+            }
+            if (outboxRecord.getSequence() > this.relayedSequence) {
+                this.unrelayedRecords.addLast(outboxRecord);
+            }
+            this.lastSequence = outboxRecord.getSequence();
+            firstRecord = false;
+            position += RECORD_SIZE;
+        }
+        this.appendPosition = position;
+        if (!this.unrelayedRecords.isEmpty()) {
+            LOGGER.info("Recovered {} security config change(s) from the outbox that have not been published yet.", this.unrelayedRecords.size());
+        }
+    }
+
+    /**
+     * Rewrites the log with only the records that have not been relayed yet to a temporary file that then replaces the
+     * log in a single rename.
+     */
+    private void compact() {
+        int maxRecords = (this.capacityBytes - HEADER_SIZE) / RECORD_SIZE - 1;
+        while (this.unrelayedRecords.size() > maxRecords) {
+            OutboxRecord droppedRecord = this.unrelayedRecords.pollFirst();
+            this.relayedSequence = droppedRecord.getSequence();
+            this.droppedCount++;
+            LOGGER.warn("The security config outbox is full, dropped the unpublished security config version {}.", droppedRecord.getVersionedSecurityConfig().getVersion());
+        }
+        Path outboxPath = new File(this.outboxFileName).toPath();
+        Path compactedOutboxPath = new File(this.outboxFileName + ".tmp").toPath();
+        try {
+            Files.deleteIfExists(compactedOutboxPath);
+            MappedByteBuffer compactedLog = map(compactedOutboxPath);
+            writeHeader(compactedLog, this.relayedSequence);
+            int position = HEADER_SIZE;
+            for (OutboxRecord outboxRecord : this.unrelayedRecords) {
+                writeRecord(compactedLog, position, outboxRecord);
+                position += RECORD_SIZE;
+            }
+            compactedLog.force();
+            Files.move(compactedOutboxPath, outboxPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            this.log = compactedLog;
+            this.appendPosition = position;
+        } catch (IOException ioException) {
+            throw new SecurityConfigFileException(String.format(
+                    "Could not compact the security config outbox %s due to an IOException with message \"%s\".",
+                    this.outboxFileName,
+                    ioException.getMessage()));
+        }
+    }
+
+    private MappedByteBuffer map(Path outboxPath) throws IOException {
+        try (FileChannel outboxChannel = FileChannel.open(outboxPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return outboxChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacityBytes);
+        }
+    }
+
+    private static void writeHeader(ByteBuffer log, long relayedSequence) {
+        log.putInt(0, FILE_MAGIC);
+        log.putInt(4, FORMAT_VERSION);
+        log.putLong(RELAYED_SEQUENCE_OFFSET, relayedSequence);
+    }
+
+    private static void writeRecord(ByteBuffer log, int position, OutboxRecord outboxRecord) {
+        VersionedSecurityConfig versionedSecurityConfig = outboxRecord.getVersionedSecurityConfig();
+        log.putInt(position, RECORD_MARKER);
+        log.putLong(position + 4, outboxRecord.getSequence());
+        log.putLong(position + 12, versionedSecurityConfig.getVersion());
+        log.put(position + 20, (byte) versionedSecurityConfig.getSecurityStatus().ordinal());
+        log.put(position + 21, (byte) versionedSecurityConfig.getSecurityState().ordinal());
+        log.putInt(position + 22, checksum(log, position));
+    }
+
+    private static OutboxRecord readRecord(ByteBuffer log, int position, long recoveredAt) {
+        if (log.getInt(position) != RECORD_MARKER || log.getInt(position + 22) != checksum(log, position)) {
+            return null;
+        }
+        int securityStatusOrdinal = log.get(position + 20);
+        int securityStateOrdinal = log.get(position + 21);
+        if (securityStatusOrdinal >= SecurityStatus.values().length || securityStateOrdinal >= SecurityState.values().length) {
+            return null;
+        }
+        VersionedSecurityConfig versionedSecurityConfig = new VersionedSecurityConfig(
+                SecurityStatus.values()[securityStatusOrdinal],
+                SecurityState.values()[securityStateOrdinal],
+                log.getLong(position + 12));
+        return new OutboxRecord(log.getLong(position + 4), versionedSecurityConfig, recoveredAt);
+    }
+
+    private static int checksum(ByteBuffer log, int position) {
+        CRC32 crc32 = new CRC32();
+        for (int offset = 0; offset < RECORD_SIZE - 4; offset++) {
+            crc32.update(log.get(position + offset));
+        }
+        return (int) crc32.getValue();
+    }
+}
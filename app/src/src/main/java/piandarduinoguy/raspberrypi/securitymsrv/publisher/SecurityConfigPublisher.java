@@ -1,24 +1,341 @@
 package piandarduinoguy.raspberrypi.securitymsrv.publisher;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PublisherStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.event.SecurityConfigChangedEvent;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relays the security config changes appended to the {@link SecurityConfigOutbox} to the broker from a dedicated relay
+ * thread, so that the request threads never wait on the broker and a change survives a broker outage or a restart.
+ * The changes are relayed in the order they were appended. Only the latest security config matters to the subscribers,
+ * so when coalescing only the newest of the changes waiting to be relayed is sent. Every message is sent with
+ * correlated publisher confirms and a bounded number of messages may be unconfirmed at a time. The outbox position only
+ * moves past a change once it and every change before it is confirmed; a message that is nacked, not confirmed in time
+ * or can not be sent is relayed again, together with the changes after it, once the retry delay has passed.
+ * <p>
+ * A security config that is the same as, or older than, the last one handed to the publisher is suppressed before it
+ * reaches the outbox, so that an unchanged state never wakes up the subscribers.
+ * <p>
+ * The confirm lag and publish latency are timed and the outbox backlog, unconfirmed messages, suppressed changes and
+ * retries are exposed as meters besides the {@link PublisherStatistics}.
+ */
 @Service
 public class SecurityConfigPublisher {
-    @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityConfigPublisher.class);
+    private static final long OUTBOX_POLL_MILLIS = 100;
 
-    @Autowired
-    private FanoutExchange fanoutExchange;
+    private final RabbitTemplate rabbitTemplate;
+    private final FanoutExchange fanoutExchange;
+    private final Binding binding;
+    private final SecurityConfigOutbox securityConfigOutbox;
+    private final SecurityConfigEventCodec securityConfigEventCodec;
+    private final int maxUnconfirmed;
+    private final long retryDelayNanos;
+    private final long confirmTimeoutNanos;
+    private final boolean coalesce;
+    private final Timer confirmLagTimer;
+    private final Timer publishLatencyTimer;
+
+    private final Object publishLock = new Object();
+    private VersionedSecurityConfig lastPublishedSecurityConfig;
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    private final Object relayMonitor = new Object();
+    private final Map<String, UnconfirmedPublish> unconfirmedPublishes = new LinkedHashMap<>();
+    private long sentSequence = -1;
+    private long retryNotBefore;
+
+    private long publishedCount;
+    private long confirmedCount;
+    private long nackedCount;
+    private long retriedCount;
+    private long coalescedCount;
+    private long totalConfirmLagNanos;
+    private long maxConfirmLagNanos;
+    private long totalPublishLatencyNanos;
+    private long maxPublishLatencyNanos;
+
+    private Thread relayThread;
+    private volatile boolean shutdown;
 
     @Autowired
-    private Binding binding;
+    public SecurityConfigPublisher(RabbitTemplate rabbitTemplate,
+                                   FanoutExchange fanoutExchange,
+                                   Binding binding,
+                                   SecurityConfigOutbox securityConfigOutbox,
+                                   SecurityConfigEventCodec securityConfigEventCodec,
+                                   @Value("${security-config.publisher.max-unconfirmed}") int maxUnconfirmed,
+                                   @Value("${security-config.publisher.retry-delay-ms}") long retryDelayMillis,
+                                   @Value("${security-config.publisher.confirm-timeout-ms}") long confirmTimeoutMillis,
+                                   @Value("${security-config.publisher.coalesce}") boolean coalesce,
+                                   MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.fanoutExchange = fanoutExchange;
+        this.binding = binding;
+        this.securityConfigOutbox = securityConfigOutbox;
+        this.securityConfigEventCodec = securityConfigEventCodec;
+        this.maxUnconfirmed = maxUnconfirmed;
+        this.retryDelayNanos = TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+        this.confirmTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        this.coalesce = coalesce;
+        this.confirmLagTimer = meterRegistry.timer("security.config.publish.confirm-lag");
+        this.publishLatencyTimer = meterRegistry.timer("security.config.publish.latency");
+        Gauge.builder("security.config.outbox.backlog", securityConfigOutbox, SecurityConfigOutbox::getBacklog).register(meterRegistry);
+        Gauge.builder("security.config.publish.unconfirmed", this, securityConfigPublisher -> securityConfigPublisher.getStatistics().getUnconfirmed()).register(meterRegistry);
+        FunctionCounter.builder("security.config.publish.suppressed", this.suppressedCount, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("security.config.publish.retried", this, securityConfigPublisher -> securityConfigPublisher.getStatistics().getRetried()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        this.rabbitTemplate.setConfirmCallback(this::confirm);
+        this.relayThread = new Thread(this::relayOutbox, "security-config-publisher");
+        this.relayThread.setDaemon(true);
+        this.relayThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.shutdown = true;
+        if (this.relayThread != null) {
+            this.relayThread.interrupt();
+        }
+    }
+
+    @EventListener
+    public void onSecurityConfigChanged(SecurityConfigChangedEvent securityConfigChangedEvent) {
+        publishSecurityConfig(securityConfigChangedEvent.getVersionedSecurityConfig());
+    }
+
+    /**
+     * Appends the security config to the outbox and returns as soon as it is durable, without waiting on the broker.
+     * Nothing is appended when the security config is unchanged or a newer one has already been appended.
+     */
+    public void publishSecurityConfig(VersionedSecurityConfig versionedSecurityConfig) {
+        synchronized (this.publishLock) {
+            if (isUnchangedOrStale(versionedSecurityConfig)) {
+                this.suppressedCount.incrementAndGet();
+                return;
+            }
+            this.securityConfigOutbox.append(versionedSecurityConfig);
+            this.lastPublishedSecurityConfig = versionedSecurityConfig;
+        }
+        synchronized (this.relayMonitor) {
+            this.relayMonitor.notifyAll();
+        }
+    }
+
+    public PublisherStatistics getStatistics() {
+        synchronized (this.relayMonitor) {
+            return new PublisherStatistics(
+                    this.publishedCount,
+                    this.confirmedCount,
+                    this.nackedCount,
+                    this.retriedCount,
+                    this.coalescedCount,
+                    this.unconfirmedPublishes.size(),
+                    averageMillis(this.totalConfirmLagNanos, this.confirmedCount),
+                    TimeUnit.NANOSECONDS.toMillis(this.maxConfirmLagNanos),
+                    averageMillis(this.totalPublishLatencyNanos, this.confirmedCount),
+                    TimeUnit.NANOSECONDS.toMillis(this.maxPublishLatencyNanos),
+                    this.securityConfigOutbox.getBacklog(),
+                    this.securityConfigOutbox.getDroppedCount(),
+                    this.suppressedCount.get());
+        }
+    }
+
+    private void relayOutbox() {
+        while (!this.shutdown) {
+            OutboxRecord outboxRecord;
+            synchronized (this.relayMonitor) {
+                long now = System.nanoTime();
+                retryUnconfirmedPublishesPastTimeout(now);
+                if (this.sentSequence < 0) {
+                    this.sentSequence = this.securityConfigOutbox.getRelayedSequence();
+                }
+                outboxRecord = this.unconfirmedPublishes.size() < this.maxUnconfirmed && now - this.retryNotBefore >= 0
+                        ? nextOutboxRecord()
+                        : null;
+                if (outboxRecord == null) {
+                    try {
+                        this.relayMonitor.wait(OUTBOX_POLL_MILLIS);
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    continue;
+                }
+                this.sentSequence = outboxRecord.getSequence();
+            }
+            send(outboxRecord);
+        }
+    }
+
+    /**
+     * The next record to send after the ones already sent, or the newest of them when coalescing. Must be called
+     * holding the relay monitor.
+     */
+    private OutboxRecord nextOutboxRecord() {
+        List<OutboxRecord> outboxRecords = this.securityConfigOutbox.getUnrelayedRecordsAfter(this.sentSequence);
+        if (outboxRecords.isEmpty()) {
+            return null;
+        }
+        if (this.coalesce) {
+            this.coalescedCount += outboxRecords.size() - 1;
+            return outboxRecords.get(outboxRecords.size() - 1);
+        }
+        return outboxRecords.get(0);
+    }
+
+    private void send(OutboxRecord outboxRecord) {
+        CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
+        VersionedSecurityConfig versionedSecurityConfig = outboxRecord.getVersionedSecurityConfig();
+        synchronized (this.relayMonitor) {
+            this.unconfirmedPublishes.put(correlationData.getId(), new UnconfirmedPublish(outboxRecord, System.nanoTime()));
+            this.publishedCount++;
+        }
+        try {
+            this.rabbitTemplate.send(this.fanoutExchange.getName(), this.binding.getRoutingKey(), this.securityConfigEventCodec.encode(outboxRecord), correlationData);
+        } catch (AmqpException amqpException) {
+            LOGGER.warn("Could not publish security config version {}, it will be retried.", versionedSecurityConfig.getVersion(), amqpException);
+            synchronized (this.relayMonitor) {
+                retryFrom(correlationData.getId());
+            }
+        }
+    }
+
+    private void confirm(CorrelationData correlationData, boolean ack, String cause) {
+        if (correlationData == null) {
+            return;
+        }
+        synchronized (this.relayMonitor) {
+            UnconfirmedPublish unconfirmedPublish = this.unconfirmedPublishes.get(correlationData.getId());
+            if (unconfirmedPublish == null) {
+                return;
+            }
+            if (ack) {
+                long now = System.nanoTime();
+                long confirmLagNanos = now - unconfirmedPublish.sentAt;
+                long publishLatencyNanos = now - unconfirmedPublish.outboxRecord.getAppendedAt();
+                this.confirmedCount++;
+                this.totalConfirmLagNanos += confirmLagNanos;
+                this.maxConfirmLagNanos = Math.max(this.maxConfirmLagNanos, confirmLagNanos);
+                this.totalPublishLatencyNanos += publishLatencyNanos;
+                this.maxPublishLatencyNanos = Math.max(this.maxPublishLatencyNanos, publishLatencyNanos);
+                this.confirmLagTimer.record(confirmLagNanos, TimeUnit.NANOSECONDS);
+                this.publishLatencyTimer.record(publishLatencyNanos, TimeUnit.NANOSECONDS);
+                unconfirmedPublish.acked = true;
+                markConfirmedPrefixRelayed();
+            } else {
+                this.nackedCount++;
+                LOGGER.warn("The broker nacked security config version {} with cause \"{}\".", unconfirmedPublish.outboxRecord.getVersionedSecurityConfig().getVersion(), cause);
+                retryFrom(correlationData.getId());
+            }
+            this.relayMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Moves the outbox position past the sent records that are confirmed along with every record sent before them.
+     * Records skipped by coalescing are relayed with the newer record that was sent in their place.
+     */
+    private void markConfirmedPrefixRelayed() {
+        long relayedSequence = -1;
+        Iterator<UnconfirmedPublish> unconfirmedPublishIterator = this.unconfirmedPublishes.values().iterator();
+        while (unconfirmedPublishIterator.hasNext()) {
+            UnconfirmedPublish unconfirmedPublish = unconfirmedPublishIterator.next();
+            if (!unconfirmedPublish.acked) {
+                break;
+            }
+            unconfirmedPublishIterator.remove();
+            relayedSequence = unconfirmedPublish.outboxRecord.getSequence();
+        }
+        if (relayedSequence >= 0) {
+            this.securityConfigOutbox.markRelayed(relayedSequence);
+        }
+    }
+
+    private void retryUnconfirmedPublishesPastTimeout(long now) {
+        for (Map.Entry<String, UnconfirmedPublish> unconfirmedPublishEntry : this.unconfirmedPublishes.entrySet()) {
+            UnconfirmedPublish unconfirmedPublish = unconfirmedPublishEntry.getValue();
+            if (!unconfirmedPublish.acked && now - unconfirmedPublish.sentAt - this.confirmTimeoutNanos > 0) {
+                LOGGER.warn("Security config version {} was not confirmed in time, it will be retried.", unconfirmedPublish.outboxRecord.getVersionedSecurityConfig().getVersion());
+                retryFrom(unconfirmedPublishEntry.getKey());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets the failed publish and every publish sent after it, so that they are sent again in order after the retry
+     * delay. A late confirm for any of them is ignored. Must be called holding the relay monitor.
+     */
+    private void retryFrom(String correlationId) {
+        if (!this.unconfirmedPublishes.containsKey(correlationId)) {
+            return;
+        }
+        long lastKeptSequence = this.securityConfigOutbox.getRelayedSequence();
+        boolean failedPublishReached = false;
+        Iterator<Map.Entry<String, UnconfirmedPublish>> unconfirmedPublishIterator = this.unconfirmedPublishes.entrySet().iterator();
+        while (unconfirmedPublishIterator.hasNext()) {
+            Map.Entry<String, UnconfirmedPublish> unconfirmedPublishEntry = unconfirmedPublishIterator.next();
+            failedPublishReached = failedPublishReached || unconfirmedPublishEntry.getKey().equals(correlationId);
+            if (failedPublishReached) {
+                unconfirmedPublishIterator.remove();
+            } else {
+                lastKeptSequence = unconfirmedPublishEntry.getValue().outboxRecord.getSequence();
+            }
+        }
+        this.sentSequence = lastKeptSequence;
+        this.retryNotBefore = System.nanoTime() + this.retryDelayNanos;
+        this.retriedCount++;
+    }
+
+    private boolean isUnchangedOrStale(VersionedSecurityConfig versionedSecurityConfig) {
+        VersionedSecurityConfig lastSecurityConfig = this.lastPublishedSecurityConfig;
+        return lastSecurityConfig != null
+                && (versionedSecurityConfig.getVersion() <= lastSecurityConfig.getVersion()
+                || (versionedSecurityConfig.getSecurityStatus() == lastSecurityConfig.getSecurityStatus()
+                && versionedSecurityConfig.getSecurityState() == lastSecurityConfig.getSecurityState()));
+    }
+
+    private static double averageMillis(long totalNanos, long count) {
+        return count == 0 ? 0 : totalNanos / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static class UnconfirmedPublish {
+        private final OutboxRecord outboxRecord;
+        private final long sentAt;
+        private boolean acked;
 
-    public void publishSecurityConfig(SecurityConfig securityConfig){
-        rabbitTemplate.convertAndSend(fanoutExchange.getName(),binding.getRoutingKey(),securityConfig);
+        private UnconfirmedPublish(OutboxRecord outboxRecord, long sentAt) {
+            this.outboxRecord = outboxRecord;
+            this.sentAt = sentAt;
+        }
     }
 }
@@ -0,0 +1,126 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.AnnotatedImage;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.event.AnnotatedImagePublishedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Owns the latest annotated image of every camera, which is kept in memory as it came back from the detection; the only
+ * frames written to disk are those the evidence store retains. Every annotation published by a detection gets the next
+ * sequence number, which identifies the version of the annotated image to clients, and is published as one immutable
+ * snapshot of its bytes and version, a detection that finishes after a later one of the same camera not replacing it.
+ * The base64 encoded form of an annotated image is cached until a new annotation of its camera is published. Asking for
+ * the annotated image without a camera gets the one most recently published by any camera.
+ */
+@Service
+public class AnnotatedImageService {
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    private final long bootTimestamp = System.currentTimeMillis();
+
+    private final AtomicLong annotationSequence = new AtomicLong();
+
+    private final Map<String, CameraAnnotatedImage> cameraAnnotatedImages = new ConcurrentHashMap<>();
+
+    private final AtomicReference<AnnotatedImage> latestAnnotatedImage = new AtomicReference<>();
+
+    /**
+     * Replaces the annotated image of the camera with the one a detection handed back and announces the new annotated
+     * image.
+     */
+    public void publishAnnotatedImage(String cameraId, byte[] annotatedImage) {
+        ValidationUtil.validateCameraId(cameraId);
+        CameraAnnotatedImage cameraAnnotatedImage = this.cameraAnnotatedImages.computeIfAbsent(cameraId, annotatedCameraId -> new CameraAnnotatedImage());
+        long sequence = this.annotationSequence.incrementAndGet();
+        AnnotatedImage publishedAnnotatedImage = new AnnotatedImage(cameraId, sequence,
+                String.format("\"%d-%d\"", this.bootTimestamp, sequence), System.currentTimeMillis(), annotatedImage);
+        if (cameraAnnotatedImage.annotatedImage.accumulateAndGet(publishedAnnotatedImage, AnnotatedImageService::latestOf) != publishedAnnotatedImage) {
+            return;
+        }
+        this.latestAnnotatedImage.accumulateAndGet(publishedAnnotatedImage, AnnotatedImageService::latestOf);
+        this.applicationEventPublisher.publishEvent(new AnnotatedImagePublishedEvent(
+                cameraId, publishedAnnotatedImage.getEtag(), publishedAnnotatedImage.getTimestamp()));
+    }
+
+    public String getLatestCameraId() {
+        AnnotatedImage annotatedImage = this.latestAnnotatedImage.get();
+        return annotatedImage == null ? SecurityCheck.DEFAULT_CAMERA_ID : annotatedImage.getCameraId();
+    }
+
+    /**
+     * The latest annotated image of the camera, or of any camera if no camera is given, with the entity tag that changes
+     * with every published annotation, including across restarts of the service.
+     */
+    public AnnotatedImage getAnnotatedImage(String cameraId) {
+        AnnotatedImage annotatedImage;
+        String resolvedCameraId = cameraId;
+        if (cameraId == null) {
+            annotatedImage = this.latestAnnotatedImage.get();
+            resolvedCameraId = SecurityCheck.DEFAULT_CAMERA_ID;
+        } else {
+            ValidationUtil.validateCameraId(cameraId);
+            CameraAnnotatedImage cameraAnnotatedImage = this.cameraAnnotatedImages.get(cameraId);
+            annotatedImage = cameraAnnotatedImage == null ? null : cameraAnnotatedImage.annotatedImage.get();
+        }
+        if (annotatedImage == null) {
+            throw new ImageFileException(String.format(
+                    "No annotated image of camera %s has been published since the service started.", resolvedCameraId), HttpStatus.NOT_FOUND);
+        }
+        return annotatedImage;
+    }
+
+    public Resource getAnnotatedImageResource(String cameraId) {
+        return new ByteArrayResource(getAnnotatedImage(cameraId).getImage());
+    }
+
+    public String getBase64AnnotatedImage(String cameraId) {
+        AnnotatedImage annotatedImage = getAnnotatedImage(cameraId);
+        CameraAnnotatedImage cameraAnnotatedImage = this.cameraAnnotatedImages.get(annotatedImage.getCameraId());
+        EncodedAnnotatedImage cachedEncodedAnnotatedImage = cameraAnnotatedImage.encodedAnnotatedImage.get();
+        if (cachedEncodedAnnotatedImage != null && cachedEncodedAnnotatedImage.annotationSequence == annotatedImage.getSequence()) {
+            return cachedEncodedAnnotatedImage.base64EncodedImage;
+        }
+        String base64EncodedImage = Base64.getEncoder().encodeToString(annotatedImage.getImage());
+        // an annotation published while encoding must not be shadowed by the older encoding
+        if (cachedEncodedAnnotatedImage == null || cachedEncodedAnnotatedImage.annotationSequence < annotatedImage.getSequence()) {
+            cameraAnnotatedImage.encodedAnnotatedImage.compareAndSet(cachedEncodedAnnotatedImage,
+                    new EncodedAnnotatedImage(annotatedImage.getSequence(), base64EncodedImage));
+        }
+        return base64EncodedImage;
+    }
+
+    private static AnnotatedImage latestOf(AnnotatedImage currentAnnotatedImage, AnnotatedImage publishedAnnotatedImage) {
+        return currentAnnotatedImage == null || currentAnnotatedImage.getSequence() < publishedAnnotatedImage.getSequence()
+                ? publishedAnnotatedImage : currentAnnotatedImage;
+    }
+
+    private static final class CameraAnnotatedImage {
+        private final AtomicReference<AnnotatedImage> annotatedImage = new AtomicReference<>();
+        private final AtomicReference<EncodedAnnotatedImage> encodedAnnotatedImage = new AtomicReference<>();
+    }
+
+    private static class EncodedAnnotatedImage {
+        private final long annotationSequence;
+        private final String base64EncodedImage;
+
+        private EncodedAnnotatedImage(long annotationSequence, String base64EncodedImage) {
+            this.annotationSequence = annotationSequence;
+            this.base64EncodedImage = base64EncodedImage;
+        }
+    }
+}
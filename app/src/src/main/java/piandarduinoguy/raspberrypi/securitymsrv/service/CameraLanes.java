@@ -0,0 +1,145 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A queue of its own for every camera, drained by weighted round robin: the lane at the head of the rotation is served
+ * until it has had as many turns as its weight, or is empty, and then the next lane gets its turn. A camera that sends
+ * more frames than the others therefore only ever fills its own lane and can not hold back the frames of other cameras.
+ * <p>
+ * Not thread safe, the owner synchronizes on it.
+ */
+final class CameraLanes<T> {
+    private final Map<String, Integer> cameraWeights;
+    private final Map<String, CameraLane<T>> lanes = new HashMap<>();
+    private final Deque<CameraLane<T>> rotation = new ArrayDeque<>();
+
+    private long nextSequence;
+    private int size;
+
+    CameraLanes(Map<String, Integer> cameraWeights) {
+        this.cameraWeights = cameraWeights;
+    }
+
+    void addLast(String cameraId, T element) {
+        CameraLane<T> lane = this.lanes.computeIfAbsent(cameraId, laneCameraId -> new CameraLane<>(this.cameraWeights.getOrDefault(laneCameraId, 1)));
+        if (lane.elements.isEmpty()) {
+            this.rotation.addLast(lane);
+        }
+        lane.elements.addLast(new LaneElement<>(this.nextSequence++, element));
+        this.size++;
+    }
+
+    /**
+     * The next element in weighted round robin order, or null if every lane is empty.
+     */
+    T pollNext() {
+        CameraLane<T> lane = this.rotation.peekFirst();
+        if (lane == null) {
+            return null;
+        }
+        T element = lane.elements.pollFirst().element;
+        this.size--;
+        lane.turns++;
+        if (lane.elements.isEmpty()) {
+            this.rotation.pollFirst();
+            lane.turns = 0;
+        } else if (lane.turns >= lane.weight) {
+            this.rotation.addLast(this.rotation.pollFirst());
+            lane.turns = 0;
+        }
+        return element;
+    }
+
+    /**
+     * Removes and returns the oldest element of the camera with the most elements queued, the oldest overall if several
+     * cameras have as many.
+     */
+    T pollOldestOfLongestLane() {
+        CameraLane<T> longestLane = null;
+        for (CameraLane<T> lane : this.rotation) {
+            if (longestLane == null
+                    || lane.elements.size() > longestLane.elements.size()
+                    || (lane.elements.size() == longestLane.elements.size() && lane.elements.peekFirst().sequence < longestLane.elements.peekFirst().sequence)) {
+                longestLane = lane;
+            }
+        }
+        return longestLane == null ? null : removeFirst(longestLane);
+    }
+
+    T pollFirst(String cameraId) {
+        CameraLane<T> lane = this.lanes.get(cameraId);
+        return lane == null || lane.elements.isEmpty() ? null : removeFirst(lane);
+    }
+
+    /**
+     * Removes and returns the first element matching the filter, or null if none does.
+     */
+    T removeFirstMatching(Predicate<T> filter) {
+        for (CameraLane<T> lane : this.rotation) {
+            Iterator<LaneElement<T>> laneElementIterator = lane.elements.iterator();
+            while (laneElementIterator.hasNext()) {
+                T element = laneElementIterator.next().element;
+                if (filter.test(element)) {
+                    laneElementIterator.remove();
+                    this.size--;
+                    leaveRotationIfEmpty(lane);
+                    return element;
+                }
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int size(String cameraId) {
+        CameraLane<T> lane = this.lanes.get(cameraId);
+        return lane == null ? 0 : lane.elements.size();
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private T removeFirst(CameraLane<T> lane) {
+        T element = lane.elements.pollFirst().element;
+        this.size--;
+        leaveRotationIfEmpty(lane);
+        return element;
+    }
+
+    private void leaveRotationIfEmpty(CameraLane<T> lane) {
+        if (lane.elements.isEmpty()) {
+            this.rotation.remove(lane);
+            lane.turns = 0;
+        }
+    }
+
+    private static final class CameraLane<T> {
+        private final int weight;
+        private final Deque<LaneElement<T>> elements = new ArrayDeque<>();
+        private int turns;
+
+        private CameraLane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final class LaneElement<T> {
+        private final long sequence;
+        private final T element;
+
+        private LaneElement(long sequence, T element) {
+            this.sequence = sequence;
+            this.element = element;
+        }
+    }
+}
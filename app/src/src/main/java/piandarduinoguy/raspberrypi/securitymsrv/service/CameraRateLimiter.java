@@ -0,0 +1,122 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityCheckRejectedException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which every camera may submit frames with a token bucket per camera that holds up to the burst of
+ * frames and is refilled at the configured frames per second, a rate of 0 turning the limit off. A bucket that has
+ * refilled to the burst is no different from a new one, so once buckets are kept for the maximum number of cameras
+ * the full ones are evicted to make room for another camera, and only a camera too many while all of them are sending
+ * is rejected.
+ */
+@Component
+public class CameraRateLimiter {
+    private final double framesPerSecond;
+    private final int burst;
+    private final int maxCameras;
+
+    private final Map<String, TokenBucket> tokenBuckets = new ConcurrentHashMap<>();
+
+    public CameraRateLimiter(@Value("${security-check.cameras.rate-limit.frames-per-second}") double framesPerSecond,
+                             @Value("${security-check.cameras.rate-limit.burst}") int burst,
+                             @Value("${security-check.cameras.max}") int maxCameras) {
+        this.framesPerSecond = framesPerSecond;
+        this.burst = burst;
+        this.maxCameras = maxCameras;
+    }
+
+    /**
+     * Takes a frame from the bucket of the camera, rejecting the frame if the camera exceeded its rate or is a camera too
+     * many. Without a rate limit no bucket is kept and every frame is accepted.
+     */
+    public void acquire(String cameraId) {
+        if (this.framesPerSecond <= 0) {
+            return;
+        }
+        while (true) {
+            TokenBucket tokenBucket = this.tokenBuckets.get(cameraId);
+            if (tokenBucket == null) {
+                tokenBucket = addTokenBucket(cameraId);
+            }
+            synchronized (tokenBucket) {
+                // evicted after it was looked up, the camera starts over with a new bucket
+                if (tokenBucket.evicted) {
+                    continue;
+                }
+                if (!tokenBucket.tryTake(System.nanoTime(), this.framesPerSecond, this.burst)) {
+                    throw new SecurityCheckRejectedException(String.format(
+                            "Camera %s exceeded its rate limit of %s frames per second, try again later.", cameraId, this.framesPerSecond));
+                }
+                return;
+            }
+        }
+    }
+
+    public int getCameraCount() {
+        return this.tokenBuckets.size();
+    }
+
+    private TokenBucket addTokenBucket(String cameraId) {
+        synchronized (this.tokenBuckets) {
+            TokenBucket tokenBucket = this.tokenBuckets.get(cameraId);
+            if (tokenBucket != null) {
+                return tokenBucket;
+            }
+            if (this.tokenBuckets.size() >= this.maxCameras) {
+                long now = System.nanoTime();
+                this.tokenBuckets.values().removeIf(idleTokenBucket -> idleTokenBucket.evictIfFull(now, this.framesPerSecond, this.burst));
+            }
+            if (this.tokenBuckets.size() >= this.maxCameras) {
+                throw new SecurityCheckRejectedException(String.format(
+                        "Camera %s was rejected as security checks are already accepted from %d cameras.", cameraId, this.maxCameras),
+                        HttpStatus.FORBIDDEN);
+            }
+            tokenBucket = new TokenBucket(this.burst);
+            this.tokenBuckets.put(cameraId, tokenBucket);
+            return tokenBucket;
+        }
+    }
+
+    /**
+     * Guarded by its own monitor.
+     */
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private boolean evicted;
+
+        private TokenBucket(int burst) {
+            this.tokens = burst;
+        }
+
+        private boolean tryTake(long now, double framesPerSecond, int burst) {
+            refill(now, framesPerSecond, burst);
+            if (this.tokens < 1) {
+                return false;
+            }
+            this.tokens--;
+            return true;
+        }
+
+        private synchronized boolean evictIfFull(long now, double framesPerSecond, int burst) {
+            refill(now, framesPerSecond, burst);
+            this.evicted = this.tokens >= burst;
+            return this.evicted;
+        }
+
+        private void refill(long now, double framesPerSecond, int burst) {
+            // a frame taken after the caller read the clock must not move the refill time back
+            if (now > this.refilledAt) {
+                this.tokens = Math.min(burst, this.tokens + (now - this.refilledAt) * framesPerSecond / TimeUnit.SECONDS.toNanos(1));
+                this.refilledAt = now;
+            }
+        }
+    }
+}
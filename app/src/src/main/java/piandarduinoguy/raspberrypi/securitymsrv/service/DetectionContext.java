@@ -0,0 +1,23 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import lombok.Getter;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single security check as seen by a person detector. The frame and its annotated image are handed to and from the
+ * detector in memory, so a check leaves no files behind. The detection is run on the regions of interest of the camera
+ * the frame came from.
+ */
+@Getter
+public class DetectionContext {
+    private final String id;
+    private final List<DetectionRegion> detectionRegions;
+
+    public DetectionContext(List<DetectionRegion> detectionRegions) {
+        this.id = UUID.randomUUID().toString();
+        this.detectionRegions = detectionRegions;
+    }
+}
@@ -0,0 +1,120 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The regions of interest of every camera, read once at start up from the regions file, a JSON object with the regions
+ * of a camera under its camera id. Only the regions of a camera are detected on, each with its own confidence and non
+ * maxima suppression thresholds, the configured thresholds being used by a region without thresholds of its own. A
+ * camera without regions, or every camera when there is no regions file, is detected on as a single full frame region
+ * with the configured thresholds.
+ */
+@Component
+public class DetectionRegions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DetectionRegions.class);
+    private static final ObjectMapper REGIONS_MAPPER = new ObjectMapper();
+    private static final String FULL_FRAME_REGION_NAME = "full-frame";
+    // leaves room for fractions like 0.7 and 0.3 that do not add up to exactly 1 in floating point
+    private static final double FRAME_EDGE_TOLERANCE = 1e-9;
+
+    private final Map<String, List<DetectionRegion>> cameraDetectionRegions;
+    private final List<DetectionRegion> fullFrameDetectionRegions;
+
+    @Autowired
+    public DetectionRegions(@Value("${yolo.person-detector.regions.file}") String regionsFile,
+                            @Value("${yolo.person-detector.threshold.confidence}") float confidenceThreshold,
+                            @Value("${yolo.person-detector.threshold.non_maxima_suppression}") float nonMaximaSuppressionThreshold) {
+        validateThreshold("confidence", confidenceThreshold);
+        validateThreshold("non maxima suppression", nonMaximaSuppressionThreshold);
+        this.fullFrameDetectionRegions = Collections.singletonList(
+                new DetectionRegion(FULL_FRAME_REGION_NAME, 0, 0, 1, 1, confidenceThreshold, nonMaximaSuppressionThreshold));
+        this.cameraDetectionRegions = readRegionsFile(new File(regionsFile), confidenceThreshold, nonMaximaSuppressionThreshold);
+    }
+
+    /**
+     * The regions of interest of the camera with their thresholds filled in, or the full frame region.
+     */
+    public List<DetectionRegion> of(String cameraId) {
+        return this.cameraDetectionRegions.getOrDefault(cameraId, this.fullFrameDetectionRegions);
+    }
+
+    /**
+     * The ids of the cameras with regions of interest of their own.
+     */
+    public Set<String> getCameraIds() {
+        return Collections.unmodifiableSet(this.cameraDetectionRegions.keySet());
+    }
+
+    private static Map<String, List<DetectionRegion>> readRegionsFile(File regionsFile, float confidenceThreshold, float nonMaximaSuppressionThreshold) {
+        if (!regionsFile.exists()) {
+            LOGGER.info("There is no detection regions file {}, every camera is detected on as a full frame.", regionsFile.getPath());
+            return Collections.emptyMap();
+        }
+        Map<String, List<DetectionRegion>> configuredRegions;
+        try {
+            configuredRegions = REGIONS_MAPPER.readValue(regionsFile, new TypeReference<Map<String, List<DetectionRegion>>>() {
+            });
+        } catch (IOException ioException) {
+            throw new IllegalArgumentException(String.format(
+                    "The detection regions file %s could not be read with message \"%s\".", regionsFile.getPath(), ioException.getMessage()));
+        }
+        Map<String, List<DetectionRegion>> cameraDetectionRegions = new HashMap<>();
+        configuredRegions.forEach((cameraId, detectionRegions) -> {
+            ValidationUtil.validateCameraId(cameraId);
+            if (detectionRegions == null || detectionRegions.isEmpty()) {
+                return;
+            }
+            List<DetectionRegion> resolvedDetectionRegions = new ArrayList<>();
+            for (int region = 0; region < detectionRegions.size(); region++) {
+                resolvedDetectionRegions.add(resolve(cameraId, region, detectionRegions.get(region), confidenceThreshold, nonMaximaSuppressionThreshold));
+            }
+            cameraDetectionRegions.put(cameraId, Collections.unmodifiableList(resolvedDetectionRegions));
+        });
+        LOGGER.info("Read the detection regions of {} camera(s) from {}.", cameraDetectionRegions.size(), regionsFile.getPath());
+        return cameraDetectionRegions;
+    }
+
+    private static DetectionRegion resolve(String cameraId, int region, DetectionRegion detectionRegion, float confidenceThreshold, float nonMaximaSuppressionThreshold) {
+        if (detectionRegion.getX() < 0 || detectionRegion.getY() < 0 || detectionRegion.getWidth() <= 0 || detectionRegion.getHeight() <= 0
+                || detectionRegion.getX() + detectionRegion.getWidth() > 1 + FRAME_EDGE_TOLERANCE
+                || detectionRegion.getY() + detectionRegion.getHeight() > 1 + FRAME_EDGE_TOLERANCE) {
+            throw new IllegalArgumentException(String.format(
+                    "The detection region %s of camera %s does not lie within the frame, its x, y, width and height must be fractions of the frame.",
+                    detectionRegion.getName(), cameraId));
+        }
+        DetectionRegion resolvedDetectionRegion = new DetectionRegion(
+                detectionRegion.getName() == null ? String.format("region-%d", region + 1) : detectionRegion.getName(),
+                detectionRegion.getX(),
+                detectionRegion.getY(),
+                detectionRegion.getWidth(),
+                detectionRegion.getHeight(),
+                detectionRegion.getConfidence() == null ? confidenceThreshold : detectionRegion.getConfidence(),
+                detectionRegion.getNonMaximaSuppression() == null ? nonMaximaSuppressionThreshold : detectionRegion.getNonMaximaSuppression());
+        validateThreshold("confidence", resolvedDetectionRegion.getConfidence());
+        validateThreshold("non maxima suppression", resolvedDetectionRegion.getNonMaximaSuppression());
+        return resolvedDetectionRegion;
+    }
+
+    private static void validateThreshold(String thresholdName, float threshold) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException(String.format("The %s threshold %s is not between 0 and 1.", thresholdName, threshold));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Skips the detection of frames that show nothing new and reuses the detection result of the reference frame instead,
+ * the reference frame of a camera being the last of its frames that was detected. A frame the camera re-sends unchanged
+ * is recognised by the CRC32 of its bytes without being decoded. Any other frame is decoded at a reduced resolution into
+ * a grayscale thumbnail and a 64 bit difference hash; it shows nothing new when its hash is within the hash distance of
+ * that of the reference frame and no more than the changed pixel ratio of its thumbnail pixels differ by more than the
+ * pixel difference. Comparing with the reference frame rather than the previous frame means a slow change, such as a
+ * person creeping in, adds up until it is detected. A detection result is reused for at most max-reuse-ms.
+ * <p>
+ * The frames are counted by outcome: duplicate and unchanged frames were skipped, changed, first, expired and
+ * undecodable frames were detected.
+ */
+@Component
+public class FramePrefilter {
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    private static final int DECODE_OVERSAMPLING = 4;
+
+    private final boolean enabled;
+    private final int hashDistance;
+    private final int pixelDifference;
+    private final double changedPixelRatio;
+    private final int thumbnailSize;
+    private final long maxReuseMillis;
+
+    private final Map<String, ReferenceFrame> referenceFrames = new ConcurrentHashMap<>();
+
+    private final Counter duplicateFrames;
+    private final Counter unchangedFrames;
+    private final Counter changedFrames;
+    private final Counter firstFrames;
+    private final Counter expiredFrames;
+    private final Counter undecodableFrames;
+
+    public FramePrefilter(@Value("${yolo.person-detector.prefilter.enabled}") boolean enabled,
+                          @Value("${yolo.person-detector.prefilter.hash-distance}") int hashDistance,
+                          @Value("${yolo.person-detector.prefilter.pixel-difference}") int pixelDifference,
+                          @Value("${yolo.person-detector.prefilter.changed-pixel-ratio}") double changedPixelRatio,
+                          @Value("${yolo.person-detector.prefilter.thumbnail-size}") int thumbnailSize,
+                          @Value("${yolo.person-detector.prefilter.max-reuse-ms}") long maxReuseMillis,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.hashDistance = hashDistance;
+        this.pixelDifference = pixelDifference;
+        this.changedPixelRatio = changedPixelRatio;
+        this.thumbnailSize = thumbnailSize;
+        this.maxReuseMillis = maxReuseMillis;
+        this.duplicateFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "duplicate");
+        this.unchangedFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "unchanged");
+        this.changedFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "changed");
+        this.firstFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "first");
+        this.expiredFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "expired");
+        this.undecodableFrames = meterRegistry.counter("security.prefilter.frames", "outcome", "undecodable");
+        Gauge.builder("security.prefilter.skip.ratio", this, FramePrefilter::getSkipRatio).register(meterRegistry);
+    }
+
+    /**
+     * Fingerprints the frame and compares it with the reference frame of the camera. The detection result of the reference
+     * frame is reusable from the returned fingerprint if the frame shows nothing new, otherwise the frame is to be detected
+     * and its detection recorded.
+     */
+    public FrameFingerprint fingerprint(String cameraId, byte[] imageBytes) {
+        if (!this.enabled) {
+            return new FrameFingerprint(0, null, null, null);
+        }
+        long crc = crcOf(imageBytes);
+        ReferenceFrame referenceFrame = this.referenceFrames.get(cameraId);
+        boolean reusable = referenceFrame != null && System.currentTimeMillis() - referenceFrame.detectedAt <= this.maxReuseMillis;
+        if (reusable && referenceFrame.fingerprint.crc == crc) {
+            this.duplicateFrames.increment();
+            return new FrameFingerprint(crc, referenceFrame.fingerprint.hash, referenceFrame.fingerprint.thumbnail, referenceFrame.detectionResult);
+        }
+        byte[] thumbnail = decodeThumbnail(imageBytes);
+        if (thumbnail == null) {
+            this.undecodableFrames.increment();
+            return new FrameFingerprint(crc, null, null, null);
+        }
+        long hash = differenceHashOf(thumbnail);
+        if (referenceFrame == null) {
+            this.firstFrames.increment();
+        } else if (referenceFrame.fingerprint.thumbnail == null || !isUnchanged(referenceFrame.fingerprint, hash, thumbnail)) {
+            this.changedFrames.increment();
+        } else if (!reusable) {
+            this.expiredFrames.increment();
+        } else {
+            this.unchangedFrames.increment();
+            return new FrameFingerprint(crc, hash, thumbnail, referenceFrame.detectionResult);
+        }
+        return new FrameFingerprint(crc, hash, thumbnail, null);
+    }
+
+    /**
+     * Makes the detected frame the reference frame of the camera. A copy of its detection result is kept, so that the
+     * caller changing the result it holds does not change the result reused for the frames to come.
+     */
+    public void recordDetection(String cameraId, FrameFingerprint frameFingerprint, DetectionResult detectionResult) {
+        if (this.enabled) {
+            this.referenceFrames.put(cameraId, new ReferenceFrame(frameFingerprint, copyOf(detectionResult), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * The ratio of the frames fingerprinted so far whose detection was skipped.
+     */
+    public double getSkipRatio() {
+        double skippedFrames = this.duplicateFrames.count() + this.unchangedFrames.count();
+        double frames = skippedFrames + this.changedFrames.count() + this.firstFrames.count() + this.expiredFrames.count() + this.undecodableFrames.count();
+        return frames == 0 ? 0 : skippedFrames / frames;
+    }
+
+    private boolean isUnchanged(FrameFingerprint referenceFingerprint, long hash, byte[] thumbnail) {
+        if (Long.bitCount(referenceFingerprint.hash ^ hash) > this.hashDistance) {
+            return false;
+        }
+        int changedPixels = 0;
+        for (int pixel = 0; pixel < thumbnail.length; pixel++) {
+            if (Math.abs((thumbnail[pixel] & 0xff) - (referenceFingerprint.thumbnail[pixel] & 0xff)) > this.pixelDifference) {
+                changedPixels++;
+            }
+        }
+        return changedPixels <= this.changedPixelRatio * thumbnail.length;
+    }
+
+    /**
+     * Decodes the frame into a square grayscale thumbnail, reading only every so many pixels of a large frame, or returns
+     * null if the frame is not an image the JDK can decode.
+     */
+    private byte[] decodeThumbnail(byte[] imageBytes) {
+        BufferedImage image;
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+            if (!imageReaders.hasNext()) {
+                return null;
+            }
+            ImageReader imageReader = imageReaders.next();
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                int subsampling = Math.max(1, Math.min(imageReader.getWidth(0), imageReader.getHeight(0)) / (this.thumbnailSize * DECODE_OVERSAMPLING));
+                ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+                imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                image = imageReader.read(0, imageReadParam);
+            } finally {
+                imageReader.dispose();
+            }
+        } catch (IOException | RuntimeException decodeException) {
+            return null;
+        }
+        BufferedImage thumbnailImage = scaleToGray(image, this.thumbnailSize, this.thumbnailSize);
+        byte[] thumbnail = new byte[this.thumbnailSize * this.thumbnailSize];
+        thumbnailImage.getRaster().getDataElements(0, 0, this.thumbnailSize, this.thumbnailSize, thumbnail);
+        return thumbnail;
+    }
+
+    /**
+     * A hash whose every bit tells whether a pixel of the thumbnail scaled down to 9 by 8 pixels is brighter than its
+     * right neighbour, which survives the noise and re-encoding of a frame that did not change.
+     */
+    private long differenceHashOf(byte[] thumbnail) {
+        BufferedImage thumbnailImage = new BufferedImage(this.thumbnailSize, this.thumbnailSize, BufferedImage.TYPE_BYTE_GRAY);
+        thumbnailImage.getRaster().setDataElements(0, 0, this.thumbnailSize, this.thumbnailSize, thumbnail);
+        byte[] hashPixels = new byte[HASH_WIDTH * HASH_HEIGHT];
+        scaleToGray(thumbnailImage, HASH_WIDTH, HASH_HEIGHT).getRaster().getDataElements(0, 0, HASH_WIDTH, HASH_HEIGHT, hashPixels);
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash <<= 1;
+                if ((hashPixels[y * HASH_WIDTH + x] & 0xff) > (hashPixels[y * HASH_WIDTH + x + 1] & 0xff)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static BufferedImage scaleToGray(BufferedImage image, int width, int height) {
+        BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = grayImage.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return grayImage;
+    }
+
+    /**
+     * A copy of the persons of the detection result, which a reused result is, without the stages of a detection that did
+     * not run again.
+     */
+    private static DetectionResult copyOf(DetectionResult detectionResult) {
+        List<BoundingBox> boundingBoxes = new ArrayList<>();
+        for (BoundingBox boundingBox : detectionResult.getBoundingBoxes()) {
+            boundingBoxes.add(new BoundingBox(boundingBox.getX(), boundingBox.getY(), boundingBox.getWidth(), boundingBox.getHeight(), boundingBox.getConfidence()));
+        }
+        return new DetectionResult(detectionResult.getModelId(), detectionResult.getInferenceTimeMillis(), boundingBoxes);
+    }
+
+    private static long crcOf(byte[] imageBytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(imageBytes, 0, imageBytes.length);
+        return crc32.getValue();
+    }
+
+    /**
+     * What a frame looked like, and the detection result of the reference frame if the frame showed nothing new.
+     */
+    public static final class FrameFingerprint {
+        private final long crc;
+        private final Long hash;
+        private final byte[] thumbnail;
+        private final DetectionResult reusableDetectionResult;
+
+        private FrameFingerprint(long crc, Long hash, byte[] thumbnail, DetectionResult reusableDetectionResult) {
+            this.crc = crc;
+            this.hash = hash;
+            this.thumbnail = thumbnail;
+            this.reusableDetectionResult = reusableDetectionResult;
+        }
+
+        /**
+         * A copy of the detection result of the reference frame of its own, or null if the frame is to be detected.
+         */
+        public DetectionResult getReusableDetectionResult() {
+            return this.reusableDetectionResult == null ? null : copyOf(this.reusableDetectionResult);
+        }
+    }
+
+    private static final class ReferenceFrame {
+        private final FrameFingerprint fingerprint;
+        private final DetectionResult detectionResult;
+        private final long detectedAt;
+
+        private ReferenceFrame(FrameFingerprint fingerprint, DetectionResult detectionResult, long detectedAt) {
+            this.fingerprint = fingerprint;
+            this.detectionResult = detectionResult;
+            this.detectedAt = detectedAt;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import nu.pattern.OpenCV;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect2d;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Rect2d;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionStage;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorRequestException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs the yolo person detection inside the JVM through the OpenCV DNN bindings. The networks are loaded once, the
+ * frame is decoded from and the annotated image encoded to memory, and the pre-processing, confidence filtering and non
+ * maxima suppression mirror yolo.py.
+ * A net is not safe for concurrent use, so a fixed number of nets are loaded and each detection borrows one.
+ * <p>
+ * Like yolo.py, only the regions of interest of a frame are detected on, each with its own thresholds, and they are
+ * detected on as a cascade. The screen stage runs a region through the screen model, a darknet model such as
+ * yolov3-tiny or else the full model, at the small scan input size. Only a region in which a person is seen with at
+ * least the candidate threshold is escalated to the confirm stage, which runs it through the full model at the large
+ * confirm input size to decide on its persons. Without a screen model and with the same scan and confirm input size
+ * every region goes straight to the confirm stage.
+ */
+public class OpenCvPersonDetector implements PersonDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpenCvPersonDetector.class);
+
+    private static final double PIXEL_SCALE = 1 / 255.0;
+    private static final Scalar ANNOTATION_COLOUR = new Scalar(0, 0, 200);
+    private static final int CLASS_CONFIDENCES_OFFSET = 5;
+    private static final String MODEL_ID = "yolov3";
+    private static final String NO_SCREEN_MODEL = "none";
+    private static final List<String> NON_DARKNET_SCREEN_MODELS = Arrays.asList("hog", "mobilenet-ssd");
+
+    private final NeuralNetworks neuralNetworks;
+    private final NeuralNetworks screenNeuralNetworks;
+    private final int personClassId;
+    private final float confidenceThreshold;
+    private final float nonMaximaSuppressionThreshold;
+    private final Size scanBlobSize;
+    private final Size confirmBlobSize;
+    private final float candidateThreshold;
+
+    private OpenCvPersonDetector(NeuralNetworks neuralNetworks, NeuralNetworks screenNeuralNetworks, int personClassId, float confidenceThreshold,
+                                 float nonMaximaSuppressionThreshold, int scanInputSize, int confirmInputSize, float candidateThreshold) {
+        this.neuralNetworks = neuralNetworks;
+        this.screenNeuralNetworks = screenNeuralNetworks != null || scanInputSize == confirmInputSize ? screenNeuralNetworks : neuralNetworks;
+        this.personClassId = personClassId;
+        this.confidenceThreshold = confidenceThreshold;
+        this.nonMaximaSuppressionThreshold = nonMaximaSuppressionThreshold;
+        this.scanBlobSize = new Size(scanInputSize, scanInputSize);
+        this.confirmBlobSize = new Size(confirmInputSize, confirmInputSize);
+        this.candidateThreshold = candidateThreshold;
+    }
+
+    /**
+     * Loads the OpenCV native library, the yolo network and the screen network from the yolo-coco directory. The screen
+     * model is "none" or the name of a darknet model whose .cfg and .weights are in the yolo-coco directory.
+     *
+     * @throws PersonDetectorException if the native library, the yolo files or the files of the screen model can not be
+     *                                 loaded or the screen model is not a darknet model.
+     */
+    public static OpenCvPersonDetector load(String yoloFilesDirectory, float confidenceThreshold, float nonMaximaSuppressionThreshold,
+                                            int scanInputSize, int confirmInputSize, float candidateThreshold, String screenModel,
+                                            int neuralNetworkCount) {
+        if (NON_DARKNET_SCREEN_MODELS.contains(screenModel)) {
+            throw new PersonDetectorException(String.format("The screen model %s is only supported by the yolo.py person detector.", screenModel));
+        }
+        File weightsFile = new File(yoloFilesDirectory, "yolov3.weights");
+        File configFile = new File(yoloFilesDirectory, "yolov3.cfg");
+        File labelsFile = new File(yoloFilesDirectory, "coco.names");
+        if (!weightsFile.exists() || !configFile.exists() || !labelsFile.exists()) {
+            throw new PersonDetectorException(String.format("The yolo files yolov3.weights, yolov3.cfg and coco.names are not all present in %s.", yoloFilesDirectory));
+        }
+        File screenWeightsFile = new File(yoloFilesDirectory, screenModel + ".weights");
+        File screenConfigFile = new File(yoloFilesDirectory, screenModel + ".cfg");
+        if (!NO_SCREEN_MODEL.equals(screenModel) && (!screenWeightsFile.exists() || !screenConfigFile.exists())) {
+            throw new PersonDetectorException(String.format("The files %s and %s of the screen model %s are not both present in %s.",
+                    screenWeightsFile.getName(), screenConfigFile.getName(), screenModel, yoloFilesDirectory));
+        }
+        try {
+            OpenCV.loadLocally();
+        } catch (RuntimeException | LinkageError loadError) {
+            throw new PersonDetectorException(String.format("The OpenCV native library could not be loaded: %s", loadError.getMessage()));
+        }
+        int personClassId = findPersonClassId(labelsFile);
+        NeuralNetworks neuralNetworks = NeuralNetworks.load(MODEL_ID, configFile, weightsFile, neuralNetworkCount);
+        LOGGER.info("Loaded {} in-process yolo neural network(s) from {}.", neuralNetworkCount, yoloFilesDirectory);
+        NeuralNetworks screenNeuralNetworks = null;
+        if (!NO_SCREEN_MODEL.equals(screenModel)) {
+            screenNeuralNetworks = NeuralNetworks.load(screenModel, screenConfigFile, screenWeightsFile, neuralNetworkCount);
+            LOGGER.info("Loaded {} in-process {} screen neural network(s) from {}.", neuralNetworkCount, screenModel, yoloFilesDirectory);
+        }
+        return new OpenCvPersonDetector(neuralNetworks, screenNeuralNetworks, personClassId, confidenceThreshold, nonMaximaSuppressionThreshold,
+                scanInputSize, confirmInputSize, candidateThreshold);
+    }
+
+    @Override
+    public DetectionResult detectPerson(byte[] imageBytes, DetectionContext detectionContext) {
+        Mat image = Imgcodecs.imdecode(new MatOfByte(imageBytes), Imgcodecs.IMREAD_COLOR);
+        try {
+            if (image.empty()) {
+                throw new PersonDetectorRequestException(String.format("The image of security check %s could not be decoded.", detectionContext.getId()), HttpStatus.BAD_REQUEST);
+            }
+            List<Rect2d> boundingBoxes = new ArrayList<>();
+            List<Float> confidences = new ArrayList<>();
+            CascadeInferenceTimes cascadeInferenceTimes = new CascadeInferenceTimes();
+            for (DetectionRegion detectionRegion : detectionRegionsOf(detectionContext)) {
+                detectPersonsInRegion(image, detectionRegion, boundingBoxes, confidences, cascadeInferenceTimes);
+            }
+            DetectionResult detectionResult = new DetectionResult(MODEL_ID,
+                    cascadeInferenceTimes.screenMillis + cascadeInferenceTimes.confirmMillis,
+                    new ArrayList<>(),
+                    cascadeInferenceTimes.toDetectionStages(this.screenNeuralNetworks, this.neuralNetworks));
+            if (boundingBoxes.isEmpty()) {
+                return detectionResult;
+            }
+            for (int detection = 0; detection < boundingBoxes.size(); detection++) {
+                Rect2d boundingBox = boundingBoxes.get(detection);
+                detectionResult.getBoundingBoxes().add(new BoundingBox((int) boundingBox.x, (int) boundingBox.y,
+                        (int) boundingBox.width, (int) boundingBox.height, confidences.get(detection)));
+            }
+            annotateImage(image, boundingBoxes, confidences);
+            MatOfByte annotatedImage = new MatOfByte();
+            try {
+                if (!Imgcodecs.imencode(".jpg", image, annotatedImage)) {
+                    throw new PersonDetectorException(String.format("The annotated image of security check %s could not be encoded.", detectionContext.getId()));
+                }
+                detectionResult.setAnnotatedImage(annotatedImage.toArray());
+            } finally {
+                annotatedImage.release();
+            }
+            return detectionResult;
+        } finally {
+            image.release();
+        }
+    }
+
+    private List<DetectionRegion> detectionRegionsOf(DetectionContext detectionContext) {
+        if (detectionContext.getDetectionRegions() == null || detectionContext.getDetectionRegions().isEmpty()) {
+            return Collections.singletonList(new DetectionRegion("full-frame", 0, 0, 1, 1, this.confidenceThreshold, this.nonMaximaSuppressionThreshold));
+        }
+        return detectionContext.getDetectionRegions();
+    }
+
+    /**
+     * Adds the persons kept by the non maxima suppression of the region, in the coordinates of the frame, and adds the
+     * time the forward passes of the region took to the inference times of their stages.
+     */
+    private void detectPersonsInRegion(Mat image, DetectionRegion detectionRegion, List<Rect2d> boundingBoxes, List<Float> confidences,
+                                       CascadeInferenceTimes cascadeInferenceTimes) {
+        float regionConfidenceThreshold = detectionRegion.getConfidence() == null ? this.confidenceThreshold : detectionRegion.getConfidence();
+        float regionNonMaximaSuppressionThreshold = detectionRegion.getNonMaximaSuppression() == null
+                ? this.nonMaximaSuppressionThreshold : detectionRegion.getNonMaximaSuppression();
+        Rect region = toRect(detectionRegion, image.cols(), image.rows());
+        Mat regionImage = image.submat(region);
+        try {
+            if (this.screenNeuralNetworks != null) {
+                long screenStart = System.nanoTime();
+                List<Mat> screenOutputLayers = this.screenNeuralNetworks.forward(regionImage, this.scanBlobSize);
+                boolean candidate = isCandidate(screenOutputLayers, Math.min(this.candidateThreshold, regionConfidenceThreshold));
+                screenOutputLayers.forEach(Mat::release);
+                cascadeInferenceTimes.screenMillis += (System.nanoTime() - screenStart) / 1_000_000.0;
+                if (!candidate) {
+                    return;
+                }
+            }
+            long confirmStart = System.nanoTime();
+            List<Mat> outputLayers = this.neuralNetworks.forward(regionImage, this.confirmBlobSize);
+            cascadeInferenceTimes.confirmMillis += (System.nanoTime() - confirmStart) / 1_000_000.0;
+            cascadeInferenceTimes.confirmed = true;
+            List<Rect2d> regionBoundingBoxes = new ArrayList<>();
+            List<Float> regionConfidences = new ArrayList<>();
+            filterConfidentPersonDetections(outputLayers, region, regionConfidenceThreshold, regionBoundingBoxes, regionConfidences);
+            outputLayers.forEach(Mat::release);
+            for (int keptDetectionIndex : nonMaximaSuppression(regionBoundingBoxes, regionConfidences, regionConfidenceThreshold, regionNonMaximaSuppressionThreshold)) {
+                boundingBoxes.add(regionBoundingBoxes.get(keptDetectionIndex));
+                confidences.add(regionConfidences.get(keptDetectionIndex));
+            }
+        } finally {
+            regionImage.release();
+        }
+    }
+
+    private static Rect toRect(DetectionRegion detectionRegion, int imageWidth, int imageHeight) {
+        int x = Math.min(imageWidth - 1, (int) Math.round(detectionRegion.getX() * imageWidth));
+        int y = Math.min(imageHeight - 1, (int) Math.round(detectionRegion.getY() * imageHeight));
+        int width = Math.max(1, Math.min(imageWidth - x, (int) Math.round((detectionRegion.getX() + detectionRegion.getWidth()) * imageWidth) - x));
+        int height = Math.max(1, Math.min(imageHeight - y, (int) Math.round((detectionRegion.getY() + detectionRegion.getHeight()) * imageHeight) - y));
+        return new Rect(x, y, width, height);
+    }
+
+    private boolean isCandidate(List<Mat> outputLayers, float candidateThreshold) {
+        for (Mat outputLayer : outputLayers) {
+            int columns = outputLayer.cols();
+            float[] detections = new float[outputLayer.rows() * columns];
+            outputLayer.get(0, 0, detections);
+            for (int detection = 0; detection < detections.length; detection += columns) {
+                if (personConfidence(detections, detection, columns) > candidateThreshold) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every row of an output layer is centre x, centre y, width, height and objectness, all relative to the size of the
+     * region, followed by the confidence of every class.
+     */
+    private void filterConfidentPersonDetections(List<Mat> outputLayers, Rect region, float confidenceThreshold, List<Rect2d> boundingBoxes, List<Float> confidences) {
+        for (Mat outputLayer : outputLayers) {
+            int columns = outputLayer.cols();
+            float[] detections = new float[outputLayer.rows() * columns];
+            outputLayer.get(0, 0, detections);
+            for (int detection = 0; detection < detections.length; detection += columns) {
+                float personConfidence = personConfidence(detections, detection, columns);
+                if (personConfidence <= confidenceThreshold) {
+                    continue;
+                }
+                double width = detections[detection + 2] * region.width;
+                double height = detections[detection + 3] * region.height;
+                double centerX = region.x + detections[detection] * region.width;
+                double centerY = region.y + detections[detection + 1] * region.height;
+                boundingBoxes.add(new Rect2d(centerX - width / 2, centerY - height / 2, width, height));
+                confidences.add(personConfidence);
+            }
+        }
+    }
+
+    /**
+     * The confidence of the row if its most confident class is the person class, otherwise -1.
+     */
+    private float personConfidence(float[] detections, int detection, int columns) {
+        int mostConfidentClassId = 0;
+        float mostConfidentClassConfidence = -1;
+        for (int classId = 0; classId < columns - CLASS_CONFIDENCES_OFFSET; classId++) {
+            float classConfidence = detections[detection + CLASS_CONFIDENCES_OFFSET + classId];
+            if (classConfidence > mostConfidentClassConfidence) {
+                mostConfidentClassId = classId;
+                mostConfidentClassConfidence = classConfidence;
+            }
+        }
+        return mostConfidentClassId == this.personClassId ? mostConfidentClassConfidence : -1;
+    }
+
+    private static int[] nonMaximaSuppression(List<Rect2d> boundingBoxes, List<Float> confidences, float confidenceThreshold, float nonMaximaSuppressionThreshold) {
+        if (boundingBoxes.isEmpty()) {
+            return new int[0];
+        }
+        MatOfRect2d boundingBoxesMat = new MatOfRect2d();
+        boundingBoxesMat.fromList(boundingBoxes);
+        MatOfFloat confidencesMat = new MatOfFloat();
+        confidencesMat.fromList(confidences);
+        MatOfInt keptDetectionIndices = new MatOfInt();
+        Dnn.NMSBoxes(boundingBoxesMat, confidencesMat, confidenceThreshold, nonMaximaSuppressionThreshold, keptDetectionIndices);
+        int[] keptDetectionIndicesArray = keptDetectionIndices.empty() ? new int[0] : keptDetectionIndices.toArray();
+        boundingBoxesMat.release();
+        confidencesMat.release();
+        keptDetectionIndices.release();
+        return keptDetectionIndicesArray;
+    }
+
+    private static void annotateImage(Mat image, List<Rect2d> boundingBoxes, List<Float> confidences) {
+        for (int detection = 0; detection < boundingBoxes.size(); detection++) {
+            Rect2d boundingBox = boundingBoxes.get(detection);
+            Point start = new Point((int) boundingBox.x, (int) boundingBox.y);
+            Point end = new Point((int) (boundingBox.x + boundingBox.width), (int) (boundingBox.y + boundingBox.height));
+            Imgproc.rectangle(image, start, end, ANNOTATION_COLOUR, 2);
+            Imgproc.putText(image,
+                    String.format("person: %.4f", confidences.get(detection)),
+                    new Point(start.x, start.y - 5),
+                    Imgproc.FONT_HERSHEY_SIMPLEX,
+                    0.5,
+                    ANNOTATION_COLOUR);
+        }
+    }
+
+    private static int findPersonClassId(File labelsFile) {
+        try {
+            int personClassId = Files.readAllLines(labelsFile.toPath(), StandardCharsets.UTF_8).indexOf("person");
+            if (personClassId < 0) {
+                throw new PersonDetectorException(String.format("The yolo labels file %s has no person label.", labelsFile.getPath()));
+            }
+            return personClassId;
+        } catch (IOException ioException) {
+            throw new PersonDetectorException(String.format("The yolo labels file %s could not be read: %s", labelsFile.getPath(), ioException.getMessage()));
+        }
+    }
+
+    /**
+     * The loaded nets of a model. A net is not safe for concurrent use, so every forward pass borrows one.
+     */
+    private static final class NeuralNetworks {
+        private final String modelId;
+        private final BlockingQueue<Net> idleNeuralNetworks;
+        private final List<String> outputLayerNames;
+
+        private NeuralNetworks(String modelId, List<Net> neuralNetworks) {
+            this.modelId = modelId;
+            this.idleNeuralNetworks = new ArrayBlockingQueue<>(neuralNetworks.size(), false, neuralNetworks);
+            this.outputLayerNames = neuralNetworks.get(0).getUnconnectedOutLayersNames();
+        }
+
+        private static NeuralNetworks load(String modelId, File configFile, File weightsFile, int neuralNetworkCount) {
+            List<Net> neuralNetworks = new ArrayList<>();
+            for (int neuralNetwork = 0; neuralNetwork < neuralNetworkCount; neuralNetwork++) {
+                neuralNetworks.add(Dnn.readNetFromDarknet(configFile.getPath(), weightsFile.getPath()));
+            }
+            return new NeuralNetworks(modelId, neuralNetworks);
+        }
+
+        private List<Mat> forward(Mat image, Size blobSize) {
+            Mat blob = Dnn.blobFromImage(image, PIXEL_SCALE, blobSize, new Scalar(0), true, false);
+            Net neuralNetwork = borrowNeuralNetwork();
+            try {
+                List<Mat> outputLayers = new ArrayList<>();
+                long start = System.nanoTime();
+                neuralNetwork.setInput(blob);
+                neuralNetwork.forward(outputLayers, this.outputLayerNames);
+                LOGGER.debug("{} took {} ms to perform detections at {}.", this.modelId, (System.nanoTime() - start) / 1_000_000, blobSize);
+                return outputLayers;
+            } finally {
+                this.idleNeuralNetworks.offer(neuralNetwork);
+                blob.release();
+            }
+        }
+
+        private Net borrowNeuralNetwork() {
+            try {
+                return this.idleNeuralNetworks.take();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new PersonDetectorException(String.format("Interrupted while waiting for an idle in-process %s neural network.", this.modelId));
+            }
+        }
+    }
+
+    /**
+     * The inference time of the stages of the detection cascade summed over the regions of a frame.
+     */
+    private static final class CascadeInferenceTimes {
+        private double screenMillis;
+        private double confirmMillis;
+        private boolean confirmed;
+
+        private List<DetectionStage> toDetectionStages(NeuralNetworks screenNeuralNetworks, NeuralNetworks neuralNetworks) {
+            List<DetectionStage> detectionStages = new ArrayList<>();
+            if (screenNeuralNetworks != null) {
+                detectionStages.add(new DetectionStage(DetectionStage.SCREEN, screenNeuralNetworks.modelId, this.screenMillis));
+            }
+            if (this.confirmed) {
+                detectionStages.add(new DetectionStage(DetectionStage.CONFIRM, neuralNetworks.modelId, this.confirmMillis));
+            }
+            return detectionStages;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A detection waiting to be run as part of a batch, completed with its detection result or the exception it failed with.
+ */
+final class PendingDetection {
+    private final byte[] image;
+    private final List<DetectionRegion> detectionRegions;
+    private final long enqueuedAt = System.nanoTime();
+    private final CompletableFuture<DetectionResult> detectionResult = new CompletableFuture<>();
+
+    PendingDetection(byte[] image, List<DetectionRegion> detectionRegions) {
+        this.image = image;
+        this.detectionRegions = detectionRegions;
+    }
+
+    byte[] getImage() {
+        return this.image;
+    }
+
+    List<DetectionRegion> getDetectionRegions() {
+        return this.detectionRegions;
+    }
+
+    long getEnqueuedAt() {
+        return this.enqueuedAt;
+    }
+
+    CompletableFuture<DetectionResult> getDetectionResult() {
+        return this.detectionResult;
+    }
+}
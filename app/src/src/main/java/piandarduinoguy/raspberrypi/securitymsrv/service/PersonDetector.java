@@ -0,0 +1,14 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+
+/**
+ * A backend that runs the yolo person detection on a single frame.
+ */
+public interface PersonDetector {
+    /**
+     * Detects the persons in the image, a result without bounding boxes meaning no person was detected. When a person is
+     * detected the annotated image is handed back as JPEG bytes with the result, nothing is written to disk.
+     */
+    DetectionResult detectPerson(byte[] imageBytes, DetectionContext detectionContext);
+}
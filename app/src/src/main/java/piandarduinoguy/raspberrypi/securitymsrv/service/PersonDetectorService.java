@@ -1,107 +1,173 @@
 package piandarduinoguy.raspberrypi.securitymsrv.service;
 
-import org.apache.commons.io.FileUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpStatus;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
-import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
-import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionStage;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.event.DetectionCompletedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorOverloadedException;
 
 import javax.annotation.PostConstruct;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class PersonDetectorService {
-    @Value("${yolo.person-detector.base.location}")
-    private String yoloPersonDetectorBaseLocation;
+    @Value("${yolo.person-detector.max-in-flight}")
+    private int maxInFlightDetections;
 
-    @Value("${yolo.person-detector.threshold.confidence}")
-    private String confidenceThreshold;
+    private final AtomicInteger inFlightDetections = new AtomicInteger();
 
-    @Value("${yolo.person-detector.threshold.non_maxima_suppression}")
-    private String nonMaximaSuppressionThreshold;
+    private final AtomicLong shedDetections = new AtomicLong();
 
-    @Value("${resources.base.location}")
-    private String resourcesBaseLocation;
+    private final AtomicLong escalatedDetections = new AtomicLong();
 
-    @Value("${new-capture.file-name}")
-    private String newCaptureFileName;
+    private final AtomicLong screenedOutDetections = new AtomicLong();
 
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
+    private final PersonDetector personDetector;
 
-    private ProcessBuilder personDetectorProcessBuilder;
+    private final AnnotatedImageService annotatedImageService;
 
-    private Process personDetectorProcess;
+    private final EvidenceStore evidenceStore;
 
-    private final Logger LOGGER = LoggerFactory.getLogger(PersonDetectorService.class);
+    private final FramePrefilter framePrefilter;
 
-    @PostConstruct
-    private void createPersonDetectorProcessBuilder() {
-        final String imagePath = String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureFileName);
-        final String yoloFilesBaseDirectory = String.format("%s/yolo-coco", yoloPersonDetectorBaseLocation);
-        final String yoloScriptLocation = String.format("%s/yolo.py", yoloPersonDetectorBaseLocation);
+    private final DetectionRegions detectionRegions;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
 
-        this.personDetectorProcessBuilder = new ProcessBuilder("python3", yoloScriptLocation, imagePath, yoloFilesBaseDirectory, confidenceThreshold, nonMaximaSuppressionThreshold, resourcesBaseLocation, newCaptureAnnotatedFileName);
-        this.personDetectorProcessBuilder.redirectErrorStream(true);
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PersonDetectorService(PersonDetector personDetector, AnnotatedImageService annotatedImageService, EvidenceStore evidenceStore, FramePrefilter framePrefilter, DetectionRegions detectionRegions, ApplicationEventPublisher applicationEventPublisher, MeterRegistry meterRegistry) {
+        this.personDetector = personDetector;
+        this.annotatedImageService = annotatedImageService;
+        this.evidenceStore = evidenceStore;
+        this.framePrefilter = framePrefilter;
+        this.detectionRegions = detectionRegions;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("security.detections.in-flight", this.inFlightDetections, AtomicInteger::get).register(meterRegistry);
+        FunctionCounter.builder("security.detections.shed", this.shedDetections, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("security.detector.cascade.frames", this.escalatedDetections, AtomicLong::get).tag("outcome", "escalated").register(meterRegistry);
+        FunctionCounter.builder("security.detector.cascade.frames", this.screenedOutDetections, AtomicLong::get).tag("outcome", "screened_out").register(meterRegistry);
+        Gauge.builder("security.detector.cascade.escalation.ratio", this, PersonDetectorService::getEscalationRatio).register(meterRegistry);
     }
 
+    /**
+     * Has the evidence segments of the cameras with regions of interest, and of the default camera, created ahead of their
+     * first breach.
+     */
+    @PostConstruct
+    public void preallocateEvidence() {
+        Set<String> cameraIds = new HashSet<>(this.detectionRegions.getCameraIds());
+        cameraIds.add(SecurityCheck.DEFAULT_CAMERA_ID);
+        this.evidenceStore.preallocate(cameraIds);
+    }
 
-    public boolean hasPersonBeenDetected() {
-        String pythonPersonDetectorProcessLogs = getPersonDetectorProcessLogs();
-        return pythonPersonDetectorProcessLogs.contains("Person detected.");
+    public boolean detectPerson(byte[] imageBytes) {
+        return this.detect(SecurityCheck.DEFAULT_CAMERA_ID, imageBytes).isPersonDetected();
     }
 
-    public void runPersonDetectorProcess(byte[] imageBytes) {
-        this.saveTemporaryImage(imageBytes);
+    /**
+     * Detects the persons in the regions of interest of the camera, reusing the result of the last detected frame when the
+     * frame prefilter finds nothing new and shedding the detection when the maximum number of detections are in flight.
+     * The annotated image of a detected person is published for the camera and retained as evidence.
+     */
+    public DetectionResult detect(String cameraId, byte[] imageBytes) {
+        if (this.inFlightDetections.incrementAndGet() > this.maxInFlightDetections) {
+            this.inFlightDetections.decrementAndGet();
+            this.shedDetections.incrementAndGet();
+            throw new PersonDetectorOverloadedException(String.format(
+                    "%d detections are already in flight, try again later.", this.maxInFlightDetections));
+        }
         try {
-            this.personDetectorProcess = this.personDetectorProcessBuilder.start();
-        } catch (IOException e) {
-            throw new PersonDetectorException(String.format("IOException occurred trying to run yolo.py script in directory %s.", yoloPersonDetectorBaseLocation));
+            // the frame is fingerprinted in flight, so that decoding it is shed along with its detection under overload
+            FramePrefilter.FrameFingerprint frameFingerprint = this.framePrefilter.fingerprint(cameraId, imageBytes);
+            DetectionResult reusableDetectionResult = frameFingerprint.getReusableDetectionResult();
+            if (reusableDetectionResult != null) {
+                return reusableDetectionResult;
+            }
+            return detect(cameraId, imageBytes, frameFingerprint);
+        } finally {
+            this.inFlightDetections.decrementAndGet();
         }
     }
 
-    private void saveTemporaryImage(byte[] imageBytes) {
-        File imageFile = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureFileName));
+    private DetectionResult detect(String cameraId, byte[] imageBytes, FramePrefilter.FrameFingerprint frameFingerprint) {
+        DetectionContext detectionContext = new DetectionContext(this.detectionRegions.of(cameraId));
+        Timer.Sample detectionSample = Timer.start(this.meterRegistry);
+        String outcome = "failed";
         try {
-            FileUtils.writeByteArrayToFile(imageFile, imageBytes);
-        } catch (IOException ioException) {
-            throw new ImageFileException(String.format(
-                    "The image %s could not be saved to the directory %s. An IOException was thrown with message \"%s\".",
-                    imageFile.getName(),
-                    resourcesBaseLocation,
-                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+            DetectionResult detectionResult = this.personDetector.detectPerson(imageBytes, detectionContext);
+            outcome = detectionResult.isPersonDetected() ? "person" : "no_person";
+            this.meterRegistry.timer("security.detector.inference", "model", String.valueOf(detectionResult.getModelId()))
+                    .record((long) (detectionResult.getInferenceTimeMillis() * 1000), TimeUnit.MICROSECONDS);
+            recordDetectionStages(detectionResult);
+            if (detectionResult.isPersonDetected()) {
+                this.annotatedImageService.publishAnnotatedImage(cameraId, detectionResult.getAnnotatedImage());
+                this.evidenceStore.retain(cameraId, detectionResult.getAnnotatedImage());
+            }
+            // the annotated image is not kept along with the result for the frame prefilter to reuse
+            detectionResult.setAnnotatedImage(null);
+            this.framePrefilter.recordDetection(cameraId, frameFingerprint, detectionResult);
+            this.applicationEventPublisher.publishEvent(new DetectionCompletedEvent(cameraId, detectionResult));
+            return detectionResult;
+        } finally {
+            detectionSample.stop(this.meterRegistry.timer("security.detection", "outcome", outcome));
         }
     }
 
-    private String getPersonDetectorProcessLogs() {
-        ValidationUtil.validateProcess(this.personDetectorProcess);
-        List<String> results = readPersonDetectorProcessOutput();
-        ValidationUtil.validateProcessLogs(results);
-        StringBuilder pythonLogsStringBuilder = new StringBuilder("\n");
-        for (String logMessage : results) {
-            pythonLogsStringBuilder.append(logMessage);
-            pythonLogsStringBuilder.append("\n");
+    private void recordDetectionStages(DetectionResult detectionResult) {
+        if (detectionResult.getStages() == null) {
+            return;
+        }
+        boolean screened = false;
+        boolean confirmed = false;
+        for (DetectionStage detectionStage : detectionResult.getStages()) {
+            screened |= DetectionStage.SCREEN.equals(detectionStage.getStage());
+            confirmed |= DetectionStage.CONFIRM.equals(detectionStage.getStage());
+            this.meterRegistry.timer("security.detector.stage", "stage", String.valueOf(detectionStage.getStage()), "model", String.valueOf(detectionStage.getModelId()))
+                    .record((long) (detectionStage.getInferenceTimeMillis() * 1000), TimeUnit.MICROSECONDS);
+        }
+        if (screened) {
+            (confirmed ? this.escalatedDetections : this.screenedOutDetections).incrementAndGet();
         }
-        LOGGER.info("Result from running python script: {}", pythonLogsStringBuilder.toString());
-        return pythonLogsStringBuilder.toString();
+    }
 
+    public int getInFlightDetectionCount() {
+        return this.inFlightDetections.get();
     }
 
-    private List<String> readPersonDetectorProcessOutput() {
-        try (BufferedReader output = new BufferedReader(new InputStreamReader(this.personDetectorProcess.getInputStream()))) {
-            return output.lines()
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new PersonDetectorException("IOException occurred trying to read the yolo person detector python script output.");
-        }
+    public long getShedDetectionCount() {
+        return this.shedDetections.get();
+    }
+
+    public long getEscalatedDetectionCount() {
+        return this.escalatedDetections.get();
+    }
+
+    public long getScreenedOutDetectionCount() {
+        return this.screenedOutDetections.get();
+    }
+
+    /**
+     * The ratio of the frames that went through the screen stage that were escalated to the confirm stage.
+     */
+    public double getEscalationRatio() {
+        double escalated = this.escalatedDetections.get();
+        double screened = escalated + this.screenedOutDetections.get();
+        return screened == 0 ? 0 : escalated / screened;
     }
 }
@@ -0,0 +1,273 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorRequestException;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived yolo.py process started in worker mode, which loads the neural network once and answers every request
+ * line on stdin with a length-prefixed JSON frame on stdout, followed by the annotated images of its results.
+ */
+public class PersonDetectorWorker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersonDetectorWorker.class);
+
+    private static final ObjectMapper RESPONSE_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final int MAX_RESPONSE_LENGTH = 1024 * 1024;
+    private static final int MAX_ANNOTATED_IMAGE_LENGTH = 32 * 1024 * 1024;
+
+    private static final String READY_RESPONSE = "ready";
+    private static final String PONG_RESPONSE = "pong";
+    private static final String DETECTION_RESPONSE = "detection";
+    private static final String DETECTIONS_RESPONSE = "detections";
+    private static final String ERROR_RESPONSE = "error";
+
+    private final Process process;
+    private final DataOutputStream requestOutputStream;
+    private final DataInputStream responseInputStream;
+    private final Timer responseParseTimer;
+
+    private String modelId;
+
+    private PersonDetectorWorker(Process process, Timer responseParseTimer) {
+        this.process = process;
+        this.responseParseTimer = responseParseTimer;
+        this.requestOutputStream = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        this.responseInputStream = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    public static PersonDetectorWorker start(ProcessBuilder workerProcessBuilder, Timer responseParseTimer) {
+        Process process;
+        try {
+            process = workerProcessBuilder.start();
+        } catch (IOException ioException) {
+            throw new PersonDetectorException(String.format(
+                    "IOException occurred trying to start a yolo person detector worker with command %s.",
+                    workerProcessBuilder.command()));
+        }
+        ValidationUtil.validateProcess(process);
+        PersonDetectorWorker personDetectorWorker = new PersonDetectorWorker(process, responseParseTimer);
+        personDetectorWorker.logErrorStream();
+        personDetectorWorker.awaitReady();
+        return personDetectorWorker;
+    }
+
+    public DetectionResult detect(byte[] image, List<DetectionRegion> detectionRegions) {
+        sendRequest(String.join("\t", "DETECT", String.valueOf(image.length), toRegionsField(detectionRegions)), Collections.singletonList(image));
+        JsonNode response = readResponse();
+        if (!DETECTION_RESPONSE.equals(response.path("type").asText())) {
+            throw new PersonDetectorException(String.format("The yolo person detector worker responded with %s instead of a detection.", response));
+        }
+        byte[] annotatedImage = readAnnotatedImage(response);
+        DetectionResult detectionResult = toDetectionResult(response);
+        detectionResult.setAnnotatedImage(annotatedImage);
+        return detectionResult;
+    }
+
+    /**
+     * Runs the detections as one batch, completing every pending detection with its own result or failure. A failure of
+     * the batch as a whole is thrown and leaves the pending detections to the caller.
+     */
+    void detectBatch(List<PendingDetection> pendingDetections) {
+        StringBuilder request = new StringBuilder("DETECT_BATCH");
+        List<byte[]> images = new ArrayList<>(pendingDetections.size());
+        for (PendingDetection pendingDetection : pendingDetections) {
+            request.append('\t').append(pendingDetection.getImage().length)
+                    .append('\t').append(toRegionsField(pendingDetection.getDetectionRegions()));
+            images.add(pendingDetection.getImage());
+        }
+        sendRequest(request.toString(), images);
+        JsonNode response = readResponse();
+        JsonNode results = response.path("results");
+        if (!DETECTIONS_RESPONSE.equals(response.path("type").asText()) || results.size() != pendingDetections.size()) {
+            throw new PersonDetectorException(String.format(
+                    "The yolo person detector worker responded with %s instead of the detections of a batch of %d.", response, pendingDetections.size()));
+        }
+        // every annotated image is read before any detection is completed so that the next response starts in sync
+        List<byte[]> annotatedImages = new ArrayList<>(results.size());
+        for (JsonNode result : results) {
+            annotatedImages.add(readAnnotatedImage(result));
+        }
+        for (int result = 0; result < results.size(); result++) {
+            CompletableFuture<DetectionResult> detectionResult = pendingDetections.get(result).getDetectionResult();
+            try {
+                if (results.get(result).has("error")) {
+                    throw requestException(results.get(result).path("error").asText(), results.get(result));
+                }
+                DetectionResult batchDetectionResult = toDetectionResult(results.get(result));
+                batchDetectionResult.setAnnotatedImage(annotatedImages.get(result));
+                detectionResult.complete(batchDetectionResult);
+            } catch (PersonDetectorException personDetectorException) {
+                detectionResult.completeExceptionally(personDetectorException);
+            }
+        }
+    }
+
+    public boolean ping() {
+        try {
+            sendRequest("PING", Collections.emptyList());
+            return PONG_RESPONSE.equals(readResponse().path("type").asText());
+        } catch (PersonDetectorException personDetectorException) {
+            LOGGER.warn("Yolo person detector worker failed its health check.", personDetectorException);
+            return false;
+        }
+    }
+
+    public String getModelId() {
+        return this.modelId;
+    }
+
+    public boolean isAlive() {
+        return this.process.isAlive();
+    }
+
+    public void destroy() {
+        this.process.destroyForcibly();
+    }
+
+    private void awaitReady() {
+        JsonNode response;
+        try {
+            response = readResponse();
+        } catch (PersonDetectorException personDetectorException) {
+            destroy();
+            throw new PersonDetectorException("The yolo person detector worker terminated before it became ready.");
+        }
+        if (!READY_RESPONSE.equals(response.path("type").asText())) {
+            destroy();
+            throw new PersonDetectorException(String.format("The yolo person detector worker responded with %s instead of becoming ready.", response));
+        }
+        this.modelId = response.path("modelId").asText(null);
+    }
+
+    private void logErrorStream() {
+        Thread errorStreamLogger = new Thread(() -> {
+            try (BufferedReader errorReader = new BufferedReader(new InputStreamReader(this.process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = errorReader.readLine()) != null) {
+                    LOGGER.info("Yolo person detector worker: {}", line);
+                }
+            } catch (IOException ioException) {
+                LOGGER.debug("Stopped reading the yolo person detector worker stderr.", ioException);
+            }
+        }, "yolo-person-detector-worker-stderr");
+        errorStreamLogger.setDaemon(true);
+        errorStreamLogger.start();
+    }
+
+    private void sendRequest(String request, List<byte[]> images) {
+        try {
+            this.requestOutputStream.write(request.getBytes(StandardCharsets.UTF_8));
+            this.requestOutputStream.write('\n');
+            for (byte[] image : images) {
+                this.requestOutputStream.write(image);
+            }
+            this.requestOutputStream.flush();
+        } catch (IOException ioException) {
+            throw new PersonDetectorException(String.format(
+                    "IOException occurred trying to send a request to the yolo person detector worker with message \"%s\".",
+                    ioException.getMessage()));
+        }
+    }
+
+    private static String toRegionsField(List<DetectionRegion> detectionRegions) {
+        try {
+            // the mapper escapes tabs and line breaks within names, so the field never splits the request
+            return RESPONSE_MAPPER.writeValueAsString(detectionRegions == null ? Collections.emptyList() : detectionRegions);
+        } catch (JsonProcessingException jsonProcessingException) {
+            throw new PersonDetectorException(String.format(
+                    "The detection regions %s could not be written for the yolo person detector worker with message \"%s\".",
+                    detectionRegions,
+                    jsonProcessingException.getMessage()));
+        }
+    }
+
+    private static DetectionResult toDetectionResult(JsonNode detection) {
+        try {
+            return RESPONSE_MAPPER.treeToValue(detection, DetectionResult.class);
+        } catch (IOException ioException) {
+            throw new PersonDetectorException(String.format(
+                    "The yolo person detector worker detection %s could not be read with message \"%s\".",
+                    detection,
+                    ioException.getMessage()));
+        }
+    }
+
+    /**
+     * Reads the annotated image that follows the response frame for a result with a non-zero annotated image length.
+     */
+    private byte[] readAnnotatedImage(JsonNode result) {
+        int annotatedImageLength = result.path("annotatedImageLength").asInt(0);
+        if (annotatedImageLength == 0) {
+            return null;
+        }
+        if (annotatedImageLength < 0 || annotatedImageLength > MAX_ANNOTATED_IMAGE_LENGTH) {
+            throw new PersonDetectorException(String.format("The yolo person detector worker sent an annotated image of invalid length %d.", annotatedImageLength));
+        }
+        byte[] annotatedImage = new byte[annotatedImageLength];
+        try {
+            this.responseInputStream.readFully(annotatedImage);
+        } catch (EOFException eofException) {
+            throw new PersonDetectorException("The yolo person detector worker terminated unexpectedly.");
+        } catch (IOException ioException) {
+            throw new PersonDetectorException("IOException occurred trying to read the yolo person detector worker output.");
+        }
+        return annotatedImage;
+    }
+
+    private JsonNode readResponse() {
+        JsonNode response;
+        try {
+            int responseLength = this.responseInputStream.readInt();
+            if (responseLength < 0 || responseLength > MAX_RESPONSE_LENGTH) {
+                throw new PersonDetectorException(String.format("The yolo person detector worker sent a response frame of invalid length %d.", responseLength));
+            }
+            byte[] responseBytes = new byte[responseLength];
+            this.responseInputStream.readFully(responseBytes);
+            long parseStartedAt = System.nanoTime();
+            response = RESPONSE_MAPPER.readTree(responseBytes);
+            this.responseParseTimer.record(System.nanoTime() - parseStartedAt, TimeUnit.NANOSECONDS);
+        } catch (EOFException eofException) {
+            throw new PersonDetectorException("The yolo person detector worker terminated unexpectedly.");
+        } catch (IOException ioException) {
+            throw new PersonDetectorException("IOException occurred trying to read the yolo person detector worker output.");
+        }
+        if (ERROR_RESPONSE.equals(response.path("type").asText())) {
+            throw requestException(response.path("message").asText(), response);
+        }
+        return response;
+    }
+
+    /**
+     * The worker answered the request with an error and is still in sync, so the error fails only the request, as a bad
+     * request if the worker could not decode the frame.
+     */
+    private static PersonDetectorRequestException requestException(String message, JsonNode response) {
+        HttpStatus httpStatus = response.path("invalidImage").asBoolean(false) ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR;
+        return new PersonDetectorRequestException(String.format("The yolo person detector worker failed with message \"%s\".", message), httpStatus);
+    }
+}
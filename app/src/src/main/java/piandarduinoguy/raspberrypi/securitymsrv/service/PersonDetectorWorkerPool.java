@@ -0,0 +1,462 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorRequestException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps a fixed number of yolo.py worker processes alive, replacing a worker that crashes or that a watchdog terminates
+ * for running past its deadline, and batches detections per worker when the maximum batch size is above 1.
+ */
+@Service
+public class PersonDetectorWorkerPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersonDetectorWorkerPool.class);
+    private static final long IDLE_WORKER_POLL_MILLIS = 100;
+    private static final long WATCHDOG_INTERVAL_MILLIS = 100;
+
+    @Value("${yolo.person-detector.base.location}")
+    private String yoloPersonDetectorBaseLocation;
+
+    @Value("${yolo.person-detector.threshold.confidence}")
+    private String confidenceThreshold;
+
+    @Value("${yolo.person-detector.threshold.non_maxima_suppression}")
+    private String nonMaximaSuppressionThreshold;
+
+    @Value("${yolo.person-detector.threshold.candidate}")
+    private String candidateThreshold;
+
+    @Value("${yolo.person-detector.input-size.scan}")
+    private int scanInputSize;
+
+    @Value("${yolo.person-detector.input-size.confirm}")
+    private int confirmInputSize;
+
+    @Value("${yolo.person-detector.cascade.screen-model}")
+    private String screenModel;
+
+    @Value("${yolo.person-detector.pool.size}")
+    private int poolSize;
+
+    @Value("${yolo.person-detector.pool.warm-up}")
+    private boolean warmUp;
+
+    @Value("${yolo.person-detector.backend}")
+    private String backend;
+
+    @Value("${yolo.person-detector.detection-timeout-ms}")
+    private long detectionTimeoutMillis;
+
+    @Value("${yolo.person-detector.batch.max-size}")
+    private int maxBatchSize;
+
+    @Value("${yolo.person-detector.batch.max-wait-ms}")
+    private long maxBatchWaitMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ProcessBuilder workerProcessBuilder;
+
+    private Timer workerWaitTimer;
+
+    private Timer workerStartTimer;
+
+    private Timer workerRoundTripTimer;
+
+    private Timer responseParseTimer;
+
+    private Timer batchWaitTimer;
+
+    private DistributionSummary batchSizeSummary;
+
+    private final BlockingQueue<PendingDetection> pendingDetections = new LinkedBlockingQueue<>();
+
+    private final List<Thread> batchDispatchers = new ArrayList<>();
+
+    private BlockingQueue<PersonDetectorWorker> idleWorkers;
+
+    private final AtomicInteger workerCount = new AtomicInteger();
+
+    private final Map<PersonDetectorWorker, InFlightDetection> inFlightDetections = new ConcurrentHashMap<>();
+
+    private final AtomicLong timedOutDetections = new AtomicLong();
+
+    private final AtomicLong cancelledDetections = new AtomicLong();
+
+    private final AtomicLong killedWorkers = new AtomicLong();
+
+    private ScheduledExecutorService watchdog;
+
+    private volatile boolean shutdown;
+
+    @PostConstruct
+    private void createWorkerProcessBuilder() {
+        final String yoloFilesBaseDirectory = String.format("%s/yolo-coco", yoloPersonDetectorBaseLocation);
+        final String yoloScriptLocation = String.format("%s/yolo.py", yoloPersonDetectorBaseLocation);
+
+        this.workerProcessBuilder = new ProcessBuilder("python3", yoloScriptLocation, "--worker", yoloFilesBaseDirectory, confidenceThreshold, nonMaximaSuppressionThreshold,
+                String.valueOf(scanInputSize), String.valueOf(confirmInputSize), candidateThreshold, screenModel);
+        this.idleWorkers = new ArrayBlockingQueue<>(poolSize);
+        registerMeters();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "yolo-person-detector-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog.scheduleWithFixedDelay(this::terminateOverdueDetections, WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        // with another backend the workers are only needed as a fallback and are started on demand
+        this.warmUp = warmUp && "python".equalsIgnoreCase(backend);
+        if (warmUp) {
+            topUpWorkers();
+        }
+        if (this.maxBatchSize > 1) {
+            startBatchDispatchers();
+        }
+    }
+
+    public DetectionResult detect(byte[] image) {
+        return detect(image, Collections.emptyList());
+    }
+
+    /**
+     * Runs the detection of the JPEG image on the regions of interest, the full frame if there are none, on an idle
+     * worker, on its own or as part of a batch, failing with a PersonDetectorException if it does not finish within the
+     * detection timeout or if the calling thread is interrupted while it runs. The annotated image of a detected person
+     * comes back with the detection result.
+     */
+    public DetectionResult detect(byte[] image, List<DetectionRegion> detectionRegions) {
+        if (this.maxBatchSize > 1) {
+            return awaitBatchedDetection(new PendingDetection(image, detectionRegions));
+        }
+        return runOnWorker(this.detectionTimeoutMillis, personDetectorWorker -> personDetectorWorker.detect(image, detectionRegions));
+    }
+
+    /**
+     * Pings every idle worker under the same deadline as a detection, so that the watchdog terminates a worker that no
+     * longer answers rather than it holding up the scheduler.
+     */
+    @Scheduled(fixedDelayString = "${yolo.person-detector.pool.health-check-interval-ms}")
+    public void checkWorkerHealth() {
+        List<PersonDetectorWorker> checkedWorkers = new ArrayList<>();
+        this.idleWorkers.drainTo(checkedWorkers);
+        for (PersonDetectorWorker personDetectorWorker : checkedWorkers) {
+            try {
+                runOnBorrowedWorker(personDetectorWorker, this.detectionTimeoutMillis, checkedWorker -> {
+                    if (!checkedWorker.isAlive() || !checkedWorker.ping()) {
+                        throw new PersonDetectorException("The yolo person detector worker did not answer its health check.");
+                    }
+                    return checkedWorker;
+                });
+            } catch (PersonDetectorException personDetectorException) {
+                LOGGER.warn("Yolo person detector worker failed its health check, it will be restarted: {}", personDetectorException.getMessage());
+            }
+        }
+        if (warmUp) {
+            topUpWorkers();
+        }
+    }
+
+    public int getWorkerCount() {
+        return this.workerCount.get();
+    }
+
+    public long getTimedOutDetectionCount() {
+        return this.timedOutDetections.get();
+    }
+
+    public long getCancelledDetectionCount() {
+        return this.cancelledDetections.get();
+    }
+
+    public long getKilledWorkerCount() {
+        return this.killedWorkers.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.shutdown = true;
+        this.watchdog.shutdownNow();
+        this.batchDispatchers.forEach(Thread::interrupt);
+        List<PendingDetection> abandonedDetections = new ArrayList<>();
+        this.pendingDetections.drainTo(abandonedDetections);
+        abandonedDetections.forEach(pendingDetection -> pendingDetection.getDetectionResult().completeExceptionally(
+                new PersonDetectorException("The yolo person detector worker pool was shut down before the detection ran.")));
+        List<PersonDetectorWorker> remainingWorkers = new ArrayList<>();
+        this.idleWorkers.drainTo(remainingWorkers);
+        remainingWorkers.forEach(this::discardWorker);
+    }
+
+    /**
+     * Borrows a worker to run the detection on, terminating the worker if the detection does not finish within the
+     * timeout or if the calling thread is interrupted while it runs.
+     */
+    private <T> T runOnWorker(long timeoutMillis, Function<PersonDetectorWorker, T> detection) {
+        long borrowStartedAt = System.nanoTime();
+        PersonDetectorWorker personDetectorWorker = borrowWorker();
+        long detectionStartedAt = System.nanoTime();
+        this.workerWaitTimer.record(detectionStartedAt - borrowStartedAt, TimeUnit.NANOSECONDS);
+        return runOnBorrowedWorker(personDetectorWorker, timeoutMillis, borrowedWorker -> {
+            T detectionResult = detection.apply(borrowedWorker);
+            this.workerRoundTripTimer.record(System.nanoTime() - detectionStartedAt, TimeUnit.NANOSECONDS);
+            return detectionResult;
+        });
+    }
+
+    /**
+     * Runs the detection on a worker that was taken out of the idle workers under the watchdog, handing the worker back
+     * afterwards or discarding it if the detection failed.
+     */
+    private <T> T runOnBorrowedWorker(PersonDetectorWorker personDetectorWorker, long timeoutMillis, Function<PersonDetectorWorker, T> detection) {
+        InFlightDetection inFlightDetection = new InFlightDetection(Thread.currentThread(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        this.inFlightDetections.put(personDetectorWorker, inFlightDetection);
+        try {
+            T detectionResult = detection.apply(personDetectorWorker);
+            if (this.inFlightDetections.remove(personDetectorWorker, inFlightDetection)) {
+                releaseWorker(personDetectorWorker);
+            } else {
+                // the watchdog terminated the worker just as the detection finished
+                discardWorker(personDetectorWorker);
+            }
+            return detectionResult;
+        } catch (PersonDetectorRequestException personDetectorRequestException) {
+            // the worker answered the request with an error of its own and is fit for the next detection
+            if (this.inFlightDetections.remove(personDetectorWorker, inFlightDetection)) {
+                releaseWorker(personDetectorWorker);
+            } else {
+                discardWorker(personDetectorWorker);
+            }
+            throw personDetectorRequestException;
+        } catch (RuntimeException runtimeException) {
+            this.inFlightDetections.remove(personDetectorWorker, inFlightDetection);
+            discardWorker(personDetectorWorker);
+            if (inFlightDetection.timedOut) {
+                throw new PersonDetectorException(String.format(
+                        "The yolo person detector worker did not finish the detection within %d ms and was terminated.", timeoutMillis));
+            } else if (inFlightDetection.cancelled) {
+                throw new PersonDetectorException("The detection was cancelled and its yolo person detector worker was terminated.");
+            }
+            throw runtimeException;
+        }
+    }
+
+    private DetectionResult awaitBatchedDetection(PendingDetection pendingDetection) {
+        this.pendingDetections.add(pendingDetection);
+        try {
+            return pendingDetection.getDetectionResult().get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            if (this.pendingDetections.remove(pendingDetection)) {
+                this.cancelledDetections.incrementAndGet();
+                throw new PersonDetectorException("The detection was cancelled before its batch ran.");
+            }
+            throw new PersonDetectorException("The detection was cancelled, its batch runs on without it.");
+        } catch (ExecutionException executionException) {
+            if (executionException.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) executionException.getCause();
+            }
+            throw new PersonDetectorException(String.format("The batched detection failed with message \"%s\".", executionException.getCause().getMessage()));
+        }
+    }
+
+    private void startBatchDispatchers() {
+        for (int batchDispatcher = 0; batchDispatcher < this.poolSize; batchDispatcher++) {
+            Thread batchDispatcherThread = new Thread(this::dispatchBatches, "yolo-person-detector-batch-dispatcher-" + batchDispatcher);
+            batchDispatcherThread.setDaemon(true);
+            batchDispatcherThread.start();
+            this.batchDispatchers.add(batchDispatcherThread);
+        }
+    }
+
+    private void dispatchBatches() {
+        while (!this.shutdown) {
+            List<PendingDetection> batch;
+            try {
+                batch = collectBatch();
+            } catch (InterruptedException interruptedException) {
+                return;
+            }
+            runBatch(batch);
+        }
+    }
+
+    /**
+     * Waits for the oldest queued detection and then for the detections queued within the maximum batch wait after it.
+     */
+    private List<PendingDetection> collectBatch() throws InterruptedException {
+        List<PendingDetection> batch = new ArrayList<>(this.maxBatchSize);
+        PendingDetection oldestPendingDetection = this.pendingDetections.take();
+        batch.add(oldestPendingDetection);
+        long batchDeadline = oldestPendingDetection.getEnqueuedAt() + TimeUnit.MILLISECONDS.toNanos(this.maxBatchWaitMillis);
+        while (batch.size() < this.maxBatchSize) {
+            PendingDetection pendingDetection = this.pendingDetections.poll(batchDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (pendingDetection == null) {
+                break;
+            }
+            batch.add(pendingDetection);
+        }
+        return batch;
+    }
+
+    private void runBatch(List<PendingDetection> batch) {
+        long dispatchedAt = System.nanoTime();
+        batch.forEach(pendingDetection -> this.batchWaitTimer.record(dispatchedAt - pendingDetection.getEnqueuedAt(), TimeUnit.NANOSECONDS));
+        this.batchSizeSummary.record(batch.size());
+        try {
+            if (batch.size() == 1) {
+                PendingDetection pendingDetection = batch.get(0);
+                pendingDetection.getDetectionResult().complete(runOnWorker(this.detectionTimeoutMillis, personDetectorWorker ->
+                        personDetectorWorker.detect(pendingDetection.getImage(), pendingDetection.getDetectionRegions())));
+            } else {
+                runOnWorker(this.detectionTimeoutMillis * batch.size(), personDetectorWorker -> {
+                    personDetectorWorker.detectBatch(batch);
+                    return batch;
+                });
+            }
+        } catch (RuntimeException runtimeException) {
+            batch.forEach(pendingDetection -> pendingDetection.getDetectionResult().completeExceptionally(runtimeException));
+        }
+    }
+
+    private void terminateOverdueDetections() {
+        long now = System.nanoTime();
+        this.inFlightDetections.forEach((personDetectorWorker, inFlightDetection) -> {
+            boolean timedOut = now - inFlightDetection.deadline > 0;
+            boolean cancelled = !timedOut && inFlightDetection.thread.isInterrupted();
+            // removing the exact detection first means a worker that has since moved on to another detection is spared
+            if ((!timedOut && !cancelled) || !this.inFlightDetections.remove(personDetectorWorker, inFlightDetection)) {
+                return;
+            }
+            if (timedOut) {
+                inFlightDetection.timedOut = true;
+                this.timedOutDetections.incrementAndGet();
+                LOGGER.warn("Yolo person detector worker exceeded the detection timeout of {} ms, it will be terminated.", this.detectionTimeoutMillis);
+            } else {
+                inFlightDetection.cancelled = true;
+                this.cancelledDetections.incrementAndGet();
+                LOGGER.warn("Detection was cancelled, its yolo person detector worker will be terminated.");
+            }
+            this.killedWorkers.incrementAndGet();
+            personDetectorWorker.destroy();
+        });
+    }
+
+    private PersonDetectorWorker borrowWorker() {
+        try {
+            while (true) {
+                PersonDetectorWorker personDetectorWorker = this.idleWorkers.poll();
+                if (personDetectorWorker != null) {
+                    return personDetectorWorker;
+                }
+                // a slot frees up when a crashed worker is discarded, so keep checking instead of blocking on take()
+                if (reserveWorkerSlot()) {
+                    return startWorker();
+                }
+                personDetectorWorker = this.idleWorkers.poll(IDLE_WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (personDetectorWorker != null) {
+                    return personDetectorWorker;
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new PersonDetectorException("Interrupted while waiting for an idle yolo person detector worker.");
+        }
+    }
+
+    private void releaseWorker(PersonDetectorWorker personDetectorWorker) {
+        if (this.shutdown || !this.idleWorkers.offer(personDetectorWorker)) {
+            discardWorker(personDetectorWorker);
+        }
+    }
+
+    private void discardWorker(PersonDetectorWorker personDetectorWorker) {
+        personDetectorWorker.destroy();
+        this.workerCount.decrementAndGet();
+    }
+
+    private void topUpWorkers() {
+        while (!this.shutdown && reserveWorkerSlot()) {
+            try {
+                releaseWorker(startWorker());
+            } catch (PersonDetectorException personDetectorException) {
+                LOGGER.error("Could not start a yolo person detector worker, another attempt will be made on the next health check.", personDetectorException);
+                return;
+            }
+        }
+    }
+
+    private boolean reserveWorkerSlot() {
+        int currentWorkerCount;
+        do {
+            currentWorkerCount = this.workerCount.get();
+            if (currentWorkerCount >= this.poolSize) {
+                return false;
+            }
+        } while (!this.workerCount.compareAndSet(currentWorkerCount, currentWorkerCount + 1));
+        return true;
+    }
+
+    private PersonDetectorWorker startWorker() {
+        try {
+            return this.workerStartTimer.record(() -> PersonDetectorWorker.start(this.workerProcessBuilder, this.responseParseTimer));
+        } catch (RuntimeException runtimeException) {
+            this.workerCount.decrementAndGet();
+            throw runtimeException;
+        }
+    }
+
+    private void registerMeters() {
+        this.workerWaitTimer = this.meterRegistry.timer("security.detector.worker.wait");
+        this.workerStartTimer = this.meterRegistry.timer("security.detector.worker.start");
+        this.workerRoundTripTimer = this.meterRegistry.timer("security.detector.worker.round-trip");
+        this.responseParseTimer = this.meterRegistry.timer("security.detector.response.parse");
+        this.batchWaitTimer = this.meterRegistry.timer("security.detector.batch.wait");
+        this.batchSizeSummary = this.meterRegistry.summary("security.detector.batch.size");
+        Gauge.builder("security.detector.workers", this.workerCount, AtomicInteger::get).register(this.meterRegistry);
+        FunctionCounter.builder("security.detector.failures", this.timedOutDetections, AtomicLong::get).tag("reason", "timeout").register(this.meterRegistry);
+        FunctionCounter.builder("security.detector.failures", this.cancelledDetections, AtomicLong::get).tag("reason", "cancelled").register(this.meterRegistry);
+        FunctionCounter.builder("security.detector.workers.killed", this.killedWorkers, AtomicLong::get).register(this.meterRegistry);
+    }
+
+    private static class InFlightDetection {
+        private final Thread thread;
+        private final long deadline;
+        private volatile boolean timedOut;
+        private volatile boolean cancelled;
+
+        private InFlightDetection(Thread thread, long deadline) {
+            this.thread = thread;
+            this.deadline = deadline;
+        }
+    }
+}
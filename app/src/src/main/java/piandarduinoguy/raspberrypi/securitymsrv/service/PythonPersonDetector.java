@@ -0,0 +1,28 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+/**
+ * Runs the person detection in the pooled yolo.py worker processes, handing the frame over through the worker's stdin
+ * along with its regions of interest and getting the annotated image back through its stdout.
+ */
+public class PythonPersonDetector implements PersonDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PythonPersonDetector.class);
+
+    private final PersonDetectorWorkerPool personDetectorWorkerPool;
+
+    public PythonPersonDetector(PersonDetectorWorkerPool personDetectorWorkerPool) {
+        this.personDetectorWorkerPool = personDetectorWorkerPool;
+    }
+
+    @Override
+    public DetectionResult detectPerson(byte[] imageBytes, DetectionContext detectionContext) {
+        DetectionResult detectionResult = this.personDetectorWorkerPool.detect(imageBytes, detectionContext.getDetectionRegions());
+        ValidationUtil.validateDetectionResult(detectionResult);
+        LOGGER.debug("Result from the yolo person detector worker: {}", detectionResult);
+        return detectionResult;
+    }
+}
@@ -0,0 +1,20 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+/**
+ * What happens to a security check submitted while the security check queue is full.
+ */
+public enum SecurityCheckOverflowPolicy {
+    /**
+     * The oldest queued check is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new check is rejected, surfacing as 429 Too Many Requests.
+     */
+    REJECT,
+    /**
+     * A check still queued for the same camera is replaced by the new one, only when the camera has no queued check
+     * is the new check rejected. This policy is applied whether or not the queue is full.
+     */
+    COALESCE
+}
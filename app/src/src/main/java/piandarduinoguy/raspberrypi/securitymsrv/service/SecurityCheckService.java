@@ -0,0 +1,345 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheckStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityCheckNotFoundException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityCheckRejectedException;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts security checks from the request threads, within the rate limit of their camera, and, in asynchronous mode,
+ * queues them in a lane per camera that a fixed number of executor threads drain by weighted round robin, so that the
+ * cameras share the detectors in proportion to their weights however many frames each of them sends. Both the lane of a
+ * camera and all lanes together are bounded, when the queue as a whole is full the overflow policy is applied to the
+ * camera with the most checks queued. The outcome of a check is kept for a bounded number of checks so that it can be
+ * looked up by its id. A queued check can be cancelled before it runs and a running one by interrupting the thread
+ * running it, which terminates its detection.
+ */
+@Service
+public class SecurityCheckService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityCheckService.class);
+
+    private final SecurityService securityService;
+    private final boolean asynchronous;
+    private final int queueCapacity;
+    private final int cameraQueueCapacity;
+    private final SecurityCheckOverflowPolicy overflowPolicy;
+    private final int executorThreads;
+    private final int resultsCapacity;
+    private final CameraRateLimiter cameraRateLimiter;
+
+    private final CameraLanes<QueuedSecurityCheck> queuedSecurityChecks;
+    private final Map<String, SecurityCheck> securityChecks = new ConcurrentHashMap<>();
+    private final Queue<String> finishedSecurityCheckIdsOldestFirst = new ConcurrentLinkedQueue<>();
+    private final Map<String, QueuedSecurityCheck> runningSecurityChecks = new ConcurrentHashMap<>();
+
+    private ExecutorService securityCheckExecutor;
+    private volatile boolean shutdown;
+
+    @Autowired
+    public SecurityCheckService(SecurityService securityService,
+                                @Value("${security-check.mode}") String mode,
+                                @Value("${security-check.queue.capacity}") int queueCapacity,
+                                @Value("${security-check.queue.camera-capacity}") int cameraQueueCapacity,
+                                @Value("${security-check.queue.overflow-policy}") SecurityCheckOverflowPolicy overflowPolicy,
+                                @Value("${security-check.executor.threads}") int executorThreads,
+                                @Value("${security-check.results.capacity}") int resultsCapacity,
+                                @Value("${security-check.cameras.weights}") String cameraWeights,
+                                CameraRateLimiter cameraRateLimiter,
+                                MeterRegistry meterRegistry) {
+        this.securityService = securityService;
+        this.asynchronous = "async".equalsIgnoreCase(mode);
+        this.queueCapacity = queueCapacity;
+        this.cameraQueueCapacity = cameraQueueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.executorThreads = executorThreads;
+        this.resultsCapacity = resultsCapacity;
+        this.cameraRateLimiter = cameraRateLimiter;
+        this.queuedSecurityChecks = new CameraLanes<>(parseCameraWeights(cameraWeights));
+        Gauge.builder("security.check.queue.depth", this, SecurityCheckService::getQueueDepth).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!this.asynchronous) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.securityCheckExecutor = Executors.newFixedThreadPool(this.executorThreads, runnable -> {
+            Thread thread = new Thread(runnable, "security-check-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int thread = 0; thread < this.executorThreads; thread++) {
+            this.securityCheckExecutor.execute(this::drainQueuedSecurityChecks);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.shutdown = true;
+        synchronized (this.queuedSecurityChecks) {
+            this.queuedSecurityChecks.notifyAll();
+        }
+        if (this.securityCheckExecutor != null) {
+            this.securityCheckExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Performs the check on the calling thread in synchronous mode, otherwise queues it and returns straight away.
+     */
+    public SecurityCheck submitSecurityCheck(String cameraId, byte[] imageBytes) {
+        ValidationUtil.validateCameraId(cameraId);
+        this.cameraRateLimiter.acquire(cameraId);
+        SecurityCheck securityCheck = new SecurityCheck(UUID.randomUUID().toString(), cameraId, SecurityCheckStatus.QUEUED, null, null, null);
+        if (!this.asynchronous) {
+            recordSecurityCheck(securityCheck);
+            runSecurityCheck(new QueuedSecurityCheck(securityCheck, imageBytes), true);
+            return copyOf(securityCheck);
+        }
+        enqueue(new QueuedSecurityCheck(securityCheck, imageBytes));
+        return copyOf(securityCheck);
+    }
+
+    public SecurityCheck getSecurityCheck(String id) {
+        SecurityCheck securityCheck = this.securityChecks.get(id);
+        if (securityCheck == null) {
+            throw new SecurityCheckNotFoundException(String.format("No security check with id %s exists, it may have expired.", id));
+        }
+        return copyOf(securityCheck);
+    }
+
+    /**
+     * Cancels the check if it is queued or running, a check that has already finished is returned as it is.
+     */
+    public SecurityCheck cancelSecurityCheck(String id) {
+        SecurityCheck securityCheck = this.getSecurityCheck(id);
+        synchronized (this.queuedSecurityChecks) {
+            QueuedSecurityCheck queuedSecurityCheck = this.queuedSecurityChecks.removeFirstMatching(
+                    alreadyQueuedSecurityCheck -> alreadyQueuedSecurityCheck.securityCheck.getId().equals(id));
+            if (queuedSecurityCheck != null) {
+                updateSecurityCheck(queuedSecurityCheck.securityCheck, SecurityCheckStatus.CANCELLED, null, "Cancelled before it was run.");
+                return copyOf(queuedSecurityCheck.securityCheck);
+            }
+        }
+        QueuedSecurityCheck runningSecurityCheck = this.runningSecurityChecks.get(id);
+        if (runningSecurityCheck == null) {
+            return securityCheck;
+        }
+        synchronized (runningSecurityCheck.securityCheck) {
+            runningSecurityCheck.cancelled = true;
+            if (runningSecurityCheck.runningThread != null) {
+                runningSecurityCheck.runningThread.interrupt();
+            }
+        }
+        return copyOf(runningSecurityCheck.securityCheck);
+    }
+
+    public int getQueueDepth() {
+        synchronized (this.queuedSecurityChecks) {
+            return this.queuedSecurityChecks.size();
+        }
+    }
+
+    private void enqueue(QueuedSecurityCheck queuedSecurityCheck) {
+        String cameraId = queuedSecurityCheck.securityCheck.getCameraId();
+        synchronized (this.queuedSecurityChecks) {
+            if (this.overflowPolicy == SecurityCheckOverflowPolicy.COALESCE) {
+                coalesceQueuedSecurityCheckOfCamera(queuedSecurityCheck);
+            }
+            boolean cameraLaneFull = this.queuedSecurityChecks.size(cameraId) >= this.cameraQueueCapacity;
+            if (cameraLaneFull || this.queuedSecurityChecks.size() >= this.queueCapacity) {
+                if (this.overflowPolicy == SecurityCheckOverflowPolicy.DROP_OLDEST) {
+                    QueuedSecurityCheck droppedSecurityCheck = cameraLaneFull
+                            ? this.queuedSecurityChecks.pollFirst(cameraId)
+                            : this.queuedSecurityChecks.pollOldestOfLongestLane();
+                    drop(droppedSecurityCheck, String.format("Dropped as the security check %s was full when security check %s was submitted.",
+                            cameraLaneFull ? "lane of camera " + cameraId : "queue",
+                            queuedSecurityCheck.securityCheck.getId()));
+                } else if (cameraLaneFull) {
+                    throw new SecurityCheckRejectedException(String.format(
+                            "The security check lane of camera %s is full with %d security checks, try again later.", cameraId, this.cameraQueueCapacity));
+                } else {
+                    throw new SecurityCheckRejectedException(String.format(
+                            "The security check queue is full with %d security checks, try again later.", this.queueCapacity));
+                }
+            }
+            recordSecurityCheck(queuedSecurityCheck.securityCheck);
+            this.queuedSecurityChecks.addLast(cameraId, queuedSecurityCheck);
+            this.queuedSecurityChecks.notify();
+        }
+    }
+
+    private void coalesceQueuedSecurityCheckOfCamera(QueuedSecurityCheck queuedSecurityCheck) {
+        QueuedSecurityCheck supersededSecurityCheck = this.queuedSecurityChecks.pollFirst(queuedSecurityCheck.securityCheck.getCameraId());
+        if (supersededSecurityCheck != null) {
+            drop(supersededSecurityCheck, String.format("Superseded by the newer frame of security check %s.", queuedSecurityCheck.securityCheck.getId()));
+        }
+    }
+
+    private void drainQueuedSecurityChecks() {
+        while (!this.shutdown) {
+            QueuedSecurityCheck queuedSecurityCheck;
+            synchronized (this.queuedSecurityChecks) {
+                while (this.queuedSecurityChecks.isEmpty() && !this.shutdown) {
+                    try {
+                        this.queuedSecurityChecks.wait(TimeUnit.SECONDS.toMillis(1));
+                    } catch (InterruptedException interruptedException) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                queuedSecurityCheck = this.queuedSecurityChecks.pollNext();
+                if (queuedSecurityCheck != null) {
+                    // registered while the queue is locked so that a cancellation always finds the check
+                    this.runningSecurityChecks.put(queuedSecurityCheck.securityCheck.getId(), queuedSecurityCheck);
+                }
+            }
+            if (queuedSecurityCheck != null) {
+                runSecurityCheck(queuedSecurityCheck, false);
+            }
+        }
+    }
+
+    private void runSecurityCheck(QueuedSecurityCheck queuedSecurityCheck, boolean rethrowFailure) {
+        SecurityCheck securityCheck = queuedSecurityCheck.securityCheck;
+        this.runningSecurityChecks.put(securityCheck.getId(), queuedSecurityCheck);
+        try {
+            synchronized (securityCheck) {
+                if (queuedSecurityCheck.cancelled) {
+                    updateSecurityCheck(securityCheck, SecurityCheckStatus.CANCELLED, null, "Cancelled before it was run.");
+                    return;
+                }
+                queuedSecurityCheck.runningThread = Thread.currentThread();
+                updateSecurityCheck(securityCheck, SecurityCheckStatus.RUNNING, null, null);
+            }
+            DetectionResult detectionResult = this.securityService.performSecurityCheck(securityCheck.getCameraId(), queuedSecurityCheck.imageBytes);
+            updateSecurityCheck(securityCheck, SecurityCheckStatus.COMPLETED, detectionResult, null);
+        } catch (RuntimeException runtimeException) {
+            if (queuedSecurityCheck.cancelled) {
+                updateSecurityCheck(securityCheck, SecurityCheckStatus.CANCELLED, null, String.format("Cancelled while it was running: %s", runtimeException.getMessage()));
+            } else {
+                updateSecurityCheck(securityCheck, SecurityCheckStatus.FAILED, null, runtimeException.getMessage());
+            }
+            if (rethrowFailure) {
+                throw runtimeException;
+            }
+            LOGGER.error("Security check {} of camera {} failed.", securityCheck.getId(), securityCheck.getCameraId(), runtimeException);
+        } finally {
+            this.runningSecurityChecks.remove(securityCheck.getId());
+            synchronized (securityCheck) {
+                queuedSecurityCheck.runningThread = null;
+            }
+            if (queuedSecurityCheck.cancelled) {
+                // a cancellation that came in after the detection finished must not interrupt the next check
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private void drop(QueuedSecurityCheck queuedSecurityCheck, String detail) {
+        updateSecurityCheck(queuedSecurityCheck.securityCheck, SecurityCheckStatus.DROPPED, null, detail);
+        LOGGER.warn("Security check {} of camera {}: {}", queuedSecurityCheck.securityCheck.getId(), queuedSecurityCheck.securityCheck.getCameraId(), detail);
+    }
+
+    private void recordSecurityCheck(SecurityCheck securityCheck) {
+        this.securityChecks.put(securityCheck.getId(), securityCheck);
+    }
+
+    /**
+     * Only finished checks are expired, the oldest finished first once more than the results capacity have finished, so
+     * that a queued or running check can always be looked up. The unfinished checks are bounded by the queue capacity
+     * and the executor threads.
+     */
+    private void retireSecurityCheck(SecurityCheck securityCheck) {
+        this.finishedSecurityCheckIdsOldestFirst.add(securityCheck.getId());
+        while (this.finishedSecurityCheckIdsOldestFirst.size() > this.resultsCapacity) {
+            String oldestSecurityCheckId = this.finishedSecurityCheckIdsOldestFirst.poll();
+            if (oldestSecurityCheckId == null) {
+                return;
+            }
+            this.securityChecks.remove(oldestSecurityCheckId);
+        }
+    }
+
+    /**
+     * Parses camera weights given as camera-id=weight pairs separated by commas, a camera without a weight has weight 1.
+     */
+    static Map<String, Integer> parseCameraWeights(String cameraWeights) {
+        Map<String, Integer> parsedCameraWeights = new HashMap<>();
+        for (String cameraWeight : cameraWeights.split(",")) {
+            if (cameraWeight.trim().isEmpty()) {
+                continue;
+            }
+            String[] cameraIdAndWeight = cameraWeight.split("=");
+            int weight = cameraIdAndWeight.length == 2 ? Integer.parseInt(cameraIdAndWeight[1].trim()) : 0;
+            if (weight < 1) {
+                throw new IllegalArgumentException(String.format("The camera weight \"%s\" is not a camera-id=weight pair with a weight of at least 1.", cameraWeight));
+            }
+            parsedCameraWeights.put(cameraIdAndWeight[0].trim(), weight);
+        }
+        return parsedCameraWeights;
+    }
+
+    private void updateSecurityCheck(SecurityCheck securityCheck, SecurityCheckStatus securityCheckStatus, DetectionResult detectionResult, String detail) {
+        synchronized (securityCheck) {
+            // retired before the new status can be seen, so whoever sees the check finished sees the older ones expired
+            if (!isFinished(securityCheck.getSecurityCheckStatus()) && isFinished(securityCheckStatus)) {
+                retireSecurityCheck(securityCheck);
+            }
+            securityCheck.setSecurityCheckStatus(securityCheckStatus);
+            securityCheck.setPersonDetected(detectionResult == null ? null : detectionResult.isPersonDetected());
+            securityCheck.setDetectionResult(detectionResult);
+            securityCheck.setDetail(detail);
+        }
+    }
+
+    private static boolean isFinished(SecurityCheckStatus securityCheckStatus) {
+        return securityCheckStatus != SecurityCheckStatus.QUEUED && securityCheckStatus != SecurityCheckStatus.RUNNING;
+    }
+
+    private static SecurityCheck copyOf(SecurityCheck securityCheck) {
+        synchronized (securityCheck) {
+            return new SecurityCheck(securityCheck.getId(),
+                    securityCheck.getCameraId(),
+                    securityCheck.getSecurityCheckStatus(),
+                    securityCheck.getPersonDetected(),
+                    securityCheck.getDetectionResult(),
+                    securityCheck.getDetail());
+        }
+    }
+
+    private static class QueuedSecurityCheck {
+        private final SecurityCheck securityCheck;
+        private final byte[] imageBytes;
+        private Thread runningThread;
+        private volatile boolean cancelled;
+
+        private QueuedSecurityCheck(SecurityCheck securityCheck, byte[] imageBytes) {
+            this.securityCheck = securityCheck;
+            this.imageBytes = imageBytes;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigFileException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the authoritative security config in memory as an immutable, versioned snapshot. The security_config.json file
+ * is only read at start up (or while no security config has been loaded yet), reads are served lock free from memory,
+ * changes are applied with a compare-and-set and written behind:
+ * bursts of changes are coalesced into a single write that is fsync'd to a temporary file which is then atomically
+ * renamed over security_config.json. A write behind that fails is retried without waiting for the next change, backing
+ * off up to the maximum retry delay for as long as it keeps failing. Reading and writing the file are timed.
+ */
+@Service
+public class SecurityConfigStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityConfigStore.class);
+
+    @Value("${resources.base.location}")
+    private String resourcesBaseLocation;
+
+    @Value("${security-config.write-behind.delay-ms}")
+    private long writeBehindDelayMillis;
+
+    @Value("${security-config.write-behind.max-retry-delay-ms}")
+    private long writeBehindMaxRetryDelayMillis;
+
+    private final ObjectMapper objectMapper;
+
+    private final Timer readTimer;
+
+    private final Timer writeTimer;
+
+    private final AtomicReference<VersionedSecurityConfig> securityConfigReference = new AtomicReference<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Object persistenceLock = new Object();
+
+    private VersionedSecurityConfig persistedSecurityConfig;
+
+    private ScheduledExecutorService writeBehindExecutor;
+
+    // only touched by the write behind thread
+    private long writeBehindRetryDelayMillis;
+
+    @Autowired
+    public SecurityConfigStore(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.readTimer = meterRegistry.timer("security.config.read");
+        this.writeTimer = meterRegistry.timer("security.config.write");
+    }
+
+    @PostConstruct
+    private void createWriteBehindExecutor() {
+        this.writeBehindExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "security-config-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+    }
+
+    /**
+     * Replaces the in memory security config with the contents of security_config.json, discarding changes that have
+     * not been written yet. The in memory security config is cleared if the file can not be read.
+     */
+    public void reload() {
+        synchronized (this.persistenceLock) {
+            VersionedSecurityConfig reloadedSecurityConfig;
+            try {
+                reloadedSecurityConfig = toNextVersion(this.securityConfigReference.get(), readSecurityConfigFile());
+            } catch (SecurityConfigFileException securityConfigFileException) {
+                reloadedSecurityConfig = null;
+                LOGGER.warn("No security config loaded: {}", securityConfigFileException.getMessage());
+            }
+            this.securityConfigReference.set(reloadedSecurityConfig);
+            this.persistedSecurityConfig = reloadedSecurityConfig;
+        }
+    }
+
+    public SecurityConfig get() {
+        return getVersioned().toSecurityConfig();
+    }
+
+    public VersionedSecurityConfig getVersioned() {
+        VersionedSecurityConfig securityConfig = this.securityConfigReference.get();
+        if (securityConfig == null) {
+            securityConfig = loadIfAbsent();
+        }
+        return securityConfig;
+    }
+
+    /**
+     * Replaces the security config regardless of its current value, this does not require a security config to have
+     * been loaded.
+     */
+    public VersionedSecurityConfig set(SecurityConfig securityConfig) {
+        while (true) {
+            VersionedSecurityConfig currentSecurityConfig = this.securityConfigReference.get();
+            VersionedSecurityConfig nextSecurityConfig = toNextVersion(currentSecurityConfig, securityConfig);
+            if (this.securityConfigReference.compareAndSet(currentSecurityConfig, nextSecurityConfig)) {
+                scheduleFlush();
+                return nextSecurityConfig;
+            }
+        }
+    }
+
+    /**
+     * Applies the transition to the current security config with a compare-and-set, retrying against the newer security
+     * config when a concurrent transition won the race, so that every transition is applied exactly once. An exception
+     * thrown by the transition leaves the security config unchanged.
+     *
+     * @return the security config the transition produced, or empty if the transition left the security config as it is.
+     */
+    public Optional<VersionedSecurityConfig> transition(UnaryOperator<SecurityConfig> transition) {
+        while (true) {
+            VersionedSecurityConfig currentSecurityConfig = getVersioned();
+            SecurityConfig nextSecurityConfig = transition.apply(currentSecurityConfig.toSecurityConfig());
+            if (nextSecurityConfig == null) {
+                return Optional.empty();
+            }
+            VersionedSecurityConfig nextVersionedSecurityConfig = toNextVersion(currentSecurityConfig, nextSecurityConfig);
+            if (this.securityConfigReference.compareAndSet(currentSecurityConfig, nextVersionedSecurityConfig)) {
+                scheduleFlush();
+                return Optional.of(nextVersionedSecurityConfig);
+            }
+        }
+    }
+
+    /**
+     * Writes the in memory security config to security_config.json if it changed since it was last written.
+     */
+    public void flush() {
+        synchronized (this.persistenceLock) {
+            VersionedSecurityConfig securityConfig = this.securityConfigReference.get();
+            if (securityConfig == null || securityConfig == this.persistedSecurityConfig) {
+                return;
+            }
+            this.writeTimer.record(() -> writeSecurityConfigFile(securityConfig.toSecurityConfig()));
+            this.persistedSecurityConfig = securityConfig;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.writeBehindExecutor.shutdownNow();
+        flush();
+    }
+
+    private void scheduleFlush() {
+        scheduleFlush(this.writeBehindDelayMillis);
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            this.writeBehindExecutor.schedule(this::writeBehind, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeBehind() {
+        this.flushScheduled.set(false);
+        try {
+            flush();
+            this.writeBehindRetryDelayMillis = 0;
+        } catch (SecurityConfigFileException securityConfigFileException) {
+            this.writeBehindRetryDelayMillis = Math.min(Math.max(this.writeBehindRetryDelayMillis * 2, this.writeBehindDelayMillis),
+                    this.writeBehindMaxRetryDelayMillis);
+            LOGGER.error("Could not write behind the security config, it will be retried in {} ms.", this.writeBehindRetryDelayMillis, securityConfigFileException);
+            if (!this.writeBehindExecutor.isShutdown()) {
+                scheduleFlush(this.writeBehindRetryDelayMillis);
+            }
+        }
+    }
+
+    private SecurityConfig readSecurityConfigFile() {
+        Timer.Sample readSample = Timer.start();
+        try {
+            return objectMapper.readValue(getSecurityConfigFile(), SecurityConfig.class);
+        } catch (FileNotFoundException fileNotFoundException) {
+            throw new SecurityConfigFileException(String.format(
+                    "The SecurityConfig file was not found. FileNotFoundException with message \"%s\" was thrown.",
+                    fileNotFoundException.getMessage()));
+        } catch (IOException ioException) {
+            throw new SecurityConfigFileException(String.format(
+                    "Could not retrieve security config due to an IOException with message \"%s\".",
+                    ioException.getMessage()));
+        } finally {
+            readSample.stop(this.readTimer);
+        }
+    }
+
+    private void writeSecurityConfigFile(SecurityConfig securityConfig) {
+        Path securityConfigPath = getSecurityConfigFile().toPath();
+        Path temporarySecurityConfigPath = securityConfigPath.resolveSibling(securityConfigPath.getFileName() + ".tmp");
+        try {
+            byte[] securityConfigBytes = objectMapper.writeValueAsBytes(securityConfig);
+            try (FileChannel fileChannel = FileChannel.open(temporarySecurityConfigPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer securityConfigBuffer = ByteBuffer.wrap(securityConfigBytes);
+                while (securityConfigBuffer.hasRemaining()) {
+                    fileChannel.write(securityConfigBuffer);
+                }
+                fileChannel.force(true);
+            }
+            Files.move(temporarySecurityConfigPath, securityConfigPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(securityConfigPath.toAbsolutePath().getParent());
+        } catch (IOException ioException) {
+            throw new SecurityConfigFileException(String.format(
+                    "Could not save the security config file object %s to %s due to an IOException with message \"%s\".",
+                    securityConfig,
+                    resourcesBaseLocation + "security_config.json",
+                    ioException.getMessage()));
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException ioException) {
+            // not every file system allows a directory to be opened, the rename is durable on those that do
+            LOGGER.debug("Could not fsync directory {}.", directory, ioException);
+        }
+    }
+
+    private VersionedSecurityConfig loadIfAbsent() {
+        synchronized (this.persistenceLock) {
+            VersionedSecurityConfig securityConfig = this.securityConfigReference.get();
+            if (securityConfig == null) {
+                securityConfig = toNextVersion(null, readSecurityConfigFile());
+                this.securityConfigReference.set(securityConfig);
+                this.persistedSecurityConfig = securityConfig;
+            }
+            return securityConfig;
+        }
+    }
+
+    private File getSecurityConfigFile() {
+        return new File(resourcesBaseLocation + "security_config.json");
+    }
+
+    private static VersionedSecurityConfig toNextVersion(VersionedSecurityConfig currentSecurityConfig, SecurityConfig nextSecurityConfig) {
+        long nextVersion = currentSecurityConfig == null ? 1 : currentSecurityConfig.getVersion() + 1;
+        return new VersionedSecurityConfig(nextSecurityConfig.getSecurityStatus(), nextSecurityConfig.getSecurityState(), nextVersion);
+    }
+}
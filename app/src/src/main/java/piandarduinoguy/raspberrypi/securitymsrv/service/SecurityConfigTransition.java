@@ -0,0 +1,46 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * The transitions of the security config state machine. Each transition validates the current security config against
+ * the rules in {@link ValidationUtil} and returns the next security config, or null when it leaves the security config
+ * as it is.
+ */
+public enum SecurityConfigTransition implements UnaryOperator<SecurityConfig> {
+    ARM {
+        @Override
+        public SecurityConfig apply(SecurityConfig securityConfig) {
+            ValidationUtil.validateSecurityCanBeArmed(securityConfig);
+            return new SecurityConfig(securityConfig.getSecurityStatus(), SecurityState.ARMED);
+        }
+    },
+    DISARM {
+        @Override
+        public SecurityConfig apply(SecurityConfig securityConfig) {
+            ValidationUtil.validateAlarmCanBeDisarmed(securityConfig);
+            return new SecurityConfig(securityConfig.getSecurityStatus(), SecurityState.DISARMED);
+        }
+    },
+    SILENCE {
+        @Override
+        public SecurityConfig apply(SecurityConfig securityConfig) {
+            ValidationUtil.validateSecurityCanBeSilenced(securityConfig);
+            return new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED);
+        }
+    },
+    BREACH {
+        @Override
+        public SecurityConfig apply(SecurityConfig securityConfig) {
+            if (securityConfig.getSecurityState() != SecurityState.ARMED || securityConfig.getSecurityStatus() == SecurityStatus.BREACHED) {
+                return null;
+            }
+            return new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.AnnotatedImage;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.event.AnnotatedImagePublishedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.event.SecurityConfigChangedEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigFileException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Pushes security config changes and new annotated images to the subscribed control hub dashboards as server-sent
+ * events, so that they do not have to poll for them. The events are sent from a dedicated thread so that a slow
+ * subscriber never holds up the request that changed the security config or the detection that annotated the image,
+ * and a heartbeat comment is sent periodically so that a subscriber that went away is noticed and dropped.
+ */
+@Service
+public class SecurityEventStreamService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecurityEventStreamService.class);
+    static final String SECURITY_CONFIG_EVENT = "security-config";
+    static final String ANNOTATED_IMAGE_EVENT = "annotated-image";
+
+    private final SecurityConfigStore securityConfigStore;
+    private final AnnotatedImageService annotatedImageService;
+    private final long emitterTimeoutMillis;
+    private final long heartbeatIntervalMillis;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService eventStreamExecutor;
+
+    @Autowired
+    public SecurityEventStreamService(SecurityConfigStore securityConfigStore,
+                                      AnnotatedImageService annotatedImageService,
+                                      @Value("${security-events.emitter-timeout-ms}") long emitterTimeoutMillis,
+                                      @Value("${security-events.heartbeat-interval-ms}") long heartbeatIntervalMillis) {
+        this.securityConfigStore = securityConfigStore;
+        this.annotatedImageService = annotatedImageService;
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        this.eventStreamExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "security-event-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.eventStreamExecutor.scheduleWithFixedDelay(this::sendHeartbeat, this.heartbeatIntervalMillis, this.heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.eventStreamExecutor.shutdownNow();
+        this.emitters.forEach(SseEmitter::complete);
+    }
+
+    /**
+     * Subscribes to the security events. The current security config and annotated image are sent first, so that a
+     * subscriber does not need to fetch them before it starts listening.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(this.emitterTimeoutMillis);
+        emitter.onCompletion(() -> this.emitters.remove(emitter));
+        emitter.onTimeout(() -> this.emitters.remove(emitter));
+        emitter.onError(throwable -> this.emitters.remove(emitter));
+        this.emitters.add(emitter);
+        this.eventStreamExecutor.execute(() -> {
+            try {
+                send(emitter, securityConfigEvent(this.securityConfigStore.getVersioned()));
+            } catch (SecurityConfigFileException securityConfigFileException) {
+                LOGGER.debug("No security config to send to a new subscriber yet.", securityConfigFileException);
+            }
+            try {
+                AnnotatedImage annotatedImage = this.annotatedImageService.getAnnotatedImage(null);
+                send(emitter, annotatedImageEvent(new AnnotatedImagePublishedEvent(
+                        annotatedImage.getCameraId(), annotatedImage.getEtag(), annotatedImage.getTimestamp())));
+            } catch (ImageFileException imageFileException) {
+                LOGGER.debug("No annotated image to send to a new subscriber yet.", imageFileException);
+            }
+        });
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return this.emitters.size();
+    }
+
+    @EventListener
+    public void onSecurityConfigChanged(SecurityConfigChangedEvent securityConfigChangedEvent) {
+        broadcast(() -> securityConfigEvent(securityConfigChangedEvent.getVersionedSecurityConfig()));
+    }
+
+    @EventListener
+    public void onAnnotatedImagePublished(AnnotatedImagePublishedEvent annotatedImagePublishedEvent) {
+        broadcast(() -> annotatedImageEvent(annotatedImagePublishedEvent));
+    }
+
+    /**
+     * An event builder can only be sent once, so every subscriber is sent an event of its own.
+     */
+    private void broadcast(Supplier<SseEmitter.SseEventBuilder> event) {
+        if (this.emitters.isEmpty()) {
+            return;
+        }
+        this.eventStreamExecutor.execute(() -> this.emitters.forEach(emitter -> send(emitter, event.get())));
+    }
+
+    private void sendHeartbeat() {
+        this.emitters.forEach(emitter -> send(emitter, SseEmitter.event().comment("heartbeat")));
+    }
+
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException exception) {
+            // the subscriber went away, the servlet container completes the emitter with the error
+            this.emitters.remove(emitter);
+            LOGGER.debug("Dropped a security event subscriber.", exception);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder securityConfigEvent(VersionedSecurityConfig versionedSecurityConfig) {
+        return SseEmitter.event()
+                .name(SECURITY_CONFIG_EVENT)
+                .id(String.valueOf(versionedSecurityConfig.getVersion()))
+                .data(versionedSecurityConfig.toSecurityConfig(), MediaType.APPLICATION_JSON);
+    }
+
+    private static SseEmitter.SseEventBuilder annotatedImageEvent(AnnotatedImagePublishedEvent annotatedImagePublishedEvent) {
+        return SseEmitter.event()
+                .name(ANNOTATED_IMAGE_EVENT)
+                .data(annotatedImagePublishedEvent, MediaType.APPLICATION_JSON);
+    }
+}
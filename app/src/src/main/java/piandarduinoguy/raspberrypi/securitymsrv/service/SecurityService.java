@@ -1,111 +1,100 @@
 package piandarduinoguy.raspberrypi.securitymsrv.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.io.FileUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpStatus;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
-import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
-import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
-import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
-import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigFileException;
-import piandarduinoguy.raspberrypi.securitymsrv.publisher.SecurityConfigPublisher;
-import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.event.SecurityConfigChangedEvent;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.Base64;
+import java.util.Optional;
 
 @Service
 public class SecurityService {
     private static final Logger LOGGER = LoggerFactory.getLogger(SecurityService.class);
-    private ObjectMapper objectMapper;
+    private SecurityConfigStore securityConfigStore;
     private PersonDetectorService personDetectorService;
-    private SecurityConfigPublisher securityConfigPublisher;
-
-    @Value("${resources.base.location}")
-    private String resourcesBaseLocation;
-
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private AnnotatedImageService annotatedImageService;
+    private Counter breachCounter;
 
     @Autowired
-    public SecurityService(ObjectMapper objectMapper,
+    public SecurityService(SecurityConfigStore securityConfigStore,
                            PersonDetectorService personDetectorService,
-                           SecurityConfigPublisher securityConfigPublisher) {
-        this.objectMapper = objectMapper;
+                           ApplicationEventPublisher applicationEventPublisher,
+                           AnnotatedImageService annotatedImageService,
+                           MeterRegistry meterRegistry) {
+        this.securityConfigStore = securityConfigStore;
         this.personDetectorService = personDetectorService;
-        this.securityConfigPublisher = securityConfigPublisher;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.annotatedImageService = annotatedImageService;
+        this.breachCounter = meterRegistry.counter("security.breaches");
     }
 
     public SecurityConfig getSecurityConfig() {
-        try {
-            return objectMapper.readValue(new File(resourcesBaseLocation + "security_config.json"), SecurityConfig.class);
-        } catch (FileNotFoundException fileNotFoundException) {
-            throw new SecurityConfigFileException(String.format(
-                    "The SecurityConfig file was not found. FileNotFoundException with message \"%s\" was thrown.",
-                    fileNotFoundException.getMessage()));
-        } catch (IOException ioException) {
-            throw new SecurityConfigFileException(String.format(
-                    "Could not retrieve security config due to an IOException with message \"%s\".",
-                    ioException.getMessage()));
-        }
+        return this.securityConfigStore.get();
     }
 
     public SecurityConfig saveSecurityConfig(SecurityConfig securityConfig) {
-        try {
-            objectMapper.writeValue(new File(resourcesBaseLocation + "security_config.json"), securityConfig);
-            this.securityConfigPublisher.publishSecurityConfig(securityConfig);
+        VersionedSecurityConfig savedSecurityConfig = this.securityConfigStore.set(securityConfig);
+        this.applicationEventPublisher.publishEvent(new SecurityConfigChangedEvent(savedSecurityConfig));
+        return savedSecurityConfig.toSecurityConfig();
+    }
+
+    /**
+     * Applies the transition atomically and announces the resulting security config if the transition changed it.
+     */
+    public SecurityConfig transitionSecurityConfig(SecurityConfigTransition securityConfigTransition) {
+        Optional<VersionedSecurityConfig> transitionedSecurityConfig = this.applyTransition(securityConfigTransition);
+        if (!transitionedSecurityConfig.isPresent()) {
             return this.getSecurityConfig();
-        } catch (IOException ioException) {
-            throw new SecurityConfigFileException(String.format(
-                    "Could not save the security config file object %s to %s due to an IOException with message \"%s\".",
-                    securityConfig,
-                    resourcesBaseLocation + "security_config.json",
-                    ioException.getMessage()));
         }
+        return transitionedSecurityConfig.get().toSecurityConfig();
     }
 
-    public String getBase64AnnotatedImage() {
-        File annotatedImageFile = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureAnnotatedFileName));
-        ValidationUtil.validateImageFile(annotatedImageFile);
-        try {
-            return Base64.getEncoder().encodeToString(FileUtils.readFileToByteArray(annotatedImageFile));
-        } catch (IOException ioException) {
-            throw new ImageFileException(String.format(
-                    "The image %s could not be encoded to base64 string due to an IOException being thrown with message \"%s\".",
-                    annotatedImageFile.getName(),
-                    ioException.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+    /**
+     * The annotated image of the camera, or the latest annotated image of any camera if no camera is given.
+     */
+    public String getBase64AnnotatedImage(String cameraId) {
+        return this.annotatedImageService.getBase64AnnotatedImage(cameraId);
     }
 
     public boolean detectPerson(byte[] imageBytes) {
-        this.personDetectorService.runPersonDetectorProcess(imageBytes);
-        return this.personDetectorService.hasPersonBeenDetected();
+        return this.personDetectorService.detectPerson(imageBytes);
+    }
+
+    /**
+     * Runs person detection on the image and, when a person is detected while security is armed, updates the security
+     * config to BREACHED, counting the breach if it was not BREACHED already.
+     */
+    public DetectionResult performSecurityCheck(String cameraId, byte[] imageBytes) {
+        DetectionResult detectionResult = this.personDetectorService.detect(cameraId, imageBytes);
+        if (detectionResult.isPersonDetected() && this.applyTransition(SecurityConfigTransition.BREACH).isPresent()) {
+            this.breachCounter.increment();
+        }
+        return detectionResult;
     }
 
     public SecurityConfig silenceAlarm() {
-        ValidationUtil.validateSecurityCanBeSilenced(this.getSecurityConfig());
-        SecurityConfig securityConfig = new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED);
-        return this.saveSecurityConfig(securityConfig);
+        return this.transitionSecurityConfig(SecurityConfigTransition.SILENCE);
     }
 
     public SecurityConfig armAlarm() {
-        ValidationUtil.validateSecurityCanBeArmed(this.getSecurityConfig());
-        SecurityConfig updatedSecurityConfig = this.getSecurityConfig();
-        updatedSecurityConfig.setSecurityState(SecurityState.ARMED);
-        return this.saveSecurityConfig(updatedSecurityConfig);
+        return this.transitionSecurityConfig(SecurityConfigTransition.ARM);
     }
 
     public SecurityConfig disarmAlarm() {
-        ValidationUtil.validateAlarmCanBeDisarmed(this.getSecurityConfig());
-        SecurityConfig updatedSecurityConfig = this.getSecurityConfig();
-        updatedSecurityConfig.setSecurityState(SecurityState.DISARMED);
-        return this.saveSecurityConfig(updatedSecurityConfig);
+        return this.transitionSecurityConfig(SecurityConfigTransition.DISARM);
+    }
+
+    private Optional<VersionedSecurityConfig> applyTransition(SecurityConfigTransition securityConfigTransition) {
+        Optional<VersionedSecurityConfig> transitionedSecurityConfig = this.securityConfigStore.transition(securityConfigTransition);
+        transitionedSecurityConfig.ifPresent(versionedSecurityConfig -> this.applicationEventPublisher.publishEvent(new SecurityConfigChangedEvent(versionedSecurityConfig)));
+        return transitionedSecurityConfig;
     }
 }
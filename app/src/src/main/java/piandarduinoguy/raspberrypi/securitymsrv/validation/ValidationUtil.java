@@ -3,18 +3,22 @@ package piandarduinoguy.raspberrypi.securitymsrv.validation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.InvalidCameraIdException;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigStateException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityJournalException;
 
 import java.io.File;
-import java.util.List;
+import java.util.regex.Pattern;
 
 public class ValidationUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(ValidationUtil.class);
+    private static final Pattern CAMERA_ID_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,63}");
 
     private ValidationUtil(){
         throw new IllegalStateException("ValidateUtil class is a utility class not meant to be instantiated.");
@@ -26,6 +30,28 @@ public class ValidationUtil {
         }
     }
 
+    /**
+     * A camera id names the camera's files, so only letters, digits, underscores and hyphens are allowed.
+     */
+    public static void validateCameraId(String cameraId) {
+        if (cameraId == null || !CAMERA_ID_PATTERN.matcher(cameraId).matches()) {
+            throw new InvalidCameraIdException(String.format(
+                    "The camera id %s is not valid, it must be 1 to 64 letters, digits, underscores or hyphens starting with a letter or digit.", cameraId));
+        }
+    }
+
+    public static void validateJournalLimit(int limit) {
+        if (limit < 1) {
+            throw new SecurityJournalException(String.format("The journal entry limit %d is less than 1.", limit), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    public static void validateJournalHours(int hours) {
+        if (hours < 1) {
+            throw new SecurityJournalException(String.format("The journal hours %d is less than 1.", hours), HttpStatus.BAD_REQUEST);
+        }
+    }
+
     public static void validateProcess(Process process) {
         if (process == null) {
             String exceptionMessage = "The process is null.";
@@ -35,14 +61,11 @@ public class ValidationUtil {
         }
     }
 
-    public static void validateProcessLogs(List<String> processLogs) {
-        if (processLogs == null){
-            throw new PersonDetectorException("processLogs are null.");
-        } else {
-            if (!processLogs.contains("Person detected.") &&
-                    !processLogs.contains("Person not detected.")) {
-                throw new PersonDetectorException("The process logs are not listed as valid logs, valid process logs are - 'Person detected.', 'Person not detected.'");
-            }
+    public static void validateDetectionResult(DetectionResult detectionResult) {
+        if (detectionResult == null) {
+            throw new PersonDetectorException("detectionResult is null.");
+        } else if (detectionResult.getBoundingBoxes() == null) {
+            throw new PersonDetectorException("The detection result has no bounding boxes, an empty list of bounding boxes is expected when no person is detected.");
         }
     }
 
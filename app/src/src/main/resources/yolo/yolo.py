@@ -1,4 +1,7 @@
+import json
+import math
 import os
+import struct
 import sys
 import time
 
@@ -7,12 +10,13 @@ import numpy as np
 
 
 class Detection:
-    def __init__(self, class_confidences, center_coordinates, dimensions, image_width, image_height):
+    def __init__(self, class_confidences, center_coordinates, dimensions, image_width, image_height, image_offset=(0, 0)):
         self.class_confidences = class_confidences
         self.center_coordinates = center_coordinates
         self.dimensions = dimensions
         self._image_width = image_width
         self._image_height = image_height
+        self._image_offset = image_offset
 
     @property
     def most_confident_class_id(self):
@@ -29,17 +33,21 @@ class Detection:
                            width=self.dimensions[0],
                            height=self.dimensions[1],
                            width_scale=self._image_width,
-                           height_scale=self._image_height)
+                           height_scale=self._image_height,
+                           x_offset=self._image_offset[0],
+                           y_offset=self._image_offset[1])
 
 
 class BoundingBox:
-    def __init__(self, width, height, center_x, center_y, width_scale, height_scale):
+    def __init__(self, width, height, center_x, center_y, width_scale, height_scale, x_offset=0, y_offset=0):
         self._width = width
         self._height = height
         self._center_x = center_x
         self._center_y = center_y
         self._width_scale = width_scale
         self._height_scale = height_scale
+        self._x_offset = x_offset
+        self._y_offset = y_offset
 
     @property
     def width(self):
@@ -51,11 +59,11 @@ class BoundingBox:
 
     @property
     def center_x(self):
-        return int(self._center_x * self._width_scale)
+        return int(self._center_x * self._width_scale) + self._x_offset
 
     @property
     def center_y(self):
-        return int(self._center_y * self._height_scale)
+        return int(self._center_y * self._height_scale) + self._y_offset
 
     @property
     def x_start(self):
@@ -75,8 +83,13 @@ class BoundingBox:
 
 
 class ImageObjectDetector:
+    """
+    Detects the persons in an image. The image may be a region of a larger frame, in which case the image offset is the
+    position of the region in the frame and the bounding boxes are in the coordinates of the frame.
+    """
+
     def __init__(self, neural_network, labels, confidence_threshold, non_maxima_suppression_threshold, image,
-                 save_directory):
+                 save_directory, image_offset=(0, 0)):
         self._neural_network = neural_network
         self._labels = labels
         self.confidence_threshold = confidence_threshold
@@ -85,6 +98,8 @@ class ImageObjectDetector:
         self.detected_object_bounding_boxes = []
         self.detected_object_confidences = []
         self.save_directory = save_directory
+        self.inference_time_millis = 0.0
+        self._image_offset = image_offset
 
     @property
     def image_width(self):
@@ -94,18 +109,20 @@ class ImageObjectDetector:
     def image_height(self):
         return self._image.shape[0]
 
-    def perform_object_detection_on_image(self, image):
-        layer_names = self._neural_network.getLayerNames()
-        unconnected_layer_names = [layer_names[i[0] - 1] for i in self._neural_network.getUnconnectedOutLayers()]
+    @property
+    def image(self):
+        return self._image
 
+    def perform_object_detection_on_image(self, image):
         blob = cv2.dnn.blobFromImage(image, 1 / 255.0, (416, 416),
                                      swapRB=True, crop=False)
 
         self._neural_network.setInput(blob)
         start = time.time()
-        unconnected_layer_outputs = self._neural_network.forward(unconnected_layer_names)
+        unconnected_layer_outputs = self._neural_network.forward(unconnected_layer_names(self._neural_network))
         end = time.time()
-        print("YOLO took {:.6f} seconds to perform detections.".format(end - start))
+        self.inference_time_millis = (end - start) * 1000
+        log("YOLO took {:.6f} seconds to perform detections.".format(end - start))
 
         self.filter_detections(unconnected_layer_outputs)
 
@@ -142,7 +159,8 @@ class ImageObjectDetector:
                                           center_coordinates=detection_properties[0:2],
                                           dimensions=detection_properties[2:4],
                                           image_width=self.image_width,
-                                          image_height=self.image_height)
+                                          image_height=self.image_height,
+                                          image_offset=self._image_offset)
                     if self.detection_is_person_with_confidence(detection.most_confident_class_id_confidence,
                                                                 detection.most_confident_class_id):
                         self.detected_object_bounding_boxes.append(detection.bounding_box)
@@ -170,50 +188,438 @@ class ImageObjectDetector:
                             0.5,
                             colour)
 
+    def encode_image(self):
+        """
+        Returns the image as JPEG bytes, for it to be handed back without being written to disk.
+        """
+        encoded, jpeg = cv2.imencode(".jpeg", self._image)
+        if not encoded:
+            raise ValueError("The annotated image could not be encoded.")
+        return jpeg.tobytes()
+
     def save_image(self, save_name):
         if self._image is not None:
-            cv2.imwrite(f"{self.save_directory}/{save_name}.jpeg", image)
-            print(f"Processed image saved to {self.save_directory} directory.")
+            cv2.imwrite(f"{self.save_directory}/{save_name}.jpeg", self._image)
+            log(f"Processed image saved to {self.save_directory} directory.")
         else:
-            print(f"Image was None. Not saved.")
+            log(f"Image was None. Not saved.")
+
+
+FULL_FRAME_REGION = {"name": "full-frame", "x": 0.0, "y": 0.0, "width": 1.0, "height": 1.0}
+
+
+class RegionOfInterest:
+    """
+    The pixels of a frame within a region whose x, y, width and height are fractions of the frame. The image is a view
+    of the frame, not a copy. A region without thresholds of its own uses the default ones.
+    """
+
+    def __init__(self, frame, region, default_confidence_threshold, default_non_maxima_suppression_threshold):
+        frame_height, frame_width = frame.shape[:2]
+        self.name = region.get("name")
+        self.x_start = min(frame_width - 1, int(round(region["x"] * frame_width)))
+        self.y_start = min(frame_height - 1, int(round(region["y"] * frame_height)))
+        x_end = max(self.x_start + 1, int(round((region["x"] + region["width"]) * frame_width)))
+        y_end = max(self.y_start + 1, int(round((region["y"] + region["height"]) * frame_height)))
+        self.image = frame[self.y_start:y_end, self.x_start:x_end]
+        self.confidence_threshold = default_confidence_threshold if region.get("confidence") is None \
+            else float(region["confidence"])
+        self.non_maxima_suppression_threshold = default_non_maxima_suppression_threshold \
+            if region.get("nonMaximaSuppression") is None else float(region["nonMaximaSuppression"])
+
+
+def unconnected_layer_names(neural_network):
+    layer_names = neural_network.getLayerNames()
+    return [layer_names[i[0] - 1] for i in neural_network.getUnconnectedOutLayers()]
 
 
 def create_yolo_trained_neural_network(yolo_files_directory):
     weights_path = os.path.sep.join([yolo_files_directory, "yolov3.weights"])
     config_path = os.path.sep.join([yolo_files_directory, "yolov3.cfg"])
-    print("Creating YOLO trained neural network.")
+    log("Creating YOLO trained neural network.")
     return cv2.dnn.readNetFromDarknet(config_path, weights_path)
 
 
-if __name__ == "__main__":
+def load_yolo_labels(yolo_files_directory):
+    labels_path = os.path.sep.join([yolo_files_directory, "coco.names"])
+    return open(labels_path).read().strip().split("\n")
+
+
+def log(message):
     """
-    Performs object detection on the provided image. Saves an annotated image if a person was detected.
+    Everything that is not a response goes to stderr, stdout only carries the framed responses.
     """
-    image_path = sys.argv[1]
-    yolo_files_directory = sys.argv[2]
-    confidence_threshold = float(sys.argv[3])
-    non_maxima_suppression_threshold = float(sys.argv[4])
-    save_directory = sys.argv[5]
-    save_name = sys.argv[6]
+    print(message, file=sys.stderr, flush=True)
 
-    labels_path = os.path.sep.join([yolo_files_directory, "coco.names"])
-    yolo_labels = open(labels_path).read().strip().split("\n")
 
-    yolo_neural_network = create_yolo_trained_neural_network(yolo_files_directory)
+def load_yolo_model_id(yolo_files_directory):
+    return os.path.splitext(os.path.basename(os.path.sep.join([yolo_files_directory, "yolov3.cfg"])))[0]
+
 
+def detect_person(neural_network, labels, model_id, confidence_threshold, non_maxima_suppression_threshold,
+                  image_path, save_directory, save_name):
+    """
+    Returns the detection result of the image and saves the annotated image if a person was detected.
+    """
     image = cv2.imread(image_path)
 
-    object_detector = ImageObjectDetector(neural_network=yolo_neural_network,
-                                          labels=yolo_labels,
+    object_detector = ImageObjectDetector(neural_network=neural_network,
+                                          labels=labels,
                                           confidence_threshold=confidence_threshold,
                                           non_maxima_suppression_threshold=non_maxima_suppression_threshold,
                                           image=image,
                                           save_directory=save_directory)
 
     object_detector.perform_object_detection_on_image(image)
+    detection_result = detection_result_of(object_detector, model_id)
     if len(object_detector.detected_object_bounding_boxes) > 0:
-        print("Person detected.")
-        object_detector.annotate_image_with_bounding_boxes_and_confidences()
         object_detector.save_image(save_name=save_name)
+    return detection_result
+
+
+def detect_persons_in_regions(neural_network, labels, model_id, confidence_threshold, non_maxima_suppression_threshold,
+                              input_sizes, screening_model, candidate_threshold, detection_requests):
+    """
+    Detects the persons in the regions of interest of every image of the batch as a cascade of two stages. The screen
+    stage runs every region of every image through the screening model at the small scan input size, a region in which
+    it sees a person with at least the candidate threshold being a candidate. The confirm stage then runs only the
+    candidate regions through the full model in a single forward pass at the large confirm input size and keeps the
+    persons that pass the thresholds of their region. Without a screening model every region goes straight to the
+    confirm stage.
+
+    detection_requests are (image_bytes, regions) tuples, image_bytes being the encoded image and regions a list of
+    regions whose x, y, width and height are fractions of the frame, an empty list standing for the full frame. The
+    results and the annotated images are returned in the order of the requests, an image that can not be decoded getting
+    an error instead of a detection result and an image without persons an empty annotated image. The bounding boxes are
+    in the coordinates of the full frame. Every result lists the stages its image went through with the model and the
+    share of the stage's inference time of its regions, the confirm stage only being listed for an image with a
+    candidate region, and the length of its annotated image.
+
+    The Java tests run against the stand-in worker in src/test/resources/fake-yolo, which mimics the responses of this
+    cascade without OpenCV or the model files, so this function is not covered by them and is only exercised with the
+    real models on the device.
+    """
+    _, confirm_input_size = input_sizes
+    results = [None] * len(detection_requests)
+    annotated_images = [b""] * len(detection_requests)
+    frames = []
+    for index, (image_bytes, regions) in enumerate(detection_requests):
+        image = cv2.imdecode(np.frombuffer(image_bytes, dtype=np.uint8), cv2.IMREAD_COLOR)
+        if image is None:
+            results[index] = {"error": f"The image of {len(image_bytes)} bytes could not be decoded.", "invalidImage": True}
+            continue
+        frame_detector = ImageObjectDetector(neural_network=neural_network,
+                                             labels=labels,
+                                             confidence_threshold=confidence_threshold,
+                                             non_maxima_suppression_threshold=non_maxima_suppression_threshold,
+                                             image=image,
+                                             save_directory=None)
+        regions_of_interest = [RegionOfInterest(image, region, confidence_threshold, non_maxima_suppression_threshold)
+                               for region in (regions or [FULL_FRAME_REGION])]
+        frames.append((index, frame_detector, regions_of_interest))
+    if len(frames) == 0:
+        return results, annotated_images
+
+    scanned_regions = [(frame_index, region_of_interest) for frame_index, (_, _, regions_of_interest) in enumerate(frames)
+                       for region_of_interest in regions_of_interest]
+    screen_time_millis = 0.0
+    if screening_model is None:
+        confirmed_regions = scanned_regions
+    else:
+        person_confidences, screen_time_millis = screening_model.person_confidences(
+            [region.image for _, region in scanned_regions], input_sizes[0])
+        confirmed_regions = [scanned_region for scanned_region, person_confidence in zip(scanned_regions, person_confidences)
+                             if person_confidence > min(candidate_threshold, scanned_region[1].confidence_threshold)]
+        log("{} of {} regions screened by {} escalated to {}.".format(len(confirmed_regions), len(scanned_regions),
+                                                                      screening_model.model_id, model_id))
+    confirm_outputs, confirm_time_millis = forward_pass(neural_network,
+                                                        [region.image for _, region in confirmed_regions],
+                                                        confirm_input_size) if confirmed_regions else ([], 0.0)
+
+    for (frame_index, region_of_interest), outputs in zip(confirmed_regions, confirm_outputs):
+        region_detector = ImageObjectDetector(neural_network=neural_network,
+                                              labels=labels,
+                                              confidence_threshold=region_of_interest.confidence_threshold,
+                                              non_maxima_suppression_threshold=region_of_interest.non_maxima_suppression_threshold,
+                                              image=region_of_interest.image,
+                                              save_directory=None,
+                                              image_offset=(region_of_interest.x_start, region_of_interest.y_start))
+        region_detector.filter_detections(outputs)
+        frame_detector = frames[frame_index][1]
+        frame_detector.detected_object_bounding_boxes.extend(region_detector.detected_object_bounding_boxes)
+        frame_detector.detected_object_confidences.extend(region_detector.detected_object_confidences)
+
+    for frame_index, (index, frame_detector, regions_of_interest) in enumerate(frames):
+        stages = []
+        if screening_model is not None:
+            stages.append({"stage": "screen",
+                           "modelId": screening_model.model_id,
+                           "inferenceTimeMillis": screen_time_millis * len(regions_of_interest) / len(scanned_regions)})
+        confirmed_region_count = sum(1 for confirmed_frame_index, _ in confirmed_regions if confirmed_frame_index == frame_index)
+        if confirmed_region_count > 0:
+            stages.append({"stage": "confirm",
+                           "modelId": model_id,
+                           "inferenceTimeMillis": confirm_time_millis * confirmed_region_count / len(confirmed_regions)})
+        frame_detector.inference_time_millis = sum(stage["inferenceTimeMillis"] for stage in stages)
+        results[index] = detection_result_of(frame_detector, model_id, stages)
+        if len(frame_detector.detected_object_bounding_boxes) > 0:
+            annotated_images[index] = frame_detector.encode_image()
+        results[index]["annotatedImageLength"] = len(annotated_images[index])
+    return results, annotated_images
+
+
+def forward_pass(neural_network, images, input_size):
+    """
+    Runs the images through the neural network as a single blob resized to the input size, returning the output rows
+    of every image and the time the forward pass took in milliseconds.
+    """
+    # the regions are views into their frames, which the blob needs as contiguous arrays
+    blob = cv2.dnn.blobFromImages([np.ascontiguousarray(image) for image in images], 1 / 255.0,
+                                  (input_size, input_size), swapRB=True, crop=False)
+    neural_network.setInput(blob)
+    start = time.time()
+    unconnected_layer_outputs = neural_network.forward(unconnected_layer_names(neural_network))
+    end = time.time()
+    log("YOLO took {:.6f} seconds to perform detections on {} images at {}x{}.".format(end - start, len(images),
+                                                                                     input_size, input_size))
+    # depending on the OpenCV version the rows of all the images come stacked or with a batch dimension
+    image_outputs = [[np.asarray(output).reshape(len(images), -1, output.shape[-1])[image_index]
+                      for output in unconnected_layer_outputs]
+                     for image_index in range(len(images))]
+    return image_outputs, (end - start) * 1000
+
+
+def max_person_confidence(image_outputs, person_class_id):
+    """
+    The highest confidence of the output rows whose most confident class is the person class, 0 if there are none.
+    """
+    person_confidence = 0.0
+    for output in image_outputs:
+        class_confidences = output[:, 5:]
+        person_rows = np.argmax(class_confidences, axis=1) == person_class_id
+        if np.any(person_rows):
+            person_confidence = max(person_confidence, float(np.max(class_confidences[person_rows, person_class_id])))
+    return person_confidence
+
+
+class YoloScreeningModel:
+    """
+    Screens regions with a darknet yolo model, either a lighter one such as yolov3-tiny or the full model at the scan
+    input size.
+    """
+
+    def __init__(self, neural_network, person_class_id, model_id):
+        self._neural_network = neural_network
+        self._person_class_id = person_class_id
+        self.model_id = model_id
+
+    def person_confidences(self, images, input_size):
+        image_outputs, inference_time_millis = forward_pass(self._neural_network, images, input_size)
+        return [max_person_confidence(outputs, self._person_class_id) for outputs in image_outputs], inference_time_millis
+
+
+class MobileNetSsdScreeningModel:
+    """
+    Screens regions with the Caffe MobileNet-SSD model, which takes 300x300 images whatever the scan input size. Every
+    row of its output is the image index, class id, confidence and box of a detection.
+    """
+    _PERSON_CLASS_ID = 15
+    _INPUT_SIZE = 300
+
+    def __init__(self, neural_network):
+        self._neural_network = neural_network
+        self.model_id = "mobilenet-ssd"
+
+    def person_confidences(self, images, input_size):
+        blob = cv2.dnn.blobFromImages([np.ascontiguousarray(image) for image in images], 0.007843,
+                                      (self._INPUT_SIZE, self._INPUT_SIZE), (127.5, 127.5, 127.5), swapRB=False, crop=False)
+        self._neural_network.setInput(blob)
+        start = time.time()
+        detections = np.asarray(self._neural_network.forward()).reshape(-1, 7)
+        end = time.time()
+        person_confidences = [0.0] * len(images)
+        for image_index, class_id, confidence in detections[:, 0:3]:
+            if int(class_id) == self._PERSON_CLASS_ID and 0 <= int(image_index) < len(images):
+                person_confidences[int(image_index)] = max(person_confidences[int(image_index)], float(confidence))
+        return person_confidences, (end - start) * 1000
+
+
+class HogScreeningModel:
+    """
+    Screens regions with the OpenCV HOG people detector, scaling a region wider than the scan input size down to it
+    first. The SVM margins of the detections are turned into confidences by the logistic function so that the candidate
+    threshold applies to them like to the confidences of the other models.
+    """
+
+    def __init__(self):
+        self._hog = cv2.HOGDescriptor()
+        self._hog.setSVMDetector(cv2.HOGDescriptor_getDefaultPeopleDetector())
+        self.model_id = "hog"
+
+    def person_confidences(self, images, input_size):
+        start = time.time()
+        person_confidences = []
+        for image in images:
+            scale = min(1.0, input_size / image.shape[1])
+            if scale < 1.0:
+                image = cv2.resize(image, (max(1, int(image.shape[1] * scale)), max(1, int(image.shape[0] * scale))))
+            _, weights = self._hog.detectMultiScale(np.ascontiguousarray(image), winStride=(8, 8))
+            person_confidences.append(max((1 / (1 + math.exp(-float(weight))) for weight in np.asarray(weights).flatten()),
+                                          default=0.0))
+        return person_confidences, (time.time() - start) * 1000
+
+
+def create_screening_model(yolo_files_directory, screen_model, neural_network, labels, model_id, input_sizes):
+    """
+    The model of the screen stage, None when every region is to go straight to the full model. The screen model is
+    "hog", "mobilenet-ssd" with MobileNetSSD_deploy.prototxt and MobileNetSSD_deploy.caffemodel in the yolo files
+    directory, the name of a darknet model whose .cfg and .weights are in the yolo files directory, such as yolov3-tiny,
+    or "none" to screen with the full model at the scan input size, and not at all when that is the confirm input size.
+    A screen model whose files are missing fails the start of the worker rather than being silently replaced by "none".
+    """
+    person_class_id = labels.index("person")
+    if screen_model == "hog":
+        return HogScreeningModel()
+    elif screen_model == "mobilenet-ssd":
+        prototxt_path = os.path.sep.join([yolo_files_directory, "MobileNetSSD_deploy.prototxt"])
+        caffe_model_path = os.path.sep.join([yolo_files_directory, "MobileNetSSD_deploy.caffemodel"])
+        if os.path.exists(prototxt_path) and os.path.exists(caffe_model_path):
+            log("Creating MobileNet-SSD screening neural network.")
+            return MobileNetSsdScreeningModel(cv2.dnn.readNetFromCaffe(prototxt_path, caffe_model_path))
+    elif screen_model != "none":
+        config_path = os.path.sep.join([yolo_files_directory, f"{screen_model}.cfg"])
+        weights_path = os.path.sep.join([yolo_files_directory, f"{screen_model}.weights"])
+        if os.path.exists(config_path) and os.path.exists(weights_path):
+            log(f"Creating {screen_model} screening neural network.")
+            return YoloScreeningModel(cv2.dnn.readNetFromDarknet(config_path, weights_path), person_class_id, screen_model)
+    if screen_model != "none":
+        raise FileNotFoundError(f"The files of the screen model {screen_model} are missing from {yolo_files_directory}.")
+    scan_input_size, confirm_input_size = input_sizes
+    return None if scan_input_size == confirm_input_size else YoloScreeningModel(neural_network, person_class_id, model_id)
+
+
+def detection_result_of(object_detector, model_id, stages=()):
+    """
+    Annotates the image if a person was detected and returns the detection result.
+    """
+    if len(object_detector.detected_object_bounding_boxes) > 0:
+        object_detector.annotate_image_with_bounding_boxes_and_confidences()
+
+    bounding_boxes = []
+    for index, bounding_box in enumerate(object_detector.detected_object_bounding_boxes):
+        bounding_boxes.append({"x": bounding_box.x_start,
+                               "y": bounding_box.y_start,
+                               "width": bounding_box.width,
+                               "height": bounding_box.height,
+                               "confidence": object_detector.detected_object_confidences[index]})
+    return {"modelId": model_id,
+            "inferenceTimeMillis": object_detector.inference_time_millis,
+            "boundingBoxes": bounding_boxes,
+            "stages": list(stages)}
+
+
+def write_response(response_type, annotated_images=(), **response):
+    """
+    Writes a response frame: the length of the UTF-8 JSON payload as a 4 byte big endian integer followed by the
+    payload. The annotated images, whose lengths the results of the payload carry, follow the frame.
+    """
+    response["type"] = response_type
+    payload = json.dumps(response, separators=(",", ":")).encode("utf-8")
+    sys.stdout.buffer.write(struct.pack(">I", len(payload)))
+    sys.stdout.buffer.write(payload)
+    for annotated_image in annotated_images:
+        sys.stdout.buffer.write(annotated_image)
+    sys.stdout.buffer.flush()
+
+
+def read_image(image_length):
+    """
+    Reads the bytes of an image that follow its request line on stdin.
+    """
+    image_bytes = sys.stdin.buffer.read(image_length)
+    if len(image_bytes) != image_length:
+        raise EOFError(f"stdin was closed after {len(image_bytes)} of the {image_length} bytes of an image.")
+    return image_bytes
+
+
+def run_worker(yolo_files_directory, confidence_threshold, non_maxima_suppression_threshold, input_sizes,
+               candidate_threshold, screen_model):
+    """
+    Loads the neural network once and then serves detection requests read from stdin until stdin is closed. A request
+    is a tab separated line, either "PING", "DETECT <image_length> <regions>" or "DETECT_BATCH" followed by the image
+    length and regions of every image in the batch, the regions being a JSON array that may be left out of a "DETECT"
+    request for the full frame. The encoded images follow the line, in the order of the batch, so that frames are
+    handed over without being written to disk. Every request gets exactly one framed response of type "ready", "pong",
+    "detection", "detections" or "error", the results of a "detections" response being in the order of the images in
+    the batch and followed by their annotated images.
+    """
+    yolo_labels = load_yolo_labels(yolo_files_directory)
+    yolo_neural_network = create_yolo_trained_neural_network(yolo_files_directory)
+    model_id = load_yolo_model_id(yolo_files_directory)
+    screening_model = create_screening_model(yolo_files_directory, screen_model, yolo_neural_network, yolo_labels,
+                                             model_id, input_sizes)
+    write_response("ready", modelId=model_id)
+
+    for request in iter(sys.stdin.buffer.readline, b""):
+        request_parts = request.decode("utf-8").rstrip("\n").split("\t")
+        command = request_parts[0]
+        if command == "PING":
+            write_response("pong")
+        elif command == "DETECT" and len(request_parts) in (2, 3):
+            try:
+                detection_request = (read_image(int(request_parts[1])),
+                                     json.loads(request_parts[2]) if len(request_parts) == 3 else [])
+                detection_results, annotated_images = detect_persons_in_regions(
+                    yolo_neural_network, yolo_labels, model_id, confidence_threshold, non_maxima_suppression_threshold,
+                    input_sizes, screening_model, candidate_threshold, [detection_request])
+                if "error" in detection_results[0]:
+                    write_response("error", message=f"Detection failed: {detection_results[0]['error']}",
+                                   invalidImage=detection_results[0].get("invalidImage", False))
+                else:
+                    write_response("detection", annotated_images=annotated_images, **detection_results[0])
+            except EOFError:
+                return
+            except Exception as exception:
+                write_response("error", message=f"Detection failed: {exception}")
+        elif command == "DETECT_BATCH" and len(request_parts) > 1 and (len(request_parts) - 1) % 2 == 0:
+            try:
+                detection_requests = [(read_image(int(request_parts[part])), json.loads(request_parts[part + 1]))
+                                      for part in range(1, len(request_parts), 2)]
+                detection_results, annotated_images = detect_persons_in_regions(
+                    yolo_neural_network, yolo_labels, model_id, confidence_threshold, non_maxima_suppression_threshold,
+                    input_sizes, screening_model, candidate_threshold, detection_requests)
+                write_response("detections", annotated_images=annotated_images, results=detection_results)
+            except EOFError:
+                return
+            except Exception as exception:
+                write_response("error", message=f"Batch detection failed: {exception}")
+        else:
+            write_response("error", message=f"Unknown request: {request.decode('utf-8', 'replace').rstrip()}")
+
+
+if __name__ == "__main__":
+    """
+    Performs object detection on the provided image. Saves an annotated image if a person was detected.
+    When started with --worker the neural network is loaded once and detection requests are served from stdin, the
+    scan and confirm input sizes, the candidate threshold and the screen model following the thresholds and defaulting
+    to a single pass at 416x416.
+    """
+    if sys.argv[1] == "--worker":
+        run_worker(yolo_files_directory=sys.argv[2],
+                   confidence_threshold=float(sys.argv[3]),
+                   non_maxima_suppression_threshold=float(sys.argv[4]),
+                   input_sizes=(int(sys.argv[5]) if len(sys.argv) > 5 else 416,
+                                int(sys.argv[6]) if len(sys.argv) > 6 else 416),
+                   candidate_threshold=float(sys.argv[7]) if len(sys.argv) > 7 else float(sys.argv[3]),
+                   screen_model=sys.argv[8] if len(sys.argv) > 8 else "none")
     else:
-        print("Person not detected.")
+        yolo_files_directory = sys.argv[2]
+        detection_result = detect_person(neural_network=create_yolo_trained_neural_network(yolo_files_directory),
+                                         labels=load_yolo_labels(yolo_files_directory),
+                                         model_id=load_yolo_model_id(yolo_files_directory),
+                                         confidence_threshold=float(sys.argv[3]),
+                                         non_maxima_suppression_threshold=float(sys.argv[4]),
+                                         image_path=sys.argv[1],
+                                         save_directory=sys.argv[5],
+                                         save_name=sys.argv[6])
+        print("Person detected." if len(detection_result["boundingBoxes"]) > 0 else "Person not detected.")
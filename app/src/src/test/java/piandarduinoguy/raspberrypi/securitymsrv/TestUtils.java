@@ -5,34 +5,48 @@ import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.test.util.ReflectionTestUtils;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
+import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityConfigStore;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Component
 public class TestUtils {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private SecurityConfigStore securityConfigStore;
+
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
     @Value("${resources.base.location}")
     private String resourcesBaseLocation;
 
     @Value("${new-capture.file-name}")
     private String newCaptureFileName;
 
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
-
     public File testSecurityConfigFile;
 
-    private File testAnnotatedImageFile;
+    private File expectedAnnotatedImageFile;
 
     private File testTemporaryImageFile;
 
@@ -40,11 +54,12 @@ public class TestUtils {
     @PostConstruct
     public void createTestSecurityConfigFile() {
         this.testSecurityConfigFile = new File(resourcesBaseLocation + "security_config.json");
-        this.testAnnotatedImageFile = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureAnnotatedFileName));
+        this.expectedAnnotatedImageFile = new File("src/test/resources/test_new_capture_annotated.jpeg");
         this.testTemporaryImageFile = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureFileName));
     }
 
     public void assertThatExpectedSecurityConfigJsonFileSaved(SecurityConfig expectedSecurityConfig) throws Exception {
+        securityConfigStore.flush();
         SecurityConfig securityConfig = objectMapper.readValue(testSecurityConfigFile, SecurityConfig.class);
         assertThat(securityConfig.getSecurityStatus()).isEqualTo(expectedSecurityConfig.getSecurityStatus());
         assertThat(securityConfig.getSecurityState()).isEqualTo(expectedSecurityConfig.getSecurityState());
@@ -52,42 +67,44 @@ public class TestUtils {
 
     public void deleteSecurityConfigFile() {
         this.testSecurityConfigFile.delete();
+        securityConfigStore.reload();
     }
 
     public void createSecurityConfigFile(SecurityConfig securityConfig) throws IOException {
         objectMapper.writeValue(testSecurityConfigFile, securityConfig);
-    }
-
-    public void deleteTestTemporaryImageFile() {
-        this.testTemporaryImageFile.delete();
+        securityConfigStore.reload();
     }
 
     public String createBase64EncodedImageFromImageFile(File imageFile) throws Exception {
         return Base64.getEncoder().encodeToString(FileUtils.readFileToByteArray(imageFile));
     }
 
-    public void assertThatExpectedTempImageFileCreated(String base64EncodedImage) throws Exception {
-        assertThat(testTemporaryImageFile).exists();
-        String base64EncodedSavedImage = Base64.getEncoder().encodeToString(FileUtils.readFileToByteArray(testTemporaryImageFile));
-        assertThat(base64EncodedSavedImage).isEqualToIgnoringCase(base64EncodedImage);
+    /**
+     * The names of the files in the resources directory, to tell which files a detection wrote.
+     */
+    public Set<String> listResourceFileNames() {
+        String[] resourceFileNames = new File(resourcesBaseLocation).list();
+        return resourceFileNames == null ? new HashSet<>() : new HashSet<>(Arrays.asList(resourceFileNames));
     }
 
-    public void assertThatExpectedAnnotatedImageCreated() {
-        assertTrue(this.testAnnotatedImageFile.exists());
+    public void assertThatExpectedAnnotatedImagePublished() {
+        assertThatCode(() -> annotatedImageService.getAnnotatedImageResource(SecurityCheck.DEFAULT_CAMERA_ID)).doesNotThrowAnyException();
     }
 
-    public void createExpectedAnnotatedImageFile() throws IOException {
-        File annotatedImageFileSource = new File(String.format("src/test/resources/%s.jpeg", newCaptureAnnotatedFileName));
-        byte[] annotatedImageBytes = FileUtils.readFileToByteArray(annotatedImageFileSource);
-        FileUtils.writeByteArrayToFile(this.testAnnotatedImageFile, annotatedImageBytes);
+    public void publishExpectedAnnotatedImage() throws IOException {
+        annotatedImageService.publishAnnotatedImage(SecurityCheck.DEFAULT_CAMERA_ID, FileUtils.readFileToByteArray(this.expectedAnnotatedImageFile));
     }
 
-    public void deleteAnnotatedImage() {
-        this.testAnnotatedImageFile.delete();
+    /**
+     * Forgets the annotated images published by earlier tests, which are only kept in memory.
+     */
+    public void discardAnnotatedImages() {
+        ((Map<?, ?>) ReflectionTestUtils.getField(annotatedImageService, "cameraAnnotatedImages")).clear();
+        ((AtomicReference<?>) ReflectionTestUtils.getField(annotatedImageService, "latestAnnotatedImage")).set(null);
     }
 
     public String getExpectedBase64EncodedAnnotatedImage() throws IOException {
-        byte[] annotatedImageBytes = FileUtils.readFileToByteArray(this.testAnnotatedImageFile);
+        byte[] annotatedImageBytes = FileUtils.readFileToByteArray(this.expectedAnnotatedImageFile);
         String expectedBase64EncodedAnnotatedImage = Base64.getEncoder().encodeToString(annotatedImageBytes);
         return expectedBase64EncodedAnnotatedImage;
     }
@@ -101,8 +118,8 @@ public class TestUtils {
         FileUtils.writeByteArrayToFile(this.testTemporaryImageFile, annotatedImageBytes);
     }
 
-    public void assertThatNoAnnotatedImageCreated() {
-        assertFalse(this.testAnnotatedImageFile.exists());
+    public void assertThatNoAnnotatedImagePublished() {
+        assertThatThrownBy(() -> annotatedImageService.getAnnotatedImageResource(SecurityCheck.DEFAULT_CAMERA_ID)).isInstanceOf(ImageFileException.class);
     }
 
     public void assertThatNoSecurityConfigFileCreated() {
@@ -0,0 +1,54 @@
+package piandarduinoguy.raspberrypi.securitymsrv.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetector;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PythonPersonDetector;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersonDetectorConfigUnitTest {
+
+    @Nested
+    @SpringBootTest(classes = {PersonDetectorConfig.class, PersonDetectorWorkerPool.class, SimpleMeterRegistry.class})
+    @TestPropertySource("classpath:application-test.properties")
+    class PythonBackend {
+        @Autowired
+        private PersonDetector personDetector;
+
+        @DisplayName("Given the python backend is selected " +
+                "when the person detector is created " +
+                "then the yolo.py worker pool backed person detector is used.")
+        @Test
+        void canUsePythonPersonDetector() {
+            assertThat(personDetector).isInstanceOf(PythonPersonDetector.class);
+        }
+    }
+
+    @Nested
+    @SpringBootTest(classes = {PersonDetectorConfig.class, PersonDetectorWorkerPool.class, SimpleMeterRegistry.class})
+    @TestPropertySource(locations = "classpath:application-test.properties",
+            properties = {"yolo.person-detector.backend=opencv", "yolo.person-detector.base.location=src/test/resources/fake-yolo/", "yolo.person-detector.pool.warm-up=true"})
+    class OpenCvBackendWithoutYoloFiles {
+        @Autowired
+        private PersonDetector personDetector;
+
+        @Autowired
+        private PersonDetectorWorkerPool personDetectorWorkerPool;
+
+        @DisplayName("Given the opencv backend is selected but the yolo files are missing " +
+                "when the person detector is created " +
+                "then it falls back to the yolo.py person detector without warming up workers.")
+        @Test
+        void canFallBackToPythonPersonDetector() {
+            assertThat(personDetector).isInstanceOf(PythonPersonDetector.class);
+            assertThat(personDetectorWorkerPool.getWorkerCount()).isZero();
+        }
+    }
+}
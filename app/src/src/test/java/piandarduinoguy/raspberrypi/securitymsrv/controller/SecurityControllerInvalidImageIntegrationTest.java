@@ -0,0 +1,66 @@
+package piandarduinoguy.raspberrypi.securitymsrv.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Problem;
+import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorWorkerPool;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = "yolo.person-detector.base.location=src/test/resources/fake-yolo/")
+@DirtiesContext
+class SecurityControllerInvalidImageIntegrationTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PersonDetectorWorkerPool personDetectorWorkerPool;
+
+    @MockBean
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DisplayName("Given a person detector worker has been started " +
+            "when post to the /security-check/image endpoint is made with a body that is not a jpeg " +
+            "then return a bad request Zalando problem and the worker keeps serving detections.")
+    @Test
+    void canReturnBadRequestForUndecodableImageWithoutDiscardingWorker() throws Exception {
+        DetectionResult detectionResultBefore = personDetectorWorkerPool.detect("no_person".getBytes(StandardCharsets.UTF_8));
+        int workerCountBefore = personDetectorWorkerPool.getWorkerCount();
+
+        MvcResult mvcResult = mockMvc.perform(
+                post("/security-check/image").contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("undecodable, not a jpeg".getBytes(StandardCharsets.UTF_8)))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        Problem actualZalandoProblem = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), Problem.class);
+        assertThat(actualZalandoProblem.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(actualZalandoProblem.getDetail()).contains("could not be decoded");
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isEqualTo(workerCountBefore);
+        DetectionResult detectionResultAfter = personDetectorWorkerPool.detect("no_person".getBytes(StandardCharsets.UTF_8));
+        assertThat(detectionResultAfter.getModelId()).isEqualTo(detectionResultBefore.getModelId());
+    }
+}
@@ -1,9 +1,9 @@
 package piandarduinoguy.raspberrypi.securitymsrv.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.MockedStatic;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,31 +12,45 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Problem;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
 import piandarduinoguy.raspberrypi.securitymsrv.service.PersonDetectorService;
 import piandarduinoguy.raspberrypi.securitymsrv.service.SecurityService;
 import piandarduinoguy.raspberrypi.securitymsrv.validation.ValidationUtil;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -58,18 +72,21 @@ class SecurityControllerObjectDetectionIntegrationTest {
     @Autowired
     private TestUtils testUtils;
 
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
+    @Autowired
+    private EvidenceStore evidenceStore;
+
     @Autowired
     private ObjectMapper objectMapper;
 
     @Value("${resources.base.location}")
     private String resourcesBaseLocation;
 
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
-
     @DisplayName("Given a valid base64 encoded image of a person and security status is armed" +
             "when post to the /security-check endpoint is made " +
-            "then the image file gets saved at the expected location and detections performed and security config is updated.")
+            "then the annotated image is published and detections performed and security config is updated.")
     @Test
     void canSaveAnnotatedImageAndUpdateSecurityConfigToBreach() throws Exception {
         String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
@@ -80,22 +97,19 @@ class SecurityControllerObjectDetectionIntegrationTest {
                 post("/security-check").content(base64EncodedImage)).
                 andExpect(status().isAccepted());
 
-        testUtils.assertThatExpectedTempImageFileCreated(base64EncodedImage);
-        File expectedProcessedImage = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureAnnotatedFileName));
-        assertTrue(expectedProcessedImage.exists());
+        testUtils.assertThatExpectedAnnotatedImagePublished();
 
         SecurityConfig updatedSecurityConfig = new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED);
         testUtils.assertThatExpectedSecurityConfigJsonFileSaved(updatedSecurityConfig);
 
 
-        testUtils.deleteTestTemporaryImageFile();
-        testUtils.deleteAnnotatedImage();
+        testUtils.discardAnnotatedImages();
         testUtils.deleteSecurityConfigFile();
     }
 
     @DisplayName("Given a valid base64 encoded image of a person and security status is disarmed" +
             "when post to the /security-check endpoint is made " +
-            "then the image file gets saved at the expected location and detections performed but security config is not updated.")
+            "then the annotated image is published and detections performed but security config is not updated.")
     @Test
     void doesNotSaveAnnotatedImageAndDoesNotUpdateSecurityConfig() throws Exception {
         String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
@@ -106,105 +120,209 @@ class SecurityControllerObjectDetectionIntegrationTest {
                 post("/security-check").content(base64EncodedImage)).
                 andExpect(status().isAccepted());
 
-        testUtils.assertThatExpectedTempImageFileCreated(base64EncodedImage);
-        File expectedProcessedImage = new File(String.format("%s/%s.jpeg", resourcesBaseLocation, newCaptureAnnotatedFileName));
-        assertTrue(expectedProcessedImage.exists());
+        testUtils.assertThatExpectedAnnotatedImagePublished();
         testUtils.assertThatExpectedSecurityConfigJsonFileSaved(securityConfig); // ensure no update is made to the security config
 
 
-        testUtils.deleteTestTemporaryImageFile();
-        testUtils.deleteAnnotatedImage();
+        testUtils.discardAnnotatedImages();
         testUtils.deleteSecurityConfigFile();
     }
 
-    @DisplayName("Given an IOException thrown " +
-            "when post to the /security-check endpoint is made " +
-            "then return expected Zalando problem")
     @Test
-    void canReturnZalandoProblemIfSaveImageMethodThrowsIoException() throws Exception {
+    void canReturnZalandoProblemIfValidatePythonProcessMethodThrowsPersonDetectorException() throws Exception{
         String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
 
-        try (MockedStatic<FileUtils> mockFileUtils = mockStatic(FileUtils.class)) {
-            mockFileUtils.when(() -> FileUtils.writeByteArrayToFile(any(), any())).thenThrow(new IOException("I am an IOException"));
+        try (MockedStatic<ValidationUtil> mockValidationUtil = mockStatic(ValidationUtil.class)) {
+            mockValidationUtil.when(() -> ValidationUtil.validateProcess(any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
             MvcResult mvcResult = mockMvc.perform(
                     post("/security-check").content(base64EncodedImage)).
                     andExpect(status().isInternalServerError())
                     .andReturn();
             String actualZalandoProblemJsonString = mvcResult.getResponse().getContentAsString();
-            Problem expectedZalandoProblem = createExpectedZalandoProblem("The image test_new_capture.jpeg could not be saved to the directory src/test/resources/application/. An IOException was thrown with message \"I am an IOException\".");
+            Problem expectedZalandoProblem = createExpectedZalandoProblem("I am a PersonDetectorException.");
             String expectedZalandoProblemJsonString = objectMapper.writeValueAsString(expectedZalandoProblem);
             assertThat(actualZalandoProblemJsonString).isEqualToIgnoringCase(expectedZalandoProblemJsonString);
-            testUtils.assertThatNoAnnotatedImageCreated();
+            testUtils.assertThatNoAnnotatedImagePublished();
         }
-
-        testUtils.deleteTestTemporaryImageFile();
     }
 
-    @DisplayName("Given an IOException thrown " +
-            "when get to the /annotated-image endpoint is made " +
-            "then return expected Zalando problem")
     @Test
-    void canReturnZalandoProblemIfGetAnnotatedImageMethodThrowsIoException() throws Exception {
-        testUtils.createExpectedAnnotatedImageFile();
+    void canReturnZalandoProblemIfValidateDetectionResultMethodThrowsPersonDetectorException() throws Exception{
+        String image = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
 
-        try (MockedStatic<FileUtils> mockFileUtils = mockStatic(FileUtils.class)) {
-            mockFileUtils.when(() -> FileUtils.readFileToByteArray(any())).thenThrow(new IOException("I am an IOException"));
+        try (MockedStatic<ValidationUtil> mockValidationUtil = mockStatic(ValidationUtil.class)) {
+            mockValidationUtil.when(() -> ValidationUtil.validateDetectionResult(any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
             MvcResult mvcResult = mockMvc.perform(
-                    get("/annotated-image"))
+                    post("/security-check").content(image))
+                    .andExpect(status().isInternalServerError())
                     .andReturn();
             String actualZalandoProblemJsonString = mvcResult.getResponse().getContentAsString();
-            Problem expectedZalandoProblem = createExpectedZalandoProblem("The image test_new_capture_annotated.jpeg could not be encoded to base64 string due to an IOException being thrown with message \"I am an IOException\".");
+            Problem expectedZalandoProblem = createExpectedZalandoProblem("I am a PersonDetectorException.");
             String expectedZalandoProblemJsonString = objectMapper.writeValueAsString(expectedZalandoProblem);
             assertThat(actualZalandoProblemJsonString).isEqualToIgnoringCase(expectedZalandoProblemJsonString);
         }
 
-        testUtils.deleteAnnotatedImage();
+        // we need to run the real detectPerson method cause we cannot mock privates,
+        // thus an annotated image is published by running the python process, discard it.
+        // this also means we cannot assert that an annotated image was not published.
+        testUtils.discardAnnotatedImages();
     }
 
+
+    @DisplayName("Given a raw jpeg image " +
+            "when post to the /security-check/image endpoint is made " +
+            "then the image bytes are handed to the person detector as they were sent.")
     @Test
-    void canReturnZalandoProblemIfValidatePythonProcessMethodThrowsPersonDetectorException() throws Exception{
-        String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
-        doNothing().when(personDetectorService).runPersonDetectorProcess(base64EncodedImage.getBytes());
+    void canPerformSecurityCheckOnRawImage() throws Exception {
+        byte[] imageBytes = createImageBytes();
+        doReturn(new DetectionResult()).when(personDetectorService).detect(any(), any());
 
-        try (MockedStatic<ValidationUtil> mockValidationUtil = mockStatic(ValidationUtil.class)) {
-            mockValidationUtil.when(() -> ValidationUtil.validateProcess(any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
-            MvcResult mvcResult = mockMvc.perform(
-                    post("/security-check").content(base64EncodedImage)).
-                    andExpect(status().isInternalServerError())
-                    .andReturn();
-            String actualZalandoProblemJsonString = mvcResult.getResponse().getContentAsString();
-            Problem expectedZalandoProblem = createExpectedZalandoProblem("I am a PersonDetectorException.");
-            String expectedZalandoProblemJsonString = objectMapper.writeValueAsString(expectedZalandoProblem);
-            assertThat(actualZalandoProblemJsonString).isEqualToIgnoringCase(expectedZalandoProblemJsonString);
-            testUtils.assertThatNoAnnotatedImageCreated();
-        }
+        mockMvc.perform(
+                post("/security-check/image").contentType(MediaType.IMAGE_JPEG).content(imageBytes))
+                .andExpect(status().isAccepted());
 
-        testUtils.deleteTestTemporaryImageFile();
+        ArgumentCaptor<byte[]> imageBytesCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(personDetectorService).detect(eq(SecurityCheck.DEFAULT_CAMERA_ID), imageBytesCaptor.capture());
+        assertThat(imageBytesCaptor.getValue()).isEqualTo(imageBytes);
     }
 
+    @DisplayName("Given a multipart image " +
+            "when post to the /security-check/image endpoint is made " +
+            "then the image bytes are handed to the person detector as they were sent.")
     @Test
-    void canReturnZalandoProblemIfValidatePythonProcessLogsMethodThrowsPersonDetectorException() throws Exception{
-        String image = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
+    void canPerformSecurityCheckOnMultipartImage() throws Exception {
+        byte[] imageBytes = createImageBytes();
+        doReturn(new DetectionResult()).when(personDetectorService).detect(any(), any());
 
-        try (MockedStatic<ValidationUtil> mockValidationUtil = mockStatic(ValidationUtil.class)) {
-            mockValidationUtil.when(() -> ValidationUtil.validateProcessLogs(any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
-            MvcResult mvcResult = mockMvc.perform(
-                    post("/security-check").content(image))
-                    .andExpect(status().isInternalServerError())
+        mockMvc.perform(
+                multipart("/security-check/image").file(new MockMultipartFile("image", "frame.jpeg", MediaType.IMAGE_JPEG_VALUE, imageBytes)))
+                .andExpect(status().isAccepted());
+
+        ArgumentCaptor<byte[]> imageBytesCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(personDetectorService).detect(eq(SecurityCheck.DEFAULT_CAMERA_ID), imageBytesCaptor.capture());
+        assertThat(imageBytesCaptor.getValue()).isEqualTo(imageBytes);
+    }
+
+    @DisplayName("Given a body that is not base64 encoded " +
+            "when post to the /security-check endpoint is made " +
+            "then return a bad request Zalando problem.")
+    @Test
+    void canReturnZalandoProblemIfImageIsNotBase64Encoded() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(
+                post("/security-check").content("not base64!"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        Problem actualZalandoProblem = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), Problem.class);
+        assertThat(actualZalandoProblem.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(actualZalandoProblem.getDetail()).startsWith("The image could not be read from the request body");
+        verify(personDetectorService, never()).detect(any(), any());
+    }
+
+    @DisplayName("Given an annotated image has been published " +
+            "when get to the /annotated-image/raw endpoint is made with and without its entity tag " +
+            "then the jpeg is returned with an entity tag and a matching conditional request is answered with not modified.")
+    @Test
+    void canReturnRawAnnotatedImageAndNotModified() throws Exception {
+        byte[] annotatedImageBytes = createImageBytes();
+        annotatedImageService.publishAnnotatedImage(SecurityCheck.DEFAULT_CAMERA_ID, annotatedImageBytes);
+
+        MvcResult mvcResult = mockMvc.perform(get("/annotated-image/raw"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andReturn();
+        String annotatedImageETag = mvcResult.getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertThat(mvcResult.getResponse().getContentAsByteArray()).isEqualTo(annotatedImageBytes);
+        assertThat(annotatedImageETag).isNotBlank();
+        mockMvc.perform(get("/annotated-image/raw").header(HttpHeaders.IF_NONE_MATCH, annotatedImageETag))
+                .andExpect(status().isNotModified());
+
+        testUtils.discardAnnotatedImages();
+    }
+
+    @DisplayName("Given an annotated image has been published by a camera other than the default camera " +
+            "when get to the /annotated-image/raw endpoint is made with and without the camera id " +
+            "then the annotated image of that camera is returned either way as it is the latest annotated image.")
+    @Test
+    void canReturnRawAnnotatedImageOfCamera() throws Exception {
+        byte[] annotatedImageBytes = createImageBytes();
+        annotatedImageService.publishAnnotatedImage("garage", annotatedImageBytes);
+
+        try {
+            MvcResult cameraMvcResult = mockMvc.perform(get("/annotated-image/raw").param("camera-id", "garage"))
+                    .andExpect(status().isOk())
                     .andReturn();
-            String actualZalandoProblemJsonString = mvcResult.getResponse().getContentAsString();
-            Problem expectedZalandoProblem = createExpectedZalandoProblem("I am a PersonDetectorException.");
-            String expectedZalandoProblemJsonString = objectMapper.writeValueAsString(expectedZalandoProblem);
-            assertThat(actualZalandoProblemJsonString).isEqualToIgnoringCase(expectedZalandoProblemJsonString);
+            MvcResult latestMvcResult = mockMvc.perform(get("/annotated-image/raw"))
+                    .andExpect(status().isOk())
+                    .andReturn();
+
+            assertThat(cameraMvcResult.getResponse().getContentAsByteArray()).isEqualTo(annotatedImageBytes);
+            assertThat(latestMvcResult.getResponse().getContentAsByteArray()).isEqualTo(annotatedImageBytes);
+            assertThat(new File(resourcesBaseLocation, "cameras")).doesNotExist();
+        } finally {
+            testUtils.discardAnnotatedImages();
         }
+    }
 
-        // we need to run the real runPersonDetectorProcess method cause we cannot mock privates,
-        // thus an annotated image is created by running the python process, delete it.
-        // this also means we cannot assert that an annotated image was not created.
-        testUtils.deleteAnnotatedImage();
-        testUtils.deleteTestTemporaryImageFile();
+    @DisplayName("Given a camera id that is not made of letters, digits, underscores and hyphens " +
+            "when get to the /annotated-image endpoint is made " +
+            "then return a bad request Zalando problem.")
+    @Test
+    void canReturnZalandoProblemIfCameraIdIsInvalid() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/annotated-image").param("camera-id", "../garage"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+
+        Problem actualZalandoProblem = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), Problem.class);
+        assertThat(actualZalandoProblem.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(actualZalandoProblem.getDetail()).isEqualTo("The camera id ../garage is not valid, it must be 1 to 64 letters, digits, underscores or hyphens starting with a letter or digit.");
     }
 
+    @DisplayName("Given annotated images retained as evidence of a camera " +
+            "when get to the /evidence endpoints is made " +
+            "then the frames are listed, a frame is returned as a jpeg, all frames are streamed as parts and a frame that is not retained is a not found Zalando problem.")
+    @Test
+    void canReturnEvidenceFrames() throws Exception {
+        byte[] firstImageBytes = "first-evidence-frame".getBytes(StandardCharsets.US_ASCII);
+        byte[] secondImageBytes = "second-evidence-frame".getBytes(StandardCharsets.US_ASCII);
+        EvidenceFrame firstEvidenceFrame = evidenceStore.append("porch", firstImageBytes);
+        EvidenceFrame secondEvidenceFrame = evidenceStore.append("porch", secondImageBytes);
+
+        MvcResult listMvcResult = mockMvc.perform(get("/evidence").param("camera-id", "porch").param("from", String.valueOf(firstEvidenceFrame.getTimestamp())))
+                .andExpect(status().isOk())
+                .andReturn();
+        MvcResult frameMvcResult = mockMvc.perform(get("/evidence/" + secondEvidenceFrame.getTimestamp()).param("camera-id", "porch"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andReturn();
+        MvcResult streamMvcResult = mockMvc.perform(get("/evidence/stream").param("camera-id", "porch"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult missingMvcResult = mockMvc.perform(get("/evidence/1").param("camera-id", "porch"))
+                .andExpect(status().isNotFound())
+                .andReturn();
+
+        EvidenceFrame[] evidenceFrames = objectMapper.readValue(listMvcResult.getResponse().getContentAsString(), EvidenceFrame[].class);
+        assertThat(evidenceFrames).extracting(EvidenceFrame::getSequence).containsExactly(firstEvidenceFrame.getSequence(), secondEvidenceFrame.getSequence());
+        assertThat(frameMvcResult.getResponse().getContentAsByteArray()).isEqualTo(secondImageBytes);
+        String streamedEvidence = mockMvc.perform(asyncDispatch(streamMvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("multipart/x-mixed-replace;boundary=evidence-frame"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(streamedEvidence).containsSubsequence(
+                "--evidence-frame\r\n", "X-Evidence-Timestamp: " + firstEvidenceFrame.getTimestamp(), "first-evidence-frame",
+                "--evidence-frame\r\n", "X-Evidence-Timestamp: " + secondEvidenceFrame.getTimestamp(), "second-evidence-frame",
+                "--evidence-frame--");
+        Problem actualZalandoProblem = objectMapper.readValue(missingMvcResult.getResponse().getContentAsString(), Problem.class);
+        assertThat(actualZalandoProblem.getDetail()).isEqualTo("No evidence frame of camera porch with timestamp 1 is retained.");
+    }
+
+    private static byte[] createImageBytes() {
+        byte[] imageBytes = new byte[256 * 1024];
+        new Random(42).nextBytes(imageBytes);
+        return imageBytes;
+    }
 
     private Problem createExpectedZalandoProblem(String detail) {
         Problem expectedZalandoProblem = new Problem();
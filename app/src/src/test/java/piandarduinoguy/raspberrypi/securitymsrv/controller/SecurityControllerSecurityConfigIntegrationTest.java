@@ -13,15 +13,27 @@ import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.TestPropertySource;
 import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Base64EncodedImageDto;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.HourlyDetections;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntry;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntryType;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.Problem;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -39,9 +51,6 @@ class SecurityControllerSecurityConfigIntegrationTest {
     @Value("${resources.base.location}")
     private String resourcesBaseLocation;
 
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
-
     @Autowired
     private TestUtils testUtils;
 
@@ -92,7 +101,7 @@ class SecurityControllerSecurityConfigIntegrationTest {
             "then a base64 encoded image is returned with status 200 OK.")
     @Test
     void canGetAnnotatedImage() throws Exception {
-        testUtils.createExpectedAnnotatedImageFile();
+        testUtils.publishExpectedAnnotatedImage();
 
         ResponseEntity<Base64EncodedImageDto> responseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/annotated-image", Base64EncodedImageDto.class);
 
@@ -100,7 +109,7 @@ class SecurityControllerSecurityConfigIntegrationTest {
         Base64EncodedImageDto base64EncodedImageDto = responseEntity.getBody();
         assertThat(base64EncodedImageDto.getBase64EncodedImage()).isEqualToIgnoringCase(testUtils.getExpectedBase64EncodedAnnotatedImage());
 
-        testUtils.deleteAnnotatedImage();
+        testUtils.discardAnnotatedImages();
     }
 
     @DisplayName("Given an annotated image does not exist " +
@@ -108,11 +117,13 @@ class SecurityControllerSecurityConfigIntegrationTest {
             "then return expected Zalando problem.")
     @Test
     void canReturnZalandoProblemIfNoAnnotatedImageExists() {
+        testUtils.discardAnnotatedImages();
+
         ResponseEntity<Problem> responseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/annotated-image", Problem.class);
 
         assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
         Problem zalandoProblem = responseEntity.getBody();
-        assertExpectedZalandoProblem(zalandoProblem, HttpStatus.NOT_FOUND, "The File src/test/resources/application/test_new_capture_annotated.jpeg does not exist.");
+        assertExpectedZalandoProblem(zalandoProblem, HttpStatus.NOT_FOUND, "No annotated image of camera default has been published since the service started.");
 
     }
 
@@ -254,6 +265,104 @@ class SecurityControllerSecurityConfigIntegrationTest {
         testUtils.deleteSecurityConfigFile();
     }
 
+    @DisplayName("Given a dashboard subscribed to the /security-events endpoint " +
+            "when the alarm is armed " +
+            "then the current security config is pushed on subscribing and the armed security config straight after the change.")
+    @Test
+    void canStreamSecurityConfigChanges() throws Exception {
+        testUtils.createSecurityConfigFile(new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED));
+        HttpURLConnection eventStreamConnection = (HttpURLConnection) new URL("http://localhost:" + port + "/security/security-events").openConnection();
+        eventStreamConnection.setReadTimeout(5000);
+
+        try (BufferedReader eventStream = new BufferedReader(new InputStreamReader(eventStreamConnection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertThat(eventStreamConnection.getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+            assertExpectedSecurityConfig(readSecurityConfigEvent(eventStream), new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED));
+
+            restTemplate.exchange("http://localhost:" + port + "/security/arm-alarm", HttpMethod.PUT, new HttpEntity<>(null), SecurityConfig.class);
+
+            assertExpectedSecurityConfig(readSecurityConfigEvent(eventStream), new SecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED));
+        } finally {
+            eventStreamConnection.disconnect();
+            testUtils.deleteSecurityConfigFile();
+        }
+    }
+
+    @DisplayName("Given the security config has been read " +
+            "when get to the /actuator/prometheus endpoint is made " +
+            "then the security config read timer is exported with its percentile histogram.")
+    @Test
+    void canExportSecurityMetrics() throws Exception {
+        testUtils.createSecurityConfigFile(existingSecurityConfig);
+        restTemplate.getForEntity("http://localhost:" + port + "/security/security-config", SecurityConfig.class);
+
+        ResponseEntity<String> responseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/actuator/prometheus", String.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(responseEntity.getBody()).contains("security_config_read_seconds_count");
+        assertThat(responseEntity.getBody()).contains("security_config_read_seconds_bucket");
+        assertThat(responseEntity.getBody()).contains("security_check_queue_depth");
+
+        testUtils.deleteSecurityConfigFile();
+    }
+
+    @DisplayName("Given no security check with the id exists " +
+            "when get to the /security-check/{id} endpoint is made " +
+            "then return 404 not found with zalando problem.")
+    @Test
+    void canReturnZalandoProblemIfSecurityCheckDoesNotExist() {
+        ResponseEntity<Problem> responseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/security-check/unknown-id", Problem.class);
+
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertExpectedZalandoProblem(responseEntity.getBody(), HttpStatus.NOT_FOUND, "No security check with id unknown-id exists, it may have expired.");
+    }
+
+    @DisplayName("Given the security config is updated to SAFE and then to BREACHED " +
+            "when get to the /journal endpoints is made " +
+            "then both changes are journaled, the change to BREACHED is a breach of the last 24 hours and it is counted in its hour.")
+    @Test
+    void canQuerySecurityJournal() {
+        long startTimestamp = System.currentTimeMillis();
+        restTemplate.exchange("http://localhost:" + port + "/security/update/security-config", HttpMethod.PUT,
+                new HttpEntity<>(new SecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED)), SecurityConfig.class);
+        restTemplate.exchange("http://localhost:" + port + "/security/update/security-config", HttpMethod.PUT,
+                new HttpEntity<>(new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED)), SecurityConfig.class);
+
+        ResponseEntity<JournalEntry[]> entriesResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal?from=" + startTimestamp, JournalEntry[].class);
+        ResponseEntity<JournalEntry[]> breachesResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal/breaches?hours=24", JournalEntry[].class);
+        ResponseEntity<HourlyDetections[]> hourlyDetectionsResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal/detections-per-hour", HourlyDetections[].class);
+
+        assertThat(entriesResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(entriesResponseEntity.getBody())
+                .filteredOn(journalEntry -> journalEntry.getType() == JournalEntryType.SECURITY_CONFIG)
+                .extracting(JournalEntry::getSecurityStatus)
+                .endsWith(SecurityStatus.SAFE, SecurityStatus.BREACHED);
+        assertThat(breachesResponseEntity.getBody()).isNotEmpty();
+        JournalEntry lastBreach = breachesResponseEntity.getBody()[breachesResponseEntity.getBody().length - 1];
+        assertThat(lastBreach.getTimestamp()).isGreaterThanOrEqualTo(startTimestamp);
+        assertThat(lastBreach.getSecurityStatus()).isEqualTo(SecurityStatus.BREACHED);
+        assertThat(hourlyDetectionsResponseEntity.getBody()).isNotEmpty();
+        assertThat(hourlyDetectionsResponseEntity.getBody()[hourlyDetectionsResponseEntity.getBody().length - 1].getBreaches()).isPositive();
+
+        testUtils.deleteSecurityConfigFile();
+    }
+
+    @DisplayName("Given a limit or hours less than 1 " +
+            "when get to the /journal endpoints is made " +
+            "then return 400 bad request with zalando problem.")
+    @Test
+    void canReturnZalandoProblemIfJournalQueryIsInvalid() {
+        ResponseEntity<Problem> entriesResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal?limit=0", Problem.class);
+        ResponseEntity<Problem> breachesResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal/breaches?hours=0", Problem.class);
+        ResponseEntity<Problem> hourlyDetectionsResponseEntity = restTemplate.getForEntity("http://localhost:" + port + "/security/journal/detections-per-hour?hours=-1", Problem.class);
+
+        assertThat(entriesResponseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertExpectedZalandoProblem(entriesResponseEntity.getBody(), HttpStatus.BAD_REQUEST, "The journal entry limit 0 is less than 1.");
+        assertThat(breachesResponseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertExpectedZalandoProblem(breachesResponseEntity.getBody(), HttpStatus.BAD_REQUEST, "The journal hours 0 is less than 1.");
+        assertThat(hourlyDetectionsResponseEntity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertExpectedZalandoProblem(hourlyDetectionsResponseEntity.getBody(), HttpStatus.BAD_REQUEST, "The journal hours -1 is less than 1.");
+    }
+
     private void assertExpectedZalandoProblem(Problem zalandoProblem, HttpStatus httpStatus, String detail){
         assertThat(zalandoProblem).isNotNull();
         assertThat(zalandoProblem.getStatus()).isEqualTo(httpStatus.value());
@@ -262,6 +371,19 @@ class SecurityControllerSecurityConfigIntegrationTest {
 
     }
 
+    private SecurityConfig readSecurityConfigEvent(BufferedReader eventStream) throws IOException {
+        boolean securityConfigEvent = false;
+        String line;
+        while ((line = eventStream.readLine()) != null) {
+            if (line.startsWith("event:")) {
+                securityConfigEvent = line.equals("event:security-config");
+            } else if (securityConfigEvent && line.startsWith("data:")) {
+                return objectMapper.readValue(line.substring("data:".length()), SecurityConfig.class);
+            }
+        }
+        throw new EOFException("The security event stream ended before a security config event was received.");
+    }
+
     private void assertExpectedSecurityConfig(SecurityConfig updatedSecurityConfig, SecurityConfig expectedSecurityConfig) {
         assertThat(updatedSecurityConfig).isNotNull();
         assertThat(updatedSecurityConfig.getSecurityState()).isEqualTo(expectedSecurityConfig.getSecurityState());
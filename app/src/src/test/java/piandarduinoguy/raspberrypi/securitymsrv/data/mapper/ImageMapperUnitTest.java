@@ -4,11 +4,17 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.Random;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -31,4 +37,48 @@ class ImageMapperUnitTest {
         assertNotNull(byteImage);
         assertArrayEquals(Base64.getDecoder().decode(base64EncodedImage), byteImage);
     }
+
+    @Test
+    @DisplayName("Given a base64 encoded image input stream " +
+            "when base64InputStreamToByteArray method called " +
+            "then the image is decoded while it is read.")
+    void canMapBase64InputStreamToByteArrayImage() {
+        byte[] imageBytes = createImageBytes(100_001);
+        byte[] base64EncodedImageBytes = Base64.getEncoder().encode(imageBytes);
+
+        byte[] byteImage = ImageMapper.base64InputStreamToByteArray(new ByteArrayInputStream(base64EncodedImageBytes), base64EncodedImageBytes.length);
+
+        assertArrayEquals(imageBytes, byteImage);
+    }
+
+    @Test
+    @DisplayName("Given an image input stream longer than its expected length " +
+            "when inputStreamToByteArray method called " +
+            "then the whole image is read.")
+    void canMapInputStreamOfUnexpectedLengthToByteArrayImage() {
+        byte[] imageBytes = createImageBytes(200_000);
+
+        assertArrayEquals(imageBytes, ImageMapper.inputStreamToByteArray(new ByteArrayInputStream(imageBytes), 1000));
+        assertArrayEquals(imageBytes, ImageMapper.inputStreamToByteArray(new ByteArrayInputStream(imageBytes), -1));
+        assertArrayEquals(imageBytes, ImageMapper.inputStreamToByteArray(new ByteArrayInputStream(imageBytes), imageBytes.length));
+    }
+
+    @Test
+    @DisplayName("Given an input stream that is not base64 encoded " +
+            "when base64InputStreamToByteArray method called " +
+            "then an ImageFileException with a bad request status is thrown.")
+    void canThrowImageFileExceptionForInvalidBase64InputStream() {
+        byte[] invalidBase64Bytes = "not base64!".getBytes(StandardCharsets.US_ASCII);
+
+        assertThatThrownBy(() -> ImageMapper.base64InputStreamToByteArray(new ByteArrayInputStream(invalidBase64Bytes), invalidBase64Bytes.length))
+                .isInstanceOf(ImageFileException.class)
+                .hasMessageStartingWith("The image could not be read from the request body due to an IOException with message")
+                .extracting("httpStatus").isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private static byte[] createImageBytes(int length) {
+        byte[] imageBytes = new byte[length];
+        new Random(length).nextBytes(imageBytes);
+        return imageBytes;
+    }
 }
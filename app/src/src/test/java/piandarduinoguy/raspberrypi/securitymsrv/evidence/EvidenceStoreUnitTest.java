@@ -0,0 +1,180 @@
+package piandarduinoguy.raspberrypi.securitymsrv.evidence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.EvidenceFrame;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.EvidenceFrameNotFoundException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EvidenceStoreUnitTest {
+    private static final String CAMERA_ID = "front-door";
+    private static final int SEGMENT_COUNT = 4;
+    private static final int FRAME_SIZE = 200;
+    // four frames of 200 bytes and their headers fit in a segment
+    private static final int SEGMENT_SIZE_BYTES = 4 * (CameraEvidence.HEADER_SIZE + FRAME_SIZE) + 100;
+
+    @TempDir
+    File evidenceDirectory;
+
+    private final List<EvidenceStore> evidenceStores = new ArrayList<>();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void closeEvidenceStores() {
+        evidenceStores.forEach(EvidenceStore::close);
+    }
+
+    @DisplayName("Given frames retained for a camera " +
+            "when the frames are listed from and to timestamps and a frame is read " +
+            "then the frames in the range are listed in order and the image of a frame is read back as it was retained.")
+    @Test
+    void canListAndReadFrames() {
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+        List<EvidenceFrame> appendedFrames = new ArrayList<>();
+        for (int frame = 1; frame <= 5; frame++) {
+            appendedFrames.add(evidenceStore.append(CAMERA_ID, frame(frame)));
+        }
+
+        List<EvidenceFrame> evidenceFrames = evidenceStore.getFrames(CAMERA_ID, appendedFrames.get(1).getTimestamp(), appendedFrames.get(3).getTimestamp());
+
+        assertThat(evidenceFrames).extracting(EvidenceFrame::getSequence).containsExactly(2L, 3L, 4L);
+        assertThat(evidenceFrames).extracting(EvidenceFrame::getLength).containsOnly(FRAME_SIZE);
+        assertThat(evidenceFrames).extracting(EvidenceFrame::getCameraId).containsOnly(CAMERA_ID);
+        assertThat(appendedFrames).extracting(EvidenceFrame::getTimestamp).isSorted().doesNotHaveDuplicates();
+        assertThat(evidenceStore.getFrameImage(CAMERA_ID, appendedFrames.get(2).getTimestamp())).isEqualTo(frame(3));
+        assertThat(evidenceStore.getFrames("back-door", 0, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @DisplayName("Given the segments of a camera are full " +
+            "when another frame is retained " +
+            "then the oldest segment is overwritten, its frames are no longer retained and the segment files keep their number and size.")
+    @Test
+    void canOverwriteOldestSegment() {
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+        List<EvidenceFrame> appendedFrames = new ArrayList<>();
+        for (int frame = 1; frame <= 4 * SEGMENT_COUNT + 1; frame++) {
+            appendedFrames.add(evidenceStore.append(CAMERA_ID, frame(frame)));
+        }
+
+        assertThat(evidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).extracting(EvidenceFrame::getSequence)
+                .containsExactly(5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L);
+        long firstTimestamp = appendedFrames.get(0).getTimestamp();
+        assertThatThrownBy(() -> evidenceStore.getFrameImage(CAMERA_ID, firstTimestamp))
+                .isInstanceOf(EvidenceFrameNotFoundException.class)
+                .hasMessage(String.format("No evidence frame of camera %s with timestamp %d is retained.", CAMERA_ID, firstTimestamp));
+        assertThat(evidenceStore.getFrameImage(CAMERA_ID, appendedFrames.get(16).getTimestamp())).isEqualTo(frame(17));
+        File[] segmentFiles = new File(evidenceDirectory, CAMERA_ID).listFiles();
+        assertThat(segmentFiles).hasSize(SEGMENT_COUNT);
+        assertThat(segmentFiles).extracting(File::length).containsOnly((long) SEGMENT_SIZE_BYTES);
+    }
+
+    @DisplayName("Given frames retained for a camera, some of them over older frames " +
+            "when the evidence store is opened again " +
+            "then the retained frames are recovered and the next frame follows the last of them.")
+    @Test
+    void canRecoverFrames() {
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+        List<EvidenceFrame> appendedFrames = new ArrayList<>();
+        for (int frame = 1; frame <= 4 * SEGMENT_COUNT + 1; frame++) {
+            appendedFrames.add(evidenceStore.append(CAMERA_ID, frame(frame)));
+        }
+        evidenceStore.close();
+
+        EvidenceStore reopenedEvidenceStore = openEvidenceStore(100);
+
+        List<EvidenceFrame> evidenceFrames = reopenedEvidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE);
+        assertThat(evidenceFrames).extracting(EvidenceFrame::getSequence)
+                .containsExactly(5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L, 15L, 16L, 17L);
+        assertThat(evidenceFrames.get(12).getTimestamp()).isEqualTo(appendedFrames.get(16).getTimestamp());
+        assertThat(reopenedEvidenceStore.getFrameImage(CAMERA_ID, appendedFrames.get(9).getTimestamp())).isEqualTo(frame(10));
+        EvidenceFrame nextFrame = reopenedEvidenceStore.append(CAMERA_ID, frame(18));
+        assertThat(nextFrame.getSequence()).isEqualTo(18);
+        assertThat(nextFrame.getTimestamp()).isGreaterThan(appendedFrames.get(16).getTimestamp());
+        assertThat(reopenedEvidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).hasSize(14);
+    }
+
+    @DisplayName("Given a maximum of 3 frames per camera " +
+            "when 5 frames are retained " +
+            "then only the newest 3 frames are listed.")
+    @Test
+    void canLimitFramesPerCamera() {
+        EvidenceStore evidenceStore = openEvidenceStore(3);
+        for (int frame = 1; frame <= 5; frame++) {
+            evidenceStore.append(CAMERA_ID, frame(frame));
+        }
+
+        assertThat(evidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).extracting(EvidenceFrame::getSequence).containsExactly(3L, 4L, 5L);
+        assertThat(evidenceStore.getFrameCount(CAMERA_ID)).isEqualTo(3);
+    }
+
+    @DisplayName("Given an annotated image larger than a segment " +
+            "when it is retained " +
+            "then it is not retained and the frames retained before it are kept.")
+    @Test
+    void canSkipFrameLargerThanSegment() {
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+        evidenceStore.append(CAMERA_ID, frame(1));
+
+        EvidenceFrame evidenceFrame = evidenceStore.append(CAMERA_ID, new byte[SEGMENT_SIZE_BYTES]);
+
+        assertThat(evidenceFrame).isNull();
+        assertThat(evidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).extracting(EvidenceFrame::getSequence).containsExactly(1L);
+    }
+
+    @DisplayName("Given the evidence segments of a camera can not be created " +
+            "when annotated images are retained " +
+            "then the failure is not thrown to the caller and the frames of other cameras are still retained.")
+    @Test
+    void canRetainFramesOnBestEffortBasis() throws Exception {
+        assertThat(new File(evidenceDirectory, "back-door").createNewFile()).isTrue();
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+
+        evidenceStore.retain("back-door", frame(1));
+        evidenceStore.retain(CAMERA_ID, frame(2));
+        evidenceStore.close();
+
+        EvidenceStore reopenedEvidenceStore = openEvidenceStore(100);
+        assertThat(reopenedEvidenceStore.getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).extracting(EvidenceFrame::getLength).containsExactly(FRAME_SIZE);
+        assertThat(reopenedEvidenceStore.getFrames("back-door", 0, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @DisplayName("Given the evidence store has been closed " +
+            "when an annotated image is retained " +
+            "then the frame is dropped and counted without the failure being thrown to the caller.")
+    @Test
+    void canDropFramesRetainedAfterClose() {
+        EvidenceStore evidenceStore = openEvidenceStore(100);
+        evidenceStore.close();
+
+        evidenceStore.retain(CAMERA_ID, frame(1));
+
+        assertThat(evidenceStore.getDroppedFrameCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("security.evidence.frames.dropped").functionCounter().count()).isEqualTo(1);
+        assertThat(openEvidenceStore(100).getFrames(CAMERA_ID, 0, Long.MAX_VALUE)).isEmpty();
+    }
+
+    private EvidenceStore openEvidenceStore(int maxFramesPerCamera) {
+        EvidenceStore evidenceStore = new EvidenceStore(evidenceDirectory.getPath(), SEGMENT_COUNT, SEGMENT_SIZE_BYTES, maxFramesPerCamera, 16, meterRegistry);
+        evidenceStore.recoverEvidence();
+        evidenceStores.add(evidenceStore);
+        return evidenceStore;
+    }
+
+    private static byte[] frame(int frame) {
+        byte[] image = new byte[FRAME_SIZE];
+        Arrays.fill(image, (byte) frame);
+        return image;
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -86,6 +87,51 @@ class SecurityControllerExceptionHandlerUnitTest {
         assertExpectedZalandoProblem(exceptionMessage, responseEntity, HttpStatus.BAD_REQUEST);
     }
 
+    @Test
+    void canReturnZalandoProblemForSecurityCheckNotFoundException(){
+        String exceptionMessage = "This is a SecurityCheckNotFoundException.";
+
+        ResponseEntity<Problem> responseEntity = securityExceptionHandler.handleSecurityCheckNotFoundException(new SecurityCheckNotFoundException(exceptionMessage));
+
+        assertThat(responseEntity).isNotNull();
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertExpectedZalandoProblem(exceptionMessage, responseEntity, HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void canReturnZalandoProblemForSecurityCheckRejectedException(){
+        String exceptionMessage = "This is a SecurityCheckRejectedException.";
+
+        ResponseEntity<Problem> responseEntity = securityExceptionHandler.handleSecurityCheckRejectedException(new SecurityCheckRejectedException(exceptionMessage));
+
+        assertThat(responseEntity).isNotNull();
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertExpectedZalandoProblem(exceptionMessage, responseEntity, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void canReturnZalandoProblemWithStatusOfSecurityCheckRejectedException(){
+        String exceptionMessage = "This is a SecurityCheckRejectedException of a camera too many.";
+
+        ResponseEntity<Problem> responseEntity = securityExceptionHandler.handleSecurityCheckRejectedException(new SecurityCheckRejectedException(exceptionMessage, HttpStatus.FORBIDDEN));
+
+        assertThat(responseEntity).isNotNull();
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertExpectedZalandoProblem(exceptionMessage, responseEntity, HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    void canReturnZalandoProblemForPersonDetectorOverloadedException(){
+        String exceptionMessage = "This is a PersonDetectorOverloadedException.";
+
+        ResponseEntity<Problem> responseEntity = securityExceptionHandler.handlePersonDetectorOverloadedException(new PersonDetectorOverloadedException(exceptionMessage));
+
+        assertThat(responseEntity).isNotNull();
+        assertThat(responseEntity.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(responseEntity.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertExpectedZalandoProblem(exceptionMessage, responseEntity, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     private void assertExpectedZalandoProblem(String exceptionMessage, ResponseEntity<Problem> responseEntity, HttpStatus expectedHttpStatus) {
         Problem zalandoProblem = responseEntity.getBody();
         assertThat(zalandoProblem).isNotNull();
@@ -0,0 +1,227 @@
+package piandarduinoguy.raspberrypi.securitymsrv.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.HourlyDetections;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntry;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.JournalEntryType;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityJournalUnitTest {
+    private static final int HEADER_SIZE = 8;
+    private static final int SECURITY_CONFIG_RECORD_SIZE = 45;
+
+    @TempDir
+    File journalDirectory;
+
+    private final List<SecurityJournal> securityJournals = new ArrayList<>();
+
+    @AfterEach
+    void closeSecurityJournals() {
+        securityJournals.forEach(SecurityJournal::close);
+    }
+
+    @DisplayName("Given security config changes and detections journaled " +
+            "when the entries are queried from and to timestamps with a limit " +
+            "then the entries in the range are returned in order, at most the limit of them.")
+    @Test
+    void canQueryEntriesByTimestamp() {
+        SecurityJournal securityJournal = openSecurityJournal(1024 * 1024);
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, 1));
+        JournalEntry detectionEntry = securityJournal.appendDetection("front-door", detectionResult(0.7f, 0.9f));
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 2));
+
+        List<JournalEntry> journalEntries = securityJournal.getEntries(0, Long.MAX_VALUE, 1000);
+
+        assertThat(journalEntries).extracting(JournalEntry::getSequence).containsExactly(1L, 2L, 3L);
+        assertThat(journalEntries).extracting(JournalEntry::getTimestamp).isSorted();
+        assertThat(journalEntries.get(1).getType()).isEqualTo(JournalEntryType.DETECTION);
+        assertThat(journalEntries.get(1).getCameraId()).isEqualTo("front-door");
+        assertThat(journalEntries.get(1).getPersonCount()).isEqualTo(2);
+        assertThat(journalEntries.get(1).getMaxConfidence()).isEqualTo(0.9f);
+        assertThat(journalEntries.get(2).getSecurityStatus()).isEqualTo(SecurityStatus.BREACHED);
+        assertThat(journalEntries.get(2).getVersion()).isEqualTo(2);
+        assertThat(securityJournal.getEntries(0, Long.MAX_VALUE, 2)).extracting(JournalEntry::getSequence).containsExactly(1L, 2L);
+        assertThat(securityJournal.getEntries(detectionEntry.getTimestamp() + 1, Long.MAX_VALUE, 1000))
+                .allMatch(journalEntry -> journalEntry.getTimestamp() > detectionEntry.getTimestamp());
+    }
+
+    @DisplayName("Given more entries journaled than the maximum entries per query " +
+            "when the entries are queried with a larger limit " +
+            "then only the maximum entries per query are returned, oldest first.")
+    @Test
+    void canCapEntriesPerQuery() {
+        SecurityJournal securityJournal = openSecurityJournal(1024 * 1024, 2);
+        for (long version = 1; version <= 3; version++) {
+            securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, version));
+        }
+
+        assertThat(securityJournal.getEntries(0, Long.MAX_VALUE, 1000)).extracting(JournalEntry::getVersion).containsExactly(1L, 2L);
+    }
+
+    @DisplayName("Given the security config breached twice in a row, then made safe and breached again, and detections journaled " +
+            "when the breaches and the detections per hour are queried " +
+            "then only the changes to breached are breaches and the detections with and without persons are counted per hour.")
+    @Test
+    void canQueryBreachesAndHourlyDetections() {
+        SecurityJournal securityJournal = openSecurityJournal(1024 * 1024);
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 1));
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 2));
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, 3));
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 4));
+        securityJournal.appendDetection("front-door", detectionResult(0.8f));
+        securityJournal.appendDetection("front-door", detectionResult());
+        securityJournal.appendDetection("garage", detectionResult());
+
+        List<JournalEntry> breaches = securityJournal.getBreaches(0, Long.MAX_VALUE);
+        List<HourlyDetections> hourlyDetections = securityJournal.getHourlyDetections(0, Long.MAX_VALUE);
+
+        assertThat(breaches).extracting(JournalEntry::getVersion).containsExactly(1L, 4L);
+        long detections = hourlyDetections.stream().mapToLong(HourlyDetections::getDetections).sum();
+        long personDetections = hourlyDetections.stream().mapToLong(HourlyDetections::getPersonDetections).sum();
+        long hourlyBreaches = hourlyDetections.stream().mapToLong(HourlyDetections::getBreaches).sum();
+        assertThat(detections).isEqualTo(3);
+        assertThat(personDetections).isEqualTo(1);
+        assertThat(hourlyBreaches).isEqualTo(2);
+        assertThat(hourlyDetections).allMatch(hour -> hour.getHourStart() % 3_600_000 == 0);
+        assertThat(securityJournal.getBreaches(Long.MAX_VALUE - 1, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @DisplayName("Given entries journaled " +
+            "when the journal is opened again " +
+            "then the entries are recovered, the next entry follows the last of them and a breach is only journaled after a change away from breached.")
+    @Test
+    void canRecoverJournal() {
+        SecurityJournal securityJournal = openSecurityJournal(1024 * 1024);
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 1));
+        securityJournal.appendDetection("front-door", detectionResult(0.6f));
+        securityJournal.close();
+
+        SecurityJournal reopenedSecurityJournal = openSecurityJournal(1024 * 1024);
+
+        assertThat(reopenedSecurityJournal.getEntries(0, Long.MAX_VALUE, 1000)).extracting(JournalEntry::getSequence).containsExactly(1L, 2L);
+        assertThat(reopenedSecurityJournal.getBreaches(0, Long.MAX_VALUE)).extracting(JournalEntry::getVersion).containsExactly(1L);
+        JournalEntry journalEntry = reopenedSecurityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 2));
+        assertThat(journalEntry.getSequence()).isEqualTo(3);
+        assertThat(journalEntry.isBreach()).isFalse();
+    }
+
+    @DisplayName("Given the last record of the journal was only partly written " +
+            "when the journal is opened again " +
+            "then the torn record is dropped and overwritten by the next append.")
+    @Test
+    void canDropTornRecord() throws Exception {
+        SecurityJournal securityJournal = openSecurityJournal(1024 * 1024);
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, 1));
+        securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED, 2));
+        securityJournal.close();
+        try (RandomAccessFile journalFile = new RandomAccessFile(journalFile(), "rw")) {
+            journalFile.setLength(HEADER_SIZE + SECURITY_CONFIG_RECORD_SIZE + 20);
+        }
+
+        SecurityJournal reopenedSecurityJournal = openSecurityJournal(1024 * 1024);
+        reopenedSecurityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, 3));
+        reopenedSecurityJournal.close();
+
+        assertThat(openSecurityJournal(1024 * 1024).getEntries(0, Long.MAX_VALUE, 1000)).extracting(JournalEntry::getVersion).containsExactly(1L, 3L);
+        assertThat(journalFile().length()).isEqualTo(HEADER_SIZE + 2 * SECURITY_CONFIG_RECORD_SIZE);
+    }
+
+    @DisplayName("Given a journal larger than its maximum size " +
+            "when it is compacted " +
+            "then the oldest entries are dropped until it fits, the newest entries are kept and appends continue after them.")
+    @Test
+    void canCompactJournal() {
+        int maxSizeBytes = HEADER_SIZE + 10 * SECURITY_CONFIG_RECORD_SIZE;
+        SecurityJournal securityJournal = openSecurityJournal(maxSizeBytes);
+        for (long version = 1; version <= 30; version++) {
+            securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, version));
+        }
+
+        securityJournal.compact();
+
+        assertThat(securityJournal.getSizeBytes()).isLessThanOrEqualTo(maxSizeBytes);
+        assertThat(journalFile().length()).isEqualTo(securityJournal.getSizeBytes());
+        List<JournalEntry> journalEntries = securityJournal.getEntries(0, Long.MAX_VALUE, 1000);
+        assertThat(journalEntries).isNotEmpty();
+        assertThat(journalEntries.get(journalEntries.size() - 1).getVersion()).isEqualTo(30);
+        assertThat(securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED, 31)).getSequence()).isEqualTo(31);
+        securityJournal.close();
+        List<JournalEntry> recoveredJournalEntries = openSecurityJournal(maxSizeBytes).getEntries(0, Long.MAX_VALUE, 1000);
+        assertThat(recoveredJournalEntries).hasSize(journalEntries.size() + 1);
+        assertThat(recoveredJournalEntries.get(0).getSequence()).isEqualTo(journalEntries.get(0).getSequence());
+        assertThat(recoveredJournalEntries.get(journalEntries.size()).getVersion()).isEqualTo(31);
+    }
+
+    @DisplayName("Given entries being journaled while the journal is compacted again and again " +
+            "when the appends are done " +
+            "then every entry appended since the compaction started is kept in order and the journal recovers the same entries.")
+    @Test
+    void canKeepEntriesAppendedWhileCompacting() throws Exception {
+        int maxSizeBytes = HEADER_SIZE + 200 * SECURITY_CONFIG_RECORD_SIZE;
+        SecurityJournal securityJournal = openSecurityJournal(maxSizeBytes, 2000);
+        AtomicBoolean appending = new AtomicBoolean(true);
+        Thread appender = new Thread(() -> {
+            for (long version = 1; version <= 2000; version++) {
+                securityJournal.appendSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, version));
+            }
+            appending.set(false);
+        });
+        appender.start();
+        while (appending.get()) {
+            securityJournal.compact();
+        }
+        appender.join();
+
+        List<JournalEntry> journalEntries = securityJournal.getEntries(0, Long.MAX_VALUE, 2000);
+        assertThat(journalEntries).isNotEmpty();
+        for (int index = 1; index < journalEntries.size(); index++) {
+            assertThat(journalEntries.get(index).getSequence()).isEqualTo(journalEntries.get(index - 1).getSequence() + 1);
+        }
+        assertThat(journalEntries.get(journalEntries.size() - 1).getVersion()).isEqualTo(2000);
+        assertThat(journalFile().length()).isEqualTo(securityJournal.getSizeBytes());
+        securityJournal.close();
+        assertThat(openSecurityJournal(maxSizeBytes, 2000).getEntries(0, Long.MAX_VALUE, 2000))
+                .extracting(JournalEntry::getSequence)
+                .containsExactlyElementsOf(journalEntries.stream().map(JournalEntry::getSequence).collect(Collectors.toList()));
+    }
+
+    private SecurityJournal openSecurityJournal(long maxSizeBytes) {
+        return openSecurityJournal(maxSizeBytes, 1000);
+    }
+
+    private SecurityJournal openSecurityJournal(long maxSizeBytes, int maxQueryEntries) {
+        SecurityJournal securityJournal = new SecurityJournal(journalFile().getPath(), 1, 720, maxSizeBytes, maxQueryEntries);
+        securityJournal.open();
+        securityJournals.add(securityJournal);
+        return securityJournal;
+    }
+
+    private File journalFile() {
+        return new File(journalDirectory, "security_journal.log");
+    }
+
+    private static DetectionResult detectionResult(Float... confidences) {
+        List<BoundingBox> boundingBoxes = new ArrayList<>();
+        for (Float confidence : confidences) {
+            boundingBoxes.add(new BoundingBox(10, 20, 30, 60, confidence));
+        }
+        return new DetectionResult("yolov3", 100, confidences.length == 0 ? Collections.emptyList() : boundingBoxes);
+    }
+}
@@ -0,0 +1,340 @@
+package piandarduinoguy.raspberrypi.securitymsrv.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheckStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.service.AnnotatedImageService;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Drives the whole service the way a deployment does, offline on one box, to size hardware: a fleet of cameras posts
+ * frames to /security-check at a fixed rate each while dashboards poll /security-config and /annotated-image. yolo.py
+ * is replaced by a stand-in with a configurable inference latency and the broker by a RabbitTemplate that confirms every
+ * publish straight away. The requests are sent open loop, every request at the time it is due whether or not the
+ * previous one has been answered, and the latency of a request is measured from that time, so a saturated service shows
+ * as growing latencies rather than as fewer requests.
+ * <p>
+ * Not part of the regular build, it is run with the load-test profile and tuned with system properties:
+ * <pre>
+ * mvn test -Pload-test -Dload-test.cameras=8 -Dload-test.fps=2 -Dload-test.detector-latency-ms=300 -Dload-test.detector-workers=2
+ * </pre>
+ * Detections are batched with -Dload-test.batch-max-size and -Dload-test.batch-max-wait-ms, the stand-in charging every
+ * further image of a batch -Dload-test.detector-batch-image-share of the latency of one.
+ * Requests due during the warm up are sent but not measured. The report is printed and written to
+ * target/load-test-report.txt.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"resources.base.location=target/load-test/",
+                "security-config.outbox.file=target/load-test/security_config_outbox.log",
+                "yolo.person-detector.base.location=src/test/resources/load-test-yolo/",
+                "yolo.person-detector.pool.warm-up=true",
+                "yolo.person-detector.pool.size=${load-test.detector-workers:2}",
+                "yolo.person-detector.max-in-flight=${load-test.max-in-flight:4}",
+                "security-check.mode=${load-test.security-check-mode:sync}",
+                "security-check.executor.threads=${load-test.detector-workers:2}",
+                "yolo.person-detector.batch.max-size=${load-test.batch-max-size:1}",
+                "yolo.person-detector.batch.max-wait-ms=${load-test.batch-max-wait-ms:25}"})
+class SecurityLoadTest {
+    private static final long SECURITY_CHECK_POLL_INTERVAL_MILLIS = 20;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private RabbitTemplate rabbitTemplate;
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${resources.base.location}")
+    private String resourcesBaseLocation;
+
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
+    @Value("${load-test.cameras:4}")
+    private int cameras;
+
+    @Value("${load-test.fps:2}")
+    private double framesPerSecond;
+
+    @Value("${load-test.frame-bytes:49152}")
+    private int frameBytes;
+
+    @Value("${load-test.person-every:10}")
+    private int personEvery;
+
+    @Value("${load-test.dashboards:2}")
+    private int dashboards;
+
+    @Value("${load-test.dashboard-poll-interval-ms:1000}")
+    private long dashboardPollIntervalMillis;
+
+    @Value("${load-test.warm-up-seconds:5}")
+    private long warmUpSeconds;
+
+    @Value("${load-test.duration-seconds:30}")
+    private long durationSeconds;
+
+    @Value("${load-test.max-error-rate:0.01}")
+    private double maxErrorRate;
+
+    @BeforeEach
+    void prepareLoadTest() throws Exception {
+        ArgumentCaptor<RabbitTemplate.ConfirmCallback> confirmCallbackCaptor = ArgumentCaptor.forClass(RabbitTemplate.ConfirmCallback.class);
+        verify(rabbitTemplate).setConfirmCallback(confirmCallbackCaptor.capture());
+        doAnswer(invocation -> {
+            confirmCallbackCaptor.getValue().confirm(invocation.getArgument(3), true, null);
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        File resourcesDirectory = new File(resourcesBaseLocation);
+        FileUtils.forceMkdir(resourcesDirectory);
+        objectMapper.writeValue(new File(resourcesDirectory, "security_config.json"), new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED));
+        annotatedImageService.publishAnnotatedImage(SecurityCheck.DEFAULT_CAMERA_ID, FileUtils.readFileToByteArray(new File("src/test/resources/application/test_new_capture.jpeg")));
+    }
+
+    @DisplayName("Given a fleet of cameras and dashboards " +
+            "when they use the service at their configured rates for the configured duration " +
+            "then throughput, latency percentiles and error rates are reported and the error rate is within the configured maximum.")
+    @Test
+    void canSustainCameraFleet() throws Exception {
+        long measuredFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmUpSeconds);
+        OperationStatistics securityCheckStatistics = new OperationStatistics("security-check", measuredFrom);
+        OperationStatistics securityConfigStatistics = new OperationStatistics("security-config", measuredFrom);
+        OperationStatistics annotatedImageStatistics = new OperationStatistics("annotated-image", measuredFrom);
+        ScheduledExecutorService loadScheduler = Executors.newScheduledThreadPool(2);
+        ExecutorService requestExecutor = Executors.newCachedThreadPool();
+
+        for (int camera = 0; camera < cameras; camera++) {
+            String cameraId = "camera-" + camera;
+            List<String> frames = createBase64EncodedFrames(camera);
+            long framePeriodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / framesPerSecond);
+            scheduleOpenLoop(loadScheduler, requestExecutor, framePeriodNanos, securityCheckStatistics,
+                    frameNumber -> postFrame(cameraId, frames.get((int) (frameNumber % frames.size()))));
+        }
+        for (int dashboard = 0; dashboard < dashboards; dashboard++) {
+            long pollPeriodNanos = TimeUnit.MILLISECONDS.toNanos(dashboardPollIntervalMillis);
+            scheduleOpenLoop(loadScheduler, requestExecutor, pollPeriodNanos, securityConfigStatistics,
+                    requestNumber -> outcomeOf(restTemplate.getForEntity(url("security-config"), String.class)));
+            scheduleOpenLoop(loadScheduler, requestExecutor, pollPeriodNanos, annotatedImageStatistics,
+                    requestNumber -> outcomeOf(restTemplate.getForEntity(url("annotated-image"), String.class)));
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmUpSeconds + durationSeconds));
+        loadScheduler.shutdownNow();
+        long elapsedNanos = System.nanoTime() - measuredFrom;
+        requestExecutor.shutdown();
+        boolean drained = requestExecutor.awaitTermination(1, TimeUnit.MINUTES);
+
+        String report = createReport(elapsedNanos, securityCheckStatistics, securityConfigStatistics, annotatedImageStatistics);
+        System.out.println(report);
+        FileUtils.writeStringToFile(new File("target/load-test-report.txt"), report, StandardCharsets.UTF_8.name());
+
+        assertThat(drained).isTrue();
+        assertThat(securityCheckStatistics.getSucceeded()).isPositive();
+        for (OperationStatistics operationStatistics : new OperationStatistics[]{securityCheckStatistics, securityConfigStatistics, annotatedImageStatistics}) {
+            assertThat(operationStatistics.getErrorRate()).as("error rate of %s", operationStatistics.getOperation()).isLessThanOrEqualTo(maxErrorRate);
+        }
+    }
+
+    /**
+     * Sends a request every period from now on, each on a thread of its own so that a slow response does not hold back
+     * the next request, and records its outcome with its latency from the time it was due.
+     */
+    private void scheduleOpenLoop(ScheduledExecutorService loadScheduler, ExecutorService requestExecutor, long periodNanos,
+                                  OperationStatistics operationStatistics, RequestSender requestSender) {
+        long firstDueAt = System.nanoTime() + new Random().nextInt((int) Math.min(periodNanos, Integer.MAX_VALUE));
+        long[] requestNumber = {0};
+        loadScheduler.scheduleAtFixedRate(() -> {
+            long number = requestNumber[0]++;
+            long dueAt = firstDueAt + number * periodNanos;
+            requestExecutor.execute(() -> operationStatistics.record(dueAt, () -> requestSender.send(number)));
+        }, firstDueAt - System.nanoTime(), periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Posts the frame and, when the security check is run asynchronously, polls it until it has finished.
+     */
+    private String postFrame(String cameraId, String base64EncodedFrame) {
+        ResponseEntity<SecurityCheck> responseEntity = restTemplate.postForEntity(url("security-check?camera-id=" + cameraId), base64EncodedFrame, SecurityCheck.class);
+        if (!responseEntity.getStatusCode().is2xxSuccessful()) {
+            return "HTTP " + responseEntity.getStatusCodeValue();
+        }
+        SecurityCheck securityCheck = responseEntity.getBody();
+        while (securityCheck.getSecurityCheckStatus() == SecurityCheckStatus.QUEUED || securityCheck.getSecurityCheckStatus() == SecurityCheckStatus.RUNNING) {
+            try {
+                Thread.sleep(SECURITY_CHECK_POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
+            }
+            ResponseEntity<SecurityCheck> pollResponseEntity = restTemplate.getForEntity(url("security-check/" + securityCheck.getId()), SecurityCheck.class);
+            if (!pollResponseEntity.getStatusCode().is2xxSuccessful()) {
+                return "HTTP " + pollResponseEntity.getStatusCodeValue();
+            }
+            securityCheck = pollResponseEntity.getBody();
+        }
+        return securityCheck.getSecurityCheckStatus() == SecurityCheckStatus.COMPLETED ? OperationStatistics.SUCCEEDED : securityCheck.getSecurityCheckStatus().name();
+    }
+
+    /**
+     * Frames of random bytes, the same for every run, every personEvery-th of them marked for the detector stand-in to
+     * find a person in.
+     */
+    private List<String> createBase64EncodedFrames(int camera) {
+        Random random = new Random(camera);
+        List<String> frames = new ArrayList<>();
+        for (int frameNumber = 0; frameNumber < personEvery; frameNumber++) {
+            byte[] frame = new byte[frameBytes];
+            random.nextBytes(frame);
+            byte[] marker = (frameNumber == 0 ? "a_person" : "no_person").getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(marker, 0, frame, 0, marker.length);
+            frames.add(Base64.getEncoder().encodeToString(frame));
+        }
+        return frames;
+    }
+
+    private String createReport(long elapsedNanos, OperationStatistics... operationStatistics) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder(String.format(
+                "%nLoad test: %d camera(s) at %.1f fps, %d dashboard(s) polling every %d ms, %d byte frames, measured for %.1f s after a %d s warm up%n",
+                cameras, framesPerSecond, dashboards, dashboardPollIntervalMillis, frameBytes, elapsedSeconds, warmUpSeconds));
+        report.append(String.format("%-16s %9s %10s %10s %10s %10s %10s  %s%n", "operation", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors", "outcomes"));
+        for (OperationStatistics statistics : operationStatistics) {
+            report.append(String.format("%-16s %9d %10.2f %10.1f %10.1f %10.1f %9.2f%%  %s%n",
+                    statistics.getOperation(),
+                    statistics.getRequests(),
+                    statistics.getRequests() / elapsedSeconds,
+                    statistics.getLatencyPercentileMillis(50),
+                    statistics.getLatencyPercentileMillis(99),
+                    statistics.getLatencyPercentileMillis(100),
+                    statistics.getErrorRate() * 100,
+                    statistics.getOutcomes()));
+        }
+        return report.toString();
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/security/" + path;
+    }
+
+    private static String outcomeOf(ResponseEntity<?> responseEntity) {
+        return responseEntity.getStatusCode().is2xxSuccessful() ? OperationStatistics.SUCCEEDED : "HTTP " + responseEntity.getStatusCodeValue();
+    }
+
+    @FunctionalInterface
+    private interface RequestSender {
+        String send(long requestNumber);
+    }
+
+    /**
+     * The latencies and outcomes of the requests of one operation that were due once the warm up was over, anything but
+     * a success counting as an error.
+     */
+    private static final class OperationStatistics {
+        static final String SUCCEEDED = "OK";
+
+        private final String operation;
+
+        private final long measuredFrom;
+
+        private final List<Long> latencyNanos = new ArrayList<>();
+
+        private final Map<String, Long> outcomes = new TreeMap<>();
+
+        OperationStatistics(String operation, long measuredFrom) {
+            this.operation = operation;
+            this.measuredFrom = measuredFrom;
+        }
+
+        void record(long dueAt, Supplier<String> request) {
+            String outcome;
+            try {
+                outcome = request.get();
+            } catch (RuntimeException runtimeException) {
+                outcome = runtimeException.getClass().getSimpleName();
+            }
+            long latency = System.nanoTime() - dueAt;
+            if (dueAt < this.measuredFrom) {
+                return;
+            }
+            synchronized (this) {
+                this.latencyNanos.add(latency);
+                this.outcomes.merge(outcome, 1L, Long::sum);
+            }
+        }
+
+        String getOperation() {
+            return this.operation;
+        }
+
+        synchronized long getRequests() {
+            return this.latencyNanos.size();
+        }
+
+        synchronized long getSucceeded() {
+            return this.outcomes.getOrDefault(SUCCEEDED, 0L);
+        }
+
+        synchronized double getErrorRate() {
+            return this.latencyNanos.isEmpty() ? 0 : (double) (getRequests() - getSucceeded()) / getRequests();
+        }
+
+        synchronized Map<String, Long> getOutcomes() {
+            return new TreeMap<>(this.outcomes);
+        }
+
+        synchronized double getLatencyPercentileMillis(double percentile) {
+            if (this.latencyNanos.isEmpty()) {
+                return 0;
+            }
+            List<Long> sortedLatencyNanos = new ArrayList<>(this.latencyNanos);
+            Collections.sort(sortedLatencyNanos);
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencyNanos.size()) - 1;
+            return sortedLatencyNanos.get(Math.max(index, 0)) / 1e6;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfigEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityConfigEventCodecUnitTest {
+    private static final OutboxRecord OUTBOX_RECORD = new OutboxRecord(42, new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 7), 0);
+
+    @DisplayName("Given the JSON encoding " +
+            "when a security config change is encoded " +
+            "then the body is the security config as JSON and the sequence is carried in a header.")
+    @Test
+    void canEncodeSecurityConfigEventAsJson() {
+        SecurityConfigEventCodec securityConfigEventCodec = new SecurityConfigEventCodec(new Jackson2JsonMessageConverter(), SecurityConfigEventEncoding.JSON);
+
+        Message message = securityConfigEventCodec.encode(OUTBOX_RECORD);
+
+        assertThat(new String(message.getBody())).isEqualTo("{\"securityStatus\":\"BREACHED\",\"securityState\":\"ARMED\"}");
+        assertThat(message.getMessageProperties().<Long>getHeader(SecurityConfigEventCodec.SEQUENCE_HEADER)).isEqualTo(42L);
+        assertThat(message.getMessageProperties().<Integer>getHeader(SecurityConfigEventCodec.EVENT_FORMAT_VERSION_HEADER)).isEqualTo(1);
+        assertSecurityConfigEvent(securityConfigEventCodec.decode(message));
+    }
+
+    @DisplayName("Given the binary encoding " +
+            "when a security config change is encoded " +
+            "then the body is the format version, the status and state ordinals and the sequence in 11 bytes.")
+    @Test
+    void canEncodeSecurityConfigEventAsBinary() {
+        SecurityConfigEventCodec securityConfigEventCodec = new SecurityConfigEventCodec(new Jackson2JsonMessageConverter(), SecurityConfigEventEncoding.BINARY);
+
+        Message message = securityConfigEventCodec.encode(OUTBOX_RECORD);
+
+        assertThat(message.getBody()).containsExactly(1, SecurityStatus.BREACHED.ordinal(), SecurityState.ARMED.ordinal(), 0, 0, 0, 0, 0, 0, 0, 42);
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(SecurityConfigEventCodec.BINARY_CONTENT_TYPE);
+        assertSecurityConfigEvent(securityConfigEventCodec.decode(message));
+    }
+
+    private static void assertSecurityConfigEvent(SecurityConfigEvent securityConfigEvent) {
+        assertThat(securityConfigEvent.getSequence()).isEqualTo(42);
+        assertThat(securityConfigEvent.getSecurityStatus()).isEqualTo(SecurityStatus.BREACHED);
+        assertThat(securityConfigEvent.getSecurityState()).isEqualTo(SecurityState.ARMED);
+    }
+}
@@ -0,0 +1,104 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityConfigOutboxUnitTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 26;
+
+    @TempDir
+    File outboxDirectory;
+
+    @DisplayName("Given security configs appended to the outbox and the first of them relayed " +
+            "when the outbox is opened again " +
+            "then only the security configs that were not relayed are recovered, in order.")
+    @Test
+    void canRecoverUnrelayedSecurityConfigs() {
+        SecurityConfigOutbox securityConfigOutbox = openSecurityConfigOutbox(4096);
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, 1));
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.DISARMED, 2));
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, 3));
+        securityConfigOutbox.markRelayed(1);
+
+        SecurityConfigOutbox reopenedSecurityConfigOutbox = openSecurityConfigOutbox(4096);
+
+        List<OutboxRecord> outboxRecords = reopenedSecurityConfigOutbox.getUnrelayedRecordsAfter(0);
+        assertThat(outboxRecords).extracting(OutboxRecord::getSequence).containsExactly(2L, 3L);
+        assertThat(outboxRecords.get(0).getVersionedSecurityConfig().getSecurityState()).isEqualTo(SecurityState.DISARMED);
+        assertThat(outboxRecords.get(0).getVersionedSecurityConfig().getVersion()).isEqualTo(2);
+        assertThat(reopenedSecurityConfigOutbox.getRelayedSequence()).isEqualTo(1);
+        assertThat(reopenedSecurityConfigOutbox.append(versionedSecurityConfig(SecurityState.DISARMED, 4)).getSequence()).isEqualTo(4);
+    }
+
+    @DisplayName("Given the last record of the outbox was only partly written " +
+            "when the outbox is opened again " +
+            "then the torn record is ignored and overwritten by the next append.")
+    @Test
+    void canIgnoreTornRecord() throws Exception {
+        SecurityConfigOutbox securityConfigOutbox = openSecurityConfigOutbox(4096);
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, 1));
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.DISARMED, 2));
+        try (RandomAccessFile outboxFile = new RandomAccessFile(outboxFile(), "rw")) {
+            outboxFile.seek(HEADER_SIZE + RECORD_SIZE + 12);
+            outboxFile.writeLong(0);
+        }
+
+        SecurityConfigOutbox reopenedSecurityConfigOutbox = openSecurityConfigOutbox(4096);
+
+        assertThat(reopenedSecurityConfigOutbox.getUnrelayedRecordsAfter(0)).extracting(OutboxRecord::getSequence).containsExactly(1L);
+        reopenedSecurityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, 3));
+        assertThat(openSecurityConfigOutbox(4096).getUnrelayedRecordsAfter(0)).extracting(OutboxRecord::getSequence).containsExactly(1L, 2L);
+    }
+
+    @DisplayName("Given a full outbox " +
+            "when another security config is appended " +
+            "then the relayed security configs are compacted away and the oldest unrelayed ones are dropped only if they alone fill it.")
+    @Test
+    void canCompactFullOutbox() {
+        int capacityBytes = HEADER_SIZE + 4 * RECORD_SIZE;
+        SecurityConfigOutbox securityConfigOutbox = openSecurityConfigOutbox(capacityBytes);
+        for (long version = 1; version <= 4; version++) {
+            securityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, version));
+        }
+        securityConfigOutbox.markRelayed(2);
+
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.DISARMED, 5));
+
+        assertThat(securityConfigOutbox.getDroppedCount()).isZero();
+        assertThat(openSecurityConfigOutbox(capacityBytes).getUnrelayedRecordsAfter(0)).extracting(OutboxRecord::getSequence).containsExactly(3L, 4L, 5L);
+
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.ARMED, 6));
+        securityConfigOutbox.append(versionedSecurityConfig(SecurityState.DISARMED, 7));
+
+        assertThat(securityConfigOutbox.getDroppedCount()).isEqualTo(1);
+        assertThat(securityConfigOutbox.getRelayedSequence()).isEqualTo(3);
+        SecurityConfigOutbox reopenedSecurityConfigOutbox = openSecurityConfigOutbox(capacityBytes);
+        assertThat(reopenedSecurityConfigOutbox.getUnrelayedRecordsAfter(0)).extracting(OutboxRecord::getSequence).containsExactly(4L, 5L, 6L, 7L);
+        assertThat(reopenedSecurityConfigOutbox.getRelayedSequence()).isEqualTo(3);
+    }
+
+    private SecurityConfigOutbox openSecurityConfigOutbox(int capacityBytes) {
+        SecurityConfigOutbox securityConfigOutbox = new SecurityConfigOutbox(outboxFile().getPath(), capacityBytes);
+        securityConfigOutbox.open();
+        return securityConfigOutbox;
+    }
+
+    private File outboxFile() {
+        return new File(outboxDirectory, "security_config_outbox.log");
+    }
+
+    private static VersionedSecurityConfig versionedSecurityConfig(SecurityState securityState, long version) {
+        return new VersionedSecurityConfig(SecurityStatus.SAFE, securityState, version);
+    }
+}
@@ -0,0 +1,234 @@
+package piandarduinoguy.raspberrypi.securitymsrv.publisher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.PublisherStatistics;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfigEvent;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class SecurityConfigPublisherUnitTest {
+    private static final FanoutExchange FANOUT_EXCHANGE = new FanoutExchange("fanout_exchange");
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+
+    private final ArgumentCaptor<RabbitTemplate.ConfirmCallback> confirmCallbackCaptor = ArgumentCaptor.forClass(RabbitTemplate.ConfirmCallback.class);
+
+    private final SecurityConfigEventCodec securityConfigEventCodec = new SecurityConfigEventCodec(new Jackson2JsonMessageConverter(), SecurityConfigEventEncoding.JSON);
+
+    private final List<SecurityConfigEvent> sentSecurityConfigs = new CopyOnWriteArrayList<>();
+
+    private final List<CorrelationData> sentCorrelationData = new CopyOnWriteArrayList<>();
+
+    @TempDir
+    File outboxDirectory;
+
+    private SecurityConfigOutbox securityConfigOutbox;
+
+    private SecurityConfigPublisher securityConfigPublisher;
+
+    @BeforeEach
+    void recordSentSecurityConfigs() {
+        securityConfigOutbox = openSecurityConfigOutbox();
+        doAnswer(this::recordSend).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @AfterEach
+    void shutdownSecurityConfigPublisher() {
+        securityConfigPublisher.shutdown();
+    }
+
+    @DisplayName("Given a sent security config is not confirmed yet and only one may be unconfirmed " +
+            "when several newer security configs are published " +
+            "then only the latest of them is sent once the first is confirmed.")
+    @Test
+    void canCoalesceSecurityConfigsWaitingToBeSent() throws Exception {
+        securityConfigPublisher = createSecurityConfigPublisher(1, 0, true);
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 1));
+        verifySent(1);
+
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.DISARMED, 2));
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 3));
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.DISARMED, 4));
+        confirm(0, true);
+
+        verifySent(2);
+        assertThat(sentSecurityConfigs.get(1).getSecurityState()).isEqualTo(SecurityState.DISARMED);
+        confirm(1, true);
+        PublisherStatistics publisherStatistics = securityConfigPublisher.getStatistics();
+        assertThat(publisherStatistics.getPublished()).isEqualTo(2);
+        assertThat(publisherStatistics.getConfirmed()).isEqualTo(2);
+        assertThat(publisherStatistics.getCoalesced()).isEqualTo(2);
+        assertThat(publisherStatistics.getUnconfirmed()).isZero();
+    }
+
+    @DisplayName("Given a security config is nacked by the broker " +
+            "when no newer security config has been published " +
+            "then it is sent again.")
+    @Test
+    void canRetryNackedSecurityConfig() throws Exception {
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, true);
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 1));
+        verifySent(1);
+
+        confirm(0, false);
+
+        verifySent(2);
+        assertThat(sentSecurityConfigs.get(1).getSecurityState()).isEqualTo(SecurityState.ARMED);
+        assertThat(securityConfigPublisher.getStatistics().getNacked()).isEqualTo(1);
+        assertThat(securityConfigPublisher.getStatistics().getRetried()).isEqualTo(1);
+    }
+
+    @DisplayName("Given the broker can not be reached " +
+            "when a security config is published " +
+            "then the call returns straight away and the security config is sent once the broker is back.")
+    @Test
+    void canRetrySecurityConfigThatCouldNotBeSent() throws Exception {
+        doThrow(new AmqpConnectException(new ConnectException("I am a ConnectException.")))
+                .doAnswer(this::recordSend)
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, true);
+
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 1));
+
+        verifySent(1);
+        assertThat(securityConfigPublisher.getStatistics().getRetried()).isEqualTo(1);
+    }
+
+    @DisplayName("Given security configs are not coalesced and the second of three is nacked " +
+            "when the broker confirms the rest " +
+            "then the nacked security config and the one after it are sent again in order and the outbox is drained.")
+    @Test
+    void canRelayOutboxInOrderAfterNack() throws Exception {
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, false);
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 1));
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.DISARMED, 2));
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.ARMED, 3));
+        verifySent(3);
+
+        confirm(0, true);
+        confirm(1, false);
+        confirm(2, true);
+
+        verifySent(5);
+        assertThat(sentSecurityConfigs.get(3).getSecurityState()).isEqualTo(SecurityState.DISARMED);
+        assertThat(sentSecurityConfigs.get(4).getSecurityState()).isEqualTo(SecurityState.ARMED);
+        assertThat(securityConfigOutbox.getRelayedSequence()).isEqualTo(1);
+        confirm(3, true);
+        confirm(4, true);
+        assertThat(securityConfigOutbox.getRelayedSequence()).isEqualTo(3);
+        assertThat(securityConfigPublisher.getStatistics().getOutboxBacklog()).isZero();
+    }
+
+    @DisplayName("Given a security config was published but never confirmed before a restart " +
+            "when the publisher starts again on the same outbox " +
+            "then the security config is sent again.")
+    @Test
+    void canRelaySecurityConfigLeftInOutboxByPreviousRun() throws Exception {
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, true);
+        securityConfigPublisher.publishSecurityConfig(versionedSecurityConfig(SecurityState.DISARMED, 7));
+        verifySent(1);
+        securityConfigPublisher.shutdown();
+
+        securityConfigOutbox = openSecurityConfigOutbox();
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, true);
+
+        verifySent(2);
+        assertThat(sentSecurityConfigs.get(1).getSecurityState()).isEqualTo(SecurityState.DISARMED);
+        confirm(1, true);
+        assertThat(securityConfigOutbox.getBacklog()).isZero();
+    }
+
+    @DisplayName("Given a security config has been published " +
+            "when the same security config or an older version of it is published " +
+            "then it is suppressed and only the next change is sent, with the next sequence.")
+    @Test
+    void canSuppressUnchangedAndStaleSecurityConfigs() throws Exception {
+        securityConfigPublisher = createSecurityConfigPublisher(8, 10, true);
+        securityConfigPublisher.publishSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 2));
+        verifySent(1);
+
+        securityConfigPublisher.publishSecurityConfig(new VersionedSecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED, 3));
+        securityConfigPublisher.publishSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED, 1));
+        securityConfigPublisher.publishSecurityConfig(new VersionedSecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED, 4));
+
+        verifySent(2);
+        assertThat(sentSecurityConfigs.get(1).getSecurityStatus()).isEqualTo(SecurityStatus.SAFE);
+        assertThat(sentSecurityConfigs.get(1).getSequence()).isEqualTo(sentSecurityConfigs.get(0).getSequence() + 1);
+        assertThat(securityConfigPublisher.getStatistics().getSuppressed()).isEqualTo(2);
+    }
+
+    private SecurityConfigOutbox openSecurityConfigOutbox() {
+        SecurityConfigOutbox openedSecurityConfigOutbox = new SecurityConfigOutbox(new File(outboxDirectory, "security_config_outbox.log").getPath(), 4096);
+        openedSecurityConfigOutbox.open();
+        return openedSecurityConfigOutbox;
+    }
+
+    private SecurityConfigPublisher createSecurityConfigPublisher(int maxUnconfirmed, long retryDelayMillis, boolean coalesce) {
+        SecurityConfigPublisher createdSecurityConfigPublisher = new SecurityConfigPublisher(rabbitTemplate,
+                FANOUT_EXCHANGE,
+                BindingBuilder.bind(new Queue("updated.security-config")).to(FANOUT_EXCHANGE),
+                securityConfigOutbox,
+                securityConfigEventCodec,
+                maxUnconfirmed,
+                retryDelayMillis,
+                3600000,
+                coalesce,
+                new SimpleMeterRegistry());
+        createdSecurityConfigPublisher.start();
+        verify(rabbitTemplate, atLeastOnce()).setConfirmCallback(confirmCallbackCaptor.capture());
+        return createdSecurityConfigPublisher;
+    }
+
+    private Object recordSend(InvocationOnMock invocation) {
+        assertThat(invocation.<String>getArgument(0)).isEqualTo("fanout_exchange");
+        sentSecurityConfigs.add(securityConfigEventCodec.decode(invocation.getArgument(2)));
+        sentCorrelationData.add(invocation.getArgument(3));
+        return null;
+    }
+
+    private void verifySent(int times) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sentSecurityConfigs.size() < times && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(sentSecurityConfigs).hasSize(times);
+    }
+
+    private void confirm(int sendIndex, boolean ack) {
+        confirmCallbackCaptor.getValue().confirm(sentCorrelationData.get(sendIndex), ack, ack ? null : "I am a nack.");
+    }
+
+    private static VersionedSecurityConfig versionedSecurityConfig(SecurityState securityState, long version) {
+        return new VersionedSecurityConfig(SecurityStatus.SAFE, securityState, version);
+    }
+}
@@ -0,0 +1,129 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.AnnotatedImage;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+
+import java.io.File;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = AnnotatedImageService.class)
+@TestPropertySource("classpath:application-test.properties")
+class AnnotatedImageServiceUnitTest {
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
+    @Value("${resources.base.location}")
+    private String resourcesBaseLocation;
+
+    @DisplayName("Given an annotated image has been encoded to base64 " +
+            "when getBase64AnnotatedImage called again " +
+            "then the cached encoding is returned without encoding the annotated image again.")
+    @Test
+    void canServeBase64AnnotatedImageFromCache() {
+        byte[] annotatedImageBytes = publishAnnotatedImage("first annotation");
+        String base64AnnotatedImage = annotatedImageService.getBase64AnnotatedImage(null);
+
+        assertThat(annotatedImageService.getBase64AnnotatedImage(null)).isSameAs(base64AnnotatedImage);
+        assertThat(base64AnnotatedImage).isEqualTo(Base64.getEncoder().encodeToString(annotatedImageBytes));
+    }
+
+    @DisplayName("Given an annotated image has been encoded to base64 " +
+            "when a new annotated image is published " +
+            "then the new annotated image is encoded and its entity tag changes.")
+    @Test
+    void canInvalidateCacheWhenAnnotatedImagePublished() throws Exception {
+        publishAnnotatedImage("first annotation");
+        annotatedImageService.getBase64AnnotatedImage(null);
+        String firstAnnotatedImageETag = annotatedImageService.getAnnotatedImage(null).getEtag();
+
+        byte[] secondAnnotatedImageBytes = publishAnnotatedImage("second annotation");
+
+        assertThat(annotatedImageService.getBase64AnnotatedImage(null)).isEqualTo(Base64.getEncoder().encodeToString(secondAnnotatedImageBytes));
+        assertThat(annotatedImageService.getAnnotatedImage(null).getEtag()).isNotEqualTo(firstAnnotatedImageETag);
+    }
+
+    @DisplayName("Given annotated images have been published by two cameras " +
+            "when the annotated images are asked for with and without a camera " +
+            "then every camera has its own annotated image and entity tag and the latest camera is served without a camera.")
+    @Test
+    void canKeepAnnotatedImagePerCamera() throws Exception {
+        byte[] frontDoorAnnotatedImageBytes = publishAnnotatedImage("front-door", "front door annotation");
+        String frontDoorAnnotatedImageETag = annotatedImageService.getAnnotatedImage("front-door").getEtag();
+        byte[] garageAnnotatedImageBytes = publishAnnotatedImage("garage", "garage annotation");
+
+        assertThat(annotatedImageService.getBase64AnnotatedImage("front-door")).isEqualTo(Base64.getEncoder().encodeToString(frontDoorAnnotatedImageBytes));
+        assertThat(annotatedImageService.getBase64AnnotatedImage("garage")).isEqualTo(Base64.getEncoder().encodeToString(garageAnnotatedImageBytes));
+        assertThat(annotatedImageService.getBase64AnnotatedImage(null)).isEqualTo(Base64.getEncoder().encodeToString(garageAnnotatedImageBytes));
+        assertThat(annotatedImageService.getLatestCameraId()).isEqualTo("garage");
+        assertThat(annotatedImageService.getAnnotatedImage("front-door").getEtag()).isEqualTo(frontDoorAnnotatedImageETag);
+        assertThat(annotatedImageService.getAnnotatedImage("garage").getEtag()).isNotEqualTo(frontDoorAnnotatedImageETag);
+
+        publishAnnotatedImage("default annotation");
+    }
+
+    @DisplayName("Given an annotated image has been taken as a snapshot " +
+            "when a new annotated image of its camera is published " +
+            "then the snapshot keeps its bytes, entity tag and last modified time while the new snapshot has the new ones.")
+    @Test
+    void canServeAnnotatedImageAsConsistentSnapshot() {
+        byte[] firstAnnotatedImageBytes = publishAnnotatedImage("porch", "first porch annotation");
+        AnnotatedImage firstAnnotatedImage = annotatedImageService.getAnnotatedImage("porch");
+
+        byte[] secondAnnotatedImageBytes = publishAnnotatedImage("porch", "second porch annotation");
+        AnnotatedImage secondAnnotatedImage = annotatedImageService.getAnnotatedImage("porch");
+
+        assertThat(firstAnnotatedImage.getImage()).isEqualTo(firstAnnotatedImageBytes);
+        assertThat(secondAnnotatedImage.getImage()).isEqualTo(secondAnnotatedImageBytes);
+        assertThat(secondAnnotatedImage.getSequence()).isGreaterThan(firstAnnotatedImage.getSequence());
+        assertThat(secondAnnotatedImage.getEtag()).isNotEqualTo(firstAnnotatedImage.getEtag());
+        assertThat(secondAnnotatedImage.getTimestamp()).isGreaterThanOrEqualTo(firstAnnotatedImage.getTimestamp());
+        assertThat(annotatedImageService.getAnnotatedImage(null)).isSameAs(secondAnnotatedImage);
+
+        publishAnnotatedImage("default annotation");
+    }
+
+    @DisplayName("Given annotated images published by two cameras " +
+            "when the annotated images are asked for " +
+            "then they are served from memory without an annotated image file being written.")
+    @Test
+    void canPublishAnnotatedImageWithoutWritingFiles() throws Exception {
+        byte[] annotatedImageBytes = publishAnnotatedImage("default annotation");
+        publishAnnotatedImage("porch", "porch annotation");
+
+        assertThat(annotatedImageService.getAnnotatedImageResource(SecurityCheck.DEFAULT_CAMERA_ID).getInputStream()).hasBinaryContent(annotatedImageBytes);
+        assertThat(new File(resourcesBaseLocation, "test_new_capture_annotated.jpeg")).doesNotExist();
+        assertThat(new File(resourcesBaseLocation, "cameras")).doesNotExist();
+    }
+
+    @DisplayName("Given a camera that has not published an annotated image " +
+            "when its annotated image is asked for " +
+            "then an ImageFileException with status not found is thrown.")
+    @Test
+    void canThrowImageFileExceptionIfNoAnnotatedImagePublished() {
+        assertThatThrownBy(() -> annotatedImageService.getBase64AnnotatedImage("shed"))
+                .isInstanceOf(ImageFileException.class)
+                .hasMessage("No annotated image of camera shed has been published since the service started.")
+                .extracting("httpStatus").isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private byte[] publishAnnotatedImage(String content) {
+        return publishAnnotatedImage(SecurityCheck.DEFAULT_CAMERA_ID, content);
+    }
+
+    private byte[] publishAnnotatedImage(String cameraId, String content) {
+        byte[] annotatedImageBytes = content.getBytes();
+        annotatedImageService.publishAnnotatedImage(cameraId, annotatedImageBytes);
+        return annotatedImageBytes;
+    }
+}
@@ -0,0 +1,86 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CameraLanesUnitTest {
+
+    @DisplayName("Given one camera has queued many frames before another camera queued a few " +
+            "when the lanes are drained " +
+            "then the cameras take turns instead of the frames being served in arrival order.")
+    @Test
+    void canDrainCameraLanesInRoundRobin() {
+        CameraLanes<String> cameraLanes = new CameraLanes<>(Collections.emptyMap());
+        cameraLanes.addLast("front-door", "front-door-1");
+        cameraLanes.addLast("front-door", "front-door-2");
+        cameraLanes.addLast("front-door", "front-door-3");
+        cameraLanes.addLast("garage", "garage-1");
+        cameraLanes.addLast("garage", "garage-2");
+
+        assertThat(drain(cameraLanes)).containsExactly("front-door-1", "garage-1", "front-door-2", "garage-2", "front-door-3");
+        assertThat(cameraLanes.isEmpty()).isTrue();
+    }
+
+    @DisplayName("Given a camera with a weight of 2 " +
+            "when the lanes are drained " +
+            "then it is served twice for every turn of a camera without a weight.")
+    @Test
+    void canDrainCameraLanesByWeight() {
+        CameraLanes<String> cameraLanes = new CameraLanes<>(Collections.singletonMap("front-door", 2));
+        for (int frame = 1; frame <= 4; frame++) {
+            cameraLanes.addLast("front-door", "front-door-" + frame);
+            cameraLanes.addLast("garage", "garage-" + frame);
+        }
+
+        assertThat(drain(cameraLanes)).containsExactly(
+                "front-door-1", "front-door-2", "garage-1", "front-door-3", "front-door-4", "garage-2", "garage-3", "garage-4");
+    }
+
+    @DisplayName("Given cameras with different numbers of queued frames " +
+            "when pollOldestOfLongestLane is called " +
+            "then the oldest frame of the camera with the most frames is removed.")
+    @Test
+    void canPollOldestOfLongestLane() {
+        CameraLanes<String> cameraLanes = new CameraLanes<>(Collections.emptyMap());
+        cameraLanes.addLast("garage", "garage-1");
+        cameraLanes.addLast("front-door", "front-door-1");
+        cameraLanes.addLast("front-door", "front-door-2");
+
+        assertThat(cameraLanes.pollOldestOfLongestLane()).isEqualTo("front-door-1");
+        assertThat(cameraLanes.pollOldestOfLongestLane()).isEqualTo("garage-1");
+        assertThat(cameraLanes.size("front-door")).isEqualTo(1);
+        assertThat(cameraLanes.size("garage")).isZero();
+        assertThat(cameraLanes.size()).isEqualTo(1);
+    }
+
+    @DisplayName("Given frames of several cameras are queued " +
+            "when a frame is removed by a filter " +
+            "then the remaining frames are still drained.")
+    @Test
+    void canRemoveFirstMatching() {
+        CameraLanes<String> cameraLanes = new CameraLanes<>(Collections.emptyMap());
+        cameraLanes.addLast("front-door", "front-door-1");
+        cameraLanes.addLast("garage", "garage-1");
+        cameraLanes.addLast("front-door", "front-door-2");
+
+        assertThat(cameraLanes.removeFirstMatching("garage-1"::equals)).isEqualTo("garage-1");
+        assertThat(cameraLanes.removeFirstMatching("garage-2"::equals)).isNull();
+        assertThat(drain(cameraLanes)).isEqualTo(Arrays.asList("front-door-1", "front-door-2"));
+    }
+
+    private static List<String> drain(CameraLanes<String> cameraLanes) {
+        List<String> drained = new ArrayList<>();
+        String element;
+        while ((element = cameraLanes.pollNext()) != null) {
+            drained.add(element);
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,115 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.InvalidCameraIdException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DetectionRegionsUnitTest {
+    @TempDir
+    File temporaryDirectory;
+
+    @DisplayName("Given a regions file with the regions of a camera " +
+            "when the regions of the camera are looked up " +
+            "then they are returned with the configured thresholds filling in the thresholds they do not set.")
+    @Test
+    void canReadRegionsOfCamera() throws Exception {
+        DetectionRegions detectionRegions = createDetectionRegions("{\"front-door\": [" +
+                "{\"name\": \"doorway\", \"x\": 0.25, \"y\": 0.1, \"width\": 0.5, \"height\": 0.9, \"confidence\": 0.7}," +
+                "{\"x\": 0.7, \"y\": 0.5, \"width\": 0.3, \"height\": 0.5, \"nonMaximaSuppression\": 0.45}]}");
+
+        List<DetectionRegion> frontDoorRegions = detectionRegions.of("front-door");
+
+        assertThat(frontDoorRegions).hasSize(2);
+        assertThat(frontDoorRegions.get(0).getName()).isEqualTo("doorway");
+        assertThat(frontDoorRegions.get(0).getWidth()).isEqualTo(0.5);
+        assertThat(frontDoorRegions.get(0).getConfidence()).isEqualTo(0.7f);
+        assertThat(frontDoorRegions.get(0).getNonMaximaSuppression()).isEqualTo(0.3f);
+        assertThat(frontDoorRegions.get(1).getName()).isEqualTo("region-2");
+        assertThat(frontDoorRegions.get(1).getConfidence()).isEqualTo(0.5f);
+        assertThat(frontDoorRegions.get(1).getNonMaximaSuppression()).isEqualTo(0.45f);
+    }
+
+    @DisplayName("Given no regions file " +
+            "when the regions of a camera are looked up " +
+            "then the full frame is returned with the configured thresholds.")
+    @Test
+    void canFallBackToFullFrameWithoutRegionsFile() {
+        DetectionRegions detectionRegions = new DetectionRegions(new File(temporaryDirectory, "missing.json").getPath(), 0.5f, 0.3f);
+
+        List<DetectionRegion> regions = detectionRegions.of("garage");
+
+        assertThat(regions).hasSize(1);
+        assertThat(regions.get(0).getX()).isZero();
+        assertThat(regions.get(0).getY()).isZero();
+        assertThat(regions.get(0).getWidth()).isEqualTo(1);
+        assertThat(regions.get(0).getHeight()).isEqualTo(1);
+        assertThat(regions.get(0).getConfidence()).isEqualTo(0.5f);
+    }
+
+    @DisplayName("Given a regions file without regions for a camera " +
+            "when the regions of the camera are looked up " +
+            "then the full frame is returned.")
+    @Test
+    void canFallBackToFullFrameForCameraWithoutRegions() throws Exception {
+        DetectionRegions detectionRegions = createDetectionRegions("{\"front-door\": [{\"x\": 0, \"y\": 0, \"width\": 0.7, \"height\": 0.3}], \"garage\": []}");
+
+        assertThat(detectionRegions.of("garage")).extracting(DetectionRegion::getName).containsExactly("full-frame");
+        assertThat(detectionRegions.of("back-door")).extracting(DetectionRegion::getName).containsExactly("full-frame");
+    }
+
+    @DisplayName("Given a region that reaches past the edge of the frame " +
+            "when the regions file is read " +
+            "then an IllegalArgumentException is thrown.")
+    @Test
+    void canRejectRegionOutsideFrame() throws Exception {
+        File regionsFile = writeRegionsFile("{\"front-door\": [{\"name\": \"doorway\", \"x\": 0.6, \"y\": 0, \"width\": 0.5, \"height\": 1}]}");
+
+        assertThatThrownBy(() -> new DetectionRegions(regionsFile.getPath(), 0.5f, 0.3f))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The detection region doorway of camera front-door does not lie within the frame, its x, y, width and height must be fractions of the frame.");
+    }
+
+    @DisplayName("Given a region with a confidence threshold above 1 " +
+            "when the regions file is read " +
+            "then an IllegalArgumentException is thrown.")
+    @Test
+    void canRejectRegionWithInvalidThreshold() throws Exception {
+        File regionsFile = writeRegionsFile("{\"front-door\": [{\"x\": 0, \"y\": 0, \"width\": 1, \"height\": 1, \"confidence\": 50}]}");
+
+        assertThatThrownBy(() -> new DetectionRegions(regionsFile.getPath(), 0.5f, 0.3f))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("The confidence threshold 50.0 is not between 0 and 1.");
+    }
+
+    @DisplayName("Given regions of a camera whose id is not valid " +
+            "when the regions file is read " +
+            "then an InvalidCameraIdException is thrown.")
+    @Test
+    void canRejectRegionsOfInvalidCameraId() throws Exception {
+        File regionsFile = writeRegionsFile("{\"../front-door\": [{\"x\": 0, \"y\": 0, \"width\": 1, \"height\": 1}]}");
+
+        assertThatThrownBy(() -> new DetectionRegions(regionsFile.getPath(), 0.5f, 0.3f))
+                .isInstanceOf(InvalidCameraIdException.class);
+    }
+
+    private DetectionRegions createDetectionRegions(String regions) throws IOException {
+        return new DetectionRegions(writeRegionsFile(regions).getPath(), 0.5f, 0.3f);
+    }
+
+    private File writeRegionsFile(String regions) throws IOException {
+        File regionsFile = new File(temporaryDirectory, "detection_regions.json");
+        FileUtils.writeStringToFile(regionsFile, regions, StandardCharsets.UTF_8.name());
+        return regionsFile;
+    }
+}
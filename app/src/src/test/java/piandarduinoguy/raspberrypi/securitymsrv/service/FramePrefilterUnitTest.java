@@ -0,0 +1,167 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FramePrefilterUnitTest {
+    private static final String CAMERA_ID = "front-door";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DetectionResult personDetectionResult = new DetectionResult("yolov3", 1.0, Collections.singletonList(new BoundingBox(10, 20, 30, 60, 0.9f)));
+
+    @DisplayName("Given a frame has been detected " +
+            "when the camera sends the same frame again " +
+            "then its detection is skipped and the detection result reused.")
+    @Test
+    void canSkipDuplicateFrame() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        byte[] frame = createFrame(1, false);
+        recordDetection(framePrefilter, frame);
+
+        DetectionResult reusedDetectionResult = framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult();
+
+        assertThat(reusedDetectionResult.getBoundingBoxes()).usingRecursiveFieldByFieldElementComparator().isEqualTo(personDetectionResult.getBoundingBoxes());
+        assertThat(meterRegistry.counter("security.prefilter.frames", "outcome", "duplicate").count()).isEqualTo(1);
+    }
+
+    @DisplayName("Given a frame has been detected " +
+            "when the detection result and a reused detection result are changed by their holders " +
+            "then the detection result reused for the next frame is unchanged.")
+    @Test
+    void canReuseDetectionResultUnchangedByItsHolders() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        byte[] frame = createFrame(1, false);
+        DetectionResult detectionResult = new DetectionResult("yolov3", 1.0, new ArrayList<>(Collections.singletonList(new BoundingBox(10, 20, 30, 60, 0.9f))));
+        framePrefilter.recordDetection(CAMERA_ID, framePrefilter.fingerprint(CAMERA_ID, frame), detectionResult);
+
+        detectionResult.getBoundingBoxes().clear();
+        DetectionResult firstReusedDetectionResult = framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult();
+        firstReusedDetectionResult.getBoundingBoxes().get(0).setConfidence(0.1f);
+        firstReusedDetectionResult.setModelId("changed");
+        DetectionResult secondReusedDetectionResult = framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult();
+
+        assertThat(secondReusedDetectionResult.getModelId()).isEqualTo("yolov3");
+        assertThat(secondReusedDetectionResult.getBoundingBoxes()).hasSize(1);
+        assertThat(secondReusedDetectionResult.getBoundingBoxes().get(0).getConfidence()).isEqualTo(0.9f);
+    }
+
+    @DisplayName("Given a frame has been detected " +
+            "when the camera sends a frame of the same scene with different noise " +
+            "then its detection is skipped and the detection result reused.")
+    @Test
+    void canSkipUnchangedFrame() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        recordDetection(framePrefilter, createFrame(1, false));
+
+        DetectionResult reusedDetectionResult = framePrefilter.fingerprint(CAMERA_ID, createFrame(2, false)).getReusableDetectionResult();
+
+        assertThat(reusedDetectionResult).isNotNull();
+        assertThat(meterRegistry.counter("security.prefilter.frames", "outcome", "unchanged").count()).isEqualTo(1);
+        assertThat(framePrefilter.getSkipRatio()).isEqualTo(0.5);
+    }
+
+    @DisplayName("Given a frame has been detected " +
+            "when the camera sends a frame in which something appeared " +
+            "then it is to be detected.")
+    @Test
+    void canPassChangedFrame() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        recordDetection(framePrefilter, createFrame(1, false));
+
+        assertThat(framePrefilter.fingerprint(CAMERA_ID, createFrame(1, true)).getReusableDetectionResult()).isNull();
+        assertThat(meterRegistry.counter("security.prefilter.frames", "outcome", "changed").count()).isEqualTo(1);
+    }
+
+    @DisplayName("Given a frame has been detected longer ago than the detection result may be reused " +
+            "when the camera sends the same frame again " +
+            "then it is to be detected.")
+    @Test
+    void canPassFrameWhenDetectionResultExpired() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, -1);
+        byte[] frame = createFrame(1, false);
+        recordDetection(framePrefilter, frame);
+
+        assertThat(framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult()).isNull();
+        assertThat(meterRegistry.counter("security.prefilter.frames", "outcome", "expired").count()).isEqualTo(1);
+    }
+
+    @DisplayName("Given a frame of another camera has been detected " +
+            "when the same frame is sent by this camera " +
+            "then it is to be detected.")
+    @Test
+    void canKeepReferenceFramePerCamera() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        byte[] frame = createFrame(1, false);
+        recordDetection(framePrefilter, frame);
+
+        assertThat(framePrefilter.fingerprint("garage", frame).getReusableDetectionResult()).isNull();
+    }
+
+    @DisplayName("Given bytes that are not an image the JDK can decode " +
+            "when they are sent twice with a different ending " +
+            "then they are to be detected every time.")
+    @Test
+    void canPassUndecodableFrame() {
+        FramePrefilter framePrefilter = createFramePrefilter(true, 60000);
+        byte[] frame = new byte[1024];
+        new Random(42).nextBytes(frame);
+        recordDetection(framePrefilter, frame);
+        frame[frame.length - 1]++;
+
+        assertThat(framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult()).isNull();
+        assertThat(meterRegistry.counter("security.prefilter.frames", "outcome", "undecodable").count()).isEqualTo(2);
+    }
+
+    @DisplayName("Given the prefilter is disabled " +
+            "when the camera sends the same frame again " +
+            "then it is to be detected.")
+    @Test
+    void canPassEveryFrameWhenDisabled() throws Exception {
+        FramePrefilter framePrefilter = createFramePrefilter(false, 60000);
+        byte[] frame = createFrame(1, false);
+        recordDetection(framePrefilter, frame);
+
+        assertThat(framePrefilter.fingerprint(CAMERA_ID, frame).getReusableDetectionResult()).isNull();
+    }
+
+    private FramePrefilter createFramePrefilter(boolean enabled, long maxReuseMillis) {
+        return new FramePrefilter(enabled, 6, 24, 0.01, 32, maxReuseMillis, meterRegistry);
+    }
+
+    private void recordDetection(FramePrefilter framePrefilter, byte[] frame) {
+        framePrefilter.recordDetection(CAMERA_ID, framePrefilter.fingerprint(CAMERA_ID, frame), personDetectionResult);
+    }
+
+    /**
+     * A JPEG of a gradient with noise from the seed, and if asked for a dark figure standing in the middle of it.
+     */
+    private static byte[] createFrame(long noiseSeed, boolean withFigure) throws IOException {
+        Random noise = new Random(noiseSeed);
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                boolean figure = withFigure && x >= 130 && x < 190 && y >= 40 && y < 200;
+                int level = figure ? 10 : Math.min(255, Math.max(0, 60 + x / 2 + noise.nextInt(9) - 4));
+                image.setRGB(x, y, level << 16 | level << 8 | level);
+            }
+        }
+        ByteArrayOutputStream jpegOutputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", jpegOutputStream);
+        return jpegOutputStream.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import nu.pattern.OpenCV;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorRequestException;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against a darknet network of a single convolution written to a temporary directory, as the yolo files are not
+ * part of the repository, and is skipped where the OpenCV native library can not be loaded.
+ */
+class OpenCvPersonDetectorUnitTest {
+    @TempDir
+    File yoloFilesDirectory;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        boolean openCvLoaded;
+        try {
+            OpenCV.loadLocally();
+            openCvLoaded = true;
+        } catch (RuntimeException | LinkageError loadError) {
+            openCvLoaded = false;
+        }
+        assumeTrue(openCvLoaded, "The OpenCV native library is not available.");
+    }
+
+    @DisplayName("Given an image that is not a JPEG " +
+            "when the in-process person detector detects a person on it " +
+            "then a PersonDetectorRequestException with status bad request is thrown.")
+    @Test
+    void canThrowPersonDetectorRequestExceptionIfImageCanNotBeDecoded() throws Exception {
+        OpenCvPersonDetector openCvPersonDetector = loadOpenCvPersonDetector();
+        DetectionContext detectionContext = new DetectionContext(Collections.emptyList());
+
+        assertThatThrownBy(() -> openCvPersonDetector.detectPerson("undecodable".getBytes(StandardCharsets.US_ASCII), detectionContext))
+                .isInstanceOf(PersonDetectorRequestException.class)
+                .hasMessage(String.format("The image of security check %s could not be decoded.", detectionContext.getId()))
+                .extracting("httpStatus").isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    private OpenCvPersonDetector loadOpenCvPersonDetector() throws Exception {
+        Files.write(new File(yoloFilesDirectory, "yolov3.cfg").toPath(), String.join("\n",
+                "[net]", "width=32", "height=32", "channels=3", "",
+                "[convolutional]", "filters=1", "size=1", "stride=1", "pad=0", "activation=linear", "").getBytes(StandardCharsets.US_ASCII));
+        // the darknet header of major, minor and revision version and images seen, then the bias and the 3 weights
+        ByteBuffer weights = ByteBuffer.allocate(3 * 4 + 8 + 4 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        weights.putInt(0).putInt(2).putInt(0).putLong(0);
+        weights.putFloat(0).putFloat(1).putFloat(1).putFloat(1);
+        Files.write(new File(yoloFilesDirectory, "yolov3.weights").toPath(), weights.array());
+        Files.write(new File(yoloFilesDirectory, "coco.names").toPath(), "person\n".getBytes(StandardCharsets.US_ASCII));
+        return OpenCvPersonDetector.load(yoloFilesDirectory.getPath(), 0.5f, 0.3f, 32, 32, 0.5f, "none", 1);
+    }
+}
@@ -0,0 +1,75 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
+import piandarduinoguy.raspberrypi.securitymsrv.config.PersonDetectorConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionStage;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = {PersonDetectorService.class, FramePrefilter.class, DetectionRegions.class, PersonDetectorConfig.class, PersonDetectorWorkerPool.class, AnnotatedImageService.class, EvidenceStore.class, SecurityConfigStore.class, TestUtils.class, JacksonAutoConfiguration.class, SimpleMeterRegistry.class})
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"yolo.person-detector.base.location=src/test/resources/fake-yolo/", "yolo.person-detector.cascade.screen-model=yolov3-tiny"})
+@DirtiesContext
+class PersonDetectorServiceCascadeIntegrationTest {
+    @Autowired
+    private PersonDetectorService personDetectorService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TestUtils testUtils;
+
+    @AfterEach
+    void deleteAnnotatedImage() {
+        testUtils.discardAnnotatedImages();
+    }
+
+    @DisplayName("Given a screen model screens every frame " +
+            "when the screen model sees a person in a frame " +
+            "then the frame is escalated to the full model and the latency of both stages is recorded.")
+    @Test
+    void canEscalateFrameToFullModel() {
+        long escalatedDetections = personDetectorService.getEscalatedDetectionCount();
+
+        DetectionResult detectionResult = personDetectorService.detect(SecurityCheck.DEFAULT_CAMERA_ID, "person-frame".getBytes());
+
+        assertThat(detectionResult.isPersonDetected()).isTrue();
+        assertThat(detectionResult.getStages()).extracting(DetectionStage::getStage).containsExactly(DetectionStage.SCREEN, DetectionStage.CONFIRM);
+        assertThat(personDetectorService.getEscalatedDetectionCount()).isEqualTo(escalatedDetections + 1);
+        assertThat(meterRegistry.timer("security.detector.stage", "stage", "screen", "model", "yolov3-tiny").count()).isPositive();
+        assertThat(meterRegistry.timer("security.detector.stage", "stage", "confirm", "model", "fake-yolo").count()).isPositive();
+    }
+
+    @DisplayName("Given a screen model screens every frame " +
+            "when the screen model sees no person in a frame " +
+            "then the frame is screened out without reaching the full model and counts against the escalation ratio.")
+    @Test
+    void canScreenOutFrame() {
+        long escalatedDetections = personDetectorService.getEscalatedDetectionCount();
+        long screenedOutDetections = personDetectorService.getScreenedOutDetectionCount();
+
+        DetectionResult screenedOutDetectionResult = personDetectorService.detect(SecurityCheck.DEFAULT_CAMERA_ID, "no_person-frame".getBytes());
+        personDetectorService.detect(SecurityCheck.DEFAULT_CAMERA_ID, "person-frame".getBytes());
+
+        assertThat(screenedOutDetectionResult.isPersonDetected()).isFalse();
+        assertThat(screenedOutDetectionResult.getStages()).extracting(DetectionStage::getStage).containsExactly(DetectionStage.SCREEN);
+        assertThat(personDetectorService.getScreenedOutDetectionCount()).isEqualTo(screenedOutDetections + 1);
+        assertThat(personDetectorService.getEscalationRatio())
+                .isEqualTo((escalatedDetections + 1.0) / (escalatedDetections + screenedOutDetections + 2.0));
+        assertThat(meterRegistry.get("security.detector.cascade.escalation.ratio").gauge().value()).isEqualTo(personDetectorService.getEscalationRatio());
+    }
+}
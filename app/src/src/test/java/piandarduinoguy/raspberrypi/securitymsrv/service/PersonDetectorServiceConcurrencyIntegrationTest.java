@@ -0,0 +1,100 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
+import piandarduinoguy.raspberrypi.securitymsrv.config.PersonDetectorConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.evidence.EvidenceStore;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorOverloadedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = {PersonDetectorService.class, FramePrefilter.class, DetectionRegions.class, PersonDetectorConfig.class, PersonDetectorWorkerPool.class, AnnotatedImageService.class, EvidenceStore.class, SecurityConfigStore.class, TestUtils.class, JacksonAutoConfiguration.class, SimpleMeterRegistry.class})
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"yolo.person-detector.base.location=src/test/resources/fake-yolo/", "yolo.person-detector.pool.size=3", "yolo.person-detector.max-in-flight=8"})
+class PersonDetectorServiceConcurrencyIntegrationTest {
+    @Autowired
+    private PersonDetectorService personDetectorService;
+
+    @Autowired
+    private TestUtils testUtils;
+
+    @Autowired
+    private AnnotatedImageService annotatedImageService;
+
+    @AfterEach
+    void deleteAnnotatedImage() {
+        testUtils.discardAnnotatedImages();
+    }
+
+    @DisplayName("Given frames with and without a person posted concurrently " +
+            "when detectPerson called for each of them " +
+            "then every frame gets its own result and the latest annotated image is one complete person frame.")
+    @Test
+    void canDetectPersonsInConcurrentFramesWithoutMixingThemUp() throws Exception {
+        long shedDetections = personDetectorService.getShedDetectionCount();
+        ExecutorService cameraExecutor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> personDetectedResults = new ArrayList<>();
+        List<byte[]> personFrames = new ArrayList<>();
+        for (int frameNumber = 0; frameNumber < 40; frameNumber++) {
+            byte[] frame = (frameNumber % 2 == 0 ? "person-frame-" : "no_person-frame-").concat(String.valueOf(frameNumber)).getBytes();
+            if (frameNumber % 2 == 0) {
+                personFrames.add(frame);
+            }
+            Callable<Boolean> detection = () -> personDetectorService.detectPerson(frame);
+            personDetectedResults.add(cameraExecutor.submit(detection));
+        }
+
+        for (int frameNumber = 0; frameNumber < personDetectedResults.size(); frameNumber++) {
+            assertThat(personDetectedResults.get(frameNumber).get()).isEqualTo(frameNumber % 2 == 0);
+        }
+        cameraExecutor.shutdown();
+
+        assertThat(personDetectorService.getShedDetectionCount()).isEqualTo(shedDetections);
+        byte[] latestAnnotatedImage = IOUtils.toByteArray(annotatedImageService.getAnnotatedImageResource(null).getInputStream());
+        assertThat(personFrames).anySatisfy(personFrame -> assertThat(personFrame).isEqualTo(latestAnnotatedImage));
+    }
+
+    @DisplayName("Given the maximum number of detections are in flight " +
+            "when another detection is requested " +
+            "then it is shed straight away instead of waiting for a worker.")
+    @Test
+    void canShedDetectionWhenTooManyAreInFlight() throws Exception {
+        long shedDetections = personDetectorService.getShedDetectionCount();
+        ExecutorService cameraExecutor = Executors.newFixedThreadPool(8);
+        for (int frameNumber = 0; frameNumber < 8; frameNumber++) {
+            byte[] frame = "hang-frame-".concat(String.valueOf(frameNumber)).getBytes();
+            cameraExecutor.submit(() -> personDetectorService.detectPerson(frame));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (personDetectorService.getInFlightDetectionCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThatThrownBy(() -> personDetectorService.detectPerson("person-frame".getBytes()))
+                .isInstanceOf(PersonDetectorOverloadedException.class)
+                .hasMessage("8 detections are already in flight, try again later.");
+        assertThat(personDetectorService.getShedDetectionCount()).isEqualTo(shedDetections + 1);
+
+        // interrupting the hung detections cancels them and terminates their workers
+        cameraExecutor.shutdownNow();
+        assertThat(cameraExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(personDetectorService.getInFlightDetectionCount()).isZero();
+    }
+}
@@ -1,25 +1,23 @@
 package piandarduinoguy.raspberrypi.securitymsrv.service;
 
-import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.mockito.MockedStatic;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 import piandarduinoguy.raspberrypi.securitymsrv.TestUtils;
-import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mockStatic;
 
 @SpringBootTest
 @TestPropertySource("classpath:application-test.properties")
@@ -27,77 +25,69 @@ class PersonDetectorServiceUnitTest {
     @Autowired
     private PersonDetectorService personDetectorService;
 
+    @Autowired
+    private PersonDetectorWorkerPool personDetectorWorkerPool;
+
     @Autowired
     private TestUtils testUtils;
 
-    @DisplayName("Given python process logs contain the 'Person detected.' string " +
-            "when hasPersonBeenDetectFromPythonLogs method called " +
-            "then return true")
+    @DisplayName("Given the worker answers with a detection response frame with a bounding box " +
+            "when detectPerson method called " +
+            "then return true and publish the annotated image that follows the frame")
     @Test
     @DirtiesContext
-    void canReturnTrueIfPythonLogsReportPersonDetected() throws Exception {
-        personDetectorService.runPersonDetectorProcess(testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_person.jpeg")));
+    void canReturnTrueIfWorkerReportsPersonDetected() throws Exception {
+        assertTrue(personDetectorService.detectPerson(testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_person.jpeg"))));
 
-        assertTrue(personDetectorService.hasPersonBeenDetected());
-        testUtils.deleteTestTemporaryImageFile();
-        testUtils.deleteAnnotatedImage();
+        testUtils.assertThatExpectedAnnotatedImagePublished();
+        testUtils.discardAnnotatedImages();
     }
 
     @Test
-    @DisplayName("Given a valid multipart file " +
-            "when saveImage called " +
-            "then image is saved as expected.")
-    void canSaveUploadedImageToBeProcessed() throws Exception {
-        String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
-        byte[] imageBytes = Base64.getDecoder().decode(base64EncodedImage);
-
-        personDetectorService.runPersonDetectorProcess(imageBytes);
-
-        testUtils.assertThatExpectedTempImageFileCreated(base64EncodedImage);
-        testUtils.deleteTestTemporaryImageFile();
+    @DisplayName("Given an image of a person " +
+            "when detectPerson called " +
+            "then the image is handed to the worker in memory and the annotated image is published without a file being written.")
+    void canDetectWithoutWritingImageFiles() throws Exception {
+        byte[] imageBytes = testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_person.jpeg"));
+        testUtils.discardAnnotatedImages();
+        Set<String> resourceFileNamesBefore = testUtils.listResourceFileNames();
+
+        personDetectorService.detectPerson(imageBytes);
+
+        Set<String> writtenFileNames = testUtils.listResourceFileNames();
+        writtenFileNames.removeAll(resourceFileNamesBefore);
+        assertThat(writtenFileNames).isEmpty();
+        testUtils.assertThatExpectedAnnotatedImagePublished();
+        testUtils.discardAnnotatedImages();
     }
 
-    @Test
-    @DisplayName("Given FileUtils.writeByteArrayToFile method throws an IOException " +
-            "when saveImage called " +
-            "then an ImageFileException is thrown.")
-    void canThrowImageFileExceptionWhenSaveImageCalled() throws Exception {
-        String base64EncodedImage = testUtils.createBase64EncodedImageFromImageFile(new File("src/test/resources/test_new_capture_person.jpeg"));
-        byte[] imageBytes = Base64.getDecoder().decode(base64EncodedImage);
-
-        try (MockedStatic<FileUtils> mockFileUtils = mockStatic(FileUtils.class)) {
-            mockFileUtils.when(()->FileUtils.writeByteArrayToFile(any(), any())).thenThrow(new IOException("I am an IOException"));
-            assertThatThrownBy(() -> personDetectorService.runPersonDetectorProcess(imageBytes))
-                    .isInstanceOf(ImageFileException.class)
-                    .hasMessage("The image test_new_capture.jpeg could not be saved to the directory src/test/resources/application/. An IOException was thrown with message \"I am an IOException\".");
-        }
-
-        testUtils.deleteTestTemporaryImageFile();
-    }
-
-    @DisplayName("Given python process logs contain the 'No person detected.' string " +
-            "when hasPersonBeenDetectFromPythonLogs method called " +
-            "then return false")
+    @DisplayName("Given the worker answers with a detection response frame without bounding boxes " +
+            "when detectPerson method called " +
+            "then return false and publish no annotated image")
     @Test
     @DirtiesContext
-    void canReturnFalseIfPythonLogsReportNoPersonDetected() throws Exception {
-        personDetectorService.runPersonDetectorProcess(testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_no_person.jpeg")));
+    void canReturnFalseIfWorkerReportsNoPersonDetected() throws Exception {
+        assertFalse(personDetectorService.detectPerson(testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_no_person.jpeg"))));
 
-        assertFalse(personDetectorService.hasPersonBeenDetected());
-
-        testUtils.deleteTestTemporaryImageFile();
+        testUtils.assertThatNoAnnotatedImagePublished();
     }
 
-    @DisplayName("Given python process start method throws IO Exception" +
-            "when runPythonPersonDetectorProcess method called " +
-            "then throw expected exception")
+    @DisplayName("Given starting the worker process throws an IOException " +
+            "when detectPerson method called " +
+            "then a PersonDetectorException is thrown and no annotated image is published")
     @Test
-    @DirtiesContext
-    void canThrowExceptionWhenProcessStartMethodThrowsException() throws Exception {
-        personDetectorService.runPersonDetectorProcess(testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_no_person.jpeg")));
-
-        assertFalse(personDetectorService.hasPersonBeenDetected());
-
-        testUtils.deleteTestTemporaryImageFile();
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    void canThrowExceptionWhenProcessStartMethodThrowsException() {
+        Object workerProcessBuilder = ReflectionTestUtils.getField(personDetectorWorkerPool, "workerProcessBuilder");
+        ReflectionTestUtils.setField(personDetectorWorkerPool, "workerProcessBuilder", new ProcessBuilder("does-not-exist-python3"));
+        try {
+            assertThatThrownBy(() -> personDetectorService.detectPerson("capture".getBytes(StandardCharsets.UTF_8)))
+                    .isInstanceOf(PersonDetectorException.class)
+                    .hasMessage("IOException occurred trying to start a yolo person detector worker with command [does-not-exist-python3].");
+            assertThat(personDetectorWorkerPool.getWorkerCount()).isZero();
+            testUtils.assertThatNoAnnotatedImagePublished();
+        } finally {
+            ReflectionTestUtils.setField(personDetectorWorkerPool, "workerProcessBuilder", workerProcessBuilder);
+        }
     }
 }
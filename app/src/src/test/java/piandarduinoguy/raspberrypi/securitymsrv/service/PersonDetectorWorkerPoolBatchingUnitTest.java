@@ -0,0 +1,130 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = {PersonDetectorWorkerPool.class, SimpleMeterRegistry.class})
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"yolo.person-detector.base.location=src/test/resources/fake-yolo/",
+                "yolo.person-detector.detection-timeout-ms=1000",
+                "yolo.person-detector.batch.max-size=4",
+                "yolo.person-detector.batch.max-wait-ms=500"})
+@DirtiesContext
+class PersonDetectorWorkerPoolBatchingUnitTest {
+    @Autowired
+    private PersonDetectorWorkerPool personDetectorWorkerPool;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ExecutorService detectionExecutor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void shutdownDetectionExecutor() {
+        detectionExecutor.shutdownNow();
+    }
+
+    @DisplayName("Given detections are submitted within the maximum batch wait " +
+            "when they are run " +
+            "then they are run as one batch and every detection gets its own result.")
+    @Test
+    void canRunDetectionsAsOneBatch() throws Exception {
+        long batches = meterRegistry.summary("security.detector.batch.size").count();
+        Future<DetectionResult> firstDetectionResult = submitDetection(createImage("first.jpeg"));
+        Future<DetectionResult> secondDetectionResult = submitDetection(createImage("second_no_person.jpeg"));
+        Future<DetectionResult> thirdDetectionResult = submitDetection(createImage("third.jpeg"));
+
+        assertThat(firstDetectionResult.get(5, TimeUnit.SECONDS).isPersonDetected()).isTrue();
+        assertThat(secondDetectionResult.get(5, TimeUnit.SECONDS).isPersonDetected()).isFalse();
+        assertThat(thirdDetectionResult.get(5, TimeUnit.SECONDS).isPersonDetected()).isTrue();
+        assertThat(meterRegistry.summary("security.detector.batch.size").count()).isEqualTo(batches + 1);
+        assertThat(meterRegistry.summary("security.detector.batch.size").max()).isEqualTo(3);
+        assertThat(firstDetectionResult.get().getAnnotatedImage()).isEqualTo(createImage("first.jpeg"));
+        assertThat(secondDetectionResult.get().getAnnotatedImage()).isNull();
+        assertThat(thirdDetectionResult.get().getAnnotatedImage()).isEqualTo(createImage("third.jpeg"));
+    }
+
+    @DisplayName("Given a batch with a detection whose image can not be decoded " +
+            "when the batch is run " +
+            "then only that detection fails and the annotated image of the other detection still reaches it.")
+    @Test
+    void canFailSingleDetectionOfBatch() throws Exception {
+        Future<DetectionResult> undecodableImageDetectionResult = submitDetection(createImage("undecodable.jpeg"));
+        Future<DetectionResult> detectionResult = submitDetection(createImage("capture.jpeg"));
+
+        assertThat(detectionResult.get(5, TimeUnit.SECONDS).getAnnotatedImage()).isEqualTo(createImage("capture.jpeg"));
+        assertThatThrownBy(() -> undecodableImageDetectionResult.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(PersonDetectorException.class)
+                .hasMessageContaining("could not be decoded");
+    }
+
+    @DisplayName("Given a worker crashes while running a batch " +
+            "when the batch fails " +
+            "then every detection of the batch fails and the next batch gets a new worker.")
+    @Test
+    void canFailEveryDetectionOfBatchWhenWorkerCrashes() throws Exception {
+        Future<DetectionResult> detectionResult = submitDetection(createImage("capture.jpeg"));
+        Future<DetectionResult> crashingDetectionResult = submitDetection(createImage("crash.jpeg"));
+
+        for (Future<DetectionResult> failedDetectionResult : new Future[]{detectionResult, crashingDetectionResult}) {
+            assertThatThrownBy(() -> failedDetectionResult.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(PersonDetectorException.class)
+                    .hasRootCauseMessage("The yolo person detector worker terminated unexpectedly.");
+        }
+        assertThat(personDetectorWorkerPool.detect(createImage("capture_no_person.jpeg")).isPersonDetected()).isFalse();
+    }
+
+    @DisplayName("Given a detection is queued behind a running batch " +
+            "when the thread waiting for it is interrupted " +
+            "then the detection is withdrawn and fails as cancelled.")
+    @Test
+    void canWithdrawQueuedDetectionWhenThreadInterrupted() throws Exception {
+        submitDetection(createImage("hang.jpeg"));
+        Thread.sleep(700);
+        byte[] image = createImage("capture.jpeg");
+        AtomicReference<Throwable> detectionFailure = new AtomicReference<>();
+        Thread detectionThread = new Thread(() -> {
+            try {
+                personDetectorWorkerPool.detect(image);
+            } catch (PersonDetectorException personDetectorException) {
+                detectionFailure.set(personDetectorException);
+            }
+        });
+        detectionThread.start();
+        Thread.sleep(100);
+
+        detectionThread.interrupt();
+        detectionThread.join(500);
+
+        assertThat(detectionThread.isAlive()).isFalse();
+        assertThat(detectionFailure.get()).hasMessage("The detection was cancelled before its batch ran.");
+    }
+
+    private Future<DetectionResult> submitDetection(byte[] image) {
+        return detectionExecutor.submit(() -> personDetectorWorkerPool.detect(image));
+    }
+
+    private byte[] createImage(String fileName) {
+        return fileName.getBytes();
+    }
+}
@@ -0,0 +1,176 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionRegion;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = {PersonDetectorWorkerPool.class, SimpleMeterRegistry.class})
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"yolo.person-detector.base.location=src/test/resources/fake-yolo/", "yolo.person-detector.detection-timeout-ms=1000"})
+@DirtiesContext
+class PersonDetectorWorkerPoolUnitTest {
+    @Autowired
+    private PersonDetectorWorkerPool personDetectorWorkerPool;
+
+    @DisplayName("Given a worker has been started " +
+            "when detect called more than once " +
+            "then the same worker process serves every detection.")
+    @Test
+    void canReuseWorkerAcrossDetections() throws Exception {
+        byte[] image = createImage("capture.jpeg");
+
+        DetectionResult firstDetectionResult = personDetectorWorkerPool.detect(image);
+        DetectionResult secondDetectionResult = personDetectorWorkerPool.detect(image);
+
+        assertThat(firstDetectionResult.isPersonDetected()).isTrue();
+        assertThat(firstDetectionResult.getBoundingBoxes()).hasSize(1);
+        assertThat(firstDetectionResult.getBoundingBoxes().get(0).getConfidence()).isEqualTo(0.9f);
+        assertThat(secondDetectionResult.getModelId()).isEqualTo(firstDetectionResult.getModelId());
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isEqualTo(1);
+        assertThat(firstDetectionResult.getAnnotatedImage()).isEqualTo(image);
+    }
+
+    @DisplayName("Given an image without a person " +
+            "when detect called " +
+            "then no annotated image is handed back.")
+    @Test
+    void canHandBackNoAnnotatedImageWithoutPerson() throws Exception {
+        DetectionResult detectionResult = personDetectorWorkerPool.detect(createImage("capture_no_person.jpeg"));
+
+        assertThat(detectionResult.isPersonDetected()).isFalse();
+        assertThat(detectionResult.getAnnotatedImage()).isNull();
+    }
+
+    @DisplayName("Given a camera with two regions of interest " +
+            "when detect called with its regions " +
+            "then the regions are sent along to the worker and each region is detected on.")
+    @Test
+    void canSendDetectionRegionsToWorker() throws Exception {
+        DetectionResult detectionResult = personDetectorWorkerPool.detect(createImage("capture.jpeg"), Arrays.asList(
+                new DetectionRegion("door\tway", 0, 0, 0.5, 1, 0.6f, 0.3f),
+                new DetectionRegion("driveway", 0.5, 0.5, 0.5, 0.5, 0.4f, 0.3f)));
+
+        assertThat(detectionResult.getBoundingBoxes()).hasSize(2);
+    }
+
+    @DisplayName("Given a worker crashes during a detection " +
+            "when detect called again " +
+            "then a new worker process is started to serve it.")
+    @Test
+    void canRestartCrashedWorker() throws Exception {
+        byte[] image = createImage("capture_no_person.jpeg");
+        DetectionResult detectionResultBeforeCrash = personDetectorWorkerPool.detect(image);
+
+        assertThatThrownBy(() -> personDetectorWorkerPool.detect(createImage("crash.jpeg")))
+                .isInstanceOf(PersonDetectorException.class)
+                .hasMessage("The yolo person detector worker terminated unexpectedly.");
+        DetectionResult detectionResultAfterCrash = personDetectorWorkerPool.detect(image);
+
+        assertThat(detectionResultAfterCrash.isPersonDetected()).isFalse();
+        assertThat(detectionResultAfterCrash.getModelId()).isNotEqualTo(detectionResultBeforeCrash.getModelId());
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Given a worker stops responding during a detection " +
+            "when the detection timeout passes " +
+            "then the worker is terminated, the detection fails and the next detection gets a new worker.")
+    @Test
+    void canTerminateWorkerThatExceedsDetectionTimeout() throws Exception {
+        long timedOutDetections = personDetectorWorkerPool.getTimedOutDetectionCount();
+        long killedWorkers = personDetectorWorkerPool.getKilledWorkerCount();
+
+        assertThatThrownBy(() -> personDetectorWorkerPool.detect(createImage("hang.jpeg")))
+                .isInstanceOf(PersonDetectorException.class)
+                .hasMessage("The yolo person detector worker did not finish the detection within 1000 ms and was terminated.");
+
+        assertThat(personDetectorWorkerPool.getTimedOutDetectionCount()).isEqualTo(timedOutDetections + 1);
+        assertThat(personDetectorWorkerPool.getKilledWorkerCount()).isEqualTo(killedWorkers + 1);
+        assertThat(personDetectorWorkerPool.detect(createImage("capture_no_person.jpeg")).isPersonDetected()).isFalse();
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Given a detection is running " +
+            "when the thread running it is interrupted " +
+            "then the worker is terminated and the detection fails as cancelled well before the detection timeout.")
+    @Test
+    void canCancelDetectionWhenThreadInterrupted() throws Exception {
+        long cancelledDetections = personDetectorWorkerPool.getCancelledDetectionCount();
+        byte[] image = createImage("hang.jpeg");
+        AtomicReference<Throwable> detectionFailure = new AtomicReference<>();
+        Thread detectionThread = new Thread(() -> {
+            try {
+                personDetectorWorkerPool.detect(image);
+            } catch (PersonDetectorException personDetectorException) {
+                detectionFailure.set(personDetectorException);
+            }
+        });
+        detectionThread.start();
+        Thread.sleep(300);
+
+        detectionThread.interrupt();
+        detectionThread.join(800);
+
+        assertThat(detectionThread.isAlive()).isFalse();
+        assertThat(detectionFailure.get()).hasMessage("The detection was cancelled and its yolo person detector worker was terminated.");
+        assertThat(personDetectorWorkerPool.getCancelledDetectionCount()).isEqualTo(cancelledDetections + 1);
+    }
+
+    @DisplayName("Given an idle worker passes its health check " +
+            "when the health check runs " +
+            "then the worker is kept.")
+    @Test
+    void canKeepHealthyWorkerOnHealthCheck() throws Exception {
+        personDetectorWorkerPool.detect(createImage("capture.jpeg"));
+
+        personDetectorWorkerPool.checkWorkerHealth();
+
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Given an idle worker that no longer answers PING " +
+            "when the health check runs " +
+            "then the watchdog terminates the worker within the detection timeout and the next detection gets a new worker.")
+    @Test
+    void canTerminateWorkerThatDoesNotAnswerHealthCheck() throws Exception {
+        DetectionResult detectionResultBeforeHealthCheck = personDetectorWorkerPool.detect(createImage("deaf.jpeg"));
+        long killedWorkers = personDetectorWorkerPool.getKilledWorkerCount();
+        long healthCheckStartedAt = System.currentTimeMillis();
+
+        personDetectorWorkerPool.checkWorkerHealth();
+
+        assertThat(System.currentTimeMillis() - healthCheckStartedAt).isLessThan(5000);
+        assertThat(personDetectorWorkerPool.getKilledWorkerCount()).isEqualTo(killedWorkers + 1);
+        DetectionResult detectionResultAfterHealthCheck = personDetectorWorkerPool.detect(createImage("capture_no_person.jpeg"));
+        assertThat(detectionResultAfterHealthCheck.getModelId()).isNotEqualTo(detectionResultBeforeHealthCheck.getModelId());
+    }
+
+    @DisplayName("Given an idle worker " +
+            "when the pool is shut down " +
+            "then the worker is destroyed.")
+    @Test
+    @DirtiesContext
+    void canDestroyWorkersOnShutdown() throws Exception {
+        personDetectorWorkerPool.detect(createImage("capture.jpeg"));
+
+        personDetectorWorkerPool.shutdown();
+
+        assertThat(personDetectorWorkerPool.getWorkerCount()).isZero();
+    }
+
+    private byte[] createImage(String fileName) {
+        return fileName.getBytes();
+    }
+}
@@ -0,0 +1,374 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheck;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityCheckStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.InvalidCameraIdException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.PersonDetectorException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityCheckNotFoundException;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityCheckRejectedException;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SecurityCheckServiceUnitTest {
+    private final SecurityService securityService = mock(SecurityService.class);
+
+    private final CountDownLatch detectionReleaseLatch = new CountDownLatch(1);
+
+    private SecurityCheckService securityCheckService;
+
+    private int cameraQueueCapacity = 2;
+
+    private CameraRateLimiter cameraRateLimiter = new CameraRateLimiter(0, 1, 16);
+
+    @AfterEach
+    void shutdownSecurityCheckService() {
+        detectionReleaseLatch.countDown();
+        securityCheckService.shutdown();
+    }
+
+    @DisplayName("Given synchronous mode " +
+            "when a security check is submitted " +
+            "then it is performed before returning.")
+    @Test
+    void canPerformSecurityCheckSynchronously() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(personDetectionResult());
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+
+        SecurityCheck securityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        assertThat(securityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.COMPLETED);
+        assertThat(securityCheck.getPersonDetected()).isTrue();
+        assertThat(securityCheck.getDetectionResult().getBoundingBoxes()).hasSize(1);
+        assertThat(securityCheckService.getSecurityCheck(securityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.COMPLETED);
+    }
+
+    @DisplayName("Given synchronous mode and the detection fails " +
+            "when a security check is submitted " +
+            "then the exception is thrown and the check is recorded as failed.")
+    @Test
+    void canRethrowFailureOfSynchronousSecurityCheck() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("front-door", new byte[]{1}))
+                .isInstanceOf(PersonDetectorException.class)
+                .hasMessage("I am a PersonDetectorException.");
+    }
+
+    @DisplayName("Given asynchronous mode " +
+            "when a security check is submitted " +
+            "then it is returned queued and completes in the background.")
+    @Test
+    void canPerformSecurityCheckAsynchronously() throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        securityCheckService = createSecurityCheckService("async", SecurityCheckOverflowPolicy.REJECT, 10);
+
+        SecurityCheck securityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        assertThat(securityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+        SecurityCheck completedSecurityCheck = awaitSecurityCheckStatus(securityCheck.getId(), SecurityCheckStatus.COMPLETED);
+        assertThat(completedSecurityCheck.getPersonDetected()).isFalse();
+    }
+
+    @DisplayName("Given asynchronous mode and the detection fails " +
+            "when a security check is submitted " +
+            "then the check is recorded as failed with the failure as detail.")
+    @Test
+    void canRecordFailureOfAsynchronousSecurityCheck() throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenThrow(new PersonDetectorException("I am a PersonDetectorException."));
+        securityCheckService = createSecurityCheckService("async", SecurityCheckOverflowPolicy.REJECT, 10);
+
+        SecurityCheck securityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        SecurityCheck failedSecurityCheck = awaitSecurityCheckStatus(securityCheck.getId(), SecurityCheckStatus.FAILED);
+        assertThat(failedSecurityCheck.getDetail()).isEqualTo("I am a PersonDetectorException.");
+    }
+
+    @DisplayName("Given a full queue and the DROP_OLDEST overflow policy " +
+            "when a security check is submitted " +
+            "then the oldest queued check is dropped.")
+    @Test
+    void canDropOldestQueuedSecurityCheckWhenQueueFull() throws Exception {
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.DROP_OLDEST);
+        SecurityCheck oldestQueuedSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+        SecurityCheck newestQueuedSecurityCheck = securityCheckService.submitSecurityCheck("back-door", new byte[]{3});
+
+        SecurityCheck overflowingSecurityCheck = securityCheckService.submitSecurityCheck("garage", new byte[]{4});
+
+        assertThat(securityCheckService.getSecurityCheck(oldestQueuedSecurityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.DROPPED);
+        assertThat(securityCheckService.getSecurityCheck(newestQueuedSecurityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+        assertThat(overflowingSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+        assertThat(securityCheckService.getQueueDepth()).isEqualTo(2);
+    }
+
+    @DisplayName("Given a full queue and the REJECT overflow policy " +
+            "when a security check is submitted " +
+            "then it is rejected.")
+    @Test
+    void canRejectSecurityCheckWhenQueueFull() throws Exception {
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.REJECT);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+        securityCheckService.submitSecurityCheck("back-door", new byte[]{3});
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("garage", new byte[]{4}))
+                .isInstanceOf(SecurityCheckRejectedException.class)
+                .hasMessage("The security check queue is full with 2 security checks, try again later.");
+    }
+
+    @DisplayName("Given a check of a camera is queued and the COALESCE overflow policy " +
+            "when another security check of the same camera is submitted " +
+            "then it replaces the queued check.")
+    @Test
+    void canCoalesceQueuedSecurityChecksOfCamera() throws Exception {
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.COALESCE);
+        SecurityCheck supersededSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+        securityCheckService.submitSecurityCheck("back-door", new byte[]{3});
+
+        SecurityCheck latestSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{4});
+
+        SecurityCheck droppedSecurityCheck = securityCheckService.getSecurityCheck(supersededSecurityCheck.getId());
+        assertThat(droppedSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.DROPPED);
+        assertThat(droppedSecurityCheck.getDetail()).isEqualTo(String.format("Superseded by the newer frame of security check %s.", latestSecurityCheck.getId()));
+        assertThat(securityCheckService.getQueueDepth()).isEqualTo(2);
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("garage", new byte[]{5}))
+                .isInstanceOf(SecurityCheckRejectedException.class);
+    }
+
+    @DisplayName("Given the lane of a camera is full and the REJECT overflow policy " +
+            "when another security check of the camera is submitted " +
+            "then it is rejected while a check of another camera is still queued.")
+    @Test
+    void canRejectSecurityCheckWhenCameraLaneFull() throws Exception {
+        cameraQueueCapacity = 1;
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.REJECT);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("front-door", new byte[]{3}))
+                .isInstanceOf(SecurityCheckRejectedException.class)
+                .hasMessage("The security check lane of camera front-door is full with 1 security checks, try again later.");
+        SecurityCheck otherCameraSecurityCheck = securityCheckService.submitSecurityCheck("back-door", new byte[]{4});
+        assertThat(otherCameraSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+    }
+
+    @DisplayName("Given a full queue and the DROP_OLDEST overflow policy " +
+            "when a security check of a camera with fewer queued checks is submitted " +
+            "then the oldest check of the camera with the most queued checks is dropped.")
+    @Test
+    void canDropOldestSecurityCheckOfLongestCameraLaneWhenQueueFull() throws Exception {
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.DROP_OLDEST);
+        SecurityCheck oldestFrontDoorSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+        SecurityCheck newestFrontDoorSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{3});
+
+        SecurityCheck backDoorSecurityCheck = securityCheckService.submitSecurityCheck("back-door", new byte[]{4});
+
+        SecurityCheck droppedSecurityCheck = securityCheckService.getSecurityCheck(oldestFrontDoorSecurityCheck.getId());
+        assertThat(droppedSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.DROPPED);
+        assertThat(droppedSecurityCheck.getDetail()).isEqualTo(String.format(
+                "Dropped as the security check queue was full when security check %s was submitted.", backDoorSecurityCheck.getId()));
+        assertThat(securityCheckService.getSecurityCheck(newestFrontDoorSecurityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+        assertThat(backDoorSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+    }
+
+    @DisplayName("Given a camera has used up its burst " +
+            "when it submits another security check " +
+            "then it is rejected while another camera is still accepted.")
+    @Test
+    void canRejectSecurityCheckWhenCameraExceedsRateLimit() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        cameraRateLimiter = new CameraRateLimiter(0.001, 1, 16);
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("front-door", new byte[]{2}))
+                .isInstanceOf(SecurityCheckRejectedException.class)
+                .hasMessage("Camera front-door exceeded its rate limit of 0.001 frames per second, try again later.");
+        assertThat(securityCheckService.submitSecurityCheck("back-door", new byte[]{3}).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.COMPLETED);
+    }
+
+    @DisplayName("Given security checks are accepted from the maximum number of cameras that are all sending frames " +
+            "when a security check of yet another camera is submitted " +
+            "then it is rejected as forbidden.")
+    @Test
+    void canRejectSecurityCheckOfCameraTooMany() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        cameraRateLimiter = new CameraRateLimiter(0.001, 1, 1);
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("back-door", new byte[]{2}))
+                .isInstanceOf(SecurityCheckRejectedException.class)
+                .hasMessage("Camera back-door was rejected as security checks are already accepted from 1 cameras.")
+                .extracting("httpStatus").isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    @DisplayName("Given security checks are accepted from the maximum number of cameras " +
+            "when a camera whose bucket has refilled is idle and yet another camera submits a security check " +
+            "then the idle camera is evicted to accept it.")
+    @Test
+    void canEvictIdleCameraToAcceptAnother() throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        cameraRateLimiter = new CameraRateLimiter(1000, 1, 1);
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+        Thread.sleep(20);
+
+        assertThat(securityCheckService.submitSecurityCheck("back-door", new byte[]{2}).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.COMPLETED);
+        assertThat(cameraRateLimiter.getCameraCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Given the rate limit is turned off " +
+            "when more cameras than the maximum submit security checks " +
+            "then they are all accepted and no state is kept for them.")
+    @Test
+    void canAcceptAnyCameraWithoutRateLimit() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        cameraRateLimiter = new CameraRateLimiter(0, 1, 1);
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+
+        assertThat(securityCheckService.submitSecurityCheck("back-door", new byte[]{2}).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.COMPLETED);
+        assertThat(cameraRateLimiter.getCameraCount()).isZero();
+    }
+
+    @DisplayName("Given a camera id with characters other than letters, digits, underscores and hyphens " +
+            "when a security check is submitted " +
+            "then an InvalidCameraIdException is thrown.")
+    @Test
+    void canRejectInvalidCameraId() {
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 10);
+
+        assertThatThrownBy(() -> securityCheckService.submitSecurityCheck("../front-door", new byte[]{1}))
+                .isInstanceOf(InvalidCameraIdException.class);
+    }
+
+    @DisplayName("Given more checks than the results capacity " +
+            "when the oldest check is looked up " +
+            "then an exception is thrown.")
+    @Test
+    void canExpireOldestSecurityChecks() {
+        when(securityService.performSecurityCheck(anyString(), any())).thenReturn(new DetectionResult());
+        securityCheckService = createSecurityCheckService("sync", SecurityCheckOverflowPolicy.REJECT, 2);
+        SecurityCheck oldestSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+        securityCheckService.submitSecurityCheck("front-door", new byte[]{3});
+
+        assertThatThrownBy(() -> securityCheckService.getSecurityCheck(oldestSecurityCheck.getId()))
+                .isInstanceOf(SecurityCheckNotFoundException.class)
+                .hasMessage(String.format("No security check with id %s exists, it may have expired.", oldestSecurityCheck.getId()));
+    }
+
+    @DisplayName("Given more unfinished checks than the results capacity " +
+            "when they are looked up before and after they finish " +
+            "then they are found until more checks than the results capacity have finished after them.")
+    @Test
+    void canKeepUnfinishedSecurityChecks() throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenAnswer(invocation -> {
+            detectionReleaseLatch.await(10, TimeUnit.SECONDS);
+            return new DetectionResult();
+        });
+        securityCheckService = createSecurityCheckService("async", SecurityCheckOverflowPolicy.REJECT, 1);
+        SecurityCheck runningSecurityCheck = securityCheckService.submitSecurityCheck("driveway", new byte[]{1});
+        awaitSecurityCheckStatus(runningSecurityCheck.getId(), SecurityCheckStatus.RUNNING);
+        SecurityCheck queuedSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+
+        assertThat(securityCheckService.getSecurityCheck(runningSecurityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.RUNNING);
+        assertThat(securityCheckService.getSecurityCheck(queuedSecurityCheck.getId()).getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.QUEUED);
+
+        detectionReleaseLatch.countDown();
+        awaitSecurityCheckStatus(queuedSecurityCheck.getId(), SecurityCheckStatus.COMPLETED);
+        assertThatThrownBy(() -> securityCheckService.getSecurityCheck(runningSecurityCheck.getId()))
+                .isInstanceOf(SecurityCheckNotFoundException.class);
+    }
+
+    @DisplayName("Given a queued security check " +
+            "when it is cancelled " +
+            "then it is removed from the queue and recorded as cancelled.")
+    @Test
+    void canCancelQueuedSecurityCheck() throws Exception {
+        securityCheckService = createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy.REJECT);
+        SecurityCheck queuedSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{2});
+
+        SecurityCheck cancelledSecurityCheck = securityCheckService.cancelSecurityCheck(queuedSecurityCheck.getId());
+
+        assertThat(cancelledSecurityCheck.getSecurityCheckStatus()).isEqualTo(SecurityCheckStatus.CANCELLED);
+        assertThat(cancelledSecurityCheck.getDetail()).isEqualTo("Cancelled before it was run.");
+        assertThat(securityCheckService.getQueueDepth()).isZero();
+    }
+
+    @DisplayName("Given a running security check " +
+            "when it is cancelled " +
+            "then the thread running it is interrupted and the check is recorded as cancelled.")
+    @Test
+    void canCancelRunningSecurityCheck() throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenAnswer(invocation -> {
+            try {
+                detectionReleaseLatch.await(10, TimeUnit.SECONDS);
+                return new DetectionResult();
+            } catch (InterruptedException interruptedException) {
+                throw new PersonDetectorException("The detection was interrupted.");
+            }
+        });
+        securityCheckService = createSecurityCheckService("async", SecurityCheckOverflowPolicy.REJECT, 10);
+        SecurityCheck runningSecurityCheck = securityCheckService.submitSecurityCheck("front-door", new byte[]{1});
+        awaitSecurityCheckStatus(runningSecurityCheck.getId(), SecurityCheckStatus.RUNNING);
+
+        securityCheckService.cancelSecurityCheck(runningSecurityCheck.getId());
+
+        SecurityCheck cancelledSecurityCheck = awaitSecurityCheckStatus(runningSecurityCheck.getId(), SecurityCheckStatus.CANCELLED);
+        assertThat(cancelledSecurityCheck.getDetail()).isEqualTo("Cancelled while it was running: The detection was interrupted.");
+    }
+
+    private static DetectionResult personDetectionResult() {
+        return new DetectionResult("yolov3", 1.0, Collections.singletonList(new BoundingBox(10, 20, 30, 60, 0.9f)));
+    }
+
+    private SecurityCheckService createSecurityCheckService(String mode, SecurityCheckOverflowPolicy overflowPolicy, int resultsCapacity) {
+        SecurityCheckService createdSecurityCheckService = new SecurityCheckService(securityService, mode, 2, cameraQueueCapacity, overflowPolicy, 1, resultsCapacity,
+                "", cameraRateLimiter, new SimpleMeterRegistry());
+        createdSecurityCheckService.start();
+        return createdSecurityCheckService;
+    }
+
+    /**
+     * Creates an asynchronous service whose only executor thread is blocked on a running check, so that submitted
+     * checks stay queued.
+     */
+    private SecurityCheckService createSecurityCheckServiceWithBlockedDetection(SecurityCheckOverflowPolicy overflowPolicy) throws Exception {
+        when(securityService.performSecurityCheck(anyString(), any())).thenAnswer(invocation -> {
+            detectionReleaseLatch.await(10, TimeUnit.SECONDS);
+            return new DetectionResult();
+        });
+        SecurityCheckService blockedSecurityCheckService = createSecurityCheckService("async", overflowPolicy, 10);
+        securityCheckService = blockedSecurityCheckService;
+        SecurityCheck runningSecurityCheck = blockedSecurityCheckService.submitSecurityCheck("driveway", new byte[]{1});
+        awaitSecurityCheckStatus(runningSecurityCheck.getId(), SecurityCheckStatus.RUNNING);
+        return blockedSecurityCheckService;
+    }
+
+    private SecurityCheck awaitSecurityCheckStatus(String id, SecurityCheckStatus expectedSecurityCheckStatus) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        SecurityCheck securityCheck = securityCheckService.getSecurityCheck(id);
+        while (securityCheck.getSecurityCheckStatus() != expectedSecurityCheckStatus && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            securityCheck = securityCheckService.getSecurityCheck(id);
+        }
+        assertThat(securityCheck.getSecurityCheckStatus()).isEqualTo(expectedSecurityCheckStatus);
+        return securityCheck;
+    }
+}
@@ -0,0 +1,103 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = {SecurityConfigStore.class, JacksonAutoConfiguration.class, SimpleMeterRegistry.class})
+@TestPropertySource(locations = "classpath:application-test.properties",
+        properties = {"security-config.write-behind.delay-ms=50", "security-config.write-behind.max-retry-delay-ms=100"})
+@DirtiesContext
+class SecurityConfigStoreUnitTest {
+    @Autowired
+    private SecurityConfigStore securityConfigStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${resources.base.location}")
+    private String resourcesBaseLocation;
+
+    @AfterEach
+    void deleteSecurityConfigFile() {
+        new File(resourcesBaseLocation + "security_config.json").delete();
+        securityConfigStore.reload();
+    }
+
+    @DisplayName("Given the security config is changed several times in a burst " +
+            "when the write behind delay has elapsed " +
+            "then only the latest security config is written and no temporary file remains.")
+    @Test
+    void canWriteBehindLatestSecurityConfig() throws Exception {
+        securityConfigStore.set(new SecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED));
+        securityConfigStore.set(new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED));
+        securityConfigStore.set(new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED));
+
+        File securityConfigFile = new File(resourcesBaseLocation + "security_config.json");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!securityConfigFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        SecurityConfig writtenSecurityConfig = objectMapper.readValue(securityConfigFile, SecurityConfig.class);
+        assertThat(writtenSecurityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.SAFE);
+        assertThat(writtenSecurityConfig.getSecurityState()).isEqualTo(SecurityState.DISARMED);
+        assertThat(new File(resourcesBaseLocation + "security_config.json.tmp")).doesNotExist();
+    }
+
+    @DisplayName("Given the write behind of a security config change fails " +
+            "when the security config file can be written again " +
+            "then the change is written without waiting for another change.")
+    @Test
+    void canRetryFailedWriteBehind() throws Exception {
+        File temporarySecurityConfigFile = new File(resourcesBaseLocation + "security_config.json.tmp");
+        assertThat(temporarySecurityConfigFile.mkdir()).isTrue();
+        try {
+            securityConfigStore.set(new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED));
+            Thread.sleep(200);
+        } finally {
+            temporarySecurityConfigFile.delete();
+        }
+
+        File securityConfigFile = new File(resourcesBaseLocation + "security_config.json");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!securityConfigFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        SecurityConfig writtenSecurityConfig = objectMapper.readValue(securityConfigFile, SecurityConfig.class);
+        assertThat(writtenSecurityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.BREACHED);
+        assertThat(writtenSecurityConfig.getSecurityState()).isEqualTo(SecurityState.ARMED);
+    }
+
+    @DisplayName("Given a security config has been loaded " +
+            "when the security_config.json file is removed " +
+            "then the security config is still served from memory.")
+    @Test
+    void canServeSecurityConfigFromMemory() throws Exception {
+        File securityConfigFile = new File(resourcesBaseLocation + "security_config.json");
+        objectMapper.writeValue(securityConfigFile, new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED));
+        securityConfigStore.reload();
+
+        securityConfigFile.delete();
+        SecurityConfig securityConfig = securityConfigStore.get();
+
+        assertThat(securityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.BREACHED);
+        assertThat(securityConfig.getSecurityState()).isEqualTo(SecurityState.ARMED);
+    }
+}
@@ -0,0 +1,154 @@
+package piandarduinoguy.raspberrypi.securitymsrv.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.VersionedSecurityConfig;
+import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigStateException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = {SecurityConfigStore.class, JacksonAutoConfiguration.class, SimpleMeterRegistry.class})
+@TestPropertySource("classpath:application-test.properties")
+class SecurityConfigTransitionConcurrencyIntegrationTest {
+    private static final int THREADS = 8;
+
+    @Autowired
+    private SecurityConfigStore securityConfigStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${resources.base.location}")
+    private String resourcesBaseLocation;
+
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void createExecutorService() {
+        this.executorService = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void deleteSecurityConfigFile() throws Exception {
+        this.executorService.shutdownNow();
+        this.executorService.awaitTermination(10, TimeUnit.SECONDS);
+        new File(resourcesBaseLocation + "security_config.json").delete();
+        securityConfigStore.reload();
+    }
+
+    @DisplayName("Given security is disarmed " +
+            "when several threads race to arm it, round after round, " +
+            "then exactly one ARM transition is applied per round and the rest are rejected.")
+    @Test
+    void canApplyArmExactlyOnceUnderContention() throws Exception {
+        createSecurityConfig(new SecurityConfig(SecurityStatus.SAFE, SecurityState.DISARMED));
+        long initialVersion = securityConfigStore.getVersioned().getVersion();
+        int rounds = 200;
+
+        for (int round = 0; round < rounds; round++) {
+            AtomicInteger appliedTransitions = new AtomicInteger();
+            AtomicInteger rejectedTransitions = new AtomicInteger();
+            runConcurrently(() -> {
+                try {
+                    securityConfigStore.transition(SecurityConfigTransition.ARM);
+                    appliedTransitions.incrementAndGet();
+                } catch (SecurityConfigStateException securityConfigStateException) {
+                    rejectedTransitions.incrementAndGet();
+                }
+            });
+
+            assertThat(appliedTransitions.get()).isEqualTo(1);
+            assertThat(rejectedTransitions.get()).isEqualTo(THREADS - 1);
+            securityConfigStore.transition(SecurityConfigTransition.DISARM);
+        }
+
+        assertThat(securityConfigStore.getVersioned().getVersion() - initialVersion).isEqualTo(2L * rounds);
+    }
+
+    @DisplayName("Given security is armed " +
+            "when breaches race against silencing and re-arming " +
+            "then every applied transition produces its own version and no update is lost.")
+    @Test
+    void canApplyBreachAndSilenceWithoutLostUpdates() throws Exception {
+        createSecurityConfig(new SecurityConfig(SecurityStatus.SAFE, SecurityState.ARMED));
+        long initialVersion = securityConfigStore.getVersioned().getVersion();
+        Set<Long> appliedVersions = ConcurrentHashMap.newKeySet();
+        AtomicInteger appliedTransitions = new AtomicInteger();
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        runConcurrently(() -> {
+            boolean breacher = threadNumber.incrementAndGet() % 2 == 0;
+            for (int attempt = 0; attempt < 2000; attempt++) {
+                if (breacher) {
+                    recordAppliedTransition(SecurityConfigTransition.BREACH, appliedVersions, appliedTransitions);
+                } else {
+                    recordAppliedTransition(SecurityConfigTransition.SILENCE, appliedVersions, appliedTransitions);
+                    recordAppliedTransition(SecurityConfigTransition.ARM, appliedVersions, appliedTransitions);
+                }
+            }
+        });
+
+        long finalVersion = securityConfigStore.getVersioned().getVersion();
+        assertThat(appliedVersions).hasSize(appliedTransitions.get());
+        assertThat(finalVersion - initialVersion).isEqualTo(appliedTransitions.get());
+        assertThat(appliedVersions).contains(finalVersion);
+    }
+
+    private void recordAppliedTransition(SecurityConfigTransition securityConfigTransition, Set<Long> appliedVersions, AtomicInteger appliedTransitions) {
+        try {
+            Optional<VersionedSecurityConfig> transitionedSecurityConfig = securityConfigStore.transition(securityConfigTransition);
+            if (transitionedSecurityConfig.isPresent()) {
+                appliedVersions.add(transitionedSecurityConfig.get().getVersion());
+                appliedTransitions.incrementAndGet();
+            }
+        } catch (SecurityConfigStateException securityConfigStateException) {
+            // the transition is not allowed from the security config another thread just produced
+        }
+    }
+
+    private void runConcurrently(Runnable task) throws Exception {
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                task.run();
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void createSecurityConfig(SecurityConfig securityConfig) throws Exception {
+        objectMapper.writeValue(new File(resourcesBaseLocation + "security_config.json"), securityConfig);
+        securityConfigStore.reload();
+    }
+}
@@ -50,10 +50,9 @@ class SecurityServiceIntegrationTest {
         byte[] imageBytes = testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_person.jpeg"));
 
         assertTrue(securityService.detectPerson(imageBytes));
-        testUtils.assertThatExpectedAnnotatedImageCreated();
+        testUtils.assertThatExpectedAnnotatedImagePublished();
 
-        testUtils.deleteTestTemporaryImageFile();
-        testUtils.deleteAnnotatedImage();
+        testUtils.discardAnnotatedImages();
     }
 
     @Test
@@ -64,9 +63,7 @@ class SecurityServiceIntegrationTest {
         byte[] imageBytes = testUtils.getExpectedCapturedImageBytesFromFile(new File("src/test/resources/test_new_capture_no_person.jpeg"));
 
         assertFalse(securityService.detectPerson(imageBytes));
-        testUtils.assertThatNoAnnotatedImageCreated();
-
-        testUtils.deleteTestTemporaryImageFile();
+        testUtils.assertThatNoAnnotatedImagePublished();
     }
 
     @Test
@@ -112,7 +109,7 @@ class SecurityServiceIntegrationTest {
 
         SecurityConfig updatedSecurityConfig = securityService.armAlarm();
 
-        verify(securityService).saveSecurityConfig(any());
+        verify(securityService).transitionSecurityConfig(SecurityConfigTransition.ARM);
         assertThat(updatedSecurityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.SAFE);
         assertThat(updatedSecurityConfig.getSecurityState()).isEqualTo(SecurityState.ARMED);
 
@@ -158,7 +155,7 @@ class SecurityServiceIntegrationTest {
 
         try {
             SecurityConfig updatedSecurityConfig = securityService.silenceAlarm();
-            verify(securityService).saveSecurityConfig(any());
+            verify(securityService).transitionSecurityConfig(SecurityConfigTransition.SILENCE);
             assertThat(updatedSecurityConfig.getSecurityState()).isEqualTo(SecurityState.DISARMED);
             assertThat(updatedSecurityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.SAFE);
         } catch (Exception e) {
@@ -194,7 +191,7 @@ class SecurityServiceIntegrationTest {
 
         try {
             SecurityConfig updatedSecurityConfig = securityService.disarmAlarm();
-            verify(securityService).saveSecurityConfig(any());
+            verify(securityService).transitionSecurityConfig(SecurityConfigTransition.DISARM);
             assertThat(updatedSecurityConfig.getSecurityState()).isEqualTo(SecurityState.DISARMED);
             assertThat(updatedSecurityConfig.getSecurityStatus()).isEqualTo(SecurityStatus.SAFE);
         } catch (Exception e) {
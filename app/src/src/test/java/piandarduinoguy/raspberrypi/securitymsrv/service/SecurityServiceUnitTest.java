@@ -1,10 +1,9 @@
 package piandarduinoguy.raspberrypi.securitymsrv.service;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-import org.mockito.MockedStatic;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -19,7 +18,6 @@ import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.ImageFileException;
 import piandarduinoguy.raspberrypi.securitymsrv.exception.SecurityConfigFileException;
 
-import java.io.File;
 import java.io.IOException;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -27,7 +25,6 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.verify;
 
 @SpringBootTest
@@ -45,6 +42,9 @@ class SecurityServiceUnitTest {
     @MockBean
     private RabbitTemplate rabbitTemplate;
 
+    @Autowired
+    private SecurityConfigStore securityConfigStore;
+
     @Autowired
     private TestUtils testUtils;
 
@@ -54,9 +54,6 @@ class SecurityServiceUnitTest {
     @Value("${new-capture.file-name}")
     private String newCaptureFileName;
 
-    @Value("${new-capture.annotated.file-name}")
-    private String newCaptureAnnotatedFileName;
-
 
     @Test
     @DisplayName("Given a security config file exists with security status BREACHED and security state ARMED, " +
@@ -92,18 +89,20 @@ class SecurityServiceUnitTest {
 
     @Test
     @DisplayName("Given object mapper throws an IO exception " +
-            "when saveSecurityConfig called " +
-            "then throw SecurityConfigFileSaveException with expected message.")
+            "when the saved security config is written behind " +
+            "then throw SecurityConfigFileException with expected message.")
     void canThrowSecurityConfigFileExceptionIfObjectMapperWriteValueMethodThrowsIOException() throws Exception {
-        doThrow(new IOException("An IO exception has occurred.")).when(objectMapper).writeValue(any(File.class), any(SecurityConfig.class));
+        doThrow(new JsonMappingException(null, "An IO exception has occurred.")).when(objectMapper).writeValueAsBytes(any(SecurityConfig.class));
 
         SecurityConfig securityConfig = new SecurityConfig(SecurityStatus.BREACHED, SecurityState.ARMED);
+        securityService.saveSecurityConfig(securityConfig);
 
-        assertThatThrownBy(() -> securityService.saveSecurityConfig(securityConfig))
+        assertThatThrownBy(() -> securityConfigStore.flush())
                 .isInstanceOf(SecurityConfigFileException.class)
                 .hasMessage("Could not save the security config file object SecurityConfig(securityStatus=BREACHED, securityState=ARMED) to src/test/resources/application/security_config.json due to an IOException with message \"An IO exception has occurred.\".");
 
         testUtils.assertThatNoSecurityConfigFileCreated();
+        testUtils.deleteSecurityConfigFile();
     }
 
     @Test
@@ -125,30 +124,25 @@ class SecurityServiceUnitTest {
             "when getAnnotatedImage method called " +
             "then the expected is returned as base64 encoded image.")
     void canReturnAnnotatedImage() throws Exception {
-        testUtils.createExpectedAnnotatedImageFile();
+        testUtils.publishExpectedAnnotatedImage();
 
-        String base64AnnotatedImage = securityService.getBase64AnnotatedImage();
+        String base64AnnotatedImage = securityService.getBase64AnnotatedImage(null);
 
         assertThat(testUtils.getExpectedBase64EncodedAnnotatedImage()).isEqualToIgnoringCase(base64AnnotatedImage);
 
-        testUtils.deleteAnnotatedImage();
+        testUtils.discardAnnotatedImages();
     }
 
     @Test
-    @DisplayName("Given FileUtils.readFileToByteArray method throws an IOException " +
+    @DisplayName("Given no annotated image has been published " +
             "when getBase64AnnotatedImage called " +
             "then an ImageFileException is thrown.")
-    void canThrowImageFileExceptionWhenGetBase64AnnotatedImageCalled() throws Exception {
-        testUtils.createExpectedAnnotatedImageFile();
-
-        try (MockedStatic<FileUtils> mockFileUtils = mockStatic(FileUtils.class)) {
-            mockFileUtils.when(() -> FileUtils.readFileToByteArray(any())).thenThrow(new IOException("I am an IOException"));
-            assertThatThrownBy(() -> securityService.getBase64AnnotatedImage())
-                    .isInstanceOf(ImageFileException.class)
-                    .hasMessage("The image test_new_capture_annotated.jpeg could not be encoded to base64 string due to an IOException being thrown with message \"I am an IOException\".");
-        }
+    void canThrowImageFileExceptionWhenGetBase64AnnotatedImageCalled() {
+        testUtils.discardAnnotatedImages();
 
-        testUtils.deleteAnnotatedImage();
+        assertThatThrownBy(() -> securityService.getBase64AnnotatedImage(null))
+                .isInstanceOf(ImageFileException.class)
+                .hasMessage("No annotated image of camera default has been published since the service started.");
     }
 
     @Test
@@ -7,6 +7,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.BoundingBox;
+import piandarduinoguy.raspberrypi.securitymsrv.data.domain.DetectionResult;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityConfig;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityState;
 import piandarduinoguy.raspberrypi.securitymsrv.data.domain.SecurityStatus;
@@ -64,52 +66,49 @@ class ValidationUtilUnitTest {
         }
     }
 
-    @DisplayName("Given process logs don't contain expected logs " +
-            "when validatePythonProcessLogs method called " +
+    @DisplayName("Given a detection result without bounding boxes " +
+            "when validateDetectionResult method called " +
             "then throw exception")
     @Test
-    void canThrowExceptionIfPythonProcessLogsDontContainExpectedLogs() {
-        List<String> processLogsNotExpected = new ArrayList<>();
-        processLogsNotExpected.add("Log that are not expected.");
-        AssertionsForClassTypes.assertThatThrownBy(() -> ValidationUtil.validateProcessLogs(processLogsNotExpected))
+    void canThrowExceptionIfDetectionResultHasNoBoundingBoxes() {
+        DetectionResult detectionResultWithoutBoundingBoxes = new DetectionResult("yolov3", 1.0, null);
+        AssertionsForClassTypes.assertThatThrownBy(() -> ValidationUtil.validateDetectionResult(detectionResultWithoutBoundingBoxes))
                 .isInstanceOf(PersonDetectorException.class)
-                .hasMessage("The process logs are not listed as valid logs, valid process logs are - 'Person detected.', 'Person not detected.'");
+                .hasMessage("The detection result has no bounding boxes, an empty list of bounding boxes is expected when no person is detected.");
     }
 
-    @DisplayName("Given process logs null" +
-            "when validatePythonProcessLogs method called " +
+    @DisplayName("Given detection result null " +
+            "when validateDetectionResult method called " +
             "then throw exception")
     @Test
-    void canThrowExceptionIfPythonProcessLogsNull() {
-        AssertionsForClassTypes.assertThatThrownBy(() -> ValidationUtil.validateProcessLogs(null))
+    void canThrowExceptionIfDetectionResultNull() {
+        AssertionsForClassTypes.assertThatThrownBy(() -> ValidationUtil.validateDetectionResult(null))
                 .isInstanceOf(PersonDetectorException.class)
-                .hasMessage("processLogs are null.");
+                .hasMessage("detectionResult is null.");
 
     }
 
-    @DisplayName("Given process logs contain expected 'Person detected.' log " +
-            "when validatePythonProcessLogs method called " +
+    @DisplayName("Given a detection result with a bounding box " +
+            "when validateDetectionResult method called " +
             "then throw no exception")
     @Test
-    void doesNotThrowExceptionIfPythonProcessLogIsPersonDetected() {
-        List<String> processLogsNotExpected = new ArrayList<>();
-        processLogsNotExpected.add("Person detected.");
+    void doesNotThrowExceptionIfDetectionResultHasBoundingBox() {
+        List<BoundingBox> boundingBoxes = new ArrayList<>();
+        boundingBoxes.add(new BoundingBox(10, 20, 30, 60, 0.9f));
         try {
-            ValidationUtil.validateProcessLogs(processLogsNotExpected);
+            ValidationUtil.validateDetectionResult(new DetectionResult("yolov3", 1.0, boundingBoxes));
         } catch (PersonDetectorException personDetectorException) {
             fail(String.format("pythonDetectorException exception was thrown that was no expected, exception message is '%s'", personDetectorException.getMessage()));
         }
     }
 
-    @DisplayName("Given process logs contain expected 'Person not detected.' log " +
-            "when validatePythonProcessLogs method called " +
+    @DisplayName("Given a detection result with no bounding boxes " +
+            "when validateDetectionResult method called " +
             "then throw no exception")
     @Test
-    void doesNotThrowExceptionIfPythonProcessLogIsPersonNotDetected() {
-        List<String> expectedProcessLogs = new ArrayList<>();
-        expectedProcessLogs.add("Person not detected.");
+    void doesNotThrowExceptionIfDetectionResultHasEmptyBoundingBoxes() {
         try {
-            ValidationUtil.validateProcessLogs(expectedProcessLogs);
+            ValidationUtil.validateDetectionResult(new DetectionResult("yolov3", 1.0, new ArrayList<>()));
         } catch (PersonDetectorException personDetectorException) {
             fail(String.format("pythonDetectorException exception was thrown that was no expected, exception message is '%s'", personDetectorException.getMessage()));
         }
@@ -0,0 +1,92 @@
+import json
+import os
+import struct
+import sys
+import time
+
+"""
+Stands in for the real yolo.py worker in tests. No neural network is loaded, an image whose bytes contain "no_person"
+is reported as having no person in it, one whose bytes contain "crash" makes the worker exit, one whose bytes contain
+"hang" makes the worker stop responding, one whose bytes contain "deaf" makes the worker ignore every later PING and any
+other image is
+reported as a person in every region of interest, or a single person without regions, and handed back as its annotated
+image. A batch is answered image by image with the same rules, an image whose bytes contain "undecodable" getting an
+error of its own. The model id names the worker's pid so that tests
+can tell the workers apart. When started with a screen model other than "none" every image goes through a screen stage
+of that model and an image with a person also through a confirm stage, as if the screen model had escalated it.
+"""
+
+
+def write_response(response_type, annotated_images=(), **response):
+    response["type"] = response_type
+    payload = json.dumps(response).encode("utf-8")
+    sys.stdout.buffer.write(struct.pack(">I", len(payload)))
+    sys.stdout.buffer.write(payload)
+    for annotated_image in annotated_images:
+        sys.stdout.buffer.write(annotated_image)
+    sys.stdout.buffer.flush()
+
+
+def stages_of(person_detected):
+    if screen_model == "none":
+        return []
+    stages = [{"stage": "screen", "modelId": screen_model, "inferenceTimeMillis": 0.25}]
+    if person_detected:
+        stages.append({"stage": "confirm", "modelId": "fake-yolo", "inferenceTimeMillis": 0.75})
+    return stages
+
+
+def detect(model_id, image_bytes, regions="[]"):
+    global deaf
+    deaf = deaf or b"deaf" in image_bytes
+    if b"crash" in image_bytes:
+        sys.exit(1)
+    elif b"hang" in image_bytes:
+        time.sleep(600)
+    elif b"no_person" in image_bytes:
+        return {"modelId": model_id, "inferenceTimeMillis": 1.0, "boundingBoxes": [], "stages": stages_of(False),
+                "annotatedImageLength": 0}, b""
+    return {"modelId": model_id, "inferenceTimeMillis": 1.0,
+            "boundingBoxes": [{"x": 10, "y": 20, "width": 30, "height": 60, "confidence": 0.9}
+                              for _ in (json.loads(regions) or [None])],
+            "stages": stages_of(True),
+            "annotatedImageLength": len(image_bytes)}, image_bytes
+
+
+screen_model = sys.argv[8] if len(sys.argv) > 8 else "none"
+deaf = False
+
+if __name__ == "__main__":
+    model_id = f"fake-yolo-pid-{os.getpid()}"
+    print("Creating fake YOLO trained neural network.", file=sys.stderr, flush=True)
+    write_response("ready", modelId=model_id)
+
+    for request in iter(sys.stdin.buffer.readline, b""):
+        request_parts = request.decode("utf-8").rstrip("\n").split("\t")
+        if request_parts[0] == "PING":
+            if deaf:
+                time.sleep(600)
+            write_response("pong")
+        elif request_parts[0] == "DETECT":
+            image_bytes = sys.stdin.buffer.read(int(request_parts[1]))
+            if b"undecodable" in image_bytes:
+                write_response("error", message=f"Detection failed: The image of {len(image_bytes)} bytes could not be decoded.",
+                               invalidImage=True)
+                continue
+            result, annotated_image = detect(model_id, image_bytes, *request_parts[2:3])
+            write_response("detection", annotated_images=[annotated_image], **result)
+        elif request_parts[0] == "DETECT_BATCH":
+            batch = [(sys.stdin.buffer.read(int(request_parts[part])), request_parts[part + 1])
+                     for part in range(1, len(request_parts), 2)]
+            results = []
+            annotated_images = []
+            for image_bytes, regions in batch:
+                if b"undecodable" in image_bytes:
+                    results.append({"error": f"The image of {len(image_bytes)} bytes could not be decoded.", "invalidImage": True})
+                    continue
+                result, annotated_image = detect(model_id, image_bytes, regions)
+                results.append(result)
+                annotated_images.append(annotated_image)
+            write_response("detections", annotated_images=annotated_images, results=results)
+        else:
+            write_response("error", message=f"Unknown request: {request.decode('utf-8', 'replace').rstrip()}")
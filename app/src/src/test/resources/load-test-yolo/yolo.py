@@ -0,0 +1,60 @@
+import json
+import os
+import struct
+import sys
+import time
+
+"""
+Stands in for the real yolo.py worker in the load test. No neural network is loaded, every detection takes the
+inference latency given by the LOAD_TEST_DETECTOR_LATENCY_MS environment variable (200 ms if it is not set) and an image
+whose bytes contain "a_person" is reported as a single person and handed back as its annotated image, any other image
+as having no person in it. A batch takes the latency of one image plus the share of it given by
+LOAD_TEST_DETECTOR_BATCH_IMAGE_SHARE (0.6 if it is not set) for every further image, standing in for the layer setup
+a batched forward pass saves. The regions of interest sent along with an image are ignored.
+"""
+
+
+def detect(model_id, image_bytes, inference_time_millis):
+    if b"a_person" in image_bytes:
+        return {"modelId": model_id, "inferenceTimeMillis": inference_time_millis,
+                "boundingBoxes": [{"x": 10, "y": 20, "width": 30, "height": 60, "confidence": 0.9}],
+                "annotatedImageLength": len(image_bytes)}, image_bytes
+    return {"modelId": model_id, "inferenceTimeMillis": inference_time_millis, "boundingBoxes": [],
+            "annotatedImageLength": 0}, b""
+
+
+def write_response(response_type, annotated_images=(), **response):
+    response["type"] = response_type
+    payload = json.dumps(response).encode("utf-8")
+    sys.stdout.buffer.write(struct.pack(">I", len(payload)))
+    sys.stdout.buffer.write(payload)
+    for annotated_image in annotated_images:
+        sys.stdout.buffer.write(annotated_image)
+    sys.stdout.buffer.flush()
+
+
+if __name__ == "__main__":
+    model_id = f"load-test-yolo-pid-{os.getpid()}"
+    latency_millis = float(os.environ.get("LOAD_TEST_DETECTOR_LATENCY_MS", "200"))
+    batch_image_share = float(os.environ.get("LOAD_TEST_DETECTOR_BATCH_IMAGE_SHARE", "0.6"))
+    print(f"Creating load test YOLO stand-in with an inference latency of {latency_millis} ms.", file=sys.stderr, flush=True)
+    write_response("ready", modelId=model_id)
+
+    for request in iter(sys.stdin.buffer.readline, b""):
+        request_parts = request.decode("utf-8").rstrip("\n").split("\t")
+        if request_parts[0] == "PING":
+            write_response("pong")
+        elif request_parts[0] == "DETECT":
+            image_bytes = sys.stdin.buffer.read(int(request_parts[1]))
+            time.sleep(latency_millis / 1000)
+            result, annotated_image = detect(model_id, image_bytes, latency_millis)
+            write_response("detection", annotated_images=[annotated_image], **result)
+        elif request_parts[0] == "DETECT_BATCH":
+            batch = [sys.stdin.buffer.read(int(request_parts[part])) for part in range(1, len(request_parts), 2)]
+            batch_latency_millis = latency_millis * (1 + batch_image_share * (len(batch) - 1))
+            time.sleep(batch_latency_millis / 1000)
+            detections = [detect(model_id, image_bytes, batch_latency_millis / len(batch)) for image_bytes in batch]
+            write_response("detections", annotated_images=[annotated_image for _, annotated_image in detections],
+                           results=[result for result, _ in detections])
+        else:
+            write_response("error", message=f"Unknown request: {request.decode('utf-8', 'replace').rstrip()}")